@@ -16,23 +16,114 @@
 
 package com.vimhe.ftpserver.spring.boot.autoconfigure;
 
+import com.vimhe.ftpserver.spring.boot.autoconfigure.actuate.FtpServerEndpoint;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.DrainFtplet;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.audit.AuditLog;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.audit.AuditLogFtplet;
 import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.FtpUserManager;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.SessionActivityFtplet;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.bandwidth.BandwidthShaper;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.checksum.ChecksumAlgorithm;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.cluster.ClusterLoginFtplet;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.cluster.ClusterSessionLimiter;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.cluster.FileSessionCounterStore;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.cluster.InMemorySessionCounterStore;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.cluster.SessionCounterStore;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.checksum.ChecksumCommand;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.checksum.ChecksumIndex;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.checksum.HashFeatCommand;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.checksum.HashOptsCommand;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.filesystem.MappedFileCache;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.ipfilter.CidrIpFilter;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.filesystem.NioFileSystemFactory;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.filesystem.WriteBehind;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.listener.CommandQueueHandler;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.listener.TunableNioListener;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.listing.CachedListingCommand;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.listing.DirectoryListingCache;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.listing.ListingCacheFtplet;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.quota.AllocateCommand;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.quota.QuotaFtplet;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.quota.QuotaIndex;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.quota.QuotaRequest;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.quota.QuotaUploadCommand;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.ssl.TlsAuthCommand;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.ssl.TlsHandshakeStatistics;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.ssl.TunedSslConfiguration;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.metrics.AuditLogMetrics;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.metrics.ChecksumIndexMetrics;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.metrics.ClusterSessionLimiterMetrics;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.metrics.DirectoryListingCacheMetrics;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.metrics.FtpServerMetricsFtplet;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.metrics.MappedFileCacheMetrics;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.metrics.QuotaIndexMetrics;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.metrics.TlsHandshakeMetrics;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.metrics.TransferCompressionMetrics;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.metrics.UploadEventPipelineMetrics;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.metrics.VerifiedCredentialCacheMetrics;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.metrics.WriteBehindMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.transfer.BufferPool;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.transfer.CompressionFtplet;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.transfer.NioDataConnectionCommand;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.transfer.PassivePortPool;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.transfer.PooledDataConnectionConfiguration;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.transfer.TransferCompression;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.upload.ApplicationEventUploadListener;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.upload.UploadEventFtplet;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.upload.UploadEventPipeline;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.upload.UploadListener;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.support.FtpServerInitializationBean;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.java.Log;
 import org.apache.ftpserver.*;
+import org.apache.ftpserver.command.CommandFactory;
+import org.apache.ftpserver.command.CommandFactoryFactory;
+import org.apache.ftpserver.command.impl.APPE;
+import org.apache.ftpserver.command.impl.EPRT;
+import org.apache.ftpserver.command.impl.EPSV;
+import org.apache.ftpserver.command.impl.MD5;
+import org.apache.ftpserver.command.impl.PASV;
+import org.apache.ftpserver.command.impl.PORT;
+import org.apache.ftpserver.command.impl.STOR;
+import org.apache.ftpserver.command.impl.STOU;
+import org.apache.ftpserver.filesystem.nativefs.NativeFileSystemFactory;
+import org.apache.ftpserver.ftplet.FileSystemFactory;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.Ftplet;
+import org.apache.ftpserver.ftplet.User;
 import org.apache.ftpserver.ftplet.UserManager;
+import org.apache.ftpserver.ipfilter.IpFilterType;
 import org.apache.ftpserver.listener.Listener;
 import org.apache.ftpserver.listener.ListenerFactory;
 import org.apache.ftpserver.ssl.SslConfiguration;
 import org.apache.ftpserver.ssl.SslConfigurationFactory;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.actuate.autoconfigure.endpoint.condition.ConditionalOnEnabledEndpoint;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.AnnotationAwareOrderComparator;
 import org.springframework.util.CollectionUtils;
 
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -50,16 +141,211 @@ public class FtpServerAutoConfiguration {
 
     private final FtpServerConfigurationProperties configurationProperties;
 
+    private final ListableBeanFactory beanFactory;
+
     @Bean
     @ConditionalOnMissingBean
     public FtpServer ftpServer() {
+        BandwidthShaper bandwidthShaper = this.createBandwidthShaper(this.configurationProperties.getServer());
+
         FtpServerFactory serverFactory = new FtpServerFactory();
         serverFactory.setConnectionConfig(this.createConnectionConfig(this.configurationProperties.getServer()));
-        serverFactory.setListeners(this.createListenerConfig(this.configurationProperties.getServer().getListener()));
+        serverFactory.setListeners(this.createListenerConfig(
+            this.configurationProperties.getServer().getListener(), bandwidthShaper));
         serverFactory.setUserManager(this.createUserManager());
+        serverFactory.setFileSystem(this.createFileSystem(this.configurationProperties.getFileSystem()));
+        serverFactory.setCommandFactory(this.createCommandFactory(bandwidthShaper));
+        serverFactory.setFtplets(this.createFtplets());
         return serverFactory.createServer();
     }
 
+    @Bean
+    @ConditionalOnMissingBean
+    public DrainFtplet drainFtplet() {
+        return new DrainFtplet();
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public TlsHandshakeStatistics tlsHandshakeStatistics() {
+        return new TlsHandshakeStatistics();
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "ftpserver.server.compression", name = "enabled", havingValue = "true")
+    public TransferCompression transferCompression() {
+        FtpServerConfigurationProperties.Compression properties =
+            this.configurationProperties.getServer().getCompression();
+        return new TransferCompression(properties.getLevel(), properties.getBypassExtensions(),
+            properties.getEntropyThreshold(), this.configurationProperties.getServer().getMaxThreads());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "ftpserver.server.compression", name = "enabled", havingValue = "true")
+    public CompressionFtplet compressionFtplet() {
+        return new CompressionFtplet();
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "ftpserver.file-system.read-cache", name = "enabled", havingValue = "true")
+    public MappedFileCache mappedFileCache() {
+        FtpServerConfigurationProperties.ReadCache properties = this.configurationProperties.getFileSystem().getReadCache();
+        return new MappedFileCache(properties.getMaximumSize().toBytes(), properties.getMinimumFileSize().toBytes());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "ftpserver.file-system.write-behind", name = "enabled", havingValue = "true")
+    public WriteBehind writeBehind() {
+        // Only the nio file system stages its uploads, the native one would make no upload durable
+        if (this.configurationProperties.getFileSystem().getType()
+            != FtpServerConfigurationProperties.FileSystemType.NIO) {
+            throw new FtpServerConfigurationException("Write-behind needs the NIO file system type");
+        }
+        int bufferSize = (int) this.configurationProperties.getFileSystem().getBufferSize().toBytes();
+        return new WriteBehind(new BufferPool(bufferSize, this.configurationProperties.getServer().getMaxThreads(),
+            true));
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "ftpserver.file-system.checksum", name = "enabled", havingValue = "true")
+    public ChecksumIndex checksumIndex() throws IOException {
+        FtpServerConfigurationProperties.Checksum properties =
+            this.configurationProperties.getFileSystem().getChecksum();
+        return new ChecksumIndex(Optional.ofNullable(properties.getIndexFile()).map(File::toPath).orElse(null),
+            properties.getUploadAlgorithms(), properties.getHasherThreads(), properties.getQueueCapacity());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "ftpserver.file-system.quota", name = "enabled", havingValue = "true")
+    public QuotaIndex quotaIndex(final UserManager userManager) throws FtpException {
+        FtpServerConfigurationProperties.Quota properties = this.configurationProperties.getFileSystem().getQuota();
+        QuotaIndex quotaIndex = new QuotaIndex(
+            Optional.ofNullable(properties.getScanThreads()).orElse(Runtime.getRuntime().availableProcessors()),
+            properties.getReconcileInterval());
+
+        // Homes of the users known now are scanned at once, those of users added later on first use
+        List<Path> homes = new ArrayList<>();
+        for (String username : userManager.getAllUserNames()) {
+            User user = userManager.getUserByName(username);
+            if (user != null && user.authorize(new QuotaRequest()) != null) {
+                homes.add(Paths.get(user.getHomeDirectory()));
+            }
+        }
+        quotaIndex.seed(homes);
+        return quotaIndex;
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "ftpserver.file-system.quota", name = "enabled", havingValue = "true")
+    public QuotaFtplet quotaFtplet(final QuotaIndex quotaIndex) {
+        return new QuotaFtplet(quotaIndex);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "ftpserver.file-system.listing-cache", name = "enabled", havingValue = "true")
+    public DirectoryListingCache directoryListingCache() throws IOException {
+        FtpServerConfigurationProperties.ListingCache properties =
+            this.configurationProperties.getFileSystem().getListingCache();
+        return new DirectoryListingCache(properties.getMaximumSize().toBytes(), properties.getTimeToLive(),
+            Boolean.TRUE.equals(properties.getWatch()));
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "ftpserver.file-system.listing-cache", name = "enabled", havingValue = "true")
+    public ListingCacheFtplet listingCacheFtplet(final DirectoryListingCache directoryListingCache) {
+        return new ListingCacheFtplet(directoryListingCache);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "ftpserver.audit", name = "enabled", havingValue = "true")
+    public AuditLog auditLog() throws IOException {
+        FtpServerConfigurationProperties.Audit properties = this.configurationProperties.getAudit();
+        // Not defaulted, a file relative to the working directory would move with it
+        if (properties.getFile() == null) {
+            throw new FtpServerConfigurationException("The audit log needs a file, set ftpserver.audit.file");
+        }
+        return new AuditLog(properties.getFile().toPath(),
+            Optional.ofNullable(properties.getLoginFile()).map(File::toPath).orElse(null), properties.getBufferSize(),
+            properties.getOverflowPolicy(), properties.getSampleRate(), properties.getCommitInterval(),
+            properties.getMaximumFileSize().toBytes(), properties.getMaximumHistory());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "ftpserver.audit", name = "enabled", havingValue = "true")
+    public AuditLogFtplet auditLogFtplet(final AuditLog auditLog) {
+        return new AuditLogFtplet(auditLog);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "ftpserver.server.cluster-limits", name = "enabled", havingValue = "true")
+    public SessionCounterStore sessionCounterStore() throws IOException {
+        File storeFile = this.configurationProperties.getServer().getClusterLimits().getStoreFile();
+        return storeFile == null ? new InMemorySessionCounterStore() : new FileSessionCounterStore(storeFile.toPath());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "ftpserver.server.cluster-limits", name = "enabled", havingValue = "true")
+    public ClusterSessionLimiter clusterSessionLimiter(final SessionCounterStore sessionCounterStore) {
+        FtpServerConfigurationProperties.ClusterLimits properties =
+            this.configurationProperties.getServer().getClusterLimits();
+        // The runtime name is "pid@host"
+        String nodeId = Optional.ofNullable(properties.getNodeId())
+            .orElseGet(() -> ManagementFactory.getRuntimeMXBean().getName());
+        return new ClusterSessionLimiter(nodeId, sessionCounterStore, properties.getLease(),
+            properties.getBatchSize());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "ftpserver.server.cluster-limits", name = "enabled", havingValue = "true")
+    public ClusterLoginFtplet clusterLoginFtplet(final ClusterSessionLimiter clusterSessionLimiter) {
+        FtpServerConfigurationProperties.Server properties = this.configurationProperties.getServer();
+        return new ClusterLoginFtplet(clusterSessionLimiter, Optional.ofNullable(properties.getMaxLogins()).orElse(0),
+            Optional.ofNullable(properties.getMaxAnonLogins()).orElse(0));
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "ftpserver.upload-events", name = "enabled", havingValue = "true")
+    public UploadEventPipeline uploadEventPipeline(final ApplicationEventPublisher applicationEventPublisher) {
+        FtpServerConfigurationProperties.UploadEvents properties = this.configurationProperties.getUploadEvents();
+
+        // Listeners by bean name, in their order
+        List<Map.Entry<String, UploadListener>> listeners =
+            new ArrayList<>(this.beanFactory.getBeansOfType(UploadListener.class).entrySet());
+        listeners.sort((left, right) -> AnnotationAwareOrderComparator.INSTANCE.compare(left.getValue(),
+            right.getValue()));
+        Map<String, UploadListener> orderedListeners = new LinkedHashMap<>();
+        listeners.forEach(listener -> orderedListeners.put(listener.getKey(), listener.getValue()));
+        if (Boolean.TRUE.equals(properties.getPublishApplicationEvents())) {
+            orderedListeners.put("applicationEventPublisher",
+                new ApplicationEventUploadListener(applicationEventPublisher));
+        }
+
+        return new UploadEventPipeline(orderedListeners, properties.getQueueCapacity(), properties.getOfferTimeout(),
+            properties.getBatchSize(), properties.getBatchDelay(), properties.getParallelism());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "ftpserver.upload-events", name = "enabled", havingValue = "true")
+    public UploadEventFtplet uploadEventFtplet(final UploadEventPipeline uploadEventPipeline) {
+        return new UploadEventFtplet(uploadEventPipeline);
+    }
+
     @Bean
     public UserManager createUserManager() {
         final Map<String, FtpServerConfigurationProperties.User> properties = this.configurationProperties.getUser();
@@ -70,7 +356,116 @@ public class FtpServerAutoConfiguration {
             properties.put("anonymous", user);
         }
 
-        return new FtpUserManager(properties);
+        return new FtpUserManager(properties, this.configurationProperties.getUserManager());
+    }
+
+    /**
+     * Every Ftplet bean is registered, by its bean name.
+     */
+    private Map<String, Ftplet> createFtplets() {
+        return new LinkedHashMap<>(this.beanFactory.getBeansOfType(Ftplet.class));
+    }
+
+    private FileSystemFactory createFileSystem(final FtpServerConfigurationProperties.FileSystem properties) {
+        if (properties.getType() == FtpServerConfigurationProperties.FileSystemType.NIO) {
+            NioFileSystemFactory factory = new NioFileSystemFactory();
+            Optional.ofNullable(properties.getCreateHome()).ifPresent(factory::setCreateHome);
+            Optional.ofNullable(properties.getCaseInsensitive()).ifPresent(factory::setCaseInsensitive);
+            factory.setReadCache(this.beanFactory.getBeanProvider(MappedFileCache.class).getIfAvailable());
+            factory.setWriteBehind(this.beanFactory.getBeanProvider(WriteBehind.class).getIfAvailable());
+            factory.setChecksumIndex(this.beanFactory.getBeanProvider(ChecksumIndex.class).getIfAvailable());
+            return factory;
+        }
+
+        NativeFileSystemFactory factory = new NativeFileSystemFactory();
+        Optional.ofNullable(properties.getCreateHome()).ifPresent(factory::setCreateHome);
+        Optional.ofNullable(properties.getCaseInsensitive()).ifPresent(factory::setCaseInsensitive);
+        return factory;
+    }
+
+    private BandwidthShaper createBandwidthShaper(final FtpServerConfigurationProperties.Server properties) {
+        FtpServerConfigurationProperties.Bandwidth bandwidth = properties.getBandwidth();
+        return new BandwidthShaper(bandwidth.getDownloadRate().toBytes(), bandwidth.getUploadRate().toBytes(),
+            bandwidth.getBurst());
+    }
+
+    private CommandFactory createCommandFactory(final BandwidthShaper bandwidthShaper) {
+        final CommandFactoryFactory factory = new CommandFactoryFactory();
+        final FtpServerConfigurationProperties.FileSystem fileSystem = this.configurationProperties.getFileSystem();
+
+        // The nio file system needs data connections backed by socket channels, and only these are shaped beyond the
+        // limit of a single transfer. Users added at run time are shaped only if shaping is enabled explicitly.
+        boolean shaping = Boolean.TRUE.equals(this.configurationProperties.getServer().getBandwidth().getEnabled())
+            || bandwidthShaper.isShaping() || this.configurationProperties.getUser().values().stream()
+            .anyMatch(user -> user.getTotalDownloadRate() != null || user.getTotalUploadRate() != null);
+        // Transfers on virtual threads need the data connections which do not hold a monitor while blocking
+        boolean virtualThreads = Boolean.TRUE.equals(this.configurationProperties.getServer().getVirtualThreads());
+        // The default data connections hang in the TLS handshake under concurrent load, and are not timed
+        boolean serializedTls = Boolean.TRUE.equals(this.configurationProperties.getServer().getSerializedTls());
+        boolean tls = serializedTls && this.configurationProperties.getServer().getListener().values().stream()
+            .anyMatch(listener -> listener.getSsl().getKeystore().getFile() != null);
+        TlsHandshakeStatistics handshakeStatistics =
+            this.beanFactory.getBeanProvider(TlsHandshakeStatistics.class).getIfAvailable();
+        // The tuned MODE Z streams are provided by the nio data connections only
+        TransferCompression compression = this.beanFactory.getBeanProvider(TransferCompression.class).getIfAvailable();
+        if (fileSystem.getType() == FtpServerConfigurationProperties.FileSystemType.NIO || shaping || virtualThreads
+            || tls || compression != null) {
+            int bufferSize = (int) fileSystem.getBufferSize().toBytes();
+            int pooled = this.configurationProperties.getServer().getMaxThreads();
+            BufferPool directBuffers = new BufferPool(bufferSize, pooled, true);
+            BufferPool heapBuffers = new BufferPool(bufferSize, pooled, false);
+
+            factory.addCommand("PORT",
+                new NioDataConnectionCommand(new PORT(), directBuffers, heapBuffers, bandwidthShaper,
+                    handshakeStatistics, compression));
+            factory.addCommand("EPRT",
+                new NioDataConnectionCommand(new EPRT(), directBuffers, heapBuffers, bandwidthShaper,
+                    handshakeStatistics, compression));
+            factory.addCommand("PASV",
+                new NioDataConnectionCommand(new PASV(), directBuffers, heapBuffers, bandwidthShaper,
+                    handshakeStatistics, compression));
+            factory.addCommand("EPSV",
+                new NioDataConnectionCommand(new EPSV(), directBuffers, heapBuffers, bandwidthShaper,
+                    handshakeStatistics, compression));
+        }
+
+        // The SslFilter of AUTH loses replies under concurrent load, see SerializedSslFilter
+        if (serializedTls) {
+            factory.addCommand("AUTH", new TlsAuthCommand(handshakeStatistics));
+        }
+
+        DirectoryListingCache listingCache =
+            this.beanFactory.getBeanProvider(DirectoryListingCache.class).getIfAvailable();
+        if (listingCache != null) {
+            factory.addCommand("LIST", new CachedListingCommand("LIST", listingCache));
+            factory.addCommand("NLST", new CachedListingCommand("NLST", listingCache));
+            factory.addCommand("MLSD", new CachedListingCommand("MLSD", listingCache));
+        }
+
+        ChecksumIndex checksumIndex = this.beanFactory.getBeanProvider(ChecksumIndex.class).getIfAvailable();
+        if (checksumIndex != null) {
+            ChecksumAlgorithm defaultAlgorithm = fileSystem.getChecksum().getDefaultAlgorithm();
+            factory.addCommand("HASH", new ChecksumCommand("HASH", checksumIndex, defaultAlgorithm, null));
+            // The X of X commands is stripped from requests, XMD5 arrives as MD5
+            for (ChecksumAlgorithm algorithm : ChecksumAlgorithm.values()) {
+                String command = algorithm.getCommand().substring(1);
+                factory.addCommand(command, new ChecksumCommand(algorithm.getCommand(), checksumIndex, algorithm,
+                    "MD5".equals(command) ? new MD5() : null));
+            }
+            factory.addCommand("OPTS", new HashOptsCommand(defaultAlgorithm));
+            factory.addCommand("FEAT", new HashFeatCommand(defaultAlgorithm));
+        }
+
+        // Upstream has no ALLO, the quota uses the announced size to refuse uploads up front
+        QuotaIndex quotaIndex = this.beanFactory.getBeanProvider(QuotaIndex.class).getIfAvailable();
+        if (quotaIndex != null) {
+            factory.addCommand("ALLO", new AllocateCommand());
+            factory.addCommand("STOR", new QuotaUploadCommand(new STOR(), quotaIndex));
+            factory.addCommand("APPE", new QuotaUploadCommand(new APPE(), quotaIndex));
+            factory.addCommand("STOU", new QuotaUploadCommand(new STOU(), quotaIndex));
+        }
+
+        return factory.createCommandFactory();
     }
 
     private ConnectionConfig createConnectionConfig(final FtpServerConfigurationProperties.Server properties) {
@@ -88,7 +483,8 @@ public class FtpServerAutoConfiguration {
     }
 
     private Map<String, Listener> createListenerConfig(
-        final Map<String, FtpServerConfigurationProperties.Listener> properties
+        final Map<String, FtpServerConfigurationProperties.Listener> properties,
+        final BandwidthShaper bandwidthShaper
     ) {
         // The apache ftp server need at least one listener, default name is "default"
         if (CollectionUtils.isEmpty(properties)) {
@@ -98,11 +494,14 @@ public class FtpServerAutoConfiguration {
         }
 
         Map<String, Listener> listenerMap = new HashMap<>(1);
-        properties.forEach((key, value) -> listenerMap.put(key, this.createListener(value)));
+        properties.forEach((key, value) -> listenerMap.put(key, this.createListener(value, bandwidthShaper)));
         return listenerMap;
     }
 
-    private Listener createListener(final FtpServerConfigurationProperties.Listener properties) {
+    private Listener createListener(
+        final FtpServerConfigurationProperties.Listener properties,
+        final BandwidthShaper bandwidthShaper
+    ) {
         final ListenerFactory listenerFactory = new ListenerFactory();
 
         Optional.ofNullable(properties.getPort()).ifPresent(listenerFactory::setPort);
@@ -117,7 +516,74 @@ public class FtpServerAutoConfiguration {
 
         listenerFactory.setDataConnectionConfiguration(this.createDataConnectionConfig(properties.getDataConnection()));
 
-        return listenerFactory.createListener();
+        Optional.ofNullable(this.createIpFilter(properties.getBlacklist()))
+            .ifPresent(listenerFactory::setSessionFilter);
+
+        Listener listener = this.createTunableListener(listenerFactory, properties);
+        FtpServerConfigurationProperties.Bandwidth bandwidth = properties.getBandwidth();
+        bandwidthShaper.addListener(listener,
+            bandwidth.getDownloadRate().toBytes(), bandwidth.getUploadRate().toBytes(), bandwidth.getBurst());
+        return listener;
+    }
+
+    /**
+     * Same as {@link ListenerFactory#createListener()}, with the I/O processors, command executor and socket options.
+     */
+    private TunableNioListener createTunableListener(
+        final ListenerFactory factory,
+        final FtpServerConfigurationProperties.Listener properties
+    ) {
+        if (factory.getServerAddress() != null) {
+            try {
+                InetAddress.getByName(factory.getServerAddress());
+            } catch (UnknownHostException e) {
+                throw new FtpServerConfigurationException("Unknown host", e);
+            }
+        }
+
+        TunableNioListener listener = new TunableNioListener(factory.getServerAddress(), factory.getPort(),
+            factory.isImplicitSsl(), factory.getSslConfiguration(), factory.getDataConnectionConfiguration(),
+            factory.getIdleTimeout(), factory.getSessionFilter());
+        Optional.ofNullable(properties.getIoProcessors()).ifPresent(listener::setIoProcessors);
+
+        FtpServerConfigurationProperties.Socket socket = properties.getSocket();
+        Optional.ofNullable(socket.getBacklog()).ifPresent(listener::setBacklog);
+        Optional.ofNullable(socket.getReceiveBufferSize()).ifPresent(dataSize ->
+            listener.setReceiveBufferSize((int) dataSize.toBytes()));
+        Optional.ofNullable(socket.getSendBufferSize()).ifPresent(dataSize ->
+            listener.setSendBufferSize((int) dataSize.toBytes()));
+        Optional.ofNullable(socket.getTcpNoDelay()).ifPresent(listener::setTcpNoDelay);
+
+        FtpServerConfigurationProperties.CommandExecutor executor = properties.getCommandExecutor();
+        Optional.ofNullable(executor.getThreads()).filter(threads -> threads > 0).ifPresent(threads ->
+            listener.setExecutor(threads, Optional.ofNullable(executor.getQueueCapacity())
+                .filter(capacity -> capacity > 0)
+                .map(capacity -> new CommandQueueHandler(capacity, executor.getRejectionPolicy()))
+                .orElse(null)));
+        listener.setVirtualThreads(Boolean.TRUE.equals(this.configurationProperties.getServer().getVirtualThreads()));
+        listener.setSerializedSsl(Boolean.TRUE.equals(this.configurationProperties.getServer().getSerializedTls()));
+        listener.setHandshakeStatistics(
+            this.beanFactory.getBeanProvider(TlsHandshakeStatistics.class).getIfAvailable());
+
+        return listener;
+    }
+
+    /**
+     * The filter of a listener can be replaced at runtime through {@link Listener#getSessionFilter()}.
+     */
+    private CidrIpFilter createIpFilter(final FtpServerConfigurationProperties.Blacklist properties) {
+        List<String> networks = new ArrayList<>(properties.getAddresses().size() + properties.getNetworks().size());
+        properties.getAddresses().forEach(inetAddress -> networks.add(inetAddress.getHostAddress()));
+        networks.addAll(properties.getNetworks());
+        if (networks.isEmpty() && properties.getType() != IpFilterType.ALLOW) {
+            return null;
+        }
+
+        try {
+            return new CidrIpFilter(properties.getType(), networks);
+        } catch (IllegalArgumentException e) {
+            throw new FtpServerConfigurationException("Invalid blacklist: " + e.getMessage(), e);
+        }
     }
 
     private SslConfiguration createSslConfig(final FtpServerConfigurationProperties.Ssl properties) {
@@ -126,8 +592,9 @@ public class FtpServerAutoConfiguration {
         Optional.ofNullable(properties.getProtocol()).ifPresent(factory::setSslProtocol);
         Optional.ofNullable(properties.getClientAuthentication()).ifPresent(clientAuth ->
             factory.setClientAuthentication(clientAuth.name()));
-        Optional.ofNullable(properties.getEnabledCipherSuites()).ifPresent(strings ->
-            factory.setEnabledCipherSuites(strings.toArray(new String[0])));
+        // An empty array would enable no cipher suite at all on the data connections
+        Optional.ofNullable(properties.getEnabledCipherSuites()).filter(strings -> !strings.isEmpty())
+            .ifPresent(strings -> factory.setEnabledCipherSuites(strings.toArray(new String[0])));
         Optional.ofNullable(properties.getKeystore().getFile()).ifPresent(factory::setKeystoreFile);
         Optional.ofNullable(properties.getKeystore().getPassword()).ifPresent(factory::setKeystorePassword);
         Optional.ofNullable(properties.getKeystore().getKeyPassword()).ifPresent(factory::setKeyPassword);
@@ -139,7 +606,12 @@ public class FtpServerAutoConfiguration {
         Optional.ofNullable(properties.getTruststore().getType()).ifPresent(factory::setTruststoreType);
         Optional.ofNullable(properties.getTruststore().getAlgorithm()).ifPresent(factory::setTruststoreAlgorithm);
 
-        return factory.createSslConfiguration();
+        try {
+            return new TunedSslConfiguration(factory.createSslConfiguration(), properties.getPreferredCipherSuites(),
+                properties.getSessionCacheSize(), properties.getSessionTimeout());
+        } catch (GeneralSecurityException e) {
+            throw new FtpServerConfigurationException("SSL could not be initialized, check configuration", e);
+        }
     }
 
     private DataConnectionConfiguration createDataConnectionConfig(
@@ -154,13 +626,121 @@ public class FtpServerAutoConfiguration {
             factory.setActiveLocalAddress(inetAddress.getHostAddress()));
         Optional.ofNullable(properties.getActive().getLocalPort()).ifPresent(factory::setActiveLocalPort);
         Optional.ofNullable(properties.getActive().getIpCheck()).ifPresent(factory::setActiveIpCheck);
-        Optional.ofNullable(properties.getPassive().getPorts()).ifPresent(factory::setPassivePorts);
         Optional.ofNullable(properties.getPassive().getAddress()).ifPresent(inetAddress ->
             factory.setPassiveAddress(inetAddress.getHostAddress()));
         Optional.ofNullable(properties.getPassive().getExternalAddress()).ifPresent(inetAddress ->
             factory.setPassiveExternalAddress(inetAddress.getHostAddress()));
 
-        return factory.createDataConnectionConfiguration();
+        PassivePortPool portPool = new PassivePortPool(properties.getPassive().getPorts(),
+            Runtime.getRuntime().availableProcessors(), true);
+        return new PooledDataConnectionConfiguration(factory.createDataConnectionConfiguration(), portPool);
+    }
+
+    /**
+     * Actuator endpoint of the FtpServer, if Spring Boot Actuator is available and the endpoint is enabled.
+     */
+    @Configuration
+    @ConditionalOnClass({Endpoint.class, ConditionalOnEnabledEndpoint.class})
+    @ConditionalOnEnabledEndpoint(endpoint = FtpServerEndpoint.class)
+    static class EndpointConfiguration {
+
+        @Bean
+        @ConditionalOnMissingBean
+        public SessionActivityFtplet sessionActivityFtplet() {
+            return new SessionActivityFtplet();
+        }
+
+        @Bean
+        @ConditionalOnMissingBean
+        public FtpServerEndpoint ftpServerEndpoint(final FtpServer ftpServer,
+                                                   final ObjectProvider<FtpServerInitializationBean> initializationBean) {
+            return new FtpServerEndpoint(ftpServer, initializationBean.getIfAvailable());
+        }
+
+    }
+
+    /**
+     * Metrics of the FtpServer, if Micrometer is available.
+     * <p>
+     * Nested configurations are processed before the beans of the outer one, so the binders are conditional on the
+     * same properties as the features they observe rather than on their beans.
+     */
+    @Configuration
+    @ConditionalOnClass(MeterRegistry.class)
+    static class MetricsConfiguration {
+
+        @Bean
+        @ConditionalOnMissingBean
+        public FtpServerMetricsFtplet ftpServerMetricsFtplet() {
+            return new FtpServerMetricsFtplet();
+        }
+
+        @Bean
+        @ConditionalOnProperty(prefix = "ftpserver.file-system.read-cache", name = "enabled", havingValue = "true")
+        public MappedFileCacheMetrics mappedFileCacheMetrics(final MappedFileCache mappedFileCache) {
+            return new MappedFileCacheMetrics(mappedFileCache);
+        }
+
+        @Bean
+        public TlsHandshakeMetrics tlsHandshakeMetrics(final TlsHandshakeStatistics tlsHandshakeStatistics) {
+            return new TlsHandshakeMetrics(tlsHandshakeStatistics);
+        }
+
+        @Bean
+        @ConditionalOnProperty(prefix = "ftpserver.file-system.listing-cache", name = "enabled", havingValue = "true")
+        public DirectoryListingCacheMetrics directoryListingCacheMetrics(final DirectoryListingCache listingCache) {
+            return new DirectoryListingCacheMetrics(listingCache);
+        }
+
+        @Bean
+        @ConditionalOnProperty(prefix = "ftpserver.file-system.write-behind", name = "enabled", havingValue = "true")
+        public WriteBehindMetrics writeBehindMetrics(final WriteBehind writeBehind) {
+            return new WriteBehindMetrics(writeBehind);
+        }
+
+        @Bean
+        @ConditionalOnProperty(prefix = "ftpserver.file-system.checksum", name = "enabled", havingValue = "true")
+        public ChecksumIndexMetrics checksumIndexMetrics(final ChecksumIndex checksumIndex) {
+            return new ChecksumIndexMetrics(checksumIndex);
+        }
+
+        @Bean
+        @ConditionalOnProperty(prefix = "ftpserver.server.compression", name = "enabled", havingValue = "true")
+        public TransferCompressionMetrics transferCompressionMetrics(final TransferCompression transferCompression) {
+            return new TransferCompressionMetrics(transferCompression);
+        }
+
+        @Bean
+        @ConditionalOnProperty(prefix = "ftpserver.file-system.quota", name = "enabled", havingValue = "true")
+        public QuotaIndexMetrics quotaIndexMetrics(final QuotaIndex quotaIndex) {
+            return new QuotaIndexMetrics(quotaIndex);
+        }
+
+        @Bean
+        @ConditionalOnProperty(prefix = "ftpserver.upload-events", name = "enabled", havingValue = "true")
+        public UploadEventPipelineMetrics uploadEventPipelineMetrics(final UploadEventPipeline uploadEventPipeline) {
+            return new UploadEventPipelineMetrics(uploadEventPipeline);
+        }
+
+        @Bean
+        @ConditionalOnProperty(prefix = "ftpserver.server.cluster-limits", name = "enabled", havingValue = "true")
+        public ClusterSessionLimiterMetrics clusterSessionLimiterMetrics(final ClusterSessionLimiter limiter) {
+            return new ClusterSessionLimiterMetrics(limiter);
+        }
+
+        @Bean
+        @ConditionalOnProperty(prefix = "ftpserver.user-manager.credential-cache", name = "enabled",
+            havingValue = "true", matchIfMissing = true)
+        public VerifiedCredentialCacheMetrics verifiedCredentialCacheMetrics(final UserManager userManager) {
+            return new VerifiedCredentialCacheMetrics(userManager);
+        }
+
+        @Bean
+        @ConditionalOnProperty(prefix = "ftpserver.audit", name = "enabled", havingValue = "true")
+        public AuditLogMetrics auditLogMetrics(final AuditLog auditLog) {
+            return new AuditLogMetrics(auditLog);
+        }
+
     }
 
 }
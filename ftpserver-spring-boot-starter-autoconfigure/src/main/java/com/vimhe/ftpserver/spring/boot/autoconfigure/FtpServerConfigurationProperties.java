@@ -16,7 +16,11 @@
 
 package com.vimhe.ftpserver.spring.boot.autoconfigure;
 
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.audit.AuditLog;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.checksum.ChecksumAlgorithm;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.listener.CommandQueueHandler;
 import lombok.Data;
+import org.apache.ftpserver.ipfilter.IpFilterType;
 import org.apache.ftpserver.ssl.ClientAuth;
 import org.apache.mina.filter.firewall.Subnet;
 import org.springframework.boot.context.properties.ConfigurationProperties;
@@ -27,6 +31,8 @@ import java.io.File;
 import java.net.InetAddress;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -51,6 +57,26 @@ public class FtpServerConfigurationProperties {
      */
     private Map<String, User> user = new HashMap<>(2);
 
+    /**
+     * User manager configuration.
+     */
+    private UserManager userManager = new UserManager();
+
+    /**
+     * File system configuration.
+     */
+    private FileSystem fileSystem = new FileSystem();
+
+    /**
+     * Audit log configuration.
+     */
+    private Audit audit = new Audit();
+
+    /**
+     * Upload completed event configuration.
+     */
+    private UploadEvents uploadEvents = new UploadEvents();
+
     /**
      * Server configuration Properties.
      */
@@ -104,6 +130,59 @@ public class FtpServerConfigurationProperties {
          */
         private Duration loginFailureDelay = Duration.ofMillis(500);
 
+        /**
+         * Start the server after the application context is ready, binding all listeners in parallel on background
+         * threads, instead of while the beans are initialized. Readiness and failure are published as application
+         * events, and a failure does not stop the application.
+         * <p>
+         * Default value: false
+         */
+        private Boolean asyncStart = false;
+
+        /**
+         * How long the shutdown waits for running transfers to finish. Meanwhile new control connections and new
+         * transfers are refused with a 421 reply, sessions still open at the deadline are closed. Zero stops the
+         * server immediately.
+         * <p>
+         * Default value: 0
+         */
+        private Duration drainTimeout = Duration.ZERO;
+
+        /**
+         * Run the commands and data transfers on virtual threads, so that sessions blocked in file or socket I/O no
+         * longer hold a thread of the pool each. maxThreads is then ignored, the command executor threads of a
+         * listener, if set, bound the commands running at the same time. Requires Java 21 or newer, older runtimes
+         * log a warning and keep the thread pool.
+         * <p>
+         * Default value: false
+         */
+        private Boolean virtualThreads = false;
+
+        /**
+         * Secure the control connections of the TLS listeners with a filter letting one thread at a time through per
+         * session, and their data connections with the nio data connections. Works around replies of MINA 2.0.16
+         * staying queued in the SslFilter under concurrent FTPS load. The TLS handshake metrics count only the
+         * connections secured this way.
+         * <p>
+         * Default value: false
+         */
+        private Boolean serializedTls = false;
+
+        /**
+         * Total bandwidth of all data transfers of the server.
+         */
+        private Bandwidth bandwidth = new Bandwidth();
+
+        /**
+         * Compression of MODE Z transfers.
+         */
+        private Compression compression = new Compression();
+
+        /**
+         * Login limits across the servers of a cluster.
+         */
+        private ClusterLimits clusterLimits = new ClusterLimits();
+
         /**
          * The listener shipped with FtpServer is called "nio-listener" since it is based Java NIO for performance and
          * scalability.
@@ -111,6 +190,441 @@ public class FtpServerConfigurationProperties {
         private Map<String, Listener> listener = new HashMap<>(1);
     }
 
+    /**
+     * User manager configuration Properties.
+     */
+    @Data
+    public static class UserManager {
+        /**
+         * Whether user names are matched ignoring case on login and lookup.
+         * <p>
+         * Default value: false
+         */
+        private Boolean caseInsensitive = false;
+
+        /**
+         * The encoding used to generate new password hashes. Stored passwords select their encoding by a "{id}"
+         * prefix, e.g. "{bcrypt}$2a$10$...", supported ids are noop, md5, salted, pbkdf2 and bcrypt (requires
+         * spring-security-crypto). Passwords without one of these prefixes are compared as clear text.
+         * <p>
+         * Default value: pbkdf2
+         */
+        private String passwordEncoding = "pbkdf2";
+
+        /**
+         * Cache of recently verified credentials, so repeated logins skip the expensive password hash.
+         */
+        private CredentialCache credentialCache = new CredentialCache();
+
+        /**
+         * Properties file in which users saved or deleted at runtime are persisted, using the same keys as the
+         * application properties, e.g. "ftpserver.user.bob.user-password". Its users are merged over the configured
+         * ones. If not set, users can not be changed at runtime.
+         */
+        private File storeFile;
+
+        /**
+         * Whether changes of the store file made outside of the server are reloaded without restart.
+         * <p>
+         * Default value: true
+         */
+        private Boolean watchStoreFile = true;
+    }
+
+    /**
+     * File system configuration Properties.
+     */
+    @Data
+    public static class FileSystem {
+        /**
+         * The file system implementation. "native" copies files through small stream buffers, "nio" transfers
+         * binary files directly between file and socket channels and copies everything else (TLS, ASCII type,
+         * MODE Z) through large pooled buffers.
+         * <p>
+         * Default value: native
+         */
+        private FileSystemType type = FileSystemType.NATIVE;
+
+        /**
+         * Whether the home directory of a user is created on login if it does not exist.
+         * <p>
+         * Default value: false
+         */
+        private Boolean createHome = false;
+
+        /**
+         * Whether file and directory names are matched ignoring case, for clients of case-insensitive systems.
+         * <p>
+         * Default value: false
+         */
+        private Boolean caseInsensitive = false;
+
+        /**
+         * Size of the pooled buffers of the nio file system, used to receive uploads and to copy data which can not
+         * be transferred directly.
+         * <p>
+         * Default value: 256KB
+         */
+        private DataSize bufferSize = DataSize.ofKilobytes(256);
+
+        /**
+         * Shared cache of memory mapped files for repeated downloads, nio file system only.
+         */
+        private ReadCache readCache = new ReadCache();
+
+        /**
+         * Cache of rendered directory listings for LIST, NLST and MLSD.
+         */
+        private ListingCache listingCache = new ListingCache();
+
+        /**
+         * Write-behind of uploads, nio file system only.
+         */
+        private WriteBehind writeBehind = new WriteBehind();
+
+        /**
+         * Checksum commands HASH, XCRC, XMD5, XSHA1, XSHA256 and XSHA512.
+         */
+        private Checksum checksum = new Checksum();
+
+        /**
+         * Storage quotas of the users.
+         */
+        private Quota quota = new Quota();
+    }
+
+    /**
+     * Read cache configuration Properties.
+     */
+    @Data
+    public static class ReadCache {
+        /**
+         * Whether downloaded files are kept memory mapped and shared by all downloads of the same file.
+         * <p>
+         * Default value: false
+         */
+        private Boolean enabled = false;
+
+        /**
+         * The maximum total size of the mapped files, the least recently downloaded file is evicted first.
+         * <p>
+         * Default value: 1GB
+         */
+        private DataSize maximumSize = DataSize.ofGigabytes(1);
+
+        /**
+         * Smaller files are read without mapping, mapping them costs more than it saves.
+         * <p>
+         * Default value: 1MB
+         */
+        private DataSize minimumFileSize = DataSize.ofMegabytes(1);
+    }
+
+    /**
+     * Listing cache configuration Properties.
+     */
+    @Data
+    public static class ListingCache {
+        /**
+         * Whether rendered directory listings are cached until the directory changes. Write commands of the server
+         * invalidate the listings of the changed directories.
+         * <p>
+         * Default value: false
+         */
+        private Boolean enabled = false;
+
+        /**
+         * The maximum total size of the cached listings, the least recently listed is evicted first.
+         * <p>
+         * Default value: 64MB
+         */
+        private DataSize maximumSize = DataSize.ofMegabytes(64);
+
+        /**
+         * How long a listing stays valid, which bounds how stale it gets through changes the watch does not report,
+         * e.g. a new file inside a listed sub directory. Zero keeps listings until their directory changes.
+         * <p>
+         * Default value: 5 minutes
+         */
+        private Duration timeToLive = Duration.ofMinutes(5);
+
+        /**
+         * Whether cached directories are watched for changes made outside of the server. Directories which can not
+         * be watched are not cached then.
+         * <p>
+         * Default value: true
+         */
+        private Boolean watch = true;
+    }
+
+    /**
+     * Write-behind configuration Properties.
+     */
+    @Data
+    public static class WriteBehind {
+        /**
+         * Whether uploads are staged in pooled direct buffers of the buffer size, written to the file in large
+         * sequential writes and forced to the disk before the transfer is replied to, so a 226 reply means the file
+         * is durable. The directory entries of new files are forced in groups. It needs the NIO file system type,
+         * the server fails to start with another one.
+         * <p>
+         * Default value: false
+         */
+        private Boolean enabled = false;
+    }
+
+    /**
+     * Checksum configuration Properties.
+     */
+    @Data
+    public static class Checksum {
+        /**
+         * Whether the checksum commands are enabled. Digests are kept in an index keyed by path, size and
+         * modification time, so a file is read at most once for them.
+         * <p>
+         * Default value: false
+         */
+        private Boolean enabled = false;
+
+        /**
+         * The algorithms uploads of whole files are digested with while they are written, nio file system only.
+         * Other files are digested on their first request. Each algorithm costs CPU time on the upload path.
+         * <p>
+         * Default value: SHA-256
+         */
+        private List<ChecksumAlgorithm> uploadAlgorithms = new ArrayList<>(Collections.singletonList(
+            ChecksumAlgorithm.SHA_256));
+
+        /**
+         * The algorithm of HASH until a client selects another one with OPTS HASH.
+         * <p>
+         * Default value: SHA-256
+         */
+        private ChecksumAlgorithm defaultAlgorithm = ChecksumAlgorithm.SHA_256;
+
+        /**
+         * The index file the digests are appended to, none keeps them in memory only. Give an absolute path, a
+         * relative one is resolved against the working directory of the process.
+         * <p>
+         * Default value: none
+         */
+        private File indexFile;
+
+        /**
+         * The number of files digested at once on request.
+         * <p>
+         * Default value: 2
+         */
+        private Integer hasherThreads = 2;
+
+        /**
+         * The number of requests waiting for a hasher thread, further requests are replied to with 450.
+         * <p>
+         * Default value: 64
+         */
+        private Integer queueCapacity = 64;
+    }
+
+    /**
+     * Quota configuration Properties.
+     */
+    @Data
+    public static class Quota {
+        /**
+         * Whether the quota bytes and quota files of the users are enforced. The usage of their home directories is
+         * scanned at startup and kept up to date by the server's own writes.
+         * <p>
+         * Default value: false
+         */
+        private Boolean enabled = false;
+
+        /**
+         * The delay between two scans correcting the usage for changes made outside of the server, zero for none.
+         * <p>
+         * Default value: 15 minutes
+         */
+        private Duration reconcileInterval = Duration.ofMinutes(15);
+
+        /**
+         * The number of threads scanning directories.
+         * <p>
+         * Default value: The number of available processors.
+         */
+        private Integer scanThreads;
+    }
+
+    /**
+     * File system implementations.
+     */
+    public enum FileSystemType {
+        /**
+         * Apache FtpServer native file system.
+         */
+        NATIVE,
+
+        /**
+         * File channel based file system with direct transfers.
+         */
+        NIO
+    }
+
+    /**
+     * Audit log configuration Properties.
+     */
+    @Data
+    public static class Audit {
+        /**
+         * Whether the logins and file transfers are written to an audit log in the xferlog format.
+         * <p>
+         * Default value: false
+         */
+        private Boolean enabled = false;
+
+        /**
+         * The xferlog file of the transfers, rolled over to file.1, file.2 and so on. Required when the audit log is
+         * enabled, preferably as an absolute path.
+         * <p>
+         * Default value: none
+         */
+        private File file;
+
+        /**
+         * The log file of the logins, successful and failed, rolled over like the xferlog file. Logins are not
+         * recorded without it, xferlog has no login records.
+         * <p>
+         * Default value: none
+         */
+        private File loginFile;
+
+        /**
+         * Number of records buffered for the writer, rounded up to a power of two.
+         * <p>
+         * Default value: 8192
+         */
+        private Integer bufferSize = 8192;
+
+        /**
+         * What happens to a record when the buffer is full: BLOCK holds back the session until there is room, DROP
+         * drops the record, SAMPLE holds back one of every sample-rate records and drops the others.
+         * <p>
+         * Default value: BLOCK
+         */
+        private AuditLog.OverflowPolicy overflowPolicy = AuditLog.OverflowPolicy.BLOCK;
+
+        /**
+         * With the SAMPLE overflow policy, one of this many records is kept while the buffer is full.
+         * <p>
+         * Default value: 10
+         */
+        private Integer sampleRate = 10;
+
+        /**
+         * How long the writer waits for more records when the buffer is empty, so a record reaches the disk at most
+         * this long after it was buffered. All the records buffered meanwhile are synced to the disk at once.
+         * <p>
+         * Default value: 100 milliseconds
+         */
+        private Duration commitInterval = Duration.ofMillis(100);
+
+        /**
+         * Size of the log file beyond which it is rolled over.
+         * <p>
+         * Default value: 100MB
+         */
+        private DataSize maximumFileSize = DataSize.ofMegabytes(100);
+
+        /**
+         * Number of rolled over log files kept.
+         * <p>
+         * Default value: 10
+         */
+        private Integer maximumHistory = 10;
+    }
+
+    /**
+     * Upload completed event configuration Properties.
+     */
+    @Data
+    public static class UploadEvents {
+        /**
+         * Whether completed uploads are delivered to the UploadListener beans, away from the sessions and in
+         * batches.
+         * <p>
+         * Default value: false
+         */
+        private Boolean enabled = false;
+
+        /**
+         * Whether completed uploads are also published as UploadCompletedEvent to the application context.
+         * <p>
+         * Default value: true
+         */
+        private Boolean publishApplicationEvents = true;
+
+        /**
+         * Number of uploads queued for the listeners.
+         * <p>
+         * Default value: 1024
+         */
+        private Integer queueCapacity = 1024;
+
+        /**
+         * How long a session waits for room in the full queue before the upload is dropped, which holds back the
+         * next command of the session, not the reply of the upload.
+         * <p>
+         * Default value: 100 milliseconds
+         */
+        private Duration offerTimeout = Duration.ofMillis(100);
+
+        /**
+         * The maximum number of uploads in a batch.
+         * <p>
+         * Default value: 100
+         */
+        private Integer batchSize = 100;
+
+        /**
+         * How long the first upload of a batch waits for more uploads.
+         * <p>
+         * Default value: 500 milliseconds
+         */
+        private Duration batchDelay = Duration.ofMillis(500);
+
+        /**
+         * The number of batches processed at once.
+         * <p>
+         * Default value: 2
+         */
+        private Integer parallelism = 2;
+    }
+
+    /**
+     * Cache of recently verified credentials, so repeated logins skip the expensive password hash.
+     */
+    @Data
+    public static class CredentialCache {
+        /**
+         * Whether successful verifications of hashed passwords are cached.
+         * <p>
+         * Default value: true
+         */
+        private Boolean enabled = true;
+
+        /**
+         * The maximum number of cached verifications, the least recently used is evicted first.
+         * <p>
+         * Default value: 10000
+         */
+        private Integer maximumSize = 10000;
+
+        /**
+         * How long a verification stays valid.
+         * <p>
+         * Default value: 10 minutes
+         */
+        private Duration timeToLive = Duration.ofMinutes(10);
+    }
+
     /**
      * User configuration Properties.
      */
@@ -130,9 +644,152 @@ public class FtpServerConfigurationProperties {
 
         private Duration idleTime = Duration.ofSeconds(300);
 
+        /**
+         * The maximum rate of a single upload, zero means unlimited.
+         */
         private DataSize uploadRate = DataSize.ofMegabytes(1);
 
+        /**
+         * The maximum rate of a single download, zero means unlimited.
+         */
         private DataSize downloadRate = DataSize.ofMegabytes(1);
+
+        /**
+         * The maximum rate of all uploads of the user together, zero or none means unlimited.
+         */
+        private DataSize totalUploadRate;
+
+        /**
+         * The maximum rate of all downloads of the user together, zero or none means unlimited.
+         */
+        private DataSize totalDownloadRate;
+
+        /**
+         * The maximum bytes stored in the home directory, zero or none means unlimited.
+         */
+        private DataSize quotaBytes;
+
+        /**
+         * The maximum number of files stored in the home directory, zero or none means unlimited.
+         */
+        private Long quotaFiles;
+    }
+
+    /**
+     * Cluster login limits configuration Properties.
+     */
+    @Data
+    public static class ClusterLimits {
+        /**
+         * Whether maxLogins, maxAnonLogins and the maximum logins of each user, in total and per address, apply to
+         * all the servers sharing the session counter store together, instead of to each server. The store is a
+         * SessionCounterStore bean if defined, else the store file.
+         * <p>
+         * Default value: false
+         */
+        private Boolean enabled = false;
+
+        /**
+         * The name of this server in the cluster.
+         * <p>
+         * Default value: The host name and the process id.
+         */
+        private String nodeId;
+
+        /**
+         * The file the counters are shared in by the servers of this host, none keeps them in memory.
+         */
+        private File storeFile;
+
+        /**
+         * How long the login slots reserved by a server outlive it. The leases are renewed every third of it.
+         * <p>
+         * Default value: 30 seconds
+         */
+        private Duration lease = Duration.ofSeconds(30);
+
+        /**
+         * The maximum number of login slots reserved from the store at once, at most a tenth of the limit.
+         * <p>
+         * Default value: 8
+         */
+        private Integer batchSize = 8;
+    }
+
+    /**
+     * Compression configuration Properties.
+     */
+    @Data
+    public static class Compression {
+        /**
+         * Whether MODE Z transfers use pooled deflaters and inflaters with the level below, send content which does
+         * not compress in stored blocks, and are measured. MODE Z is supported without as well, at the default
+         * level and compressing everything.
+         * <p>
+         * Default value: false
+         */
+        private Boolean enabled = false;
+
+        /**
+         * The deflate level, from 1 (fastest) to 9 (smallest).
+         * <p>
+         * Default value: 6
+         */
+        private Integer level = 6;
+
+        /**
+         * Extensions of files which are already compressed and sent uncompressed.
+         */
+        private List<String> bypassExtensions = new ArrayList<>(Arrays.asList(
+            "7z", "avi", "bz2", "docx", "gif", "gz", "jar", "jpeg", "jpg", "lz4", "mkv", "mov", "mp3", "mp4", "png",
+            "pptx", "rar", "tgz", "webp", "xlsx", "xz", "zip", "zst"));
+
+        /**
+         * Entropy of the first bytes of a download, in bits per byte, above which it is sent uncompressed. Random
+         * and compressed data are close to 8, text is below 5. Zero compresses regardless of the entropy.
+         * <p>
+         * Default value: 7.5
+         */
+        private Double entropyThreshold = 7.5;
+    }
+
+    /**
+     * Bandwidth configuration Properties, rates are in bytes per second.
+     */
+    @Data
+    public static class Bandwidth {
+        /**
+         * Whether the data connections are shaped even though no rate is configured, neither here nor for the users
+         * of the configuration, e.g. for users with total rates added at run time. Configured rates enable shaping
+         * regardless; the transfers of users without limits pass through unshaped.
+         * <p>
+         * Default value: false
+         */
+        private Boolean enabled = false;
+
+        /**
+         * The maximum total rate of the downloads, zero means unlimited. Unused bandwidth is shared by the running
+         * downloads up to their own limits.
+         * <p>
+         * Default value: 0
+         */
+        private DataSize downloadRate = DataSize.ofBytes(0);
+
+        /**
+         * The maximum total rate of the uploads, zero means unlimited. Unused bandwidth is shared by the running
+         * uploads up to their own limits.
+         * <p>
+         * Default value: 0
+         */
+        private DataSize uploadRate = DataSize.ofBytes(0);
+
+        /**
+         * How far transfers may run ahead of the rate after a pause, larger values smooth less but cost less
+         * sleeping.
+         * <p>
+         * Default value: 100 milliseconds
+         */
+        private Duration burst = Duration.ofMillis(100);
     }
 
     /**
@@ -187,6 +844,93 @@ public class FtpServerConfigurationProperties {
          * This element provides a list of black listed IP addresses and networks in CIDR notation.
          */
         private Blacklist blacklist = new Blacklist();
+
+        /**
+         * Total bandwidth of all data transfers of this listener, within the bandwidth of the server.
+         */
+        private Bandwidth bandwidth = new Bandwidth();
+
+        /**
+         * The number of I/O processors reading and writing the control connections of this listener.
+         * <p>
+         * Default value: The number of available processors.
+         */
+        private Integer ioProcessors;
+
+        /**
+         * Socket options of the control connections of this listener.
+         */
+        private Socket socket = new Socket();
+
+        /**
+         * Executor running the commands of this listener.
+         */
+        private CommandExecutor commandExecutor = new CommandExecutor();
+    }
+
+    /**
+     * Socket options of the control connections.
+     */
+    @Data
+    public static class Socket {
+        /**
+         * The maximum number of connections waiting to be accepted.
+         * <p>
+         * Default value: 50
+         */
+        private Integer backlog = 50;
+
+        /**
+         * SO_RCVBUF of the control connections, commands are short.
+         * <p>
+         * Default value: 512 bytes
+         */
+        private DataSize receiveBufferSize = DataSize.ofBytes(512);
+
+        /**
+         * SO_SNDBUF of the control connections.
+         * <p>
+         * Default value: The default of the system.
+         */
+        private DataSize sendBufferSize;
+
+        /**
+         * TCP_NODELAY of the control connections, true sends replies without waiting for the acknowledgement of the
+         * previous one.
+         * <p>
+         * Default value: The default of the system.
+         */
+        private Boolean tcpNoDelay;
+    }
+
+    /**
+     * Executor running the commands of a listener. The commands of a session always run one after the other.
+     */
+    @Data
+    public static class CommandExecutor {
+        /**
+         * The number of threads of an executor of the listener's own, so blocking file I/O of one listener does not
+         * hold up the others. If not set, the listener uses the executor shared by all listeners, sized by
+         * ftpserver.server.max-threads.
+         * <p>
+         * Default value: The shared executor.
+         */
+        private Integer threads;
+
+        /**
+         * The maximum number of events waiting for the threads of the listener's own executor, zero means unbounded.
+         * <p>
+         * Default value: 0
+         */
+        private Integer queueCapacity = 0;
+
+        /**
+         * What happens when the queue is full: BLOCK stops reading from the connections adding to it until there is
+         * room again, ABORT replies 421 and closes the session.
+         * <p>
+         * Default value: BLOCK
+         */
+        private CommandQueueHandler.RejectionPolicy rejectionPolicy = CommandQueueHandler.RejectionPolicy.BLOCK;
     }
 
     /**
@@ -218,6 +962,34 @@ public class FtpServerConfigurationProperties {
          */
         private List<String> enabledCipherSuites = new ArrayList<>(16);
 
+        /**
+         * Cipher suites moved to the front of the enabled ones, in this order, the server then picks the first of them
+         * the client supports. ECDHE key exchange and AES-GCM are the cheapest suites with forward secrecy on current
+         * CPUs. Empty to leave the choice to the order of the client.
+         * <p>
+         * Default value: The TLS 1.3 AES-GCM suites, then ECDHE with AES-128-GCM and with AES-256-GCM.
+         */
+        private List<String> preferredCipherSuites = new ArrayList<>(Arrays.asList(
+            "TLS_AES_128_GCM_SHA256", "TLS_AES_256_GCM_SHA384",
+            "TLS_ECDHE_ECDSA_WITH_AES_128_GCM_SHA256", "TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256",
+            "TLS_ECDHE_ECDSA_WITH_AES_256_GCM_SHA384", "TLS_ECDHE_RSA_WITH_AES_256_GCM_SHA384"));
+
+        /**
+         * Maximum number of TLS sessions cached for resumption, shared by the control and the data connections of
+         * the listener. Clients offering the session of the control connection on the data connections skip the full
+         * handshake for each transfer. 0 for no limit.
+         * <p>
+         * Default value: The default of the JRE, 20480.
+         */
+        private Integer sessionCacheSize;
+
+        /**
+         * How long a cached TLS session can be resumed. Should be longer than the sessions of the clients last.
+         * <p>
+         * Default value: The default of the JRE, 24 hours.
+         */
+        private Duration sessionTimeout;
+
         /**
          * This element is required if the ssl element is provided. It provides configuration for the key store used
          * for finding the private key and server certificate for the FTP server.
@@ -379,7 +1151,8 @@ public class FtpServerConfigurationProperties {
 
         /**
          * The ports on which the server is allowed to accept passive data connections, see Configure passive ports
-         * for details.
+         * for details. The port released the longest ago is handed out first; when all of them are in use the PASV
+         * command fails at once, unless 0, any available port, is also listed.
          * <p>
          * Default value: Any available port.
          */
@@ -397,6 +1170,13 @@ public class FtpServerConfigurationProperties {
      */
     @Data
     public static class Blacklist {
+        /**
+         * DENY rejects connections from the listed addresses and networks, ALLOW rejects all others.
+         * <p>
+         * Default value: DENY
+         */
+        private IpFilterType type = IpFilterType.DENY;
+
         /**
          * IP addresses
          */
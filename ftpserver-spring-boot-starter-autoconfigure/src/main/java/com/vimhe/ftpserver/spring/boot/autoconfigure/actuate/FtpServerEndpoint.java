@@ -0,0 +1,325 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.actuate;
+
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.SessionActivityFtplet;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.support.FtpServerInitializationBean;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.java.Log;
+import org.apache.ftpserver.FtpServer;
+import org.apache.ftpserver.ftplet.FtpStatistics;
+import org.apache.ftpserver.ftplet.User;
+import org.apache.ftpserver.impl.DefaultFtpServer;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.impl.ServerDataConnectionFactory;
+import org.apache.ftpserver.listener.Listener;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Actuator endpoint {@code ftpserver} showing the statistics of the server and its sessions, and disconnecting a
+ * session with a delete on {@code ftpserver/{sessionId}}.
+ * <p>
+ * Everything is read from the counters the server and MINA already keep, copied without locking: the sessions of a
+ * listener are a copy of the managed sessions of its acceptor, the counters of a session are read as they are. The
+ * rates of the sessions are sampled by a thread of the endpoint, so reading them changes nothing.
+ *
+ * @author Vimhe
+ */
+@Log
+@Endpoint(id = "ftpserver")
+public class FtpServerEndpoint implements AutoCloseable {
+
+    private final FtpServer ftpServer;
+
+    /**
+     * The bean which started the server, null if the server is started otherwise.
+     */
+    private final FtpServerInitializationBean initializationBean;
+
+    private final ScheduledExecutorService sampler;
+
+    /**
+     * Closes the data connections of disconnected sessions, which may wait for a data connection being opened.
+     */
+    private final ExecutorService closer;
+
+    /**
+     * @param initializationBean the bean which started the server, null if the server is started otherwise
+     */
+    public FtpServerEndpoint(final FtpServer ftpServer, final FtpServerInitializationBean initializationBean) {
+        this.ftpServer = ftpServer;
+        this.initializationBean = initializationBean;
+        this.sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ftp-endpoint-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.closer = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "ftp-endpoint-closer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = SessionActivityFtplet.SessionActivity.SAMPLE_INTERVAL;
+        this.sampler.scheduleAtFixedRate(this::sampleQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @ReadOperation
+    public FtpServerDescriptor server() {
+        long now = System.currentTimeMillis();
+        Map<String, ListenerDescriptor> listeners = new LinkedHashMap<>(4);
+        this.getListeners().forEach((name, listener) -> {
+            List<SessionDescriptor> sessions = new ArrayList<>();
+            listener.getActiveSessions().forEach(session -> sessions.add(describe(name, session, now)));
+            sessions.sort((a, b) -> Long.compare(a.getConnectTime().getTime(), b.getConnectTime().getTime()));
+            listeners.put(name, new ListenerDescriptor(listener.getPort(), listener.isSuspended(), sessions));
+        });
+
+        FtpStatistics statistics = this.ftpServer instanceof DefaultFtpServer
+            ? ((DefaultFtpServer) this.ftpServer).getServerContext().getFtpStatistics() : null;
+        return new FtpServerDescriptor(this.isRunning(),
+            statistics == null ? null : new StatisticsDescriptor(statistics), listeners);
+    }
+
+    /**
+     * {@link FtpServer#isStopped()} stays true when the listeners are started in parallel, without
+     * {@link FtpServer#start()}.
+     */
+    private boolean isRunning() {
+        return this.initializationBean == null ? !this.ftpServer.isStopped() : this.initializationBean.isRunning();
+    }
+
+    @ReadOperation
+    public SessionDescriptor session(@Selector final String sessionId) {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Listener> entry : this.getListeners().entrySet()) {
+            FtpIoSession session = this.findSession(entry.getValue(), sessionId);
+            if (session != null) {
+                return describe(entry.getKey(), session, now);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Close the control connection of the session, which also aborts its data transfer.
+     *
+     * @return the session as it was before it was closed, or null if there is no such session
+     */
+    @DeleteOperation
+    public SessionDescriptor disconnect(@Selector final String sessionId) {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Listener> entry : this.getListeners().entrySet()) {
+            FtpIoSession session = this.findSession(entry.getValue(), sessionId);
+            if (session != null) {
+                SessionDescriptor descriptor = describe(entry.getKey(), session, now);
+                log.info("Ftp session " + sessionId + " of " + descriptor.getUser() + " from "
+                    + descriptor.getRemoteAddress() + " disconnected");
+                // The close is handled after the running command of the session, so abort its transfer first. The
+                // data connection is locked while it is being opened, which takes up to the idle time of the listener
+                this.closer.execute(() -> Optional.ofNullable(session.getDataConnection())
+                    .ifPresent(ServerDataConnectionFactory::closeDataConnection));
+                session.closeNow();
+                return descriptor;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Stop sampling the sessions.
+     */
+    @Override
+    public void close() {
+        this.sampler.shutdownNow();
+        this.closer.shutdown();
+    }
+
+    private void sampleQuietly() {
+        try {
+            long now = System.currentTimeMillis();
+            this.getListeners().values().forEach(listener -> listener.getActiveSessions().forEach(session -> {
+                SessionActivityFtplet.SessionActivity activity = SessionActivityFtplet.getActivity(session);
+                if (activity != null) {
+                    activity.sample(session.getReadBytes() + session.getWrittenBytes(), now);
+                }
+            }));
+        } catch (RuntimeException e) {
+            // The next sample is taken anyway
+            log.log(Level.WARNING, "Failed to sample the ftp sessions", e);
+        }
+    }
+
+    private Map<String, Listener> getListeners() {
+        if (!(this.ftpServer instanceof DefaultFtpServer)) {
+            return Collections.emptyMap();
+        }
+        return ((DefaultFtpServer) this.ftpServer).getServerContext().getListeners();
+    }
+
+    private FtpIoSession findSession(final Listener listener, final String sessionId) {
+        for (FtpIoSession session : listener.getActiveSessions()) {
+            UUID id = session.getSessionId();
+            if (id != null && id.toString().equals(sessionId)) {
+                return session;
+            }
+        }
+        return null;
+    }
+
+    private static SessionDescriptor describe(final String listener, final FtpIoSession session, final long now) {
+        User user = session.getUser();
+        SocketAddress remoteAddress = session.getRemoteAddress();
+        long readBytes = session.getReadBytes();
+        long writtenBytes = session.getWrittenBytes();
+
+        SessionActivityFtplet.SessionActivity activity = SessionActivityFtplet.getActivity(session);
+        String command = null;
+        Long commandDuration = null;
+        Double rate = null;
+        if (activity != null) {
+            long commandStart = activity.getCommandStartTime();
+            command = activity.getCurrentCommand();
+            commandDuration = command == null || commandStart == 0 ? null : now - commandStart;
+            rate = activity.getRate();
+        }
+
+        return new SessionDescriptor(String.valueOf(session.getSessionId()), listener,
+            user == null ? null : user.getName(),
+            remoteAddress instanceof InetSocketAddress
+                ? ((InetSocketAddress) remoteAddress).getAddress().getHostAddress() : String.valueOf(remoteAddress),
+            session.isSecure(), new Date(session.getCreationTime()), session.getLoginTime(),
+            session.getLastAccessTime(), command, commandDuration, readBytes, writtenBytes, rate);
+    }
+
+    /**
+     * The server, its statistics and listeners.
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static final class FtpServerDescriptor {
+        private final boolean running;
+        private final StatisticsDescriptor statistics;
+        private final Map<String, ListenerDescriptor> listeners;
+    }
+
+    /**
+     * A listener and its sessions, oldest first.
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static final class ListenerDescriptor {
+        private final int port;
+        private final boolean suspended;
+        private final List<SessionDescriptor> sessions;
+    }
+
+    /**
+     * A session, the bytes count both the control and the data connections.
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static final class SessionDescriptor {
+        private final String id;
+        private final String listener;
+        private final String user;
+        private final String remoteAddress;
+        private final boolean secure;
+        private final Date connectTime;
+        private final Date loginTime;
+        private final Date lastAccessTime;
+
+        /**
+         * The command line being executed, null if the session is idle.
+         */
+        private final String currentCommand;
+
+        /**
+         * Milliseconds the current command has been running.
+         */
+        private final Long currentCommandDuration;
+
+        private final long readBytes;
+        private final long writtenBytes;
+
+        /**
+         * Bytes per second read and written during the last second.
+         */
+        private final Double rate;
+    }
+
+    /**
+     * Copy of {@link FtpStatistics}.
+     */
+    @Getter
+    public static final class StatisticsDescriptor {
+        private final Date startTime;
+        private final int totalUploadNumber;
+        private final int totalDownloadNumber;
+        private final int totalDeleteNumber;
+        private final long totalUploadSize;
+        private final long totalDownloadSize;
+        private final int totalDirectoryCreated;
+        private final int totalDirectoryRemoved;
+        private final int totalConnectionNumber;
+        private final int currentConnectionNumber;
+        private final int totalLoginNumber;
+        private final int totalFailedLoginNumber;
+        private final int currentLoginNumber;
+        private final int totalAnonymousLoginNumber;
+        private final int currentAnonymousLoginNumber;
+
+        private StatisticsDescriptor(final FtpStatistics statistics) {
+            this.startTime = statistics.getStartTime();
+            this.totalUploadNumber = statistics.getTotalUploadNumber();
+            this.totalDownloadNumber = statistics.getTotalDownloadNumber();
+            this.totalDeleteNumber = statistics.getTotalDeleteNumber();
+            this.totalUploadSize = statistics.getTotalUploadSize();
+            this.totalDownloadSize = statistics.getTotalDownloadSize();
+            this.totalDirectoryCreated = statistics.getTotalDirectoryCreated();
+            this.totalDirectoryRemoved = statistics.getTotalDirectoryRemoved();
+            this.totalConnectionNumber = statistics.getTotalConnectionNumber();
+            this.currentConnectionNumber = statistics.getCurrentConnectionNumber();
+            this.totalLoginNumber = statistics.getTotalLoginNumber();
+            this.totalFailedLoginNumber = statistics.getTotalFailedLoginNumber();
+            this.currentLoginNumber = statistics.getCurrentLoginNumber();
+            this.totalAnonymousLoginNumber = statistics.getTotalAnonymousLoginNumber();
+            this.currentAnonymousLoginNumber = statistics.getCurrentAnonymousLoginNumber();
+        }
+    }
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext;
+
+import org.apache.ftpserver.usermanager.PasswordEncryptor;
+import org.springframework.security.crypto.bcrypt.BCrypt;
+
+/**
+ * BCrypt Password Encryptor, only usable when spring-security-crypto is on the classpath.
+ *
+ * @author Vimhe
+ */
+public class BCryptPasswordEncryptor implements PasswordEncryptor {
+
+    private final int strength;
+
+    public BCryptPasswordEncryptor() {
+        this(10);
+    }
+
+    public BCryptPasswordEncryptor(final int strength) {
+        this.strength = strength;
+    }
+
+    @Override
+    public String encrypt(final String password) {
+        return BCrypt.hashpw(password, BCrypt.gensalt(this.strength));
+    }
+
+    @Override
+    public boolean matches(final String passwordToCheck, final String storedPassword) {
+        if (passwordToCheck == null || storedPassword == null) {
+            return false;
+        }
+
+        try {
+            return BCrypt.checkpw(passwordToCheck, storedPassword);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext;
+
+import org.apache.ftpserver.usermanager.ClearTextPasswordEncryptor;
+import org.apache.ftpserver.usermanager.Md5PasswordEncryptor;
+import org.apache.ftpserver.usermanager.PasswordEncryptor;
+import org.apache.ftpserver.usermanager.SaltedPasswordEncryptor;
+import org.springframework.util.ClassUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Password Encryptor which picks the real encryptor from a {@code {id}} prefix of the stored password, e.g.
+ * {@code {bcrypt}$2a$10$...} or {@code {pbkdf2}185000$...}. Passwords without the prefix of a known id, including
+ * clear text passwords which merely start with braces, are compared as clear text.
+ * <p>
+ * Known ids: noop, md5, salted, pbkdf2 and bcrypt, which is supported when spring-security-crypto is on the classpath.
+ *
+ * @author Vimhe
+ */
+public class DelegatingPasswordEncryptor implements PasswordEncryptor {
+
+    public static final String NOOP = "noop";
+
+    public static final String PBKDF2 = "pbkdf2";
+
+    public static final String BCRYPT = "bcrypt";
+
+    private static final String PREFIX = "{";
+
+    private static final String SUFFIX = "}";
+
+    private static final Set<String> KNOWN_IDS =
+        Collections.unmodifiableSet(new HashSet<>(Arrays.asList(NOOP, "md5", "salted", PBKDF2, BCRYPT)));
+
+    private final Map<String, PasswordEncryptor> encryptors;
+
+    private final String encodingId;
+
+    public DelegatingPasswordEncryptor() {
+        this(PBKDF2);
+    }
+
+    public DelegatingPasswordEncryptor(final String encodingId) {
+        Map<String, PasswordEncryptor> map = new HashMap<>(8);
+        map.put(NOOP, new ClearTextPasswordEncryptor());
+        map.put("md5", new Md5PasswordEncryptor());
+        map.put("salted", new SaltedPasswordEncryptor());
+        map.put(PBKDF2, new Pbkdf2PasswordEncryptor());
+        if (ClassUtils.isPresent("org.springframework.security.crypto.bcrypt.BCrypt", null)) {
+            map.put(BCRYPT, new BCryptPasswordEncryptor());
+        }
+
+        if (!map.containsKey(encodingId)) {
+            throw new IllegalArgumentException("Unsupported password encoding: " + encodingId);
+        }
+        this.encryptors = Collections.unmodifiableMap(map);
+        this.encodingId = encodingId;
+    }
+
+    /**
+     * Encrypt with the default encoding, the result carries its {@code {id}} prefix.
+     */
+    @Override
+    public String encrypt(final String password) {
+        return PREFIX + this.encodingId + SUFFIX + this.encryptors.get(this.encodingId).encrypt(password);
+    }
+
+    @Override
+    public boolean matches(final String passwordToCheck, final String storedPassword) {
+        if (passwordToCheck == null || storedPassword == null) {
+            return Objects.equals(passwordToCheck, storedPassword);
+        }
+
+        String id = extractId(storedPassword);
+        if (id == null) {
+            return storedPassword.equals(passwordToCheck);
+        }
+
+        PasswordEncryptor encryptor = this.encryptors.get(id);
+        return encryptor != null && encryptor.matches(passwordToCheck, extractEncoded(storedPassword, id));
+    }
+
+    /**
+     * Whether the stored password is either clear text or uses a supported encoding, false only for bcrypt without
+     * spring-security-crypto.
+     */
+    public boolean supports(final String storedPassword) {
+        String id = extractId(storedPassword);
+        return id == null || this.encryptors.containsKey(id);
+    }
+
+    /**
+     * Whether the password carries an {@code {id}} prefix, as opposed to a password given in clear text.
+     */
+    public boolean isEncoded(final String password) {
+        return extractId(password) != null;
+    }
+
+    /**
+     * Whether the stored password is a one-way hash, as opposed to clear text.
+     */
+    public boolean isHashed(final String storedPassword) {
+        String id = extractId(storedPassword);
+        return id != null && !NOOP.equals(id);
+    }
+
+    /**
+     * The known id the password is prefixed with, null for clear text.
+     */
+    private static String extractId(final String storedPassword) {
+        if (storedPassword == null || !storedPassword.startsWith(PREFIX)) {
+            return null;
+        }
+
+        int end = storedPassword.indexOf(SUFFIX);
+        String id = end < 0 ? null : storedPassword.substring(PREFIX.length(), end);
+        return KNOWN_IDS.contains(id) ? id : null;
+    }
+
+    private static String extractEncoded(final String storedPassword, final String id) {
+        return storedPassword.substring(PREFIX.length() + id.length() + SUFFIX.length());
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext;
+
+import org.apache.ftpserver.ftplet.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ftplet which keeps track of the running data transfers, and once {@link #drain()} was called, refuses new control
+ * connections and new transfers with a 421 reply, so the running transfers can finish before the server is stopped.
+ *
+ * @author Vimhe
+ */
+public class DrainFtplet extends DefaultFtplet {
+
+    private static final Set<String> TRANSFER_COMMANDS = new HashSet<>(Arrays.asList(
+        "RETR", "STOR", "STOU", "APPE", "LIST", "NLST", "MLSD"));
+
+    private static final String TRANSFER_ATTRIBUTE = DrainFtplet.class.getName() + ".transfer";
+
+    private static final String DRAIN_MESSAGE = "Service not available, server is shutting down.";
+
+    private final AtomicInteger activeTransfers = new AtomicInteger();
+
+    private volatile boolean draining;
+
+    /**
+     * Refuse new control connections and transfers from now on.
+     */
+    public void drain() {
+        this.draining = true;
+    }
+
+    public boolean isDraining() {
+        return this.draining;
+    }
+
+    /**
+     * The number of data transfers currently running.
+     */
+    public int getActiveTransfers() {
+        return this.activeTransfers.get();
+    }
+
+    @Override
+    public FtpletResult onConnect(final FtpSession session) throws FtpException, IOException {
+        if (this.draining) {
+            session.write(new DefaultFtpReply(FtpReply.REPLY_421_SERVICE_NOT_AVAILABLE_CLOSING_CONTROL_CONNECTION,
+                DRAIN_MESSAGE));
+            return FtpletResult.DISCONNECT;
+        }
+        return FtpletResult.DEFAULT;
+    }
+
+    @Override
+    public FtpletResult beforeCommand(final FtpSession session, final FtpRequest request)
+        throws FtpException, IOException {
+        if (!TRANSFER_COMMANDS.contains(request.getCommand())) {
+            return FtpletResult.DEFAULT;
+        }
+
+        if (this.draining) {
+            session.write(new DefaultFtpReply(FtpReply.REPLY_421_SERVICE_NOT_AVAILABLE_CLOSING_CONTROL_CONNECTION,
+                DRAIN_MESSAGE));
+            return FtpletResult.DISCONNECT;
+        }
+
+        // Still set when an ftplet answered SKIP to the previous transfer, which skips every afterCommand: that
+        // transfer never ran, this one takes its place
+        if (session.getAttribute(TRANSFER_ATTRIBUTE) == null) {
+            session.setAttribute(TRANSFER_ATTRIBUTE, Boolean.TRUE);
+            this.activeTransfers.incrementAndGet();
+        }
+        return FtpletResult.DEFAULT;
+    }
+
+    @Override
+    public FtpletResult afterCommand(final FtpSession session, final FtpRequest request, final FtpReply reply)
+        throws FtpException, IOException {
+        this.transferEnded(session);
+        return FtpletResult.DEFAULT;
+    }
+
+    @Override
+    public FtpletResult onDisconnect(final FtpSession session) throws FtpException, IOException {
+        // afterCommand is skipped when the command failed with an exception
+        this.transferEnded(session);
+        return FtpletResult.DEFAULT;
+    }
+
+    private void transferEnded(final FtpSession session) {
+        if (session.getAttribute(TRANSFER_ATTRIBUTE) != null) {
+            session.removeAttribute(TRANSFER_ATTRIBUTE);
+            this.activeTransfers.decrementAndGet();
+        }
+    }
+
+}
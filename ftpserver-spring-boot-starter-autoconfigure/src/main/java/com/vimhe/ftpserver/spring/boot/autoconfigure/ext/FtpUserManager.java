@@ -17,28 +17,150 @@
 package com.vimhe.ftpserver.spring.boot.autoconfigure.ext;
 
 import com.vimhe.ftpserver.spring.boot.autoconfigure.FtpServerConfigurationProperties;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.bandwidth.BandwidthPermission;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.quota.QuotaPermission;
+import lombok.extern.java.Log;
+import org.apache.ftpserver.FtpServerConfigurationException;
 import org.apache.ftpserver.ftplet.*;
 import org.apache.ftpserver.usermanager.AnonymousAuthentication;
 import org.apache.ftpserver.usermanager.UsernamePasswordAuthentication;
 import org.apache.ftpserver.usermanager.impl.BaseUser;
 import org.apache.ftpserver.usermanager.impl.ConcurrentLoginPermission;
-import org.apache.ftpserver.usermanager.impl.TransferRatePermission;
 import org.apache.ftpserver.usermanager.impl.WritePermission;
 import org.springframework.util.unit.DataSize;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
 
 /**
  * Custom Ftp User Manager.
+ * <p>
+ * Users are held in an immutable index which is replaced atomically (copy-on-write) when users are saved, deleted or
+ * reloaded from the {@link FtpUserStore}, so authentication never takes a lock.
  *
  * @author Vimhe
  */
-public class FtpUserManager implements UserManager {
+@Log
+public class FtpUserManager implements UserManager, Closeable {
 
-    private Set<User> userSet = new HashSet<>(2);
+    /**
+     * Current immutable user index keyed by (optionally lower-cased) user name.
+     */
+    private final AtomicReference<Map<String, User>> userIndex = new AtomicReference<>(Collections.emptyMap());
+
+    /**
+     * Users from the application properties, they can not be deleted at runtime.
+     */
+    private final Map<String, FtpServerConfigurationProperties.User> configuredUsers;
+
+    /**
+     * Users from the store, guarded by {@link #writeLock}.
+     */
+    private Map<String, FtpServerConfigurationProperties.User> storedUsers = Collections.emptyMap();
+
+    private final Object writeLock = new Object();
+
+    private final boolean caseInsensitive;
+
+    private final DelegatingPasswordEncryptor passwordEncryptor;
+
+    /**
+     * Recently verified credentials, null if disabled.
+     */
+    private final VerifiedCredentialCache credentialCache;
+
+    /**
+     * Persistent store for users saved at runtime, null if not configured.
+     */
+    private final FtpUserStore userStore;
 
     public FtpUserManager(final Map<String, FtpServerConfigurationProperties.User> userSet) {
-        userSet.forEach((key, value) -> this.userSet.add(createUser(key, value)));
+        this(userSet, new FtpServerConfigurationProperties.UserManager());
+    }
+
+    public FtpUserManager(
+        final Map<String, FtpServerConfigurationProperties.User> userSet,
+        final FtpServerConfigurationProperties.UserManager properties) {
+        this.configuredUsers = Collections.unmodifiableMap(new LinkedHashMap<>(userSet));
+        this.caseInsensitive = Boolean.TRUE.equals(properties.getCaseInsensitive());
+        this.passwordEncryptor = new DelegatingPasswordEncryptor(properties.getPasswordEncoding());
+
+        FtpServerConfigurationProperties.CredentialCache cacheProperties = properties.getCredentialCache();
+        this.credentialCache = Boolean.TRUE.equals(cacheProperties.getEnabled())
+            ? new VerifiedCredentialCache(cacheProperties.getMaximumSize(), cacheProperties.getTimeToLive())
+            : null;
+
+        this.userStore = Optional.ofNullable(properties.getStoreFile()).map(FtpUserStore::new).orElse(null);
+        if (this.userStore == null) {
+            this.userIndex.set(this.buildIndex(Collections.emptyMap()));
+            return;
+        }
+
+        try {
+            this.reload(this.userStore.load());
+            if (Boolean.TRUE.equals(properties.getWatchStoreFile())) {
+                this.userStore.watch(this::reloadQuietly);
+            }
+        } catch (IOException e) {
+            throw new FtpServerConfigurationException("Failed to load ftp user store " + properties.getStoreFile(), e);
+        }
+    }
+
+    /**
+     * Replace the stored users and swap in a new index; concurrent authentications keep using the previous index
+     * until the swap.
+     */
+    public void reload(final Map<String, FtpServerConfigurationProperties.User> users) {
+        synchronized (this.writeLock) {
+            Map<String, User> index = this.buildIndex(users);
+            this.storedUsers = Collections.unmodifiableMap(new LinkedHashMap<>(users));
+            this.userIndex.set(index);
+        }
+    }
+
+    private void reloadQuietly(final Map<String, FtpServerConfigurationProperties.User> users) {
+        try {
+            this.reload(users);
+            log.info("Ftp user store reloaded, " + users.size() + " stored users");
+        } catch (FtpServerConfigurationException e) {
+            log.log(Level.WARNING, "Ftp user store not reloaded, keeping the current users", e);
+        }
+    }
+
+    private Map<String, User> buildIndex(final Map<String, FtpServerConfigurationProperties.User> users) {
+        // Size the table up front so a large user set never rehashes while being indexed
+        Map<String, User> index = new HashMap<>((int) ((this.configuredUsers.size() + users.size()) / 0.75f) + 1);
+
+        this.configuredUsers.forEach((key, value) -> {
+            if (index.put(this.indexKey(key), this.checkedUser(key, value)) != null) {
+                throw new FtpServerConfigurationException("Duplicate ftp user name (ignoring case): " + key);
+            }
+        });
+        // Stored users override the configured ones, but not each other
+        Set<String> storedKeys = new HashSet<>((int) (users.size() / 0.75f) + 1);
+        users.forEach((key, value) -> {
+            String indexKey = this.indexKey(key);
+            if (!storedKeys.add(indexKey)) {
+                throw new FtpServerConfigurationException("Duplicate stored ftp user name (ignoring case): " + key);
+            }
+            index.put(indexKey, this.checkedUser(key, value));
+        });
+
+        return Collections.unmodifiableMap(index);
+    }
+
+    private BaseUser checkedUser(final String username, final FtpServerConfigurationProperties.User userProperties) {
+        if (!this.passwordEncryptor.supports(userProperties.getUserPassword())) {
+            throw new FtpServerConfigurationException("Unsupported password encoding for ftp user: " + username);
+        }
+        return createUser(username, userProperties);
+    }
+
+    private String indexKey(final String username) {
+        return this.caseInsensitive ? username.toLowerCase(Locale.ROOT) : username;
     }
 
     private static BaseUser createUser(
@@ -54,7 +176,7 @@ public class FtpUserManager implements UserManager {
         Optional.ofNullable(userProperties.getIdleTime()).ifPresent(duration ->
             user.setMaxIdleTime((int) duration.getSeconds()));
 
-        List<Authority> authorities = new ArrayList<>(3);
+        List<Authority> authorities = new ArrayList<>(4);
 
         // If user has write permission, set the home directory by default
         Optional.ofNullable(userProperties.getWritePermission())
@@ -71,15 +193,20 @@ public class FtpUserManager implements UserManager {
             );
         }
 
-        Optional<DataSize> downloadRate = Optional.ofNullable(userProperties.getDownloadRate());
-        Optional<DataSize> uploadRate = Optional.ofNullable(userProperties.getUploadRate());
-        if (downloadRate.isPresent() && uploadRate.isPresent()) {
-            authorities.add(
-                new TransferRatePermission(
-                    (int) downloadRate.get().toBytes(),
-                    (int) uploadRate.get().toBytes()
-                )
-            );
+        // Rates are kept as long, TransferRatePermission would overflow above 2GB/s
+        authorities.add(
+            new BandwidthPermission(
+                toBytes(userProperties.getDownloadRate()),
+                toBytes(userProperties.getUploadRate()),
+                toBytes(userProperties.getTotalDownloadRate()),
+                toBytes(userProperties.getTotalUploadRate())
+            )
+        );
+
+        long quotaBytes = toBytes(userProperties.getQuotaBytes());
+        long quotaFiles = Optional.ofNullable(userProperties.getQuotaFiles()).orElse(0L);
+        if (quotaBytes > 0 || quotaFiles > 0) {
+            authorities.add(new QuotaPermission(quotaBytes, quotaFiles));
         }
 
         user.setAuthorities(authorities);
@@ -87,32 +214,84 @@ public class FtpUserManager implements UserManager {
         return user;
     }
 
+    private static long toBytes(final DataSize rate) {
+        return Optional.ofNullable(rate).map(DataSize::toBytes).orElse(0L);
+    }
+
     @Override
     public User getUserByName(final String username) {
-        return this.userSet.stream()
-            .filter(user -> Objects.equals(user.getName(), username))
-            .findFirst()
-            .orElse(null);
+        return username == null ? null : this.userIndex.get().get(this.indexKey(username));
     }
 
     @Override
     public String[] getAllUserNames() {
-        return this.userSet.stream().map(User::getName).distinct().toArray(String[]::new);
+        return this.userIndex.get().values().stream().map(User::getName).toArray(String[]::new);
     }
 
     @Override
     public void delete(final String username) throws FtpException {
-        throw new FtpException("Unsupported operation, please manually delete in application.properties");
+        if (this.userStore == null) {
+            throw new FtpException("Unsupported operation, please manually delete in application.properties");
+        }
+
+        synchronized (this.writeLock) {
+            String key = this.indexKey(username);
+            Map<String, FtpServerConfigurationProperties.User> users = new LinkedHashMap<>(this.storedUsers);
+            if (!users.keySet().removeIf(name -> this.indexKey(name).equals(key))) {
+                if (this.configuredUsers.keySet().stream().anyMatch(name -> this.indexKey(name).equals(key))) {
+                    throw new FtpException("Unsupported operation, please manually delete in application.properties");
+                }
+                return;
+            }
+
+            this.persist(users);
+        }
+        this.getCredentialCache().ifPresent(cache -> cache.invalidate(this.indexKey(username)));
     }
 
     @Override
     public void save(final User user) throws FtpException {
-        throw new FtpException("Unsupported operation, please manually add in application.properties");
+        if (this.userStore == null) {
+            throw new FtpException("Unsupported operation, please manually add in application.properties");
+        }
+
+        synchronized (this.writeLock) {
+            String key = this.indexKey(user.getName());
+            Map<String, FtpServerConfigurationProperties.User> users = new LinkedHashMap<>(this.storedUsers);
+            users.keySet().removeIf(name -> this.indexKey(name).equals(key));
+
+            // By convention a user saved without password keeps the current one, a clear text password is encoded
+            // before it reaches the file
+            FtpServerConfigurationProperties.User properties = FtpUserStore.toProperties(user);
+            if (properties.getUserPassword() == null) {
+                Optional.ofNullable(this.getUserByName(user.getName()))
+                    .map(User::getPassword)
+                    .ifPresent(properties::setUserPassword);
+            } else if (!this.passwordEncryptor.isEncoded(properties.getUserPassword())) {
+                properties.setUserPassword(this.passwordEncryptor.encrypt(properties.getUserPassword()));
+            }
+            users.put(user.getName(), properties);
+
+            this.persist(users);
+        }
+        this.getCredentialCache().ifPresent(cache -> cache.invalidate(this.indexKey(user.getName())));
+    }
+
+    private void persist(final Map<String, FtpServerConfigurationProperties.User> users) throws FtpException {
+        try {
+            // Validate before writing, a broken user must neither reach the file nor the index
+            Map<String, User> index = this.buildIndex(users);
+            this.userStore.store(users);
+            this.storedUsers = Collections.unmodifiableMap(users);
+            this.userIndex.set(index);
+        } catch (IOException | FtpServerConfigurationException e) {
+            throw new FtpException("Failed to update ftp user store", e);
+        }
     }
 
     @Override
     public boolean doesExist(final String username) {
-        return this.userSet.stream().anyMatch(user -> Objects.equals(user.getName(), username));
+        return username != null && this.userIndex.get().containsKey(this.indexKey(username));
     }
 
     @Override
@@ -121,7 +300,7 @@ public class FtpUserManager implements UserManager {
             UsernamePasswordAuthentication usernamePasswordAuthentication = (UsernamePasswordAuthentication) authentication;
 
             return Optional.ofNullable(getUserByName(usernamePasswordAuthentication.getUsername()))
-                .filter(user -> Objects.equals(user.getPassword(), usernamePasswordAuthentication.getPassword()))
+                .filter(user -> this.passwordMatches(user, usernamePasswordAuthentication.getPassword()))
                 .orElseThrow(() -> new AuthenticationFailedException("The ftp username or password is incorrect"));
         } else if (authentication instanceof AnonymousAuthentication) {
             // Anonymous has no password
@@ -130,6 +309,27 @@ public class FtpUserManager implements UserManager {
         throw new IllegalArgumentException("Authentication not supported by this user manager");
     }
 
+    private boolean passwordMatches(final User user, final String password) {
+        String storedPassword = user.getPassword();
+
+        // Clear text comparison is cheaper than the cache itself
+        if (this.credentialCache == null || password == null || !this.passwordEncryptor.isHashed(storedPassword)) {
+            return this.passwordEncryptor.matches(password, storedPassword);
+        }
+
+        // Keyed like the index, so the entries are invalidated whatever the case of the name deleted or saved
+        String key = this.indexKey(user.getName());
+        if (this.credentialCache.isVerified(key, password, storedPassword)) {
+            return true;
+        }
+
+        boolean matches = this.passwordEncryptor.matches(password, storedPassword);
+        if (matches) {
+            this.credentialCache.put(key, password, storedPassword);
+        }
+        return matches;
+    }
+
     @Override
     public String getAdminName() {
         // The default admin user named "admin", and case sensitive
@@ -138,11 +338,23 @@ public class FtpUserManager implements UserManager {
 
     @Override
     public boolean isAdmin(final String username) {
-        return Objects.equals("admin", username);
+        return username != null && Objects.equals(this.indexKey(this.getAdminName()), this.indexKey(username));
     }
 
     public User[] getAllUser() {
-        return this.userSet.toArray(new User[0]);
+        return this.userIndex.get().values().toArray(new User[0]);
+    }
+
+    @Override
+    public void close() {
+        Optional.ofNullable(this.userStore).ifPresent(FtpUserStore::close);
+    }
+
+    /**
+     * The cache of verified credentials, empty if disabled.
+     */
+    public Optional<VerifiedCredentialCache> getCredentialCache() {
+        return Optional.ofNullable(this.credentialCache);
     }
 
 }
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext;
+
+import com.vimhe.ftpserver.spring.boot.autoconfigure.FtpServerConfigurationProperties;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.bandwidth.BandwidthRequest;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.quota.QuotaRequest;
+import lombok.extern.java.Log;
+import org.apache.ftpserver.ftplet.User;
+import org.apache.ftpserver.usermanager.impl.ConcurrentLoginRequest;
+import org.apache.ftpserver.usermanager.impl.TransferRateRequest;
+import org.apache.ftpserver.usermanager.impl.WritePermission;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+import org.springframework.util.unit.DataSize;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+/**
+ * Local persistent store of users, kept as a properties file with the same keys as the application properties, e.g.
+ * {@code ftpserver.user.bob.user-password={pbkdf2}...}. The file may also be edited by hand, changes are picked up
+ * by {@link #watch(Consumer)}.
+ *
+ * @author Vimhe
+ */
+@Log
+public class FtpUserStore implements Closeable {
+
+    private static final String PREFIX = "ftpserver.user";
+
+    private final Path file;
+
+    private volatile Thread watcher;
+
+    public FtpUserStore(final File file) {
+        this.file = file.toPath().toAbsolutePath();
+    }
+
+    /**
+     * Read all users of the file, empty if the file does not exist yet.
+     */
+    public Map<String, FtpServerConfigurationProperties.User> load() throws IOException {
+        if (!Files.exists(this.file)) {
+            return Collections.emptyMap();
+        }
+
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(this.file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+
+        try {
+            return new Binder(new MapConfigurationPropertySource(properties))
+                .bind(PREFIX, Bindable.mapOf(String.class, FtpServerConfigurationProperties.User.class))
+                .orElse(Collections.emptyMap());
+        } catch (RuntimeException e) {
+            throw new IOException("Invalid ftp user store " + this.file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Replace the content of the file, readers never see a partially written file.
+     */
+    public synchronized void store(final Map<String, FtpServerConfigurationProperties.User> users) throws IOException {
+        Properties properties = new Properties();
+        users.forEach((name, user) -> {
+            String prefix = PREFIX + "." + name + ".";
+            BiConsumer<String, Object> put = (key, value) -> Optional.ofNullable(value)
+                .ifPresent(it -> properties.setProperty(prefix + key, it.toString()));
+
+            put.accept("user-password", user.getUserPassword());
+            put.accept("home-directory", user.getHomeDirectory());
+            put.accept("enable-flag", user.getEnableFlag());
+            put.accept("write-permission", user.getWritePermission());
+            put.accept("max-login-number", user.getMaxLoginNumber());
+            put.accept("max-login-per-ip", user.getMaxLoginPerIp());
+            put.accept("idle-time", user.getIdleTime());
+            put.accept("upload-rate", user.getUploadRate());
+            put.accept("download-rate", user.getDownloadRate());
+            put.accept("total-upload-rate", user.getTotalUploadRate());
+            put.accept("total-download-rate", user.getTotalDownloadRate());
+            put.accept("quota-bytes", user.getQuotaBytes());
+            put.accept("quota-files", user.getQuotaFiles());
+        });
+
+        Path parent = this.file.getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, this.file.getFileName().toString(), ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                properties.store(writer, "FtpServer users");
+            }
+            Files.move(temp, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Watch the file and hand every successfully parsed new content to the listener, on a daemon thread.
+     */
+    public synchronized void watch(final Consumer<Map<String, FtpServerConfigurationProperties.User>> listener)
+        throws IOException {
+        if (this.watcher != null) {
+            throw new IllegalStateException("Ftp user store is already watched");
+        }
+
+        Path parent = this.file.getParent();
+        Files.createDirectories(parent);
+        WatchService watchService = parent.getFileSystem().newWatchService();
+        parent.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+
+        Thread thread = new Thread(() -> this.watchLoop(watchService, listener), "ftp-user-store-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        this.watcher = thread;
+    }
+
+    private void watchLoop(
+        final WatchService watchService,
+        final Consumer<Map<String, FtpServerConfigurationProperties.User>> listener) {
+        try (WatchService service = watchService) {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = service.take();
+
+                boolean changed = key.pollEvents().stream()
+                    .anyMatch(event -> this.file.getFileName().equals(event.context()));
+                key.reset();
+                if (!changed) {
+                    continue;
+                }
+
+                // Editors write in several steps, let them settle and swallow their events before reading
+                TimeUnit.MILLISECONDS.sleep(100);
+                Optional.ofNullable(service.poll()).ifPresent(pending -> {
+                    pending.pollEvents();
+                    pending.reset();
+                });
+
+                try {
+                    listener.accept(this.load());
+                } catch (IOException e) {
+                    log.log(Level.WARNING, "Ftp user store not reloaded, keeping the current users", e);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Ftp user store watcher stopped", e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        Optional.ofNullable(this.watcher).ifPresent(Thread::interrupt);
+        this.watcher = null;
+    }
+
+    /**
+     * Convert a user given to {@link org.apache.ftpserver.ftplet.UserManager#save(User)} back to its properties.
+     * <p>
+     * The password is taken as given, {@link FtpUserManager#save(User)} encodes a clear text one before storing it.
+     */
+    public static FtpServerConfigurationProperties.User toProperties(final User user) {
+        FtpServerConfigurationProperties.User properties = new FtpServerConfigurationProperties.User();
+
+        properties.setUserPassword(user.getPassword());
+        Optional.ofNullable(user.getHomeDirectory()).map(File::new).ifPresent(properties::setHomeDirectory);
+        properties.setEnableFlag(user.getEnabled());
+        properties.setIdleTime(Duration.ofSeconds(user.getMaxIdleTime()));
+        properties.setWritePermission(!user.getAuthorities(WritePermission.class).isEmpty());
+
+        ConcurrentLoginRequest loginRequest = (ConcurrentLoginRequest) user.authorize(new ConcurrentLoginRequest(0, 0));
+        properties.setMaxLoginNumber(loginRequest == null ? 0 : loginRequest.getMaxConcurrentLogins());
+        properties.setMaxLoginPerIp(loginRequest == null ? 0 : loginRequest.getMaxConcurrentLoginsPerIP());
+
+        QuotaRequest quotaRequest = (QuotaRequest) user.authorize(new QuotaRequest());
+        if (quotaRequest != null) {
+            properties.setQuotaBytes(DataSize.ofBytes(quotaRequest.getMaxBytes()));
+            properties.setQuotaFiles(quotaRequest.getMaxFiles());
+        }
+
+        BandwidthRequest bandwidthRequest = (BandwidthRequest) user.authorize(new BandwidthRequest());
+        if (bandwidthRequest != null) {
+            properties.setDownloadRate(DataSize.ofBytes(bandwidthRequest.getMaxDownloadRate()));
+            properties.setUploadRate(DataSize.ofBytes(bandwidthRequest.getMaxUploadRate()));
+            properties.setTotalDownloadRate(DataSize.ofBytes(bandwidthRequest.getMaxTotalDownloadRate()));
+            properties.setTotalUploadRate(DataSize.ofBytes(bandwidthRequest.getMaxTotalUploadRate()));
+            return properties;
+        }
+
+        TransferRateRequest rateRequest = (TransferRateRequest) user.authorize(new TransferRateRequest());
+        properties.setDownloadRate(rateRequest == null ? null : DataSize.ofBytes(rateRequest.getMaxDownloadRate()));
+        properties.setUploadRate(rateRequest == null ? null : DataSize.ofBytes(rateRequest.getMaxUploadRate()));
+
+        return properties;
+    }
+
+}
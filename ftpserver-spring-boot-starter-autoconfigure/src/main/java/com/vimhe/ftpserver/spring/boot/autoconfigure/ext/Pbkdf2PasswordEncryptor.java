@@ -0,0 +1,98 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext;
+
+import org.apache.ftpserver.FtpServerConfigurationException;
+import org.apache.ftpserver.usermanager.PasswordEncryptor;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * PBKDF2 (HMAC-SHA256) Password Encryptor.
+ * <p>
+ * Encoded form: {@code iterations$base64(salt)$base64(hash)}.
+ *
+ * @author Vimhe
+ */
+public class Pbkdf2PasswordEncryptor implements PasswordEncryptor {
+
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+
+    private static final int SALT_LENGTH = 16;
+
+    private static final int HASH_LENGTH = 32;
+
+    private final SecureRandom random = new SecureRandom();
+
+    private final int iterations;
+
+    public Pbkdf2PasswordEncryptor() {
+        this(185000);
+    }
+
+    public Pbkdf2PasswordEncryptor(final int iterations) {
+        this.iterations = iterations;
+    }
+
+    @Override
+    public String encrypt(final String password) {
+        byte[] salt = new byte[SALT_LENGTH];
+        this.random.nextBytes(salt);
+
+        Base64.Encoder encoder = Base64.getEncoder();
+        return this.iterations + "$" + encoder.encodeToString(salt) + "$"
+            + encoder.encodeToString(hash(password, salt, this.iterations, HASH_LENGTH));
+    }
+
+    @Override
+    public boolean matches(final String passwordToCheck, final String storedPassword) {
+        if (passwordToCheck == null || storedPassword == null) {
+            return false;
+        }
+
+        String[] parts = storedPassword.split("\\$");
+        if (parts.length != 3) {
+            return false;
+        }
+
+        try {
+            Base64.Decoder decoder = Base64.getDecoder();
+            byte[] expected = decoder.decode(parts[2]);
+            byte[] actual = hash(passwordToCheck, decoder.decode(parts[1]), Integer.parseInt(parts[0]), expected.length);
+            return MessageDigest.isEqual(expected, actual);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static byte[] hash(final String password, final byte[] salt, final int iterations, final int length) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, length * 8);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new FtpServerConfigurationException(ALGORITHM + " is not available", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext;
+
+import org.apache.ftpserver.ftplet.*;
+import org.apache.mina.core.session.IoSession;
+
+import java.io.IOException;
+
+/**
+ * Ftplet which keeps the command every session is executing, so it can be shown together with the session, e.g. by
+ * the actuator endpoint. Nothing is locked, the activity is a few volatile fields of an object attached to the session.
+ *
+ * @author Vimhe
+ */
+public class SessionActivityFtplet extends DefaultFtplet {
+
+    private static final String ACTIVITY_ATTRIBUTE = SessionActivityFtplet.class.getName() + ".activity";
+
+    /**
+     * The activity of a session, or null if it connected before this ftplet was active.
+     */
+    public static SessionActivity getActivity(final IoSession session) {
+        Object activity = session.getAttribute(ACTIVITY_ATTRIBUTE);
+        return activity instanceof SessionActivity ? (SessionActivity) activity : null;
+    }
+
+    @Override
+    public FtpletResult onConnect(final FtpSession session) throws FtpException, IOException {
+        session.setAttribute(ACTIVITY_ATTRIBUTE, new SessionActivity());
+        return FtpletResult.DEFAULT;
+    }
+
+    @Override
+    public FtpletResult beforeCommand(final FtpSession session, final FtpRequest request)
+        throws FtpException, IOException {
+        Object activity = session.getAttribute(ACTIVITY_ATTRIBUTE);
+        if (activity instanceof SessionActivity) {
+            ((SessionActivity) activity).started(request);
+        }
+        return FtpletResult.DEFAULT;
+    }
+
+    @Override
+    public FtpletResult afterCommand(final FtpSession session, final FtpRequest request, final FtpReply reply)
+        throws FtpException, IOException {
+        Object activity = session.getAttribute(ACTIVITY_ATTRIBUTE);
+        if (activity instanceof SessionActivity) {
+            ((SessionActivity) activity).finished();
+        }
+        return FtpletResult.DEFAULT;
+    }
+
+    /**
+     * What a session is doing, written by the thread executing its commands and read by any other.
+     */
+    public static final class SessionActivity {
+        /**
+         * Interval of the samples of the bytes of a session in milliseconds, a shorter one would mostly show the
+         * bursts of the socket buffers.
+         */
+        public static final long SAMPLE_INTERVAL = 1000;
+
+        private final long connectTime = System.currentTimeMillis();
+        private volatile FtpRequest request;
+        private volatile long commandStartTime;
+        private volatile long lastCommandEndTime;
+        private volatile Sample sample = new Sample(this.connectTime, 0, 0D);
+
+        private SessionActivity() {
+        }
+
+        private void started(final FtpRequest request) {
+            this.commandStartTime = System.currentTimeMillis();
+            this.request = request;
+        }
+
+        private void finished() {
+            this.request = null;
+            this.lastCommandEndTime = System.currentTimeMillis();
+        }
+
+        /**
+         * Take a sample of the bytes of the session, every {@link #SAMPLE_INTERVAL} by a single thread.
+         *
+         * @param bytes total bytes of the session now
+         */
+        public void sample(final long bytes, final long now) {
+            Sample previous = this.sample;
+            double rate = now > previous.time
+                ? (bytes - previous.bytes) * 1000.0 / (now - previous.time) : previous.rate;
+            this.sample = new Sample(now, bytes, rate);
+        }
+
+        /**
+         * Bytes per second between the last two samples, or since the session connected until the first one. Reading
+         * it changes nothing, every reader sees the same rate until the next sample.
+         */
+        public double getRate() {
+            return this.sample.rate;
+        }
+
+        /**
+         * The command line being executed, without the password of PASS, or null if the session is idle.
+         */
+        public String getCurrentCommand() {
+            FtpRequest current = this.request;
+            if (current == null) {
+                return null;
+            }
+            return "PASS".equals(current.getCommand()) ? "PASS ****" : current.getRequestLine();
+        }
+
+        /**
+         * Start of the current command, or 0 if the session is idle.
+         */
+        public long getCommandStartTime() {
+            return this.request == null ? 0 : this.commandStartTime;
+        }
+
+        public long getLastCommandEndTime() {
+            return this.lastCommandEndTime;
+        }
+    }
+
+    /**
+     * The bytes of a session at a time, and its rate since the previous sample.
+     */
+    private static final class Sample {
+        private final long time;
+        private final long bytes;
+        private final double rate;
+
+        private Sample(final long time, final long bytes, final double rate) {
+            this.time = time;
+            this.bytes = bytes;
+            this.rate = rate;
+        }
+    }
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext;
+
+import org.apache.ftpserver.FtpServerConfigurationException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, TTL-evicting cache of recently verified credentials, so that repeated logins skip the expensive password
+ * hash. Only a keyed digest of the password is kept, never the password itself, and an entry is only honoured while
+ * the stored password of the user is unchanged.
+ *
+ * @author Vimhe
+ */
+public class VerifiedCredentialCache {
+
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    private final Map<String, Entry> entries;
+
+    private final long timeToLiveNanos;
+
+    private final ThreadLocal<Mac> mac;
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    public VerifiedCredentialCache(final int maximumSize, final Duration timeToLive) {
+        this.timeToLiveNanos = timeToLive.toNanos();
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+                return this.size() > maximumSize;
+            }
+        };
+
+        // The digest key only lives as long as this cache, so digests are useless outside of this process
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        SecretKeySpec key = new SecretKeySpec(secret, MAC_ALGORITHM);
+        this.mac = ThreadLocal.withInitial(() -> {
+            try {
+                Mac instance = Mac.getInstance(MAC_ALGORITHM);
+                instance.init(key);
+                return instance;
+            } catch (GeneralSecurityException e) {
+                throw new FtpServerConfigurationException(MAC_ALGORITHM + " is not available", e);
+            }
+        });
+    }
+
+    /**
+     * Whether this exact credential was successfully verified against the current stored password within the TTL.
+     */
+    public boolean isVerified(final String username, final String password, final String storedPassword) {
+        Entry entry;
+        synchronized (this.entries) {
+            entry = this.entries.get(username);
+        }
+
+        boolean verified = entry != null
+            && entry.storedPassword.equals(storedPassword)
+            && System.nanoTime() - entry.expiresAt < 0
+            && MessageDigest.isEqual(entry.digest, this.digest(username, password));
+
+        (verified ? this.hitCount : this.missCount).increment();
+        return verified;
+    }
+
+    /**
+     * Record a successful verification.
+     */
+    public void put(final String username, final String password, final String storedPassword) {
+        Entry entry = new Entry(this.digest(username, password), storedPassword, System.nanoTime() + this.timeToLiveNanos);
+        synchronized (this.entries) {
+            this.entries.put(username, entry);
+        }
+    }
+
+    /**
+     * Forget the verification of one user, e.g. after the user was changed or removed.
+     */
+    public void invalidate(final String username) {
+        synchronized (this.entries) {
+            this.entries.remove(username);
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (this.entries) {
+            this.entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (this.entries) {
+            return this.entries.size();
+        }
+    }
+
+    public long getHitCount() {
+        return this.hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return this.missCount.sum();
+    }
+
+    /**
+     * Ratio of logins answered from the cache, 0 when there was no lookup yet.
+     */
+    public double getHitRate() {
+        long hits = this.hitCount.sum();
+        long total = hits + this.missCount.sum();
+        return total == 0 ? 0D : (double) hits / total;
+    }
+
+    private byte[] digest(final String username, final String password) {
+        Mac instance = this.mac.get();
+        instance.update(username.getBytes(StandardCharsets.UTF_8));
+        instance.update((byte) 0);
+        return instance.doFinal(password.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static final class Entry {
+        private final byte[] digest;
+        private final String storedPassword;
+        private final long expiresAt;
+
+        private Entry(final byte[] digest, final String storedPassword, final long expiresAt) {
+            this.digest = digest;
+            this.storedPassword = storedPassword;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+}
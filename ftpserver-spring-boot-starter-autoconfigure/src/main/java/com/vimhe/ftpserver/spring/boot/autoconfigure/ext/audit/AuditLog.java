@@ -0,0 +1,373 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.audit;
+
+import lombok.extern.java.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+
+/**
+ * Audit log of the file transfers, in the xferlog format of wu-ftpd:
+ * <pre>
+ * current-time transfer-time remote-host file-size filename transfer-type special-action-flag direction
+ * access-mode username service-name authentication-method authenticated-user-id completion-status
+ * </pre>
+ * xferlog has no login records, the logins go to a log file of their own if one is given, with the fields:
+ * <pre>
+ * current-time remote-host username access-mode service-name status
+ * </pre>
+ * where the status is {@code success} or {@code failure}.
+ * <p>
+ * The session threads only fill a slot of a ring buffer allocated up front, claimed by compare-and-set. A single
+ * writer thread formats the records in order and appends all of those available at once, followed by one
+ * {@link java.nio.channels.FileChannel#force(boolean)}: the records written meanwhile are committed together by the
+ * next one. When the buffer is empty the writer waits up to the commit interval for more records. What happens to a
+ * record when the buffer is full is up to the {@link OverflowPolicy}.
+ *
+ * @author Vimhe
+ */
+@Log
+public class AuditLog implements Closeable {
+
+    private static final DateTimeFormatter TIME_FORMAT =
+        DateTimeFormatter.ofPattern("EEE MMM ppd HH:mm:ss yyyy", Locale.ENGLISH);
+
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final AuditRecord[] records;
+
+    private final int mask;
+
+    private final OverflowPolicy overflowPolicy;
+
+    private final int sampleRate;
+
+    private final long commitInterval;
+
+    private final RollingAuditFile file;
+
+    /**
+     * The log of the logins, null if they are not recorded.
+     */
+    private final RollingAuditFile loginFile;
+
+    private final ZoneId zone = ZoneId.systemDefault();
+
+    private final AtomicLong claimed = new AtomicLong(-1);
+
+    /**
+     * Sequence of the last record the writer took out of the buffer, its slot and all before are free again.
+     */
+    private volatile long consumed = -1;
+
+    private final AtomicLong overflows = new AtomicLong();
+
+    private final LongAdder written = new LongAdder();
+
+    private final LongAdder dropped = new LongAdder();
+
+    private final Thread writer;
+
+    private volatile boolean closed;
+
+    /**
+     * @param file           the current log file, rolled over to {@code <file>.1} and so on
+     * @param loginFile      the current log file of the logins, rolled over the same way, null for none
+     * @param bufferSize     number of records the buffer holds, rounded up to a power of two
+     * @param overflowPolicy what happens to a record when the buffer is full
+     * @param sampleRate     with {@link OverflowPolicy#SAMPLE}, one of this many records waits for room
+     * @param commitInterval how long the writer waits for records when the buffer is empty
+     * @param maximumSize    size of a log file beyond which it is rolled over
+     * @param maximumHistory number of rolled over files kept
+     */
+    public AuditLog(final Path file, final Path loginFile, final int bufferSize, final OverflowPolicy overflowPolicy,
+                    final int sampleRate, final Duration commitInterval, final long maximumSize,
+                    final int maximumHistory) throws IOException {
+        int capacity = Integer.highestOneBit(Math.max(bufferSize - 1, 1)) << 1;
+        this.records = new AuditRecord[capacity];
+        for (int i = 0; i < capacity; i++) {
+            this.records[i] = new AuditRecord();
+        }
+        this.mask = capacity - 1;
+        this.overflowPolicy = overflowPolicy;
+        this.sampleRate = Math.max(sampleRate, 1);
+        this.commitInterval = Math.max(commitInterval.toNanos(), 1);
+        this.file = new RollingAuditFile(file, maximumSize, maximumHistory);
+        this.loginFile = loginFile == null ? null : new RollingAuditFile(loginFile, maximumSize, maximumHistory);
+
+        this.writer = new Thread(this::writeLoop, "ftp-audit-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Claim the slot of the next record, which must be handed back with {@link #publish(AuditRecord)} once filled.
+     *
+     * @return the slot, null if the record is dropped
+     */
+    AuditRecord claim() {
+        long sequence = this.closed ? -1 : this.tryClaim();
+        if (sequence < 0 && !this.closed) {
+            sequence = this.overflow();
+        }
+        if (sequence < 0) {
+            this.dropped.increment();
+            return null;
+        }
+
+        AuditRecord record = this.records[(int) sequence & this.mask];
+        record.claimed = sequence;
+        if (this.closed) {
+            // The writer may have stopped before the slot was claimed; handed back empty, it is never waited for
+            record.skipped = true;
+            this.publish(record);
+            this.dropped.increment();
+            return null;
+        }
+        return record;
+    }
+
+    /**
+     * Whether the logins are recorded, in a log of their own.
+     */
+    boolean isRecordingLogins() {
+        return this.loginFile != null;
+    }
+
+    void publish(final AuditRecord record) {
+        record.sequence = record.claimed;
+    }
+
+    private long tryClaim() {
+        long current;
+        long next;
+        do {
+            current = this.claimed.get();
+            next = current + 1;
+            if (next - this.records.length > this.consumed) {
+                return -1;
+            }
+        } while (!this.claimed.compareAndSet(current, next));
+        return next;
+    }
+
+    private long overflow() {
+        // The writer may be waiting out the commit interval
+        LockSupport.unpark(this.writer);
+        switch (this.overflowPolicy) {
+            case DROP:
+                return -1;
+            case SAMPLE:
+                if (this.overflows.incrementAndGet() % this.sampleRate != 0) {
+                    return -1;
+                }
+                return this.claimWaiting();
+            default:
+                return this.claimWaiting();
+        }
+    }
+
+    private long claimWaiting() {
+        long sequence;
+        while ((sequence = this.tryClaim()) < 0) {
+            if (this.closed) {
+                return -1;
+            }
+            LockSupport.parkNanos(this, BLOCK_PARK_NANOS);
+        }
+        return sequence;
+    }
+
+    private void writeLoop() {
+        StringBuilder text = new StringBuilder(128 * 1024);
+        StringBuilder loginText = new StringBuilder(16 * 1024);
+        while (true) {
+            long first = this.consumed + 1;
+            long next = first;
+            long transfers = 0;
+            long logins = 0;
+            text.setLength(0);
+            loginText.setLength(0);
+            for (AuditRecord record = this.records[(int) next & this.mask];
+                 record.sequence == next && next - first < this.records.length;
+                 record = this.records[(int) next & this.mask]) {
+                if (record.skipped) {
+                    // Counted as dropped when it was claimed
+                } else if (record.direction == AuditRecord.LOGIN) {
+                    this.formatLogin(record, loginText);
+                    logins++;
+                } else {
+                    this.format(record, text);
+                    transfers++;
+                }
+                record.clear();
+                next++;
+            }
+
+            if (next == first) {
+                if (this.closed && this.claimed.get() < first) {
+                    return;
+                }
+                LockSupport.parkNanos(this, this.commitInterval);
+                continue;
+            }
+
+            this.consumed = next - 1;
+            this.commit(this.file, text, transfers);
+            this.commit(this.loginFile, loginText, logins);
+        }
+    }
+
+    private void format(final AuditRecord record, final StringBuilder text) {
+        TIME_FORMAT.formatTo(ZonedDateTime.ofInstant(Instant.ofEpochMilli(record.time), this.zone), text);
+        text.append(' ').append((record.durationMillis + 500) / 1000);
+        text.append(' ');
+        appendField(text, record.remoteHost);
+        text.append(' ').append(record.bytes);
+        text.append(' ');
+        appendField(text, record.file);
+        text.append(' ').append(record.binary ? 'b' : 'a');
+        text.append(" _ ").append(record.direction);
+        text.append(' ').append(record.anonymous ? 'a' : 'r');
+        text.append(' ');
+        appendField(text, record.user);
+        text.append(" ftp 0 * ").append(record.complete ? 'c' : 'i').append('\n');
+    }
+
+    private void formatLogin(final AuditRecord record, final StringBuilder text) {
+        TIME_FORMAT.formatTo(ZonedDateTime.ofInstant(Instant.ofEpochMilli(record.time), this.zone), text);
+        text.append(' ');
+        appendField(text, record.remoteHost);
+        text.append(' ');
+        appendField(text, record.user);
+        text.append(' ').append(record.anonymous ? 'a' : 'r');
+        text.append(" ftp ").append(record.complete ? "success" : "failure").append('\n');
+    }
+
+    /**
+     * A field without white space, so every record has the same number of fields.
+     */
+    private static void appendField(final StringBuilder text, final String value) {
+        if (value == null || value.isEmpty()) {
+            text.append('-');
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            text.append(Character.isWhitespace(c) ? '_' : c);
+        }
+    }
+
+    private void commit(final RollingAuditFile file, final StringBuilder text, final long count) {
+        if (count == 0) {
+            return;
+        }
+        try {
+            file.append(ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8)));
+            file.commit();
+            this.written.add(count);
+        } catch (IOException | RuntimeException e) {
+            this.dropped.add(count);
+            log.log(Level.SEVERE, "Failed to write " + count + " audit records", e);
+        }
+    }
+
+    /**
+     * Number of records written to the files.
+     */
+    public long getWrittenCount() {
+        return this.written.sum();
+    }
+
+    /**
+     * Number of records lost, because the buffer was full or the file could not be written.
+     */
+    public long getDroppedCount() {
+        return this.dropped.sum();
+    }
+
+    /**
+     * Number of records in the buffer, waiting for the writer.
+     */
+    public long getPendingCount() {
+        return Math.max(this.claimed.get() - this.consumed, 0);
+    }
+
+    /**
+     * Number of records the buffer holds.
+     */
+    public int getCapacity() {
+        return this.records.length;
+    }
+
+    /**
+     * Write the records left in the buffer and close the file. Records offered from now on are dropped.
+     */
+    @Override
+    public void close() throws IOException {
+        this.closed = true;
+        LockSupport.unpark(this.writer);
+        try {
+            this.writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            this.file.close();
+        } finally {
+            if (this.loginFile != null) {
+                this.loginFile.close();
+            }
+        }
+    }
+
+    /**
+     * What happens to a record when the buffer is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Wait for room in the buffer, which holds back the session until the writer caught up.
+         */
+        BLOCK,
+
+        /**
+         * Drop the record, the session is never held back.
+         */
+        DROP,
+
+        /**
+         * Wait for room for one of every sample rate records, drop the others.
+         */
+        SAMPLE
+    }
+
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.audit;
+
+import lombok.RequiredArgsConstructor;
+import org.apache.ftpserver.ftplet.*;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Optional;
+
+/**
+ * Ftplet which records the file transfers, and the logins if the log has a file for them, in the {@link AuditLog},
+ * both the successful and the failed ones. The session thread only copies the fields of the record into the buffer, the log is written in the background.
+ *
+ * @author Vimhe
+ */
+@RequiredArgsConstructor
+public class AuditLogFtplet extends DefaultFtplet {
+
+    private static final String START_ATTRIBUTE = AuditLogFtplet.class.getName() + ".start";
+
+    private static final String ANONYMOUS = "anonymous";
+
+    private final AuditLog auditLog;
+
+    @Override
+    public FtpletResult beforeCommand(final FtpSession session, final FtpRequest request)
+        throws FtpException, IOException {
+        if (direction(request.getCommand()) != 0) {
+            session.setAttribute(START_ATTRIBUTE, System.currentTimeMillis());
+        }
+        return FtpletResult.DEFAULT;
+    }
+
+    @Override
+    public FtpletResult afterCommand(final FtpSession session, final FtpRequest request, final FtpReply reply)
+        throws FtpException, IOException {
+        int code = reply == null ? 0 : reply.getCode();
+        String command = request.getCommand();
+        if ("PASS".equals(command) && (code == FtpReply.REPLY_230_USER_LOGGED_IN || code >= 400)) {
+            this.loggedIn(session, code == FtpReply.REPLY_230_USER_LOGGED_IN);
+            return FtpletResult.DEFAULT;
+        }
+
+        char direction = direction(command);
+        if (direction != 0 && (reply instanceof DataTransferFtpReply || code >= 400)) {
+            this.transferred(session, request, reply, direction);
+        }
+        return FtpletResult.DEFAULT;
+    }
+
+    private void loggedIn(final FtpSession session, final boolean complete) {
+        if (!this.auditLog.isRecordingLogins()) {
+            return;
+        }
+        String user = userName(session);
+        String remoteHost = remoteHost(session);
+        long time = System.currentTimeMillis();
+
+        AuditRecord record = this.auditLog.claim();
+        if (record == null) {
+            return;
+        }
+        record.time = time;
+        record.durationMillis = 0;
+        record.remoteHost = remoteHost;
+        record.bytes = 0;
+        record.file = null;
+        record.binary = false;
+        record.direction = AuditRecord.LOGIN;
+        record.anonymous = ANONYMOUS.equals(user);
+        record.user = user;
+        record.complete = complete;
+        this.auditLog.publish(record);
+    }
+
+    private void transferred(final FtpSession session, final FtpRequest request, final FtpReply reply,
+                             final char direction) {
+        long time = System.currentTimeMillis();
+        Object start = session.getAttribute(START_ATTRIBUTE);
+        session.removeAttribute(START_ATTRIBUTE);
+        long duration = start instanceof Long ? time - (Long) start : 0;
+
+        long bytes = 0;
+        String file = request.getArgument();
+        if (reply instanceof DataTransferFtpReply) {
+            DataTransferFtpReply transferReply = (DataTransferFtpReply) reply;
+            bytes = transferReply.getBytesTransferred();
+            file = Optional.ofNullable(transferReply.getFile()).map(FtpFile::getAbsolutePath).orElse(file);
+        }
+        String user = userName(session);
+        String remoteHost = remoteHost(session);
+        boolean binary = session.getDataType() != DataType.ASCII;
+
+        AuditRecord record = this.auditLog.claim();
+        if (record == null) {
+            return;
+        }
+        record.time = time;
+        record.durationMillis = duration;
+        record.remoteHost = remoteHost;
+        record.bytes = bytes;
+        record.file = file;
+        record.binary = binary;
+        record.direction = direction;
+        record.anonymous = ANONYMOUS.equals(user);
+        record.user = user;
+        record.complete = reply != null && reply.getCode() < 300;
+        this.auditLog.publish(record);
+    }
+
+    /**
+     * The direction of a transfer command, 0 for any other command.
+     */
+    private static char direction(final String command) {
+        switch (command) {
+            case "RETR":
+                return AuditRecord.OUTGOING;
+            case "STOR":
+            case "STOU":
+            case "APPE":
+                return AuditRecord.INCOMING;
+            default:
+                return 0;
+        }
+    }
+
+    private static String userName(final FtpSession session) {
+        User user = session.getUser();
+        return user == null ? session.getUserArgument() : user.getName();
+    }
+
+    private static String remoteHost(final FtpSession session) {
+        InetSocketAddress address = session.getClientAddress();
+        return address == null ? null : address.getAddress().getHostAddress();
+    }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.audit;
+
+/**
+ * A slot of the ring buffer of {@link AuditLog}, allocated once and filled again for every record, with the fields of
+ * an xferlog line.
+ *
+ * @author Vimhe
+ */
+final class AuditRecord {
+
+    static final char INCOMING = 'i';
+
+    static final char OUTGOING = 'o';
+
+    /**
+     * Not an xferlog direction, marks a login, which is written to the log of the logins.
+     */
+    static final char LOGIN = 'l';
+
+    /**
+     * Sequence of the record the slot holds, written last by the producer, so the writer sees a complete record once
+     * it reads the sequence it waits for.
+     */
+    volatile long sequence = -1;
+
+    /**
+     * Sequence the slot was claimed for, only read by the producer which claimed it.
+     */
+    long claimed;
+
+    long time;
+
+    long durationMillis;
+
+    String remoteHost;
+
+    long bytes;
+
+    String file;
+
+    boolean binary;
+
+    char direction;
+
+    boolean anonymous;
+
+    String user;
+
+    boolean complete;
+
+    /**
+     * Whether the slot was handed back without a record, the writer only passes over it.
+     */
+    boolean skipped;
+
+    /**
+     * Drop the references, so the strings of old records do not stay reachable from the buffer.
+     */
+    void clear() {
+        this.skipped = false;
+        this.remoteHost = null;
+        this.file = null;
+        this.user = null;
+    }
+
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.audit;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only file which is rolled over once it would grow beyond its maximum size: the file is renamed to
+ * {@code <name>.1}, the older ones shift to {@code <name>.2} and so on, and the oldest beyond the history is deleted.
+ * Not thread safe, only the writer of {@link AuditLog} uses it.
+ *
+ * @author Vimhe
+ */
+class RollingAuditFile implements Closeable {
+
+    private final Path file;
+
+    private final long maximumSize;
+
+    private final int maximumHistory;
+
+    private FileChannel channel;
+
+    private long size;
+
+    RollingAuditFile(final Path file, final long maximumSize, final int maximumHistory) throws IOException {
+        this.file = file.toAbsolutePath();
+        this.maximumSize = maximumSize;
+        this.maximumHistory = Math.max(maximumHistory, 0);
+        Files.createDirectories(this.file.getParent());
+        this.open();
+    }
+
+    private void open() throws IOException {
+        this.channel = FileChannel.open(this.file,
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.size = this.channel.size();
+    }
+
+    /**
+     * Append a batch of records, which is never split across two files.
+     */
+    void append(final ByteBuffer buffer) throws IOException {
+        if (!this.channel.isOpen()) {
+            // A roll over failed half way
+            this.open();
+        }
+        if (this.size > 0 && this.size + buffer.remaining() > this.maximumSize) {
+            this.roll();
+        }
+        while (buffer.hasRemaining()) {
+            this.size += this.channel.write(buffer);
+        }
+    }
+
+    /**
+     * Force the appended records to the storage device, once per batch.
+     */
+    void commit() throws IOException {
+        this.channel.force(false);
+    }
+
+    private void roll() throws IOException {
+        this.commit();
+        this.channel.close();
+
+        if (this.maximumHistory == 0) {
+            Files.delete(this.file);
+        } else {
+            Files.deleteIfExists(this.rolled(this.maximumHistory));
+            for (int i = this.maximumHistory - 1; i > 0; i--) {
+                Path rolled = this.rolled(i);
+                if (Files.exists(rolled)) {
+                    Files.move(rolled, this.rolled(i + 1), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            Files.move(this.file, this.rolled(1), StandardCopyOption.REPLACE_EXISTING);
+        }
+        this.open();
+    }
+
+    private Path rolled(final int index) {
+        return this.file.resolveSibling(this.file.getFileName() + "." + index);
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.bandwidth;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.apache.ftpserver.ftplet.AuthorizationRequest;
+import org.apache.ftpserver.ftplet.Authority;
+import org.apache.ftpserver.usermanager.impl.TransferRateRequest;
+
+/**
+ * Bandwidth limits of a user, in bytes per second, 0 meaning unlimited. Unlike
+ * {@link org.apache.ftpserver.usermanager.impl.TransferRatePermission} the rates are not limited to 2GB/s, a
+ * {@link TransferRateRequest} gets them capped to what fits.
+ *
+ * @author Vimhe
+ */
+@Getter
+@RequiredArgsConstructor
+public class BandwidthPermission implements Authority {
+
+    private final long maxDownloadRate;
+
+    private final long maxUploadRate;
+
+    private final long maxTotalDownloadRate;
+
+    private final long maxTotalUploadRate;
+
+    @Override
+    public boolean canAuthorize(final AuthorizationRequest request) {
+        return request instanceof BandwidthRequest || request instanceof TransferRateRequest;
+    }
+
+    @Override
+    public AuthorizationRequest authorize(final AuthorizationRequest request) {
+        if (request instanceof BandwidthRequest) {
+            BandwidthRequest bandwidthRequest = (BandwidthRequest) request;
+            bandwidthRequest.setMaxDownloadRate(this.maxDownloadRate);
+            bandwidthRequest.setMaxUploadRate(this.maxUploadRate);
+            bandwidthRequest.setMaxTotalDownloadRate(this.maxTotalDownloadRate);
+            bandwidthRequest.setMaxTotalUploadRate(this.maxTotalUploadRate);
+            return request;
+        }
+        if (request instanceof TransferRateRequest) {
+            TransferRateRequest transferRateRequest = (TransferRateRequest) request;
+            transferRateRequest.setMaxDownloadRate((int) Math.min(Integer.MAX_VALUE, this.maxDownloadRate));
+            transferRateRequest.setMaxUploadRate((int) Math.min(Integer.MAX_VALUE, this.maxUploadRate));
+            return request;
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.bandwidth;
+
+import lombok.Data;
+import org.apache.ftpserver.ftplet.AuthorizationRequest;
+
+/**
+ * Request for the bandwidth limits of a user, in bytes per second, 0 meaning unlimited.
+ *
+ * @author Vimhe
+ */
+@Data
+public class BandwidthRequest implements AuthorizationRequest {
+
+    /**
+     * Limit of a single download.
+     */
+    private long maxDownloadRate;
+
+    /**
+     * Limit of a single upload.
+     */
+    private long maxUploadRate;
+
+    /**
+     * Limit of all downloads of the user together.
+     */
+    private long maxTotalDownloadRate;
+
+    /**
+     * Limit of all uploads of the user together.
+     */
+    private long maxTotalUploadRate;
+
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.bandwidth;
+
+import org.apache.ftpserver.ftplet.User;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.listener.Listener;
+import org.apache.ftpserver.usermanager.impl.TransferRateRequest;
+
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hierarchical bandwidth shaping of data transfers: every transfer is limited by its own rate, the total rate of its
+ * user, of its listener and of the whole server, each level being a {@link TokenBucket} shared by everything below it.
+ * Capacity a level does not use is left to the others on the same level, up to their own limits. Downloads and
+ * uploads are shaped separately.
+ * <p>
+ * Users without a total rate get no bucket of their own, and a transfer no level limits passes through with a shared
+ * unlimited {@link Throttle}.
+ *
+ * @author Vimhe
+ */
+public class BandwidthShaper {
+
+    private static final Throttle UNLIMITED = new Throttle(new TokenBucket[0]);
+
+    private final Duration burst;
+
+    private final TokenBucket serverDownload;
+
+    private final TokenBucket serverUpload;
+
+    private final Map<Listener, TokenBucket> listenerDownloads = new ConcurrentHashMap<>();
+
+    private final Map<Listener, TokenBucket> listenerUploads = new ConcurrentHashMap<>();
+
+    private final Map<String, TokenBucket> userDownloads = new ConcurrentHashMap<>();
+
+    private final Map<String, TokenBucket> userUploads = new ConcurrentHashMap<>();
+
+    /**
+     * @param downloadRate total rate of all downloads of the server, 0 if unlimited
+     * @param uploadRate   total rate of all uploads of the server, 0 if unlimited
+     * @param burst        how far any level may run ahead of its rate
+     */
+    public BandwidthShaper(final long downloadRate, final long uploadRate, final Duration burst) {
+        this.burst = burst;
+        this.serverDownload = new TokenBucket(downloadRate, burst);
+        this.serverUpload = new TokenBucket(uploadRate, burst);
+    }
+
+    /**
+     * Limit the total rate of all transfers of a listener.
+     */
+    public void addListener(final Listener listener, final long downloadRate, final long uploadRate,
+                            final Duration burst) {
+        this.listenerDownloads.put(listener, new TokenBucket(downloadRate, burst == null ? this.burst : burst));
+        this.listenerUploads.put(listener, new TokenBucket(uploadRate, burst == null ? this.burst : burst));
+    }
+
+    /**
+     * Whether transfers are limited beyond the limits of single users.
+     */
+    public boolean isShaping() {
+        return this.serverDownload.isLimited() || this.serverUpload.isLimited()
+            || this.listenerDownloads.values().stream().anyMatch(TokenBucket::isLimited)
+            || this.listenerUploads.values().stream().anyMatch(TokenBucket::isLimited);
+    }
+
+    /**
+     * The throttle of a transfer which is about to start, with the current limits of the session's user.
+     */
+    public Throttle open(final FtpIoSession session, final boolean download) {
+        long rate = 0;
+        long totalRate = 0;
+        User user = session.getUser();
+        if (user != null) {
+            BandwidthRequest request = (BandwidthRequest) user.authorize(new BandwidthRequest());
+            if (request != null) {
+                rate = download ? request.getMaxDownloadRate() : request.getMaxUploadRate();
+                totalRate = download ? request.getMaxTotalDownloadRate() : request.getMaxTotalUploadRate();
+            } else {
+                // Users created elsewhere only know the per transfer limit
+                TransferRateRequest rateRequest = (TransferRateRequest) user.authorize(new TransferRateRequest());
+                if (rateRequest != null) {
+                    rate = download ? rateRequest.getMaxDownloadRate() : rateRequest.getMaxUploadRate();
+                }
+            }
+        }
+
+        List<TokenBucket> buckets = new ArrayList<>(4);
+        buckets.add(new TokenBucket(rate, this.burst));
+        if (user != null) {
+            Map<String, TokenBucket> userBuckets = download ? this.userDownloads : this.userUploads;
+            TokenBucket userBucket = totalRate > 0
+                ? userBuckets.computeIfAbsent(user.getName(), name -> new TokenBucket(0, this.burst))
+                : userBuckets.get(user.getName());
+            if (userBucket != null) {
+                // Follow changes of the user, e.g. from a reloaded user store, lifting the limit of running transfers
+                userBucket.setRate(totalRate);
+                buckets.add(userBucket);
+            }
+        }
+        if (session.getListener() != null) {
+            buckets.add((download ? this.listenerDownloads : this.listenerUploads).get(session.getListener()));
+        }
+        buckets.add(download ? this.serverDownload : this.serverUpload);
+
+        TokenBucket[] limited = buckets.stream()
+            .filter(bucket -> bucket != null && bucket.isLimited())
+            .toArray(TokenBucket[]::new);
+        return limited.length == 0 ? UNLIMITED : new Throttle(limited);
+    }
+
+    /**
+     * Shapes a single transfer through all levels it belongs to.
+     */
+    public static final class Throttle {
+
+        /**
+         * Smallest chunk a limited transfer is split into.
+         */
+        private static final long MINIMUM_CHUNK = 8 * 1024;
+
+        private final TokenBucket[] buckets;
+
+        private Throttle(final TokenBucket[] buckets) {
+            this.buckets = buckets;
+        }
+
+        public boolean isLimited() {
+            return this.buckets.length > 0;
+        }
+
+        /**
+         * How much to transfer at once, small enough that a limited transfer is not bursty.
+         */
+        public long chunkSize(final long maximum) {
+            long chunk = maximum;
+            for (TokenBucket bucket : this.buckets) {
+                // About 20 chunks per second at the rate of the bucket
+                chunk = Math.min(chunk, Math.max(MINIMUM_CHUNK, bucket.getRate() / 20));
+            }
+            return chunk;
+        }
+
+        /**
+         * Account for bytes which were just transferred, and hold back as long as the most congested level requires.
+         */
+        public void acquire(final long bytes) throws InterruptedIOException {
+            if (this.buckets.length == 0) {
+                return;
+            }
+
+            long now = System.nanoTime();
+            long delay = 0;
+            for (TokenBucket bucket : this.buckets) {
+                delay = Math.max(delay, bucket.consume(bytes, now));
+            }
+
+            if (delay > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Data transfer interrupted");
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.bandwidth;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free rate limiter, a token bucket expressed in virtual time (GCRA): the only state is the time at which the
+ * bucket would be empty again, advanced with a single compare-and-set per transferred chunk. Transfers sharing a bucket
+ * queue behind each other in the order they consumed, so a congested bucket is shared evenly, while an uncongested one
+ * lets every transfer run up to its other limits.
+ *
+ * @author Vimhe
+ */
+public class TokenBucket {
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Bytes per second, 0 if unlimited.
+     */
+    private volatile long rate;
+
+    /**
+     * How far the bucket may run ahead of the rate, in nanoseconds.
+     */
+    private final long burst;
+
+    private final AtomicLong emptyAt = new AtomicLong(Long.MIN_VALUE);
+
+    public TokenBucket(final long rate, final Duration burst) {
+        this.rate = Math.max(0, rate);
+        this.burst = Math.max(0, burst.toNanos());
+    }
+
+    public long getRate() {
+        return this.rate;
+    }
+
+    public void setRate(final long rate) {
+        this.rate = Math.max(0, rate);
+    }
+
+    public boolean isLimited() {
+        return this.rate > 0;
+    }
+
+    /**
+     * Account for bytes which were just transferred and return how many nanoseconds the transfer has to hold back
+     * before it continues.
+     */
+    public long consume(final long bytes, final long now) {
+        long rate = this.rate;
+        if (rate <= 0 || bytes <= 0) {
+            return 0;
+        }
+
+        long interval = bytes <= Long.MAX_VALUE / NANOS_PER_SECOND
+            ? bytes * NANOS_PER_SECOND / rate
+            : (long) ((double) bytes * NANOS_PER_SECOND / rate);
+
+        long previous;
+        long next;
+        do {
+            previous = this.emptyAt.get();
+            // An idle bucket starts over from now, so it never saves up more than the burst
+            next = Math.max(previous, now) + interval;
+        } while (!this.emptyAt.compareAndSet(previous, next));
+
+        return Math.max(0, next - now - this.burst);
+    }
+
+}
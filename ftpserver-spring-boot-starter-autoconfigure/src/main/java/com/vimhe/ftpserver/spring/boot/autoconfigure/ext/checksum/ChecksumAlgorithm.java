@@ -0,0 +1,137 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.checksum;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32;
+
+/**
+ * Digest algorithms of the checksum commands, by their name in HASH and OPTS HASH and their X command.
+ *
+ * @author Vimhe
+ */
+@Getter
+@RequiredArgsConstructor
+public enum ChecksumAlgorithm {
+    CRC32("CRC32", "XCRC", 4),
+    MD5("MD5", "XMD5", 16),
+    SHA_1("SHA-1", "XSHA1", 20),
+    SHA_256("SHA-256", "XSHA256", 32),
+    SHA_512("SHA-512", "XSHA512", 64);
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * Name of the algorithm in HASH replies and in FEAT.
+     */
+    private final String hashName;
+
+    /**
+     * Command replying the digest of a file with this algorithm.
+     */
+    private final String command;
+
+    /**
+     * Length of the digest in bytes.
+     */
+    private final int digestLength;
+
+    /**
+     * A new digest, CRC32 is adapted to a {@link MessageDigest} of four bytes.
+     */
+    public MessageDigest newDigest() {
+        if (this == CRC32) {
+            return new Crc32Digest();
+        }
+        try {
+            return MessageDigest.getInstance(this.hashName);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform provides MD5, SHA-1 and SHA-256, SHA-512 is provided by all common ones
+            throw new IllegalStateException(this.hashName + " is not available", e);
+        }
+    }
+
+    /**
+     * The algorithm named like in HASH, case insensitive, null if unknown.
+     */
+    public static ChecksumAlgorithm forHashName(final String hashName) {
+        for (ChecksumAlgorithm algorithm : values()) {
+            if (algorithm.hashName.equalsIgnoreCase(hashName)) {
+                return algorithm;
+            }
+        }
+        return null;
+    }
+
+    static String hex(final byte[] digest) {
+        char[] chars = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; ++i) {
+            chars[i * 2] = HEX[(digest[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX[digest[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    private static final class Crc32Digest extends MessageDigest {
+
+        private final CRC32 crc = new CRC32();
+
+        private Crc32Digest() {
+            super("CRC32");
+        }
+
+        @Override
+        protected int engineGetDigestLength() {
+            return 4;
+        }
+
+        @Override
+        protected void engineUpdate(final byte input) {
+            this.crc.update(input);
+        }
+
+        @Override
+        protected void engineUpdate(final byte[] input, final int offset, final int length) {
+            this.crc.update(input, offset, length);
+        }
+
+        @Override
+        protected void engineUpdate(final ByteBuffer input) {
+            // Direct buffers are checksummed in place
+            this.crc.update(input);
+        }
+
+        @Override
+        protected byte[] engineDigest() {
+            long value = this.crc.getValue();
+            this.crc.reset();
+            return new byte[]{(byte) (value >> 24), (byte) (value >> 16), (byte) (value >> 8), (byte) value};
+        }
+
+        @Override
+        protected void engineReset() {
+            this.crc.reset();
+        }
+
+    }
+
+}
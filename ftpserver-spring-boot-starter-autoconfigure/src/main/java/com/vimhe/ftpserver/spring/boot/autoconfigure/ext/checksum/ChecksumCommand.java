@@ -0,0 +1,143 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.checksum;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.java.Log;
+import org.apache.ftpserver.command.AbstractCommand;
+import org.apache.ftpserver.command.Command;
+import org.apache.ftpserver.filesystem.nativefs.impl.NativeFtpFile;
+import org.apache.ftpserver.ftplet.DefaultFtpReply;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.impl.FtpServerContext;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.logging.Level;
+
+/**
+ * HASH and the X commands XCRC, XMD5, XSHA1, XSHA256 and XSHA512, replying the digest of a whole file of the native
+ * or nio file system from the {@link ChecksumIndex}. HASH replies like draft-bryan-ftpext-hash,
+ * "213 SHA-256 0-1024 digest file", with the algorithm selected by OPTS HASH, see {@link HashOptsCommand}. The X
+ * commands reply "250 digest". Ranges of files are not supported.
+ * <p>
+ * The server strips the X of every command, an X command has to be registered without it, e.g. XCRC as CRC. XMD5
+ * arrives as MD5, which is told apart by the request line and passed on to the MD5 command otherwise.
+ *
+ * @author Vimhe
+ */
+@Log
+@RequiredArgsConstructor
+public class ChecksumCommand extends AbstractCommand {
+
+    /**
+     * Session attribute under which OPTS HASH keeps the selected algorithm.
+     */
+    static final String ALGORITHM_ATTRIBUTE = "HASH.algorithm";
+
+    /**
+     * The command, HASH or one of the X commands.
+     */
+    private final String command;
+
+    private final ChecksumIndex index;
+
+    /**
+     * The algorithm of an X command, the default one for HASH.
+     */
+    private final ChecksumAlgorithm algorithm;
+
+    /**
+     * The command registered under the same name, for requests without the X, null if there is none.
+     */
+    private final Command unprefixed;
+
+    @Override
+    public void execute(final FtpIoSession session, final FtpServerContext context, final FtpRequest request)
+        throws IOException, FtpException {
+        if (this.unprefixed != null
+            && !request.getRequestLine().trim().toUpperCase(Locale.ENGLISH).startsWith(this.command)) {
+            this.unprefixed.execute(session, context, request);
+            return;
+        }
+        session.resetState();
+
+        if (!request.hasArgument()) {
+            session.write(new DefaultFtpReply(FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+                "No file name given"));
+            return;
+        }
+
+        String fileName = request.getArgument();
+        FtpFile file = session.getFileSystemView().getFile(fileName);
+        if (file == null || !file.isFile()) {
+            session.write(new DefaultFtpReply(FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN,
+                fileName + ": Not a plain file"));
+            return;
+        }
+        if (!file.isReadable()) {
+            session.write(new DefaultFtpReply(FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN,
+                fileName + ": Permission denied"));
+            return;
+        }
+        if (!(file instanceof NativeFtpFile)) {
+            session.write(new DefaultFtpReply(FtpReply.REPLY_504_COMMAND_NOT_IMPLEMENTED_FOR_THAT_PARAMETER,
+                "Not supported by this file system"));
+            return;
+        }
+
+        ChecksumAlgorithm selected = "HASH".equals(this.command)
+            ? selectedAlgorithm(session, this.algorithm) : this.algorithm;
+        Path path = ((NativeFtpFile) file).getPhysicalFile().toPath();
+        String digest;
+        try {
+            digest = this.index.digest(path, selected);
+        } catch (IOException e) {
+            log.log(Level.FINE, "Could not hash " + path, e);
+            session.write(new DefaultFtpReply(FtpReply.REPLY_451_REQUESTED_ACTION_ABORTED,
+                "Could not read " + fileName));
+            return;
+        }
+        if (digest == null) {
+            session.write(new DefaultFtpReply(FtpReply.REPLY_450_REQUESTED_FILE_ACTION_NOT_TAKEN,
+                "Too many files are being hashed, try again later"));
+            return;
+        }
+
+        if ("HASH".equals(this.command)) {
+            session.write(new DefaultFtpReply(FtpReply.REPLY_213_FILE_STATUS,
+                selected.getHashName() + " 0-" + file.getSize() + " " + digest + " " + fileName));
+        } else {
+            session.write(new DefaultFtpReply(FtpReply.REPLY_250_REQUESTED_FILE_ACTION_OKAY, digest));
+        }
+    }
+
+    /**
+     * The algorithm selected by OPTS HASH in the session, the default one otherwise.
+     */
+    static ChecksumAlgorithm selectedAlgorithm(final FtpIoSession session, final ChecksumAlgorithm defaultAlgorithm) {
+        return Optional.ofNullable((ChecksumAlgorithm) session.getAttribute(ALGORITHM_ATTRIBUTE))
+            .orElse(defaultAlgorithm);
+    }
+
+}
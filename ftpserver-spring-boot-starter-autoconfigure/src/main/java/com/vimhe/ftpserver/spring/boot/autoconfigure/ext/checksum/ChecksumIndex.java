@@ -0,0 +1,503 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.checksum;
+
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.java.Log;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+
+/**
+ * Digests of files, kept in memory and in an append-only index file, keyed by the physical path and valid as long as
+ * the size and the modification time of the file are unchanged. Uploads are digested while they are written, see
+ * {@link Upload}, other files on their first request by a bounded pool of hasher threads, which reads the file once
+ * for the requested algorithm and all upload algorithms. A request for a file which is being hashed already waits for
+ * that pass, and requests beyond the pool and its queue are rejected instead of piling up.
+ * <p>
+ * The index file is a cache and is not forced: a line torn by a crash is skipped on load, and a lost digest is
+ * computed again. Each line holds the path, the size, the modification time and the digests known then, the last line
+ * of a path wins, and the file is rewritten on load once most of its lines are superseded.
+ *
+ * @author Vimhe
+ */
+@Log
+public class ChecksumIndex implements Closeable {
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Superseded lines tolerated in the index file beyond the number of entries before it is rewritten.
+     */
+    private static final int COMPACTION_SLACK = 1024;
+
+    private static final char SEPARATOR = '\t';
+
+    private final Path indexFile;
+
+    private final Set<ChecksumAlgorithm> uploadAlgorithms;
+
+    private final ConcurrentMap<Path, Entry> entries = new ConcurrentHashMap<>(1024);
+
+    private final ConcurrentMap<Computation, CompletableFuture<String>> computations = new ConcurrentHashMap<>(16);
+
+    private final ThreadPoolExecutor hasher;
+
+    /**
+     * Appends to the index file, null if the index is kept in memory only.
+     */
+    private final Writer writer;
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder computedCount = new LongAdder();
+
+    private final LongAdder rejectedCount = new LongAdder();
+
+    private final LongAdder uploadCount = new LongAdder();
+
+    /**
+     * @param indexFile        the index file, null to keep the digests in memory only
+     * @param uploadAlgorithms the algorithms uploads are digested with
+     * @param hasherThreads    the number of files hashed at once on request
+     * @param queueCapacity    the number of requests waiting for a hasher thread, zero for none
+     */
+    public ChecksumIndex(final Path indexFile, final Collection<ChecksumAlgorithm> uploadAlgorithms,
+                         final int hasherThreads, final int queueCapacity) throws IOException {
+        this.indexFile = indexFile == null ? null : indexFile.toAbsolutePath();
+        this.uploadAlgorithms = uploadAlgorithms.isEmpty()
+            ? EnumSet.noneOf(ChecksumAlgorithm.class) : EnumSet.copyOf(uploadAlgorithms);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        BlockingQueue<Runnable> queue = queueCapacity > 0
+            ? new ArrayBlockingQueue<>(queueCapacity) : new SynchronousQueue<>();
+        this.hasher = new ThreadPoolExecutor(hasherThreads, hasherThreads, 0, TimeUnit.MILLISECONDS, queue,
+            runnable -> {
+                Thread thread = new Thread(runnable, "ftp-checksum-hasher-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.AbortPolicy());
+
+        if (this.indexFile == null) {
+            this.writer = null;
+            return;
+        }
+        boolean torn = this.load();
+        this.writer = Files.newBufferedWriter(this.indexFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+            StandardOpenOption.APPEND);
+        if (torn) {
+            // Terminate the torn last line, so the next one is not appended to it
+            this.writer.write('\n');
+        }
+    }
+
+    /**
+     * The digest of a regular file, from the index if it is up to date and computed otherwise.
+     *
+     * @return the digest in hex, null if the hasher is busy
+     */
+    public String digest(final Path file, final ChecksumAlgorithm algorithm) throws IOException {
+        Path path = key(file);
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        Entry entry = this.entries.get(path);
+        if (entry != null && entry.matches(attributes)) {
+            String digest = entry.digests.get(algorithm);
+            if (digest != null) {
+                this.hitCount.increment();
+                return digest;
+            }
+        }
+
+        Computation computation = new Computation(path, algorithm);
+        CompletableFuture<String> future = new CompletableFuture<>();
+        CompletableFuture<String> running = this.computations.putIfAbsent(computation, future);
+        if (running == null) {
+            try {
+                this.hasher.execute(() -> {
+                    try {
+                        future.complete(this.hash(path, algorithm));
+                    } catch (IOException | RuntimeException e) {
+                        future.completeExceptionally(e);
+                    } finally {
+                        this.computations.remove(computation, future);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                this.computations.remove(computation, future);
+                this.rejectedCount.increment();
+                return null;
+            }
+            running = future;
+        }
+
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while hashing " + path);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Hashing " + path + " failed", e.getCause());
+        }
+    }
+
+    /**
+     * Digests for an upload of the whole file, null if no upload algorithm is configured.
+     */
+    public Upload upload(final Path file) {
+        if (this.uploadAlgorithms.isEmpty()) {
+            return null;
+        }
+        return new Upload(key(file));
+    }
+
+    /**
+     * Read the file once and digest it with the requested and all upload algorithms. The digests are indexed unless
+     * the file changed meanwhile.
+     */
+    private String hash(final Path file, final ChecksumAlgorithm algorithm) throws IOException {
+        this.computedCount.increment();
+        Set<ChecksumAlgorithm> algorithms = EnumSet.of(algorithm);
+        algorithms.addAll(this.uploadAlgorithms);
+        Map<ChecksumAlgorithm, MessageDigest> digests = new EnumMap<>(ChecksumAlgorithm.class);
+        algorithms.forEach(each -> digests.put(each, each.newDigest()));
+
+        BasicFileAttributes before;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            before = Files.readAttributes(file, BasicFileAttributes.class);
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            while (channel.read(buffer) >= 0) {
+                for (MessageDigest digest : digests.values()) {
+                    digest.update(buffer.array(), 0, buffer.position());
+                }
+                buffer.clear();
+            }
+        }
+
+        Map<ChecksumAlgorithm, String> hex = finish(digests);
+        BasicFileAttributes after = Files.readAttributes(file, BasicFileAttributes.class);
+        if (after.size() == before.size() && after.lastModifiedTime().equals(before.lastModifiedTime())) {
+            this.put(file, new Entry(after.size(), after.lastModifiedTime().toMillis(), hex));
+        } else {
+            log.fine(() -> "Not indexing " + file + ", it changed while it was hashed");
+        }
+        return hex.get(algorithm);
+    }
+
+    private void put(final Path file, final Entry entry) {
+        this.entries.merge(file, entry, Entry::merge);
+        if (this.writer == null) {
+            return;
+        }
+
+        String line = line(file, entry);
+        if (line == null) {
+            // Kept in memory only
+            return;
+        }
+        synchronized (this.writer) {
+            try {
+                this.writer.write(line);
+                this.writer.flush();
+            } catch (IOException e) {
+                log.log(Level.WARNING, "Could not append to the checksum index " + this.indexFile, e);
+            }
+        }
+    }
+
+    /**
+     * Load the index file and rewrite it if most of its lines are superseded.
+     *
+     * @return whether the last line of the index file is torn
+     */
+    private boolean load() throws IOException {
+        if (!Files.exists(this.indexFile)) {
+            return false;
+        }
+
+        int lines = 0;
+        // Decoding is lenient, a torn line may end inside a character
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(Files.newInputStream(this.indexFile),
+            StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                ++lines;
+                int separator = line.indexOf(SEPARATOR);
+                Entry entry = separator < 0 ? null : parse(line.substring(separator + 1));
+                if (entry == null) {
+                    continue;
+                }
+                try {
+                    this.entries.merge(Paths.get(line.substring(0, separator)), entry, Entry::merge);
+                } catch (InvalidPathException e) {
+                    log.fine(() -> "Skipping an invalid path of the checksum index: " + e.getMessage());
+                }
+            }
+        }
+
+        if (lines > this.entries.size() * 2 + COMPACTION_SLACK) {
+            this.compact();
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(this.indexFile, StandardOpenOption.READ)) {
+            if (channel.size() == 0) {
+                return false;
+            }
+            ByteBuffer last = ByteBuffer.allocate(1);
+            channel.read(last, channel.size() - 1);
+            return last.get(0) != '\n';
+        }
+    }
+
+    /**
+     * Rewrite the index file with one line per entry, dropping the entries of files which are gone.
+     */
+    private void compact() throws IOException {
+        this.entries.keySet().removeIf(file -> !Files.isRegularFile(file));
+        Path compacted = this.indexFile.resolveSibling(this.indexFile.getFileName() + ".tmp");
+        try (Writer out = Files.newBufferedWriter(compacted, StandardCharsets.UTF_8)) {
+            for (Map.Entry<Path, Entry> entry : this.entries.entrySet()) {
+                String line = line(entry.getKey(), entry.getValue());
+                if (line != null) {
+                    out.write(line);
+                }
+            }
+        }
+        Files.move(compacted, this.indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.info(() -> "Compacted the checksum index " + this.indexFile + " to " + this.entries.size() + " entries");
+    }
+
+    /**
+     * The index line of an entry, null if the path can not be represented in the index file.
+     */
+    private static String line(final Path file, final Entry entry) {
+        String path = file.toString();
+        if (path.indexOf('\n') >= 0 || path.indexOf('\r') >= 0 || path.indexOf(SEPARATOR) >= 0) {
+            return null;
+        }
+        StringBuilder line = new StringBuilder(path.length() + 128)
+            .append(path).append(SEPARATOR)
+            .append(entry.size).append(SEPARATOR)
+            .append(entry.modified).append(SEPARATOR);
+        entry.digests.forEach((algorithm, digest) ->
+            line.append(algorithm.getHashName()).append('=').append(digest).append(','));
+        line.setCharAt(line.length() - 1, '\n');
+        return line.toString();
+    }
+
+    /**
+     * Parse size, modification time and digests of an index line, null if malformed. A digest torn at the end of the
+     * line is dropped.
+     */
+    private static Entry parse(final String fields) {
+        String[] values = fields.split(String.valueOf(SEPARATOR), -1);
+        if (values.length != 3) {
+            return null;
+        }
+
+        Map<ChecksumAlgorithm, String> digests = new EnumMap<>(ChecksumAlgorithm.class);
+        for (String value : values[2].split(",")) {
+            int equals = value.indexOf('=');
+            ChecksumAlgorithm algorithm = equals < 0 ? null
+                : ChecksumAlgorithm.forHashName(value.substring(0, equals));
+            String digest = equals < 0 ? "" : value.substring(equals + 1);
+            if (algorithm != null && digest.length() == algorithm.getDigestLength() * 2
+                && digest.chars().allMatch(c -> Character.digit(c, 16) >= 0)) {
+                digests.put(algorithm, digest);
+            }
+        }
+        if (digests.isEmpty()) {
+            return null;
+        }
+
+        try {
+            return new Entry(Long.parseLong(values[0]), Long.parseLong(values[1]), digests);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static Map<ChecksumAlgorithm, String> finish(final Map<ChecksumAlgorithm, MessageDigest> digests) {
+        Map<ChecksumAlgorithm, String> hex = new EnumMap<>(ChecksumAlgorithm.class);
+        digests.forEach((algorithm, digest) -> hex.put(algorithm, ChecksumAlgorithm.hex(digest.digest())));
+        return hex;
+    }
+
+    /**
+     * The real path of the file, so the files reached through links or through a relative home share their entry.
+     * Only files which do not exist, or cannot be resolved, fall back to the absolute path.
+     */
+    private static Path key(final Path file) {
+        try {
+            return file.toRealPath();
+        } catch (IOException e) {
+            return file.toAbsolutePath().normalize();
+        }
+    }
+
+    public int getEntryCount() {
+        return this.entries.size();
+    }
+
+    /**
+     * Requests answered from the index.
+     */
+    public long getHitCount() {
+        return this.hitCount.sum();
+    }
+
+    /**
+     * Files read by the hasher on request.
+     */
+    public long getComputedCount() {
+        return this.computedCount.sum();
+    }
+
+    /**
+     * Requests rejected because the hasher was busy.
+     */
+    public long getRejectedCount() {
+        return this.rejectedCount.sum();
+    }
+
+    /**
+     * Uploads digested while they were written.
+     */
+    public long getUploadCount() {
+        return this.uploadCount.sum();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.hasher.shutdownNow();
+        if (this.writer != null) {
+            synchronized (this.writer) {
+                this.writer.close();
+            }
+        }
+    }
+
+    /**
+     * Digests of the whole content of a file, written from the start. The bytes must be given in file order.
+     */
+    public final class Upload {
+        private final Path file;
+        private final Map<ChecksumAlgorithm, MessageDigest> digests = new EnumMap<>(ChecksumAlgorithm.class);
+
+        private Upload(final Path file) {
+            this.file = file;
+            ChecksumIndex.this.uploadAlgorithms.forEach(algorithm ->
+                this.digests.put(algorithm, algorithm.newDigest()));
+        }
+
+        /**
+         * Digest the remaining bytes of the buffer, leaving the buffer as it is.
+         */
+        public void update(final ByteBuffer bytes) {
+            for (MessageDigest digest : this.digests.values()) {
+                digest.update(bytes.duplicate());
+            }
+        }
+
+        /**
+         * Index the digests, once the file is written and closed.
+         */
+        public void complete() {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(this.file, BasicFileAttributes.class);
+                ChecksumIndex.this.put(this.file, new Entry(attributes.size(),
+                    attributes.lastModifiedTime().toMillis(), finish(this.digests)));
+                ChecksumIndex.this.uploadCount.increment();
+            } catch (IOException e) {
+                log.log(Level.FINE, "Not indexing the upload of " + this.file, e);
+            }
+        }
+    }
+
+    @EqualsAndHashCode
+    @RequiredArgsConstructor
+    private static final class Computation {
+        private final Path file;
+        private final ChecksumAlgorithm algorithm;
+    }
+
+    @RequiredArgsConstructor
+    private static final class Entry {
+        private final long size;
+
+        /**
+         * In milliseconds since the epoch.
+         */
+        private final long modified;
+
+        private final Map<ChecksumAlgorithm, String> digests;
+
+        private boolean matches(final BasicFileAttributes attributes) {
+            return attributes.size() == this.size && attributes.lastModifiedTime().toMillis() == this.modified;
+        }
+
+        /**
+         * The newer entry, with the digests of the older one if both describe the same content.
+         */
+        private static Entry merge(final Entry older, final Entry newer) {
+            if (older.size != newer.size || older.modified != newer.modified) {
+                return newer;
+            }
+            Map<ChecksumAlgorithm, String> digests = new EnumMap<>(older.digests);
+            digests.putAll(newer.digests);
+            return new Entry(newer.size, newer.modified, Collections.unmodifiableMap(digests));
+        }
+    }
+
+}
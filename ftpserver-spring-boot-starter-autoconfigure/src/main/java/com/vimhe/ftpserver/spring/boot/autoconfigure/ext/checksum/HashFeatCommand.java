@@ -0,0 +1,66 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.checksum;
+
+import lombok.RequiredArgsConstructor;
+import org.apache.ftpserver.command.AbstractCommand;
+import org.apache.ftpserver.command.impl.FEAT;
+import org.apache.ftpserver.ftplet.DefaultFtpReply;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.impl.FtpServerContext;
+import org.apache.ftpserver.impl.LocalizedFtpReply;
+
+import java.io.IOException;
+
+/**
+ * Same command as {@link FEAT}, listing the HASH feature with its algorithms as well, the selected one marked by an
+ * asterisk.
+ *
+ * @author Vimhe
+ */
+@RequiredArgsConstructor
+public class HashFeatCommand extends AbstractCommand {
+
+    /**
+     * The algorithm of HASH until another one is selected.
+     */
+    private final ChecksumAlgorithm defaultAlgorithm;
+
+    @Override
+    public void execute(final FtpIoSession session, final FtpServerContext context, final FtpRequest request)
+        throws IOException, FtpException {
+        session.resetState();
+
+        String features = LocalizedFtpReply.translate(session, request, context,
+            FtpReply.REPLY_211_SYSTEM_STATUS_REPLY, "FEAT", null).getMessage();
+        ChecksumAlgorithm selected = ChecksumCommand.selectedAlgorithm(session, this.defaultAlgorithm);
+        StringBuilder hash = new StringBuilder(" HASH ");
+        for (ChecksumAlgorithm algorithm : ChecksumAlgorithm.values()) {
+            hash.append(algorithm.getHashName()).append(algorithm == selected ? "*;" : ";");
+        }
+        hash.setCharAt(hash.length() - 1, '\n');
+
+        // Inserted before the closing line
+        int end = features.lastIndexOf('\n') + 1;
+        session.write(new DefaultFtpReply(FtpReply.REPLY_211_SYSTEM_STATUS_REPLY,
+            features.substring(0, end) + hash + features.substring(end)));
+    }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.checksum;
+
+import lombok.RequiredArgsConstructor;
+import org.apache.ftpserver.command.AbstractCommand;
+import org.apache.ftpserver.command.Command;
+import org.apache.ftpserver.command.impl.OPTS;
+import org.apache.ftpserver.ftplet.DefaultFtpReply;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.impl.FtpServerContext;
+
+import java.io.IOException;
+
+/**
+ * Same command as {@link OPTS}, with the HASH option selecting the algorithm of the HASH command of the session:
+ * "OPTS HASH" replies the selected algorithm, "OPTS HASH SHA-512" selects one.
+ *
+ * @author Vimhe
+ */
+@RequiredArgsConstructor
+public class HashOptsCommand extends AbstractCommand {
+
+    private final Command options = new OPTS();
+
+    /**
+     * The algorithm of HASH until another one is selected.
+     */
+    private final ChecksumAlgorithm defaultAlgorithm;
+
+    @Override
+    public void execute(final FtpIoSession session, final FtpServerContext context, final FtpRequest request)
+        throws IOException, FtpException {
+        String[] option = request.hasArgument() ? request.getArgument().trim().split("\\s+", 2) : new String[]{""};
+        if (!"HASH".equalsIgnoreCase(option[0])) {
+            this.options.execute(session, context, request);
+            return;
+        }
+        session.resetState();
+
+        if (option.length == 1) {
+            session.write(new DefaultFtpReply(FtpReply.REPLY_200_COMMAND_OKAY,
+                ChecksumCommand.selectedAlgorithm(session, this.defaultAlgorithm).getHashName()));
+            return;
+        }
+
+        ChecksumAlgorithm algorithm = ChecksumAlgorithm.forHashName(option[1]);
+        if (algorithm == null) {
+            session.write(new DefaultFtpReply(FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+                "Unknown algorithm, the current selection is maintained"));
+            return;
+        }
+        session.setAttribute(ChecksumCommand.ALGORITHM_ATTRIBUTE, algorithm);
+        session.write(new DefaultFtpReply(FtpReply.REPLY_200_COMMAND_OKAY, algorithm.getHashName()));
+    }
+
+}
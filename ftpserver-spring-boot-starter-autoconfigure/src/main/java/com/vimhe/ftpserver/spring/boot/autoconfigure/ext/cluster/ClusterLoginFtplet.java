@@ -0,0 +1,132 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.cluster;
+
+import lombok.RequiredArgsConstructor;
+import org.apache.ftpserver.ftplet.*;
+import org.apache.ftpserver.usermanager.impl.ConcurrentLoginRequest;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ftplet which applies the login limits of the server and of the users to the whole cluster, through the
+ * {@link ClusterSessionLimiter}: the maximum logins, the maximum anonymous logins, and the concurrent logins of a user
+ * in total and per client address. The slots are taken before the password is checked and given back if the login
+ * fails, once the login is undone by REIN, or once the session is closed. A login beyond a limit is refused with 421
+ * and the connection closed, like the server does with its own limits.
+ *
+ * @author Vimhe
+ */
+@RequiredArgsConstructor
+public class ClusterLoginFtplet extends DefaultFtplet {
+
+    private static final String COUNTERS_ATTRIBUTE = ClusterLoginFtplet.class.getName() + ".counters";
+
+    private static final String ANONYMOUS = "anonymous";
+
+    private final ClusterSessionLimiter limiter;
+
+    private final int maxLogins;
+
+    private final int maxAnonymousLogins;
+
+    private UserManager userManager;
+
+    @Override
+    public void init(final FtpletContext ftpletContext) throws FtpException {
+        this.userManager = ftpletContext.getUserManager();
+    }
+
+    @Override
+    public FtpletResult beforeCommand(final FtpSession session, final FtpRequest request)
+        throws FtpException, IOException {
+        if (!"PASS".equals(request.getCommand()) || session.isLoggedIn() || session.getUserArgument() == null) {
+            return FtpletResult.DEFAULT;
+        }
+        // Slots still held belong to a former login of the session, the user may differ now
+        this.release(session);
+
+        User user = this.userManager.getUserByName(session.getUserArgument());
+        String userName = user == null ? session.getUserArgument() : user.getName();
+        InetSocketAddress clientAddress = session.getClientAddress();
+        String address = clientAddress == null ? null : clientAddress.getAddress().getHostAddress();
+
+        List<String> counters = new ArrayList<>(4);
+        boolean acquired = this.tryAcquire(counters, "logins", this.maxLogins);
+        if (acquired && ANONYMOUS.equals(userName)) {
+            acquired = this.tryAcquire(counters, "anonymous-logins", this.maxAnonymousLogins);
+        }
+        ConcurrentLoginRequest loginRequest = user == null
+            ? null : (ConcurrentLoginRequest) user.authorize(new ConcurrentLoginRequest(0, 0));
+        if (acquired && loginRequest != null) {
+            acquired = this.tryAcquire(counters, "user:" + userName, loginRequest.getMaxConcurrentLogins());
+        }
+        if (acquired && loginRequest != null && address != null) {
+            acquired = this.tryAcquire(counters, "user:" + userName + "@" + address,
+                loginRequest.getMaxConcurrentLoginsPerIP());
+        }
+        if (!acquired) {
+            counters.forEach(this.limiter::release);
+            session.write(new DefaultFtpReply(FtpReply.REPLY_421_SERVICE_NOT_AVAILABLE_CLOSING_CONTROL_CONNECTION,
+                "Too many users logged in, closing control connection"));
+            return FtpletResult.DISCONNECT;
+        }
+
+        session.setAttribute(COUNTERS_ATTRIBUTE, counters);
+        return FtpletResult.DEFAULT;
+    }
+
+    @Override
+    public FtpletResult afterCommand(final FtpSession session, final FtpRequest request, final FtpReply reply)
+        throws FtpException, IOException {
+        String command = request.getCommand();
+        if (("PASS".equals(command) && !session.isLoggedIn()) || "REIN".equals(command)) {
+            this.release(session);
+        }
+        return FtpletResult.DEFAULT;
+    }
+
+    @Override
+    public FtpletResult onDisconnect(final FtpSession session) throws FtpException, IOException {
+        this.release(session);
+        return FtpletResult.DEFAULT;
+    }
+
+    private boolean tryAcquire(final List<String> counters, final String counter, final long limit) {
+        if (limit <= 0) {
+            return true;
+        }
+        if (!this.limiter.tryAcquire(counter, limit)) {
+            return false;
+        }
+        counters.add(counter);
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void release(final FtpSession session) {
+        Object counters = session.getAttribute(COUNTERS_ATTRIBUTE);
+        if (counters != null) {
+            session.removeAttribute(COUNTERS_ATTRIBUTE);
+            ((List<String>) counters).forEach(this.limiter::release);
+        }
+    }
+
+}
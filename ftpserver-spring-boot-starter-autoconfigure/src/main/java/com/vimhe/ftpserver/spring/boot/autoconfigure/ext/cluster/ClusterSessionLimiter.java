@@ -0,0 +1,349 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.cluster;
+
+import lombok.Getter;
+import lombok.extern.java.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+
+/**
+ * Limits counted across the nodes of a cluster, like the sessions of a user. The node reserves slots of a counter
+ * from the {@link SessionCounterStore} in batches and hands them out locally, so most acquisitions do not call the
+ * store. A node keeps at most one batch of spare slots per counter, releasing a slot gives back the ones beyond.
+ * A renewer thread extends the leases of the node every third of the lease duration, and gives back all the spare
+ * slots of counters not acquired from since the previous renewal, so idle nodes do not hold slots others need.
+ * <p>
+ * The store is called under the lock of the counter only, a {@link ReentrantLock} rather than a monitor, so threads
+ * waiting on the store do not pin the carriers of virtual threads.
+ * <p>
+ * Slots are reserved in batches of at most a tenth of the limit, so limits below 20 are reserved one slot at a time
+ * and stay exact, while large limits spare the store most calls. When the store fails, acquisitions are allowed and
+ * counted, the limits of the node itself still apply.
+ *
+ * @author Vimhe
+ */
+@Log
+public class ClusterSessionLimiter implements Closeable {
+
+    /**
+     * Share of the limit a node reserves at most in one batch.
+     */
+    private static final int BATCH_SHARE = 10;
+
+    @Getter
+    private final String node;
+
+    private final SessionCounterStore store;
+
+    private final Duration lease;
+
+    private final int batchSize;
+
+    private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>(64);
+
+    private final ScheduledExecutorService renewer;
+
+    private final LongAdder localCount = new LongAdder();
+
+    private final LongAdder reservedCount = new LongAdder();
+
+    private final LongAdder rejectedCount = new LongAdder();
+
+    private final LongAdder failedCount = new LongAdder();
+
+    /**
+     * @param node      the name of this node, unique in the cluster
+     * @param store     the counters shared by the nodes
+     * @param lease     how long the reservations of this node outlive it
+     * @param batchSize the maximum number of slots reserved at once
+     */
+    public ClusterSessionLimiter(final String node, final SessionCounterStore store, final Duration lease,
+                                 final int batchSize) {
+        this.node = node;
+        this.store = store;
+        this.lease = lease;
+        this.batchSize = Math.max(batchSize, 1);
+
+        this.renewer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ftp-cluster-limit-renewer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(lease.toMillis() / 3, 1);
+        this.renewer.scheduleWithFixedDelay(this::renewQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Take a slot of the counter, unless all the slots up to the limit are taken in the cluster.
+     *
+     * @param counter the counter
+     * @param limit   the limit of the counter in the cluster, zero or less for none
+     * @return whether a slot was taken, to be given back with {@link #release(String)}
+     */
+    public boolean tryAcquire(final String counter, final long limit) {
+        if (limit <= 0) {
+            return true;
+        }
+
+        while (true) {
+            Counter local = this.counters.computeIfAbsent(counter, key -> new Counter());
+            local.lock.lock();
+            try {
+                // Removed by the renewer meanwhile
+                if (!local.retired) {
+                    return this.tryAcquire(counter, limit, local);
+                }
+            } finally {
+                local.lock.unlock();
+            }
+        }
+    }
+
+    private boolean tryAcquire(final String counter, final long limit, final Counter local) {
+        local.acquired = true;
+        local.batch = Math.max(Math.min(this.batchSize, limit / BATCH_SHARE), 1);
+        if (local.used - local.unreserved < local.reserved) {
+            local.used++;
+            this.localCount.increment();
+            return true;
+        }
+
+        long wanted = local.batch;
+        try {
+            local.reserved += this.store.reserve(counter, this.node, wanted, limit, this.lease);
+        } catch (IOException | RuntimeException e) {
+            this.failedCount.increment();
+            log.log(Level.WARNING, "Cluster counter store failed, allowing " + counter + " on this node only", e);
+            local.used++;
+            local.unreserved++;
+            return true;
+        }
+
+        if (local.used - local.unreserved < local.reserved) {
+            local.used++;
+            this.reservedCount.increment();
+            return true;
+        }
+        this.rejectedCount.increment();
+        return false;
+    }
+
+    /**
+     * Give back a slot taken with {@link #tryAcquire(String, long)}. The node keeps up to one batch of spare slots
+     * reserved for a while, and gives back the ones beyond to the store.
+     */
+    public void release(final String counter) {
+        Counter local = this.counters.get(counter);
+        if (local == null) {
+            return;
+        }
+        long spare;
+        local.lock.lock();
+        try {
+            if (local.used > 0) {
+                local.used--;
+            }
+            // Slots allowed while the store failed were never reserved, they are given back first
+            if (local.unreserved > 0) {
+                local.unreserved--;
+            }
+            spare = Math.max(local.spare() - local.batch, 0);
+            local.reserved -= spare;
+        } finally {
+            local.lock.unlock();
+        }
+        if (spare > 0) {
+            try {
+                this.giveBack(counter, local, spare);
+            } catch (IOException | RuntimeException e) {
+                this.failedCount.increment();
+                log.log(Level.WARNING, "Cluster counter " + counter + " kept, giving back slots failed", e);
+            }
+        }
+    }
+
+    /**
+     * Renew the leases of this node, give back the spare slots of idle counters and those beyond one batch of the
+     * others.
+     */
+    public void renew() throws IOException {
+        for (Map.Entry<String, Counter> entry : this.counters.entrySet()) {
+            Counter local = entry.getValue();
+            long spare;
+            local.lock.lock();
+            try {
+                spare = Math.max(local.spare() - (local.acquired ? local.batch : 0), 0);
+                local.acquired = false;
+                local.reserved -= spare;
+                if (local.used == 0 && local.reserved == 0) {
+                    local.retired = true;
+                    this.counters.remove(entry.getKey(), local);
+                }
+            } finally {
+                local.lock.unlock();
+            }
+            if (spare > 0) {
+                this.giveBack(entry.getKey(), local, spare);
+            }
+        }
+        this.store.renew(this.node, this.lease);
+    }
+
+    private void giveBack(final String counter, final Counter local, final long spare) throws IOException {
+        try {
+            this.store.release(counter, this.node, spare);
+        } catch (IOException | RuntimeException e) {
+            // Still reserved in the store, and renewed, so keep them and try again on the next renewal
+            local.lock.lock();
+            try {
+                local.reserved += spare;
+                if (local.retired) {
+                    local.retired = false;
+                    this.counters.merge(counter, local, (current, retired) -> {
+                        current.lock.lock();
+                        try {
+                            current.reserved += spare;
+                        } finally {
+                            current.lock.unlock();
+                        }
+                        return current;
+                    });
+                }
+            } finally {
+                local.lock.unlock();
+            }
+            throw e;
+        }
+    }
+
+    private void renewQuietly() {
+        try {
+            this.renew();
+        } catch (IOException | RuntimeException e) {
+            this.failedCount.increment();
+            log.log(Level.WARNING, "Cluster counter leases of " + this.node + " not renewed", e);
+        }
+    }
+
+    /**
+     * Acquisitions served from the slots reserved before.
+     */
+    public long getLocalCount() {
+        return this.localCount.sum();
+    }
+
+    /**
+     * Acquisitions which reserved slots from the store.
+     */
+    public long getReservedCount() {
+        return this.reservedCount.sum();
+    }
+
+    public long getRejectedCount() {
+        return this.rejectedCount.sum();
+    }
+
+    /**
+     * Calls to the store which failed.
+     */
+    public long getFailedCount() {
+        return this.failedCount.sum();
+    }
+
+    /**
+     * Stop renewing and give back every slot, as the sessions of the node are gone.
+     */
+    @Override
+    public void close() {
+        this.renewer.shutdownNow();
+        this.counters.forEach((counter, local) -> {
+            long reserved;
+            local.lock.lock();
+            try {
+                reserved = local.reserved;
+                local.reserved = 0;
+            } finally {
+                local.lock.unlock();
+            }
+            try {
+                this.store.release(counter, this.node, reserved);
+            } catch (IOException | RuntimeException e) {
+                log.log(Level.FINE, "Cluster counter " + counter + " left to lapse", e);
+            }
+        });
+        this.counters.clear();
+    }
+
+    /**
+     * The slots of a counter on this node, guarded by its lock.
+     */
+    private static final class Counter {
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        /**
+         * Slots reserved in the store.
+         */
+        private long reserved;
+
+        /**
+         * Slots taken by sessions.
+         */
+        private long used;
+
+        /**
+         * Slots taken while the store failed, beyond the reserved ones.
+         */
+        private long unreserved;
+
+        /**
+         * Slots reserved in one batch, the spare slots the node keeps.
+         */
+        private long batch = 1;
+
+        /**
+         * Whether a slot was acquired since the previous renewal.
+         */
+        private boolean acquired;
+
+        /**
+         * Whether the counter was removed, a new one takes its place.
+         */
+        private boolean retired;
+
+        /**
+         * Slots reserved and not taken.
+         */
+        private long spare() {
+            return this.reserved - (this.used - this.unreserved);
+        }
+
+    }
+
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.cluster;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * The reservations of all counters and nodes, with the semantics of {@link SessionCounterStore} but not
+ * thread-safe. Expired reservations are dropped whenever a counter is touched.
+ *
+ * @author Vimhe
+ */
+class CounterTable {
+
+    private static final char SEPARATOR = '\t';
+
+    /**
+     * Reservations by counter and node, each a pair of slot count and expiry in epoch milliseconds.
+     */
+    private final Map<String, Map<String, long[]>> counters = new HashMap<>(64);
+
+    long reserve(final String counter, final String node, final long count, final long limit, final Duration lease,
+                 final long now) {
+        Map<String, long[]> reservations = this.counters.computeIfAbsent(counter, key -> new HashMap<>(8));
+        long reserved = 0;
+        for (Iterator<long[]> iterator = reservations.values().iterator(); iterator.hasNext(); ) {
+            long[] reservation = iterator.next();
+            if (reservation[1] <= now) {
+                iterator.remove();
+                continue;
+            }
+            reserved += reservation[0];
+        }
+
+        long granted = Math.max(Math.min(count, limit - reserved), 0);
+        if (granted > 0) {
+            long[] reservation = reservations.computeIfAbsent(node, key -> new long[2]);
+            reservation[0] += granted;
+            reservation[1] = now + lease.toMillis();
+        }
+        if (reservations.isEmpty()) {
+            this.counters.remove(counter);
+        }
+        return granted;
+    }
+
+    void release(final String counter, final String node, final long count) {
+        Map<String, long[]> reservations = this.counters.get(counter);
+        long[] reservation = reservations == null ? null : reservations.get(node);
+        if (reservation == null) {
+            return;
+        }
+        reservation[0] -= count;
+        if (reservation[0] <= 0) {
+            reservations.remove(node);
+            if (reservations.isEmpty()) {
+                this.counters.remove(counter);
+            }
+        }
+    }
+
+    void renew(final String node, final Duration lease, final long now) {
+        this.counters.values().forEach(reservations -> {
+            long[] reservation = reservations.get(node);
+            if (reservation != null && reservation[1] > now) {
+                reservation[1] = now + lease.toMillis();
+            }
+        });
+    }
+
+    /**
+     * The slots of a counter reserved by all nodes and not expired.
+     */
+    long reserved(final String counter, final long now) {
+        return this.counters.getOrDefault(counter, new HashMap<>(0)).values().stream()
+            .filter(reservation -> reservation[1] > now)
+            .mapToLong(reservation -> reservation[0])
+            .sum();
+    }
+
+    /**
+     * Read the lines "counter node count expiry" written by {@link #write(Writer, long)}, skipping malformed ones.
+     */
+    void read(final BufferedReader reader) throws IOException {
+        this.counters.clear();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String[] fields = line.split(String.valueOf(SEPARATOR));
+            if (fields.length != 4) {
+                continue;
+            }
+            try {
+                this.counters.computeIfAbsent(fields[0], key -> new HashMap<>(8))
+                    .put(fields[1], new long[]{Long.parseLong(fields[2]), Long.parseLong(fields[3])});
+            } catch (NumberFormatException e) {
+                // A line torn by a crash, the reservation lapses like an expired one
+            }
+        }
+    }
+
+    /**
+     * Write the reservations which have not expired.
+     */
+    void write(final Writer writer, final long now) throws IOException {
+        for (Map.Entry<String, Map<String, long[]>> counter : this.counters.entrySet()) {
+            for (Map.Entry<String, long[]> reservation : counter.getValue().entrySet()) {
+                if (reservation.getValue()[1] <= now) {
+                    continue;
+                }
+                writer.write(counter.getKey() + SEPARATOR + reservation.getKey() + SEPARATOR
+                    + reservation.getValue()[0] + SEPARATOR + reservation.getValue()[1] + '\n');
+            }
+        }
+    }
+
+}
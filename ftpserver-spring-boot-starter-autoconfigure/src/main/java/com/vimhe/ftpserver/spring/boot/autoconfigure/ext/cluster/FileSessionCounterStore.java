@@ -0,0 +1,129 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.cluster;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Counters in a local file, shared by the servers on one host or on a file system with working locks. Every call
+ * locks the file, reads all reservations, changes them and writes them back; the limiter batches its calls, so the
+ * file is small and rarely touched.
+ *
+ * @author Vimhe
+ */
+public class FileSessionCounterStore implements SessionCounterStore {
+
+    /**
+     * Locks of the files used in this process, file locks are held per process and overlapping ones fail.
+     */
+    private static final ConcurrentMap<Path, ReentrantLock> PROCESS_LOCKS = new ConcurrentHashMap<>(4);
+
+    private final Path file;
+
+    private final ReentrantLock processLock;
+
+    public FileSessionCounterStore(final Path file) throws IOException {
+        this.file = file.toAbsolutePath().normalize();
+        this.processLock = PROCESS_LOCKS.computeIfAbsent(this.file, key -> new ReentrantLock());
+        Files.createDirectories(this.file.getParent());
+    }
+
+    @Override
+    public long reserve(final String counter, final String node, final long count, final long limit,
+                        final Duration lease) throws IOException {
+        return this.update(table -> table.reserve(counter, node, count, limit, lease, System.currentTimeMillis()));
+    }
+
+    @Override
+    public void release(final String counter, final String node, final long count) throws IOException {
+        this.update(table -> {
+            table.release(counter, node, count);
+            return 0L;
+        });
+    }
+
+    @Override
+    public void renew(final String node, final Duration lease) throws IOException {
+        this.update(table -> {
+            table.renew(node, lease, System.currentTimeMillis());
+            return 0L;
+        });
+    }
+
+    /**
+     * Read, change and write the table under the file lock, and the lock keeping the threads of this process
+     * apart, stores of several servers in one process included.
+     */
+    private long update(final TableUpdate update) throws IOException {
+        this.processLock.lock();
+        try {
+            return this.lockedUpdate(update);
+        } finally {
+            this.processLock.unlock();
+        }
+    }
+
+    private long lockedUpdate(final TableUpdate update) throws IOException {
+        try (FileChannel channel = FileChannel.open(this.file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE)) {
+            FileLock lock = channel.lock();
+            try {
+                return this.rewrite(channel, update);
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    private long rewrite(final FileChannel channel, final TableUpdate update) throws IOException {
+        CounterTable table = new CounterTable();
+        table.read(new BufferedReader(new InputStreamReader(Channels.newInputStream(channel),
+            StandardCharsets.UTF_8)));
+
+        long result = update.apply(table);
+
+        StringWriter content = new StringWriter();
+        table.write(content, System.currentTimeMillis());
+        ByteBuffer buffer = StandardCharsets.UTF_8.encode(content.toString());
+        channel.truncate(0);
+        channel.position(0);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        return result;
+    }
+
+    @FunctionalInterface
+    private interface TableUpdate {
+
+        long apply(CounterTable table);
+
+    }
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.cluster;
+
+import java.time.Duration;
+
+/**
+ * Counters held in memory. One instance shared by several {@link ClusterSessionLimiter}s with different node names
+ * stands in for a cluster within a single JVM, e.g. to try the limits out; a single server gains nothing from it.
+ *
+ * @author Vimhe
+ */
+public class InMemorySessionCounterStore implements SessionCounterStore {
+
+    private final CounterTable table = new CounterTable();
+
+    @Override
+    public synchronized long reserve(final String counter, final String node, final long count, final long limit,
+                                     final Duration lease) {
+        return this.table.reserve(counter, node, count, limit, lease, System.currentTimeMillis());
+    }
+
+    @Override
+    public synchronized void release(final String counter, final String node, final long count) {
+        this.table.release(counter, node, count);
+    }
+
+    @Override
+    public synchronized void renew(final String node, final Duration lease) {
+        this.table.renew(node, lease, System.currentTimeMillis());
+    }
+
+    /**
+     * The slots of a counter reserved by all nodes.
+     */
+    public synchronized long getReserved(final String counter) {
+        return this.table.reserved(counter, System.currentTimeMillis());
+    }
+
+}
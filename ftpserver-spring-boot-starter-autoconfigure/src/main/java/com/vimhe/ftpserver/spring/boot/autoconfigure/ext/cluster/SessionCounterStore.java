@@ -0,0 +1,59 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.cluster;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Counters shared by the nodes of a cluster, holding the slots each node reserved of a limited resource, like the
+ * sessions of a user. A reservation is leased: it lapses unless the node renews its leases in time, so the slots of a
+ * node which died are freed after the lease duration.
+ * <p>
+ * Nodes reserve slots in batches through {@link ClusterSessionLimiter}, which hands them out locally, so the store is
+ * not called on every login. Implementations must be thread-safe and make each call atomic across the cluster, e.g.
+ * with a transaction or a script of a key-value store.
+ *
+ * @author Vimhe
+ * @see InMemorySessionCounterStore
+ * @see FileSessionCounterStore
+ */
+public interface SessionCounterStore {
+
+    /**
+     * Reserve slots of a counter for the node, as long as the reservations of all nodes stay within the limit.
+     *
+     * @param counter the counter
+     * @param node    the reserving node
+     * @param count   the number of slots wanted
+     * @param limit   the maximum of the slots reserved by all nodes together
+     * @param lease   how long the reservations of the node stay valid without renewal
+     * @return the number of slots reserved, from 0 to count
+     */
+    long reserve(String counter, String node, long count, long limit, Duration lease) throws IOException;
+
+    /**
+     * Give back slots the node reserved.
+     */
+    void release(String counter, String node, long count) throws IOException;
+
+    /**
+     * Extend all the reservations of the node by the lease duration, from now.
+     */
+    void renew(String node, Duration lease) throws IOException;
+
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.filesystem;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Input stream reading from the current position of a file channel, which a data connection can use directly.
+ *
+ * @author Vimhe
+ */
+@RequiredArgsConstructor
+public class FileChannelInputStream extends InputStream {
+
+    @Getter
+    private final FileChannel channel;
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        return this.read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        return this.channel.read(ByteBuffer.wrap(bytes, offset, length));
+    }
+
+    @Override
+    public long skip(final long count) throws IOException {
+        long position = this.channel.position();
+        long skipped = Math.max(0, Math.min(count, this.channel.size() - position));
+        this.channel.position(position + skipped);
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(0, this.channel.size() - this.channel.position()));
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+}
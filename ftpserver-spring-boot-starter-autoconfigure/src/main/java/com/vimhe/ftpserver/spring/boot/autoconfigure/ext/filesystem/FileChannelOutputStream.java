@@ -0,0 +1,90 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.filesystem;
+
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.checksum.ChecksumIndex;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Output stream writing at the current position of a file channel, which a data connection can write to directly as
+ * a {@link WritableByteChannel}. The written bytes are digested if the stream is given a
+ * {@link ChecksumIndex.Upload}, which is indexed once the stream is closed.
+ *
+ * @author Vimhe
+ */
+public class FileChannelOutputStream extends OutputStream implements WritableByteChannel {
+
+    @Getter
+    private final FileChannel channel;
+
+    private final ChecksumIndex.Upload digests;
+
+    public FileChannelOutputStream(final FileChannel channel) {
+        this(channel, null);
+    }
+
+    public FileChannelOutputStream(final FileChannel channel, final ChecksumIndex.Upload digests) {
+        this.channel = channel;
+        this.digests = digests;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        this.write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+        while (buffer.hasRemaining()) {
+            this.write(buffer);
+        }
+    }
+
+    @Override
+    public int write(final ByteBuffer buffer) throws IOException {
+        int position = buffer.position();
+        int count = this.channel.write(buffer);
+        if (this.digests != null && count > 0) {
+            ByteBuffer written = buffer.duplicate();
+            written.position(position).limit(position + count);
+            this.digests.update(written);
+        }
+        return count;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return this.channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        boolean open = this.channel.isOpen();
+        this.channel.close();
+        if (open && this.digests != null) {
+            this.digests.complete();
+        }
+    }
+
+}
@@ -0,0 +1,367 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.filesystem;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Size-bounded cache of read-only memory mappings of recently downloaded files, keyed by path, modification time and
+ * size, so concurrent and repeated downloads of one file share one mapping instead of reading the file again.
+ * <p>
+ * Mappings are handed out as reference counted {@link Lease}s. The least recently used files are evicted once the
+ * cached files exceed the maximum size; an evicted file stays mapped until its last lease is released, and is then
+ * unmapped at once rather than by the garbage collector, where the JDK allows it. Evicted files still leased do not
+ * count towards the maximum size, they are not cached any more.
+ * <p>
+ * Files are mapped outside the monitor of the cache, so a lookup never waits for the mapping of another file. Two
+ * threads missing the same file at once both map it, the one publishing its mapping second uses the first one and
+ * unmaps its own.
+ *
+ * @author Vimhe
+ */
+public class MappedFileCache {
+
+    /**
+     * Files are mapped in segments, a single mapping is limited to 2GB.
+     */
+    private static final long SEGMENT_SIZE = 1L << 30;
+
+    private static final Consumer<ByteBuffer> UNMAPPER = unmapper();
+
+    private final long maximumSize;
+
+    private final long minimumFileSize;
+
+    private final Map<Path, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong residentSize = new AtomicLong();
+
+    /**
+     * Bytes of the cached files, guarded by the entries.
+     */
+    private long cachedSize;
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    public MappedFileCache(final long maximumSize, final long minimumFileSize) {
+        this.maximumSize = maximumSize;
+        this.minimumFileSize = minimumFileSize;
+    }
+
+    /**
+     * Lease the mapping of the current content of a file, null if the file is not cached because of its size.
+     */
+    public Lease acquire(final Path path) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        long size = attributes.size();
+        if (!attributes.isRegularFile() || size < this.minimumFileSize || size > this.maximumSize) {
+            return null;
+        }
+        long lastModified = attributes.lastModifiedTime().toMillis();
+
+        synchronized (this.entries) {
+            Entry entry = this.entries.get(path);
+            if (entry != null && entry.isCurrent(lastModified, size)) {
+                this.hitCount.increment();
+                return new Lease(entry.retain());
+            }
+        }
+        this.missCount.increment();
+
+        // Mapping only reserves address space, the pages are read by the first download
+        Entry mapped = new Entry(path, map(path, size), lastModified, size);
+        List<Entry> evicted = new ArrayList<>();
+        Entry published;
+        Lease lease;
+        synchronized (this.entries) {
+            published = this.entries.compute(path, (key, current) -> {
+                if (current != null && current.isCurrent(lastModified, size)) {
+                    return current;
+                }
+                if (current != null) {
+                    evicted.add(current);
+                    this.cachedSize -= current.size;
+                }
+                this.cachedSize += mapped.size;
+                return mapped;
+            });
+            lease = new Lease(published.retain());
+
+            Iterator<Entry> eldest = this.entries.values().iterator();
+            while (this.cachedSize > this.maximumSize && eldest.hasNext()) {
+                Entry candidate = eldest.next();
+                if (candidate != published) {
+                    eldest.remove();
+                    evicted.add(candidate);
+                    this.cachedSize -= candidate.size;
+                }
+            }
+        }
+
+        if (published != mapped) {
+            // Mapped by another thread meanwhile
+            mapped.release();
+        }
+        evicted.forEach(this::evict);
+        return lease;
+    }
+
+    /**
+     * Drop the mapping of a file, e.g. because it is about to be overwritten.
+     */
+    public void invalidate(final Path path) {
+        Entry entry;
+        synchronized (this.entries) {
+            entry = this.entries.remove(path);
+            if (entry != null) {
+                this.cachedSize -= entry.size;
+            }
+        }
+        if (entry != null) {
+            this.evict(entry);
+        }
+    }
+
+    public void invalidateAll() {
+        List<Entry> evicted;
+        synchronized (this.entries) {
+            evicted = new ArrayList<>(this.entries.values());
+            this.entries.clear();
+            this.cachedSize = 0;
+        }
+        evicted.forEach(this::evict);
+    }
+
+    private void evict(final Entry entry) {
+        entry.release();
+    }
+
+    private static ByteBuffer[] map(final Path path, final long size) throws IOException {
+        ByteBuffer[] segments = new ByteBuffer[(int) Math.max(1, (size + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            for (int i = 0; i < segments.length; i++) {
+                long position = i * SEGMENT_SIZE;
+                MappedByteBuffer segment = channel.map(
+                    FileChannel.MapMode.READ_ONLY, position, Math.min(SEGMENT_SIZE, size - position));
+                segments[i] = segment;
+            }
+            return segments;
+        } catch (IOException | RuntimeException e) {
+            unmap(segments);
+            throw e;
+        }
+    }
+
+    private static void unmap(final ByteBuffer[] segments) {
+        for (ByteBuffer segment : segments) {
+            if (segment != null) {
+                UNMAPPER.accept(segment);
+            }
+        }
+    }
+
+    /**
+     * Unmaps a buffer through the cleaner of the JDK: Unsafe.invokeCleaner since Java 9, the cleaner of the buffer
+     * before. Without either the buffers are left to the garbage collector.
+     */
+    private static Consumer<ByteBuffer> unmapper() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Object unsafe = theUnsafe.get(null);
+            return buffer -> invokeQuietly(() -> invokeCleaner.invoke(unsafe, buffer));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Java 8
+        }
+        try {
+            Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+            Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+            return buffer -> invokeQuietly(() -> {
+                Object bufferCleaner = cleaner.invoke(buffer);
+                return bufferCleaner == null ? null : clean.invoke(bufferCleaner);
+            });
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return buffer -> {
+            };
+        }
+    }
+
+    private static void invokeQuietly(final Invocation invocation) {
+        try {
+            invocation.invoke();
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Left to the garbage collector
+        }
+    }
+
+    @FunctionalInterface
+    private interface Invocation {
+
+        Object invoke() throws ReflectiveOperationException;
+
+    }
+
+    /**
+     * Number of cached files.
+     */
+    public int size() {
+        synchronized (this.entries) {
+            return this.entries.size();
+        }
+    }
+
+    /**
+     * Bytes of the cached files, bounded by the maximum size.
+     */
+    public long getCachedSize() {
+        synchronized (this.entries) {
+            return this.cachedSize;
+        }
+    }
+
+    /**
+     * Bytes currently mapped, including evicted files which are still being downloaded.
+     */
+    public long getResidentSize() {
+        return this.residentSize.get();
+    }
+
+    public long getMaximumSize() {
+        return this.maximumSize;
+    }
+
+    public long getHitCount() {
+        return this.hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return this.missCount.sum();
+    }
+
+    /**
+     * Ratio of downloads served from an existing mapping, 0 when there was no lookup yet.
+     */
+    public double getHitRatio() {
+        long hits = this.hitCount.sum();
+        long total = hits + this.missCount.sum();
+        return total == 0 ? 0D : (double) hits / total;
+    }
+
+    private final class Entry {
+        private final Path path;
+        private final ByteBuffer[] segments;
+        private final long lastModified;
+        private final long size;
+
+        /**
+         * One reference for being cached, plus one per lease.
+         */
+        private final AtomicLong references = new AtomicLong(1);
+
+        private Entry(final Path path, final ByteBuffer[] segments, final long lastModified, final long size) {
+            this.path = path;
+            this.segments = segments;
+            this.lastModified = lastModified;
+            this.size = size;
+            MappedFileCache.this.residentSize.addAndGet(size);
+        }
+
+        private boolean isCurrent(final long lastModified, final long size) {
+            return this.lastModified == lastModified && this.size == size;
+        }
+
+        private Entry retain() {
+            this.references.incrementAndGet();
+            return this;
+        }
+
+        private void release() {
+            if (this.references.decrementAndGet() == 0) {
+                // Neither cached nor leased, no reader is left
+                unmap(this.segments);
+                MappedFileCache.this.residentSize.addAndGet(-this.size);
+            }
+        }
+    }
+
+    /**
+     * A reference to a mapped file, which must be released once the file was read.
+     */
+    public static final class Lease implements AutoCloseable {
+        private final Entry entry;
+        private volatile boolean released;
+
+        private Lease(final Entry entry) {
+            this.entry = entry;
+        }
+
+        /**
+         * The mapped file.
+         */
+        public Path getPath() {
+            return this.entry.path;
+        }
+
+        public long getSize() {
+            return this.entry.size;
+        }
+
+        /**
+         * A view of the file content from the given position up to at most the end of one segment, independent of
+         * other readers.
+         */
+        public ByteBuffer slice(final long position) {
+            // The mapping may be unmapped, reading it would crash the JVM
+            if (this.released) {
+                throw new IllegalStateException("Lease released");
+            }
+            ByteBuffer segment = this.entry.segments[(int) (position / SEGMENT_SIZE)].duplicate();
+            segment.position((int) (position % SEGMENT_SIZE));
+            return segment.slice();
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!this.released) {
+                this.released = true;
+                this.entry.release();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.filesystem;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Input stream over a file mapping leased from the {@link MappedFileCache}, which a data connection can write to the
+ * socket directly. Closing the stream releases the lease.
+ * <p>
+ * The stream itself reads the file through a channel, rather than copying from the mapping: a mapping whose file was
+ * truncated meanwhile faults (SIGBUS), which the JVM either raises as an {@link InternalError} at some later point or
+ * does not survive at all, depending on its version. Writing the mapping to a socket is safe, the kernel copies it
+ * and fails the write with an {@link IOException}.
+ *
+ * @author Vimhe
+ */
+public class MappedFileInputStream extends InputStream {
+
+    private final MappedFileCache.Lease lease;
+
+    private long position;
+
+    private FileChannel channel;
+
+    public MappedFileInputStream(final MappedFileCache.Lease lease, final long position) {
+        this.lease = lease;
+        this.position = Math.min(position, lease.getSize());
+    }
+
+    /**
+     * The content from the current position up to at most the end of a mapped segment, empty at the end of the file.
+     * The position is advanced by {@link #skip(long)}.
+     */
+    public ByteBuffer remaining() {
+        if (this.position >= this.lease.getSize()) {
+            return ByteBuffer.allocate(0);
+        }
+        return this.lease.slice(this.position);
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        return this.read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (this.position >= this.lease.getSize()) {
+            return -1;
+        }
+
+        if (this.channel == null) {
+            this.channel = FileChannel.open(this.lease.getPath(), StandardOpenOption.READ);
+        }
+        int count = this.channel.read(ByteBuffer.wrap(bytes, offset,
+            (int) Math.min(length, this.lease.getSize() - this.position)), this.position);
+        if (count < 0) {
+            // Ends before the size it had when mapped, the transfer fails like a failing read
+            throw new IOException("File changed during transfer");
+        }
+        this.position += count;
+        return count;
+    }
+
+    @Override
+    public long skip(final long count) {
+        long skipped = Math.max(0, Math.min(count, this.lease.getSize() - this.position));
+        this.position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(Integer.MAX_VALUE, this.lease.getSize() - this.position);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (this.channel != null) {
+                this.channel.close();
+            }
+        } finally {
+            this.lease.close();
+        }
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.filesystem;
+
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.checksum.ChecksumIndex;
+import lombok.Data;
+import org.apache.ftpserver.ftplet.FileSystemFactory;
+import org.apache.ftpserver.ftplet.FileSystemView;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.User;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * File system factory like {@link org.apache.ftpserver.filesystem.nativefs.NativeFileSystemFactory}, whose files are
+ * read and written through {@link java.nio.channels.FileChannel}s, so that a
+ * {@link com.vimhe.ftpserver.spring.boot.autoconfigure.ext.transfer.NioDataConnection} can transfer them without
+ * copying through heap buffers.
+ *
+ * @author Vimhe
+ */
+@Data
+public class NioFileSystemFactory implements FileSystemFactory {
+
+    /**
+     * Whether the home directory of a user is created on login if it does not exist.
+     */
+    private boolean createHome;
+
+    /**
+     * Whether file names are matched ignoring case.
+     */
+    private boolean caseInsensitive;
+
+    /**
+     * Optional cache of mapped files shared by all downloads.
+     */
+    private MappedFileCache readCache;
+
+    /**
+     * Optional write-behind of uploads, which commits every uploaded file before it is replied to.
+     */
+    private WriteBehind writeBehind;
+
+    /**
+     * Optional index of file digests, which uploads of whole files are digested for while they are written.
+     */
+    private ChecksumIndex checksumIndex;
+
+    @Override
+    public FileSystemView createFileSystemView(final User user) throws FtpException {
+        synchronized (user) {
+            if (this.createHome) {
+                Path home = Paths.get(user.getHomeDirectory());
+                if (!Files.isDirectory(home)) {
+                    try {
+                        Files.createDirectories(home);
+                    } catch (IOException e) {
+                        throw new FtpException("Cannot create user home: " + home, e);
+                    }
+                }
+            }
+
+            return new NioFileSystemView(user, this.caseInsensitive, this.readCache, this.writeBehind,
+                this.checksumIndex);
+        }
+    }
+
+}
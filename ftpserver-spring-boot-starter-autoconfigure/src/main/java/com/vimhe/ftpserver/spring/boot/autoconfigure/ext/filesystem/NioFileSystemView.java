@@ -0,0 +1,71 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.filesystem;
+
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.checksum.ChecksumIndex;
+import org.apache.ftpserver.filesystem.nativefs.impl.NativeFileSystemView;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.ftpserver.ftplet.User;
+
+import java.io.File;
+
+/**
+ * File system view resolving paths exactly like {@link NativeFileSystemView}, handing out {@link NioFtpFile}s.
+ *
+ * @author Vimhe
+ */
+public class NioFileSystemView extends NativeFileSystemView {
+
+    private final User user;
+
+    private final MappedFileCache readCache;
+
+    private final WriteBehind writeBehind;
+
+    private final ChecksumIndex checksumIndex;
+
+    public NioFileSystemView(final User user, final boolean caseInsensitive, final MappedFileCache readCache,
+                             final WriteBehind writeBehind, final ChecksumIndex checksumIndex) throws FtpException {
+        super(user, caseInsensitive);
+        this.user = user;
+        this.readCache = readCache;
+        this.writeBehind = writeBehind;
+        this.checksumIndex = checksumIndex;
+    }
+
+    @Override
+    public FtpFile getHomeDirectory() {
+        return this.toNioFile(super.getHomeDirectory());
+    }
+
+    @Override
+    public FtpFile getWorkingDirectory() {
+        return this.toNioFile(super.getWorkingDirectory());
+    }
+
+    @Override
+    public FtpFile getFile(final String file) {
+        return this.toNioFile(super.getFile(file));
+    }
+
+    private FtpFile toNioFile(final FtpFile file) {
+        return new NioFtpFile(file.getAbsolutePath(), (File) file.getPhysicalFile(), this.user, this.readCache,
+            this.writeBehind, this.checksumIndex);
+    }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.filesystem;
+
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.checksum.ChecksumIndex;
+import org.apache.ftpserver.filesystem.nativefs.impl.NativeFtpFile;
+import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.ftpserver.ftplet.User;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+
+/**
+ * Native file whose content streams are backed by a {@link FileChannel}, see {@link FileChannelInputStream} and
+ * {@link FileChannelOutputStream}, or by a shared mapping of the {@link MappedFileCache} if one is given. Uploads
+ * are staged and committed by {@link WriteBehind} if one is given, and uploads of whole files are digested for the
+ * {@link ChecksumIndex} if one is given.
+ *
+ * @author Vimhe
+ */
+public class NioFtpFile extends NativeFtpFile {
+
+    private final File file;
+
+    private final MappedFileCache readCache;
+
+    private final WriteBehind writeBehind;
+
+    private final ChecksumIndex checksumIndex;
+
+    public NioFtpFile(final String fileName, final File file, final User user, final MappedFileCache readCache,
+                      final WriteBehind writeBehind, final ChecksumIndex checksumIndex) {
+        super(fileName, file, user);
+        this.file = file;
+        this.readCache = readCache;
+        this.writeBehind = writeBehind;
+        this.checksumIndex = checksumIndex;
+    }
+
+    @Override
+    public boolean delete() {
+        this.invalidate();
+        return super.delete();
+    }
+
+    @Override
+    public boolean move(final FtpFile destination) {
+        this.invalidate();
+        Optional.ofNullable(this.readCache)
+            .ifPresent(cache -> cache.invalidate(((File) destination.getPhysicalFile()).toPath()));
+        return super.move(destination);
+    }
+
+    @Override
+    public OutputStream createOutputStream(final long offset) throws IOException {
+        if (!this.isWritable()) {
+            throw new IOException("No write permission : " + this.file.getName());
+        }
+        this.invalidate();
+
+        Path path = this.file.toPath();
+        boolean created = !Files.exists(path);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            if (offset > channel.size()) {
+                // Extended with zeros like RandomAccessFile.setLength of the native file system, also without data
+                channel.write(ByteBuffer.allocate(1), offset - 1);
+            } else {
+                channel.truncate(offset);
+            }
+            channel.position(offset);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        // Resumed uploads do not write the whole file, those files are digested on request
+        ChecksumIndex.Upload digests = offset == 0 && this.checksumIndex != null
+            ? this.checksumIndex.upload(path) : null;
+        if (this.writeBehind != null) {
+            return new WriteBehindOutputStream(channel, digests, this.writeBehind, created ? path.getParent() : null);
+        }
+        return new FileChannelOutputStream(channel, digests);
+    }
+
+    @Override
+    public InputStream createInputStream(final long offset) throws IOException {
+        if (!this.isReadable()) {
+            throw new IOException("No read permission : " + this.file.getName());
+        }
+
+        if (this.readCache != null) {
+            MappedFileCache.Lease lease = this.readCache.acquire(this.file.toPath());
+            if (lease != null) {
+                return new MappedFileInputStream(lease, offset);
+            }
+        }
+
+        FileChannel channel = FileChannel.open(this.file.toPath(), StandardOpenOption.READ);
+        try {
+            channel.position(offset);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new FileChannelInputStream(channel);
+    }
+
+    private void invalidate() {
+        Optional.ofNullable(this.readCache).ifPresent(cache -> cache.invalidate(this.file.toPath()));
+    }
+
+}
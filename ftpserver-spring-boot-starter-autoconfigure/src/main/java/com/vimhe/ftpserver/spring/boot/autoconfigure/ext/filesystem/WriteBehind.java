@@ -0,0 +1,202 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.filesystem;
+
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.transfer.BufferPool;
+import lombok.extern.java.Log;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+
+/**
+ * Write-behind of uploads: the data is staged in pooled direct buffers and written in large sequential writes, see
+ * {@link WriteBehindOutputStream}, and the file is durable once its stream is closed, so before the 226 reply.
+ * <p>
+ * Every stream forces its own data, the file systems commit the forces running at the same time together. A new file
+ * also needs its directory entry forced, and one force of a directory covers all the files created in it so far:
+ * the thread which gets the commit lock forces the directories of all the files waiting at once and wakes their
+ * threads, files queued meanwhile are committed by the next group. A directory which can not be opened for reading,
+ * e.g. without the read permission, is not forced any more and the data of its files only is committed.
+ *
+ * @author Vimhe
+ */
+@Log
+public class WriteBehind {
+
+    /**
+     * Bound of a wait for the group commit, the thread is woken as soon as its file is committed or it may lead.
+     */
+    private static final long WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * Windows does not open directories, their entries are durable with the file.
+     */
+    private static final boolean WINDOWS = System.getProperty("os.name", "").startsWith("Windows");
+
+    private final BufferPool buffers;
+
+    private final ReentrantLock commitLock = new ReentrantLock();
+
+    private final Queue<Commit> pending = new ConcurrentLinkedQueue<>();
+
+    private final LongAdder commitCount = new LongAdder();
+
+    private final LongAdder directorySyncCount = new LongAdder();
+
+    /**
+     * Directories which can not be opened to be forced, another directory may still be.
+     */
+    private final Set<Path> unsyncedDirectories = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param buffers the staging buffers, direct ones
+     */
+    public WriteBehind(final BufferPool buffers) {
+        this.buffers = buffers;
+    }
+
+    BufferPool getBuffers() {
+        return this.buffers;
+    }
+
+    /**
+     * Wait until the entry of a new file in its directory is durable, together with those of the other files waiting.
+     *
+     * @throws IOException if the directory could not be forced
+     */
+    void commitDirectory(final Path directory) throws IOException {
+        this.commitCount.increment();
+        if (WINDOWS || directory == null || this.unsyncedDirectories.contains(directory)) {
+            return;
+        }
+
+        Commit commit = new Commit(directory, Thread.currentThread());
+        this.pending.offer(commit);
+        while (!commit.done) {
+            if (this.commitLock.tryLock()) {
+                try {
+                    if (!commit.done) {
+                        this.commitPending();
+                    }
+                } finally {
+                    this.commitLock.unlock();
+                }
+                // Files queued during the forces wait for a thread to lead their group
+                Optional.ofNullable(this.pending.peek()).ifPresent(next -> LockSupport.unpark(next.thread));
+            } else {
+                LockSupport.parkNanos(this, WAIT_NANOS);
+            }
+        }
+        if (commit.failure != null) {
+            throw new IOException("Failed to commit directory " + directory, commit.failure);
+        }
+    }
+
+    /**
+     * Force the directories of all the waiting files, each one once. Called holding the commit lock.
+     */
+    private void commitPending() {
+        Map<Path, List<Commit>> directories = new LinkedHashMap<>();
+        for (Commit commit = this.pending.poll(); commit != null; commit = this.pending.poll()) {
+            directories.computeIfAbsent(commit.directory, directory -> new ArrayList<>(4)).add(commit);
+        }
+
+        for (Map.Entry<Path, List<Commit>> entry : directories.entrySet()) {
+            IOException failure = this.syncDirectory(entry.getKey());
+            for (Commit commit : entry.getValue()) {
+                commit.failure = failure;
+                commit.done = true;
+                LockSupport.unpark(commit.thread);
+            }
+        }
+    }
+
+    private IOException syncDirectory(final Path directory) {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        } catch (IOException e) {
+            // Any failure but the permission, e.g. a directory removed or a failing disk, fails the upload
+            if (!(e instanceof AccessDeniedException)) {
+                return e;
+            }
+            this.unsyncedDirectories.add(directory);
+            log.log(Level.INFO, "Directory " + directory + " can not be forced, committing the file data only", e);
+            return null;
+        }
+
+        try (FileChannel opened = channel) {
+            opened.force(true);
+            this.directorySyncCount.increment();
+            return null;
+        } catch (IOException e) {
+            return e;
+        }
+    }
+
+    /**
+     * Number of new files committed so far.
+     */
+    public long getCommitCount() {
+        return this.commitCount.sum();
+    }
+
+    /**
+     * Number of directory forces so far, fewer than committed files when they were grouped.
+     */
+    public long getDirectorySyncCount() {
+        return this.directorySyncCount.sum();
+    }
+
+    private static final class Commit {
+
+        private final Path directory;
+
+        private final Thread thread;
+
+        private IOException failure;
+
+        /**
+         * Written after the failure, which is visible once done is.
+         */
+        private volatile boolean done;
+
+        private Commit(final Path directory, final Thread thread) {
+            this.directory = directory;
+            this.thread = thread;
+        }
+
+    }
+
+}
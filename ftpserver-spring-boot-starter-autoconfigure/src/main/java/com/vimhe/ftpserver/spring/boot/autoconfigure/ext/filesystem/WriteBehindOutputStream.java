@@ -0,0 +1,126 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.filesystem;
+
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.checksum.ChecksumIndex;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+/**
+ * File channel stream of an upload with {@link WriteBehind}: the bytes written to the stream are staged in a pooled
+ * direct buffer and written to the file once it is full, and closing the stream returns only when the file is
+ * durable. A data connection writing to the channel directly does the same, it writes full buffers only.
+ * <p>
+ * The stream is closed before the transfer is replied to, a failure to commit the file replies 551 instead of 226.
+ *
+ * @author Vimhe
+ */
+public class WriteBehindOutputStream extends FileChannelOutputStream {
+
+    private final WriteBehind writeBehind;
+
+    /**
+     * Directory of the file if the upload created it, null otherwise.
+     */
+    private final Path createdIn;
+
+    private ByteBuffer buffer;
+
+    private boolean closed;
+
+    public WriteBehindOutputStream(final FileChannel channel, final ChecksumIndex.Upload digests,
+                                   final WriteBehind writeBehind, final Path createdIn) {
+        super(channel, digests);
+        this.writeBehind = writeBehind;
+        this.createdIn = createdIn;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        this.staging().put((byte) b);
+        this.drainIfFull();
+    }
+
+    @Override
+    public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+        int written = 0;
+        while (written < length) {
+            ByteBuffer staging = this.staging();
+            int count = Math.min(staging.remaining(), length - written);
+            staging.put(bytes, offset + written, count);
+            written += count;
+            this.drainIfFull();
+        }
+    }
+
+    private ByteBuffer staging() throws IOException {
+        if (this.closed) {
+            throw new IOException("Stream closed");
+        }
+        if (this.buffer == null) {
+            // Acquired on first use, a data connection writing to the channel directly stages in its own buffer
+            this.buffer = this.writeBehind.getBuffers().acquire();
+        }
+        return this.buffer;
+    }
+
+    private void drainIfFull() throws IOException {
+        if (!this.buffer.hasRemaining()) {
+            this.drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        this.buffer.flip();
+        while (this.buffer.hasRemaining()) {
+            super.write(this.buffer);
+        }
+        this.buffer.clear();
+    }
+
+    /**
+     * Write the staged bytes, force the file and, for a new file, commit its directory entry, then close the file.
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+
+        try {
+            if (this.buffer != null) {
+                try {
+                    this.drain();
+                } finally {
+                    this.writeBehind.getBuffers().release(this.buffer);
+                    this.buffer = null;
+                }
+            }
+            this.getChannel().force(false);
+            if (this.createdIn != null) {
+                this.writeBehind.commitDirectory(this.createdIn);
+            }
+        } finally {
+            super.close();
+        }
+    }
+
+}
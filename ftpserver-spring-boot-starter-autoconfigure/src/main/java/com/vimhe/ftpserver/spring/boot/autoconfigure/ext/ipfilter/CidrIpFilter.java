@@ -0,0 +1,126 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.ipfilter;
+
+import lombok.extern.java.Log;
+import org.apache.ftpserver.ipfilter.IpFilterType;
+import org.apache.ftpserver.ipfilter.SessionFilter;
+import org.apache.mina.core.session.IoSession;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Collection;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+
+/**
+ * IP filter on CIDR networks, replacing the linear scan of {@link org.apache.ftpserver.ipfilter.RemoteIpFilter} by a
+ * {@link IpPrefixTrie} lookup.
+ * <p>
+ * The filter runs when MINA creates the session, on the I/O thread and before the session reaches the executor, so a
+ * rejected connection is closed without any FTP processing. The networks can be replaced at runtime, the new set is
+ * built first and then swapped in at once, see {@link #replace(IpFilterType, Collection)}.
+ *
+ * @author Vimhe
+ */
+@Log
+public class CidrIpFilter implements SessionFilter {
+
+    private volatile Rules rules;
+
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param type     {@link IpFilterType#DENY} to reject the listed networks, {@link IpFilterType#ALLOW} to reject all
+     *                 others
+     * @param networks networks in CIDR notation or single addresses
+     * @throws IllegalArgumentException if a network is invalid
+     */
+    public CidrIpFilter(final IpFilterType type, final Collection<String> networks) {
+        this.rules = new Rules(type, build(networks));
+    }
+
+    /**
+     * Replace the filter type and networks. Connections being accepted see either the old or the new rules, never a
+     * mix; sessions already open are not affected.
+     *
+     * @throws IllegalArgumentException if a network is invalid, the current rules are kept then
+     */
+    public void replace(final IpFilterType type, final Collection<String> networks) {
+        this.rules = new Rules(type, build(networks));
+        log.info("Ip filter replaced, " + type + " " + this.rules.networks.size() + " networks");
+    }
+
+    public IpFilterType getType() {
+        return this.rules.type;
+    }
+
+    /**
+     * Number of networks in the filter.
+     */
+    public int size() {
+        return this.rules.networks.size();
+    }
+
+    /**
+     * Number of connections rejected so far.
+     */
+    public long getRejectedCount() {
+        return this.rejected.sum();
+    }
+
+    public boolean accept(final InetAddress address) {
+        Rules current = this.rules;
+        boolean listed = address != null && current.networks.contains(address);
+        return current.type == IpFilterType.ALLOW ? listed : !listed;
+    }
+
+    @Override
+    public boolean accept(final IoSession session) {
+        SocketAddress remoteAddress = session.getRemoteAddress();
+        InetAddress address = remoteAddress instanceof InetSocketAddress
+            ? ((InetSocketAddress) remoteAddress).getAddress() : null;
+        if (this.accept(address)) {
+            return true;
+        }
+
+        this.rejected.increment();
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("Connection from " + remoteAddress + " rejected by the ip filter");
+        }
+        return false;
+    }
+
+    private static IpPrefixTrie build(final Collection<String> networks) {
+        IpPrefixTrie.Builder builder = IpPrefixTrie.builder();
+        networks.forEach(builder::add);
+        return builder.build();
+    }
+
+    private static final class Rules {
+        private final IpFilterType type;
+        private final IpPrefixTrie networks;
+
+        private Rules(final IpFilterType type, final IpPrefixTrie networks) {
+            this.type = type;
+            this.networks = networks;
+        }
+    }
+
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.ipfilter;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Immutable set of IPv4 and IPv6 networks in a compressed binary radix (PATRICIA) trie, one per address family. A
+ * lookup walks at most one node per address bit, whatever the number of networks.
+ *
+ * @author Vimhe
+ */
+public final class IpPrefixTrie {
+
+    private final Node ipv4;
+
+    private final Node ipv6;
+
+    private final int size;
+
+    private IpPrefixTrie(final Node ipv4, final Node ipv6, final int size) {
+        this.ipv4 = ipv4;
+        this.ipv6 = ipv6;
+        this.size = size;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Whether the address belongs to any of the networks.
+     */
+    public boolean contains(final InetAddress address) {
+        byte[] key = address.getAddress();
+        Node node = key.length == 4 ? this.ipv4 : this.ipv6;
+        while (node != null) {
+            if (commonPrefixLength(node.key, key, node.length) < node.length) {
+                return false;
+            }
+            if (node.terminal) {
+                return true;
+            }
+            node = bit(key, node.length) ? node.one : node.zero;
+        }
+        return false;
+    }
+
+    /**
+     * Number of networks added, including those covered by larger ones.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    private static int commonPrefixLength(final byte[] a, final byte[] b, final int maximum) {
+        for (int i = 0; i * 8 < maximum; i++) {
+            int difference = (a[i] ^ b[i]) & 0xFF;
+            if (difference != 0) {
+                return Math.min(maximum, i * 8 + Integer.numberOfLeadingZeros(difference) - 24);
+            }
+        }
+        return maximum;
+    }
+
+    private static boolean bit(final byte[] key, final int index) {
+        return (key[index >>> 3] & (0x80 >>> (index & 7))) != 0;
+    }
+
+    private static final class Node {
+        private final byte[] key;
+        private final int length;
+        private final boolean terminal;
+        private Node zero;
+        private Node one;
+
+        private Node(final byte[] key, final int length, final boolean terminal) {
+            this.key = key;
+            this.length = length;
+            this.terminal = terminal;
+        }
+    }
+
+    /**
+     * Collects networks, not thread-safe.
+     */
+    public static final class Builder {
+        private Node ipv4;
+        private Node ipv6;
+        private int size;
+
+        private Builder() {
+        }
+
+        /**
+         * Add a network in CIDR notation, e.g. "10.0.0.0/8" or "2001:db8::/32", or a single address.
+         *
+         * @throws IllegalArgumentException if it is not an IP address literal with a valid prefix length
+         */
+        public Builder add(final String cidr) {
+            String value = cidr.trim();
+            int slash = value.indexOf('/');
+            String host = slash < 0 ? value : value.substring(0, slash);
+            if (host.isEmpty() || !(Character.digit(host.charAt(0), 16) >= 0 || host.charAt(0) == ':'
+                || host.charAt(0) == '[')) {
+                throw new IllegalArgumentException("Not an IP address: " + cidr);
+            }
+
+            InetAddress address;
+            try {
+                // A literal is parsed without a name lookup
+                address = InetAddress.getByName(host);
+            } catch (UnknownHostException e) {
+                throw new IllegalArgumentException("Not an IP address: " + cidr, e);
+            }
+
+            int maximum = address.getAddress().length * 8;
+            int length;
+            try {
+                length = slash < 0 ? maximum : Integer.parseInt(value.substring(slash + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid prefix length: " + cidr, e);
+            }
+            if (length < 0 || length > maximum) {
+                throw new IllegalArgumentException("Invalid prefix length: " + cidr);
+            }
+            return this.add(address, length);
+        }
+
+        public Builder add(final InetAddress address, final int length) {
+            byte[] key = address.getAddress();
+            if (key.length == 4) {
+                this.ipv4 = insert(this.ipv4, key, length);
+            } else {
+                this.ipv6 = insert(this.ipv6, key, length);
+            }
+            this.size++;
+            return this;
+        }
+
+        private static Node insert(final Node node, final byte[] key, final int length) {
+            if (node == null) {
+                return new Node(key, length, true);
+            }
+
+            int common = commonPrefixLength(node.key, key, Math.min(node.length, length));
+            if (common == node.length) {
+                if (node.terminal) {
+                    // Already covered by this network
+                    return node;
+                }
+                if (length == node.length) {
+                    return new Node(node.key, node.length, true);
+                }
+                if (bit(key, node.length)) {
+                    node.one = insert(node.one, key, length);
+                } else {
+                    node.zero = insert(node.zero, key, length);
+                }
+                return node;
+            }
+
+            Node leaf = new Node(key, length, true);
+            if (common == length) {
+                // The new network covers the whole sub trie
+                return leaf;
+            }
+
+            Node split = new Node(key, common, false);
+            if (bit(key, common)) {
+                split.one = leaf;
+                split.zero = node;
+            } else {
+                split.zero = leaf;
+                split.one = node;
+            }
+            return split;
+        }
+
+        public IpPrefixTrie build() {
+            IpPrefixTrie trie = new IpPrefixTrie(this.ipv4, this.ipv6, this.size);
+            // Nodes are shared with the trie, which must not change afterwards
+            this.ipv4 = null;
+            this.ipv6 = null;
+            this.size = 0;
+            return trie;
+        }
+    }
+
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.listener;
+
+import lombok.extern.java.Log;
+import org.apache.ftpserver.ftplet.DefaultFtpReply;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.mina.core.session.IoEvent;
+import org.apache.mina.core.session.IoEventType;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.filter.executor.IoEventQueueHandler;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounds the events queued for the command executor of a listener.
+ * <p>
+ * The executor keeps the events of a session in order, so an event can neither be run out of order by the I/O thread
+ * nor be dropped without breaking its session. When the queue is full the session therefore either stops being read
+ * until there is room again ({@link RejectionPolicy#BLOCK}), or is closed ({@link RejectionPolicy#ABORT}).
+ * <p>
+ * The I/O thread itself is never held back: it writes the replies the clients wait for before they send anything else,
+ * e.g. the 150 reply before the data of STOR, so the commands filling the queue would never finish.
+ *
+ * @author Vimhe
+ */
+@Log
+public class CommandQueueHandler implements IoEventQueueHandler {
+
+    private static final String BUSY_MESSAGE = "Service not available, server is too busy.";
+
+    private final int capacity;
+
+    private final RejectionPolicy rejectionPolicy;
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * Guards the suspended sessions, and their reads being suspended and resumed.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Set<IoSession> suspended = new LinkedHashSet<>();
+
+    public CommandQueueHandler(final int capacity, final RejectionPolicy rejectionPolicy) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.rejectionPolicy = rejectionPolicy;
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Number of events waiting for the executor.
+     */
+    public int size() {
+        return this.size.get();
+    }
+
+    /**
+     * Number of sessions closed because the queue was full.
+     */
+    public long getRejectedCount() {
+        return this.rejected.sum();
+    }
+
+    @Override
+    public boolean accept(final Object source, final IoEvent event) {
+        // Called while the queue of the session is locked, so never wait here
+        if (this.rejectionPolicy != RejectionPolicy.ABORT || this.size.get() < this.capacity
+            || event.getType() == IoEventType.SESSION_CLOSED) {
+            return true;
+        }
+
+        this.rejected.increment();
+        if (event.getSession().isConnected() && !event.getSession().isClosing()) {
+            log.warning("Command queue full, closing session " + event.getSession().getRemoteAddress());
+            event.getSession().write(new DefaultFtpReply(
+                FtpReply.REPLY_421_SERVICE_NOT_AVAILABLE_CLOSING_CONTROL_CONNECTION, BUSY_MESSAGE));
+            event.getSession().closeOnFlush();
+        }
+        return false;
+    }
+
+    @Override
+    public void offered(final Object source, final IoEvent event) {
+        if (this.size.incrementAndGet() <= this.capacity || this.rejectionPolicy != RejectionPolicy.BLOCK
+            || event.getType() == IoEventType.SESSION_CLOSED) {
+            return;
+        }
+
+        this.lock.lock();
+        try {
+            // The poll bringing the queue back below its capacity resumes the sessions suspended until then
+            IoSession session = event.getSession();
+            if (this.size.get() > this.capacity && session.isConnected() && this.suspended.add(session)) {
+                session.suspendRead();
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public void polled(final Object source, final IoEvent event) {
+        if (this.size.getAndDecrement() != this.capacity + 1 || this.rejectionPolicy != RejectionPolicy.BLOCK) {
+            return;
+        }
+
+        this.lock.lock();
+        try {
+            this.suspended.forEach(IoSession::resumeRead);
+            this.suspended.clear();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * What happens to an event when the queue is full.
+     */
+    public enum RejectionPolicy {
+        /**
+         * Stop reading from the sessions adding to the full queue until there is room again.
+         */
+        BLOCK,
+
+        /**
+         * Reply 421 and close the session the event belongs to.
+         */
+        ABORT
+    }
+
+}
@@ -0,0 +1,352 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.listener;
+
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.VirtualThreads;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.ssl.SerializedSslFilter;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.ssl.TlsHandshakeStatistics;
+import lombok.extern.java.Log;
+import org.apache.ftpserver.DataConnectionConfiguration;
+import org.apache.ftpserver.FtpServerConfigurationException;
+import org.apache.ftpserver.impl.DefaultFtpHandler;
+import org.apache.ftpserver.impl.FtpHandler;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.impl.FtpServerContext;
+import org.apache.ftpserver.ipfilter.MinaSessionFilter;
+import org.apache.ftpserver.ipfilter.SessionFilter;
+import org.apache.ftpserver.listener.nio.AbstractListener;
+import org.apache.ftpserver.listener.nio.FtpHandlerAdapter;
+import org.apache.ftpserver.listener.nio.FtpLoggingFilter;
+import org.apache.ftpserver.listener.nio.FtpServerProtocolCodecFactory;
+import org.apache.ftpserver.ssl.ClientAuth;
+import org.apache.ftpserver.ssl.SslConfiguration;
+import org.apache.mina.core.session.IdleStatus;
+import org.apache.mina.filter.codec.ProtocolCodecFilter;
+import org.apache.mina.filter.executor.ExecutorFilter;
+import org.apache.mina.filter.executor.IoEventQueueHandler;
+import org.apache.mina.filter.executor.OrderedThreadPoolExecutor;
+import org.apache.mina.filter.logging.MdcInjectionFilter;
+import org.apache.mina.filter.ssl.SslFilter;
+import org.apache.mina.transport.socket.SocketAcceptor;
+import org.apache.mina.transport.socket.SocketSessionConfig;
+import org.apache.mina.transport.socket.nio.NioSocketAcceptor;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.security.GeneralSecurityException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+/**
+ * Same listener as {@link org.apache.ftpserver.listener.nio.NioListener}, with the number of I/O processors, the
+ * command executor and the socket options of the control connections configurable. Unless changed by the setters,
+ * which have to be called before the listener is started, it behaves exactly like the NioListener.
+ * <p>
+ * With virtual threads the commands, and so the data transfers, run on a virtual thread each instead of a bounded
+ * pool, the number of threads then no longer limits the number of sessions doing blocking I/O at the same time.
+ *
+ * @author Vimhe
+ */
+@Log
+public class TunableNioListener extends AbstractListener {
+
+    /**
+     * Size of the buffer MINA reads the commands into.
+     */
+    private static final int READ_BUFFER_SIZE = 2048;
+
+    private static final AtomicInteger EXECUTOR_COUNT = new AtomicInteger();
+
+    private FtpHandler handler;
+
+    private int ioProcessors = Runtime.getRuntime().availableProcessors();
+
+    private int backlog = 50;
+
+    private int receiveBufferSize = 512;
+
+    private Integer sendBufferSize;
+
+    private Boolean tcpNoDelay;
+
+    private int executorThreads;
+
+    private IoEventQueueHandler executorQueueHandler = IoEventQueueHandler.NOOP;
+
+    private boolean virtualThreads;
+
+    private boolean serializedSsl;
+
+    private TlsHandshakeStatistics handshakeStatistics;
+
+    private SocketAcceptor acceptor;
+
+    private InetSocketAddress address;
+
+    private OrderedThreadPoolExecutor executor;
+
+    private FtpServerContext context;
+
+    private volatile boolean suspended;
+
+    public TunableNioListener(final String serverAddress, final int port, final boolean implicitSsl,
+                              final SslConfiguration sslConfiguration,
+                              final DataConnectionConfiguration dataConnectionConfig, final int idleTimeout,
+                              final SessionFilter sessionFilter) {
+        super(serverAddress, port, implicitSsl, sslConfiguration, dataConnectionConfig, idleTimeout, sessionFilter);
+    }
+
+    /**
+     * Number of I/O processors reading and writing the control connections, by default the number of processors.
+     */
+    public void setIoProcessors(final int ioProcessors) {
+        this.ioProcessors = ioProcessors;
+    }
+
+    /**
+     * Maximum number of connections waiting to be accepted, by default 50.
+     */
+    public void setBacklog(final int backlog) {
+        this.backlog = backlog;
+    }
+
+    /**
+     * SO_RCVBUF of the control connections, by default 512 bytes, as commands are short.
+     */
+    public void setReceiveBufferSize(final int receiveBufferSize) {
+        this.receiveBufferSize = receiveBufferSize;
+    }
+
+    /**
+     * SO_SNDBUF of the control connections, by default the one of the system.
+     */
+    public void setSendBufferSize(final Integer sendBufferSize) {
+        this.sendBufferSize = sendBufferSize;
+    }
+
+    /**
+     * TCP_NODELAY of the control connections, by default the one of the system.
+     */
+    public void setTcpNoDelay(final Boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+    }
+
+    /**
+     * Run the commands of this listener on an executor of its own with this number of threads, instead of the one
+     * shared by all listeners.
+     *
+     * @param queueHandler bounds the events waiting for the executor, null for no bound
+     */
+    public void setExecutor(final int threads, final IoEventQueueHandler queueHandler) {
+        this.executorThreads = threads;
+        this.executorQueueHandler = queueHandler == null ? IoEventQueueHandler.NOOP : queueHandler;
+    }
+
+    /**
+     * Run the commands on virtual threads, unless the runtime is older than Java 21. The number of threads of
+     * {@link #setExecutor(int, IoEventQueueHandler)} then bounds the commands running at the same time, by default
+     * there is no bound.
+     */
+    public void setVirtualThreads(final boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Secure the control connections with implicit SSL by a {@link SerializedSslFilter} instead of a plain
+     * {@link SslFilter}, by default false.
+     */
+    public void setSerializedSsl(final boolean serializedSsl) {
+        this.serializedSsl = serializedSsl;
+    }
+
+    /**
+     * Receives the TLS handshakes of the control connections with implicit SSL secured by a
+     * {@link SerializedSslFilter}, none are recorded if null.
+     */
+    public void setHandshakeStatistics(final TlsHandshakeStatistics handshakeStatistics) {
+        this.handshakeStatistics = handshakeStatistics;
+    }
+
+    /**
+     * The executor of this listener, or null if it uses the one shared by all listeners or is not started.
+     */
+    public OrderedThreadPoolExecutor getExecutor() {
+        return this.executor;
+    }
+
+    @Override
+    public synchronized void start(final FtpServerContext serverContext) {
+        if (!this.isStopped()) {
+            throw new IllegalStateException("Listener already started");
+        }
+
+        try {
+            this.context = serverContext;
+            this.acceptor = new NioSocketAcceptor(this.ioProcessors);
+            this.address = this.getServerAddress() == null ? new InetSocketAddress(this.getPort())
+                : new InetSocketAddress(this.getServerAddress(), this.getPort());
+
+            this.acceptor.setReuseAddress(true);
+            this.acceptor.setBacklog(this.backlog);
+            SocketSessionConfig sessionConfig = this.acceptor.getSessionConfig();
+            sessionConfig.setReadBufferSize(READ_BUFFER_SIZE);
+            sessionConfig.setIdleTime(IdleStatus.BOTH_IDLE, this.getIdleTimeout());
+            sessionConfig.setReceiveBufferSize(this.receiveBufferSize);
+            if (this.sendBufferSize != null) {
+                sessionConfig.setSendBufferSize(this.sendBufferSize);
+            }
+            if (this.tcpNoDelay != null) {
+                sessionConfig.setTcpNoDelay(this.tcpNoDelay);
+            }
+
+            MdcInjectionFilter mdcFilter = new MdcInjectionFilter();
+            this.acceptor.getFilterChain().addLast("mdcFilter", mdcFilter);
+            if (this.getSessionFilter() != null) {
+                this.acceptor.getFilterChain().addLast("sessionFilter", new MinaSessionFilter(this.getSessionFilter()));
+            }
+            this.acceptor.getFilterChain().addLast("threadPool",
+                new ExecutorFilter(this.createExecutor(serverContext)));
+            this.acceptor.getFilterChain().addLast("codec",
+                new ProtocolCodecFilter(new FtpServerProtocolCodecFactory()));
+            this.acceptor.getFilterChain().addLast("mdcFilter2", mdcFilter);
+            this.acceptor.getFilterChain().addLast("logger", new FtpLoggingFilter());
+
+            if (this.isImplicitSsl()) {
+                this.acceptor.getFilterChain().addFirst("sslFilter", this.createSslFilter());
+            }
+
+            this.handler = this.virtualThreads && VirtualThreads.isSupported() ? new VirtualThreadFtpHandler()
+                : new DefaultFtpHandler();
+            this.handler.init(serverContext, this);
+            this.acceptor.setHandler(new FtpHandlerAdapter(serverContext, this.handler));
+
+            try {
+                this.acceptor.bind(this.address);
+            } catch (IOException e) {
+                throw new FtpServerConfigurationException("Failed to bind to address " + this.address
+                    + ", check configuration", e);
+            }
+            this.setPort(this.acceptor.getLocalAddress().getPort());
+        } catch (RuntimeException e) {
+            this.stop();
+            throw e;
+        }
+    }
+
+    private Executor createExecutor(final FtpServerContext serverContext) {
+        String prefix = "ftp-command-" + EXECUTOR_COUNT.incrementAndGet() + "-";
+        ThreadFactory virtualThreadFactory = this.virtualThreads ? VirtualThreads.newThreadFactory(prefix) : null;
+        if (this.virtualThreads && virtualThreadFactory == null) {
+            log.warning("Virtual threads require Java 21 or newer, running the commands on platform threads");
+        }
+        if (this.executorThreads <= 0 && virtualThreadFactory == null) {
+            return serverContext.getThreadPoolExecutor();
+        }
+
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory threadFactory = virtualThreadFactory != null ? virtualThreadFactory : runnable -> {
+            Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        int maximumThreads = this.executorThreads > 0 ? this.executorThreads : Integer.MAX_VALUE;
+        this.executor = new OrderedThreadPoolExecutor(0, maximumThreads, 60, TimeUnit.SECONDS,
+            threadFactory, this.executorQueueHandler);
+        return this.executor;
+    }
+
+    private SslFilter createSslFilter() {
+        SslConfiguration sslConfiguration = this.getSslConfiguration();
+        SslFilter sslFilter;
+        try {
+            sslFilter = this.serializedSsl
+                ? new SerializedSslFilter(sslConfiguration.getSSLContext(), this.handshakeStatistics)
+                : new SslFilter(sslConfiguration.getSSLContext());
+        } catch (GeneralSecurityException e) {
+            throw new FtpServerConfigurationException("SSL could not be initialized, check configuration");
+        }
+
+        if (sslConfiguration.getClientAuth() == ClientAuth.NEED) {
+            sslFilter.setNeedClientAuth(true);
+        } else if (sslConfiguration.getClientAuth() == ClientAuth.WANT) {
+            sslFilter.setWantClientAuth(true);
+        }
+        if (sslConfiguration.getEnabledCipherSuites() != null) {
+            sslFilter.setEnabledCipherSuites(sslConfiguration.getEnabledCipherSuites());
+        }
+        return sslFilter;
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (this.acceptor != null) {
+            this.acceptor.unbind();
+            this.acceptor.dispose();
+            this.acceptor = null;
+        }
+        if (this.executor != null) {
+            this.executor.shutdown();
+            this.executor = null;
+        }
+        this.context = null;
+    }
+
+    @Override
+    public boolean isStopped() {
+        return this.acceptor == null;
+    }
+
+    @Override
+    public boolean isSuspended() {
+        return this.suspended;
+    }
+
+    @Override
+    public synchronized void resume() {
+        if (this.acceptor != null && this.suspended) {
+            try {
+                this.acceptor.bind(this.address);
+                this.setPort(this.acceptor.getLocalAddress().getPort());
+                this.suspended = false;
+            } catch (IOException e) {
+                log.log(Level.SEVERE, "Failed to resume listener", e);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void suspend() {
+        if (this.acceptor != null && !this.suspended) {
+            this.acceptor.unbind();
+            this.suspended = true;
+        }
+    }
+
+    @Override
+    public synchronized Set<FtpIoSession> getActiveSessions() {
+        Set<FtpIoSession> sessions = new HashSet<>();
+        this.acceptor.getManagedSessions().values()
+            .forEach(session -> sessions.add(new FtpIoSession(session, this.context)));
+        return sessions;
+    }
+
+}
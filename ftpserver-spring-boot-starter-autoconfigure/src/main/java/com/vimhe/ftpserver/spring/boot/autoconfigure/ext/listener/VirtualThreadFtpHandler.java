@@ -0,0 +1,145 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.listener;
+
+import lombok.extern.java.Log;
+import org.apache.ftpserver.command.Command;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.ftplet.FtpletResult;
+import org.apache.ftpserver.ftpletcontainer.FtpletContainer;
+import org.apache.ftpserver.impl.DefaultFtpHandler;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.impl.FtpServerContext;
+import org.apache.ftpserver.impl.LocalizedFtpReply;
+import org.apache.ftpserver.listener.Listener;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+
+/**
+ * Same handler as {@link DefaultFtpHandler}, except that a command is executed holding a lock of the session instead
+ * of its monitor. Before Java 24 a virtual thread blocking while it holds a monitor pins its carrier thread, so a
+ * few slow transfers would hold up the commands of all other sessions.
+ *
+ * @author Vimhe
+ */
+@Log
+public class VirtualThreadFtpHandler extends DefaultFtpHandler {
+
+    private static final String LOCK_ATTRIBUTE = VirtualThreadFtpHandler.class.getName() + ".lock";
+
+    private static final Set<String> NON_AUTHENTICATED_COMMANDS =
+        new HashSet<>(Arrays.asList("USER", "PASS", "AUTH", "QUIT", "PROT", "PBSZ"));
+
+    private FtpServerContext context;
+
+    @Override
+    public void init(final FtpServerContext context, final Listener listener) {
+        super.init(context, listener);
+        this.context = context;
+    }
+
+    @Override
+    public void messageReceived(final FtpIoSession session, final FtpRequest request) throws Exception {
+        try {
+            session.updateLastAccessTime();
+
+            String commandName = request.getCommand();
+            Command command = this.context.getCommandFactory().getCommand(commandName);
+            if (!session.isLoggedIn() && !NON_AUTHENTICATED_COMMANDS.contains(commandName)) {
+                session.write(LocalizedFtpReply.translate(session, request, this.context,
+                    FtpReply.REPLY_530_NOT_LOGGED_IN, "permission", null));
+                return;
+            }
+
+            FtpletContainer ftplets = this.context.getFtpletContainer();
+            FtpletResult result;
+            try {
+                result = ftplets.beforeCommand(session.getFtpletSession(), request);
+            } catch (Exception e) {
+                log.log(Level.FINE, "Ftplet container threw exception", e);
+                result = FtpletResult.DISCONNECT;
+            }
+            if (result == FtpletResult.DISCONNECT) {
+                this.disconnect(session);
+                return;
+            }
+            if (result == FtpletResult.SKIP) {
+                return;
+            }
+
+            if (command == null) {
+                session.write(LocalizedFtpReply.translate(session, request, this.context,
+                    FtpReply.REPLY_502_COMMAND_NOT_IMPLEMENTED, "not.implemented", null));
+            } else {
+                Lock lock = lock(session);
+                lock.lock();
+                try {
+                    command.execute(session, this.context, request);
+                } finally {
+                    lock.unlock();
+                }
+            }
+
+            try {
+                result = ftplets.afterCommand(session.getFtpletSession(), request, session.getLastReply());
+            } catch (Exception e) {
+                log.log(Level.FINE, "Ftplet container threw exception", e);
+                result = FtpletResult.DISCONNECT;
+            }
+            if (result == FtpletResult.DISCONNECT) {
+                this.disconnect(session);
+            }
+        } catch (Exception e) {
+            try {
+                session.write(LocalizedFtpReply.translate(session, request, this.context,
+                    FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN, null, null));
+            } catch (Exception ignored) {
+                // The session is probably closed already
+            }
+
+            if (e instanceof IOException) {
+                throw e;
+            }
+            log.log(Level.WARNING, "RequestHandler.service()", e);
+        }
+    }
+
+    private void disconnect(final FtpIoSession session) {
+        log.fine("Ftplet returned DISCONNECT, session will be closed");
+        session.close(false).awaitUninterruptibly(10000);
+    }
+
+    private static Lock lock(final FtpIoSession session) {
+        Lock lock = (Lock) session.getAttribute(LOCK_ATTRIBUTE);
+        if (lock == null) {
+            Lock created = new ReentrantLock();
+            lock = (Lock) session.setAttributeIfAbsent(LOCK_ATTRIBUTE, created);
+            if (lock == null) {
+                lock = created;
+            }
+        }
+        return lock;
+    }
+
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.listing;
+
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.transfer.NioDataConnection;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.transfer.NioDataConnectionFactory;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.java.Log;
+import org.apache.ftpserver.command.Command;
+import org.apache.ftpserver.command.impl.listing.DirectoryLister;
+import org.apache.ftpserver.command.impl.listing.FileFormater;
+import org.apache.ftpserver.command.impl.listing.LISTFileFormater;
+import org.apache.ftpserver.command.impl.listing.ListArgument;
+import org.apache.ftpserver.command.impl.listing.ListArgumentParser;
+import org.apache.ftpserver.command.impl.listing.MLSTFileFormater;
+import org.apache.ftpserver.command.impl.listing.NLSTFileFormater;
+import org.apache.ftpserver.filesystem.nativefs.impl.NativeFtpFile;
+import org.apache.ftpserver.ftplet.DataConnection;
+import org.apache.ftpserver.ftplet.DefaultFtpReply;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.impl.FtpServerContext;
+import org.apache.ftpserver.impl.IODataConnectionFactory;
+import org.apache.ftpserver.impl.LocalizedDataTransferFtpReply;
+import org.apache.ftpserver.impl.LocalizedFtpReply;
+import org.apache.ftpserver.impl.ServerDataConnectionFactory;
+
+import java.io.IOException;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.logging.Level;
+
+/**
+ * Replaces LIST, NLST and MLSD, with the same replies, answering listings of directories of the native and nio file
+ * systems from a {@link DirectoryListingCache}. Listings of single files and of other file systems are not cached.
+ *
+ * @author Vimhe
+ */
+@Log
+@RequiredArgsConstructor
+public class CachedListingCommand implements Command {
+
+    /**
+     * Session attribute under which the MLST command keeps the facts selected by OPTS MLST.
+     */
+    private static final String MLST_TYPES_ATTRIBUTE = "MLST.types";
+
+    private static final LISTFileFormater LIST_FILE_FORMATER = new LISTFileFormater();
+
+    private static final NLSTFileFormater NLST_FILE_FORMATER = new NLSTFileFormater();
+
+    private final DirectoryLister directoryLister = new DirectoryLister();
+
+    /**
+     * The replaced command, one of LIST, NLST and MLSD.
+     */
+    private final String command;
+
+    private final DirectoryListingCache cache;
+
+    @Override
+    public void execute(final FtpIoSession session, final FtpServerContext context, final FtpRequest request)
+        throws IOException, FtpException {
+        session.resetState();
+
+        ListArgument argument = ListArgumentParser.parse(request.getArgument());
+        FtpFile file = session.getFileSystemView().getFile(argument.getFile());
+        if ("LIST".equals(this.command) && !file.doesExist()) {
+            log.fine("Listing on a non-existing file");
+            session.write(this.reply(session, request, context, FtpReply.REPLY_450_REQUESTED_FILE_ACTION_NOT_TAKEN,
+                file, -1));
+            session.getDataConnection().closeDataConnection();
+            return;
+        }
+
+        ServerDataConnectionFactory connectionFactory = session.getDataConnection();
+        if (isUninitialized(connectionFactory)) {
+            session.write(new DefaultFtpReply(FtpReply.REPLY_503_BAD_SEQUENCE_OF_COMMANDS,
+                "PORT or PASV must be issued first"));
+            connectionFactory.closeDataConnection();
+            return;
+        }
+
+        session.write(LocalizedFtpReply.translate(session, request, context,
+            FtpReply.REPLY_150_FILE_STATUS_OKAY, this.command, null));
+
+        DataConnection dataConnection;
+        try {
+            dataConnection = connectionFactory.openConnection();
+        } catch (Exception e) {
+            log.log(Level.FINE, "Exception getting the output data stream", e);
+            session.write(this.reply(session, request, context, FtpReply.REPLY_425_CANT_OPEN_DATA_CONNECTION,
+                file, -1));
+            connectionFactory.closeDataConnection();
+            return;
+        }
+
+        try {
+            long length = this.transfer(session, dataConnection, argument, file);
+            session.write(this.reply(session, request, context,
+                FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, file, length));
+        } catch (SocketException e) {
+            log.log(Level.FINE, "Socket exception during list transfer", e);
+            session.write(this.reply(session, request, context,
+                FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED, file, -1));
+        } catch (IOException e) {
+            log.log(Level.FINE, "IOException during list transfer", e);
+            session.write(this.reply(session, request, context,
+                FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN, file, -1));
+        } catch (IllegalArgumentException e) {
+            log.log(Level.FINE, "Illegal list syntax: " + request.getArgument(), e);
+            session.write(this.reply(session, request, context,
+                FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS, file, -1));
+        } finally {
+            connectionFactory.closeDataConnection();
+        }
+    }
+
+    /**
+     * Send the listing, from the cache if possible, and return its length.
+     */
+    private long transfer(final FtpIoSession session, final DataConnection dataConnection,
+                          final ListArgument argument, final FtpFile file) throws IOException {
+        Path directory = file.isDirectory() ? physicalPath(file) : null;
+        if (directory == null) {
+            String listing = this.directoryLister.listFiles(argument, session.getFileSystemView(),
+                this.formater(session, argument));
+            dataConnection.transferToClient(session.getFtpletSession(), listing);
+            return listing.length();
+        }
+
+        try (DirectoryListingCache.Lookup lookup = this.cache.lookup(directory, this.variant(session, argument))) {
+            byte[] listing = lookup.getListing();
+            if (listing == null) {
+                listing = this.directoryLister.listFiles(argument, session.getFileSystemView(),
+                    this.formater(session, argument)).getBytes(StandardCharsets.UTF_8);
+                lookup.put(listing);
+            }
+
+            if (dataConnection instanceof NioDataConnection) {
+                ((NioDataConnection) dataConnection).transferToClient(session.getFtpletSession(), listing);
+            } else {
+                dataConnection.transferToClient(session.getFtpletSession(),
+                    new String(listing, StandardCharsets.UTF_8));
+            }
+            return listing.length;
+        }
+    }
+
+    private FileFormater formater(final FtpIoSession session, final ListArgument argument) {
+        switch (this.command) {
+            case "NLST":
+                return argument.hasOption('l') ? LIST_FILE_FORMATER : NLST_FILE_FORMATER;
+            case "MLSD":
+                return new MLSTFileFormater((String[]) session.getAttribute(MLST_TYPES_ATTRIBUTE));
+            default:
+                return LIST_FILE_FORMATER;
+        }
+    }
+
+    /**
+     * Everything besides the directory the listing depends on. The user is part of it since the permissions shown
+     * are the user's.
+     */
+    private String variant(final FtpIoSession session, final ListArgument argument) {
+        StringBuilder variant = new StringBuilder(this.command)
+            .append('\n').append(session.getUser().getName())
+            .append('\n').append(argument.getOptions())
+            .append('\n').append(argument.getPattern());
+        if ("MLSD".equals(this.command)) {
+            String[] types = (String[]) session.getAttribute(MLST_TYPES_ATTRIBUTE);
+            variant.append('\n').append(types == null ? "" : String.join(";", types));
+        }
+        return variant.toString();
+    }
+
+    /**
+     * LIST replies name the listed file, the others do not.
+     */
+    private FtpReply reply(final FtpIoSession session, final FtpRequest request, final FtpServerContext context,
+                           final int code, final FtpFile file, final long length) {
+        if (!"LIST".equals(this.command)) {
+            return LocalizedFtpReply.translate(session, request, context, code, this.command, null);
+        }
+        return length < 0
+            ? LocalizedDataTransferFtpReply.translate(session, request, context, code, this.command, null, file)
+            : LocalizedDataTransferFtpReply.translate(session, request, context, code, this.command, null, file,
+            length);
+    }
+
+    private static boolean isUninitialized(final ServerDataConnectionFactory connectionFactory) {
+        if (connectionFactory instanceof IODataConnectionFactory) {
+            return ((IODataConnectionFactory) connectionFactory).getInetAddress() == null;
+        }
+        if (connectionFactory instanceof NioDataConnectionFactory) {
+            return ((NioDataConnectionFactory) connectionFactory).getInetAddress() == null;
+        }
+        return false;
+    }
+
+    /**
+     * The normalized physical path of a file of the native or nio file system, null for other file systems.
+     */
+    static Path physicalPath(final FtpFile file) {
+        if (!(file instanceof NativeFtpFile)) {
+            return null;
+        }
+        return ((NativeFtpFile) file).getPhysicalFile().toPath().toAbsolutePath().normalize();
+    }
+
+}
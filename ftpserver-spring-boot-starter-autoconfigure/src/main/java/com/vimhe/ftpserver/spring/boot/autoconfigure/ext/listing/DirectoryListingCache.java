@@ -0,0 +1,351 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.listing;
+
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.java.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+
+/**
+ * Size-bounded cache of rendered directory listings, keyed by the physical directory and a variant (command, options,
+ * user), so repeated polls of a large directory are answered without reading and formatting all of its entries again.
+ * <p>
+ * A directory is invalidated with all of its variants, by the server's own write commands through
+ * {@link ListingCacheFtplet}, and for changes made outside of the server by a {@link WatchService} registered for
+ * every cached directory. Listings rendered while their directory changed are not stored.
+ *
+ * @author Vimhe
+ */
+@Log
+public class DirectoryListingCache implements Closeable {
+
+    private final long maximumSize;
+
+    /**
+     * In nanoseconds, zero if listings do not expire.
+     */
+    private final long timeToLive;
+
+    private final WatchService watchService;
+
+    private final Map<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final Map<Path, Directory> directories = new HashMap<>();
+
+    private long totalSize;
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    private final LongAdder invalidationCount = new LongAdder();
+
+    public DirectoryListingCache(final long maximumSize, final Duration timeToLive, final boolean watch)
+        throws IOException {
+        this.maximumSize = maximumSize;
+        this.timeToLive = timeToLive == null ? 0 : Math.max(0, timeToLive.toNanos());
+
+        if (watch) {
+            this.watchService = FileSystems.getDefault().newWatchService();
+            Thread thread = new Thread(this::watchLoop, "ftp-listing-cache-watcher");
+            thread.setDaemon(true);
+            thread.start();
+        } else {
+            this.watchService = null;
+        }
+    }
+
+    /**
+     * Look up the listing of a directory. On a miss the directory is watched from now on, so the listing rendered
+     * afterwards can be stored with {@link Lookup#put(byte[])} unless the directory changed meanwhile.
+     */
+    public Lookup lookup(final Path directory, final String variant) {
+        Key key = new Key(directory, variant);
+
+        synchronized (this.entries) {
+            Entry entry = this.entries.get(key);
+            if (entry != null && !this.isExpired(entry)) {
+                this.hitCount.increment();
+                return new Lookup(key, entry.listing, null);
+            }
+
+            this.missCount.increment();
+            if (entry != null) {
+                this.removed(key, this.entries.remove(key));
+            }
+
+            Directory record = this.directories.get(directory);
+            if (record == null) {
+                WatchKey watchKey = null;
+                if (this.watchService != null) {
+                    try {
+                        watchKey = directory.register(this.watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                    } catch (IOException | UnsupportedOperationException e) {
+                        // Without a watch, changes made outside of the server would go unnoticed
+                        log.log(Level.FINE, "Not caching the listing of unwatchable directory " + directory, e);
+                        return new Lookup(key, null, null);
+                    }
+                }
+                record = new Directory(watchKey);
+                this.directories.put(directory, record);
+            }
+            record.pending++;
+            return new Lookup(key, null, record);
+        }
+    }
+
+    /**
+     * Drop all listings of a directory, e.g. because a file in it was written, deleted or renamed.
+     */
+    public void invalidate(final Path directory) {
+        synchronized (this.entries) {
+            Directory record = this.directories.remove(directory);
+            if (record == null) {
+                return;
+            }
+
+            this.invalidationCount.increment();
+            record.keys.forEach(key -> this.totalSize -= this.entries.remove(key).listing.length);
+            record.keys.clear();
+            Optional.ofNullable(record.watchKey).ifPresent(WatchKey::cancel);
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (this.entries) {
+            new HashSet<>(this.directories.keySet()).forEach(this::invalidate);
+        }
+    }
+
+    private void put(final Lookup lookup, final byte[] listing) {
+        Key key = lookup.key;
+
+        synchronized (this.entries) {
+            // Invalidated since the lookup, the listing may not contain the change
+            if (lookup.directory == null || this.directories.get(key.directory) != lookup.directory
+                || listing.length > this.maximumSize) {
+                return;
+            }
+
+            Entry previous = this.entries.put(key, new Entry(listing, System.nanoTime()));
+            if (previous == null) {
+                lookup.directory.keys.add(key);
+            } else {
+                this.totalSize -= previous.listing.length;
+            }
+            this.totalSize += listing.length;
+
+            Iterator<Map.Entry<Key, Entry>> eldest = this.entries.entrySet().iterator();
+            while (this.totalSize > this.maximumSize && eldest.hasNext()) {
+                Map.Entry<Key, Entry> candidate = eldest.next();
+                if (!candidate.getKey().equals(key)) {
+                    eldest.remove();
+                    this.removed(candidate.getKey(), candidate.getValue());
+                }
+            }
+        }
+    }
+
+    private void release(final Lookup lookup) {
+        synchronized (this.entries) {
+            lookup.directory.pending--;
+            this.releaseIfUnused(lookup.key.directory, lookup.directory);
+        }
+    }
+
+    /**
+     * Account for an entry removed from {@link #entries}, stop watching its directory if nothing else is cached.
+     */
+    private void removed(final Key key, final Entry entry) {
+        this.totalSize -= entry.listing.length;
+        Directory record = this.directories.get(key.directory);
+        if (record != null) {
+            record.keys.remove(key);
+            this.releaseIfUnused(key.directory, record);
+        }
+    }
+
+    private void releaseIfUnused(final Path path, final Directory record) {
+        if (record.keys.isEmpty() && record.pending == 0 && this.directories.get(path) == record) {
+            this.directories.remove(path);
+            Optional.ofNullable(record.watchKey).ifPresent(WatchKey::cancel);
+        }
+    }
+
+    private boolean isExpired(final Entry entry) {
+        return this.timeToLive > 0 && System.nanoTime() - entry.created >= this.timeToLive;
+    }
+
+    private void watchLoop() {
+        try {
+            while (true) {
+                WatchKey key = this.watchService.take();
+                boolean overflow = key.pollEvents().stream()
+                    .anyMatch(event -> event.kind() == StandardWatchEventKinds.OVERFLOW);
+                key.reset();
+
+                // Events were lost, any directory may have changed
+                if (overflow) {
+                    this.invalidateAll();
+                } else {
+                    this.invalidate((Path) key.watchable());
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.invalidateAll();
+        if (this.watchService != null) {
+            this.watchService.close();
+        }
+    }
+
+    /**
+     * Number of cached listings.
+     */
+    public int size() {
+        synchronized (this.entries) {
+            return this.entries.size();
+        }
+    }
+
+    /**
+     * Bytes of all cached listings.
+     */
+    public long getTotalSize() {
+        synchronized (this.entries) {
+            return this.totalSize;
+        }
+    }
+
+    public long getMaximumSize() {
+        return this.maximumSize;
+    }
+
+    public long getHitCount() {
+        return this.hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return this.missCount.sum();
+    }
+
+    /**
+     * Number of times a cached directory was invalidated.
+     */
+    public long getInvalidationCount() {
+        return this.invalidationCount.sum();
+    }
+
+    /**
+     * Ratio of listings served from the cache, 0 when there was no lookup yet.
+     */
+    public double getHitRatio() {
+        long hits = this.hitCount.sum();
+        long total = hits + this.missCount.sum();
+        return total == 0 ? 0D : (double) hits / total;
+    }
+
+    @EqualsAndHashCode
+    @RequiredArgsConstructor
+    private static final class Key {
+        private final Path directory;
+        private final String variant;
+    }
+
+    @RequiredArgsConstructor
+    private static final class Entry {
+        private final byte[] listing;
+        private final long created;
+    }
+
+    @RequiredArgsConstructor
+    private static final class Directory {
+        private final WatchKey watchKey;
+        private final Set<Key> keys = new HashSet<>();
+
+        /**
+         * Lookups which missed and may still store a listing.
+         */
+        private int pending;
+    }
+
+    /**
+     * The result of a lookup, which must be closed once the listing was sent.
+     */
+    public final class Lookup implements AutoCloseable {
+        private final Key key;
+        private final byte[] listing;
+        private Directory directory;
+
+        private Lookup(final Key key, final byte[] listing, final Directory directory) {
+            this.key = key;
+            this.listing = listing;
+            this.directory = directory;
+        }
+
+        /**
+         * The cached listing, null on a miss.
+         */
+        public byte[] getListing() {
+            return this.listing;
+        }
+
+        /**
+         * Store the listing rendered after a miss.
+         */
+        public void put(final byte[] listing) {
+            if (this.directory != null) {
+                DirectoryListingCache.this.put(this, listing);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (this.directory != null) {
+                DirectoryListingCache.this.release(this);
+                this.directory = null;
+            }
+        }
+    }
+
+}
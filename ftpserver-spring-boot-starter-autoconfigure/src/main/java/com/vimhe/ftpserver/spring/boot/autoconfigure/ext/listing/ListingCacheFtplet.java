@@ -0,0 +1,91 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.listing;
+
+import lombok.RequiredArgsConstructor;
+import org.apache.ftpserver.ftplet.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Ftplet which invalidates the {@link DirectoryListingCache} for the directories changed by the server's own write
+ * commands.
+ *
+ * @author Vimhe
+ */
+@RequiredArgsConstructor
+public class ListingCacheFtplet extends DefaultFtplet {
+
+    private static final Set<String> WRITE_COMMANDS = new HashSet<>(Arrays.asList(
+        "STOR", "STOU", "APPE", "DELE", "RMD", "MKD", "RNTO"));
+
+    private static final String RENAME_FROM_ATTRIBUTE = ListingCacheFtplet.class.getName() + ".renameFrom";
+
+    private final DirectoryListingCache cache;
+
+    @Override
+    public FtpletResult beforeCommand(final FtpSession session, final FtpRequest request)
+        throws FtpException, IOException {
+        // The rename source is reset by the time RNTO is done
+        if ("RNTO".equals(request.getCommand())) {
+            Optional.ofNullable(session.getRenameFrom())
+                .ifPresent(file -> session.setAttribute(RENAME_FROM_ATTRIBUTE, file));
+        }
+        return FtpletResult.DEFAULT;
+    }
+
+    @Override
+    public FtpletResult afterCommand(final FtpSession session, final FtpRequest request, final FtpReply reply)
+        throws FtpException, IOException {
+        String command = request.getCommand();
+        if (!WRITE_COMMANDS.contains(command)) {
+            return FtpletResult.DEFAULT;
+        }
+
+        FileSystemView fileSystemView = session.getFileSystemView();
+        if ("RNTO".equals(command)) {
+            this.invalidate((FtpFile) session.getAttribute(RENAME_FROM_ATTRIBUTE));
+            session.removeAttribute(RENAME_FROM_ATTRIBUTE);
+        }
+        if ("STOU".equals(command)) {
+            // The unique file name is chosen by the server, in the working directory
+            this.invalidate(fileSystemView.getWorkingDirectory());
+        }
+        if (request.hasArgument()) {
+            this.invalidate(fileSystemView.getFile(request.getArgument()));
+        }
+        return FtpletResult.DEFAULT;
+    }
+
+    /**
+     * Invalidate the directory containing the file, and the file itself in case it is a directory.
+     */
+    private void invalidate(final FtpFile file) {
+        Path path = file == null ? null : CachedListingCommand.physicalPath(file);
+        if (path != null) {
+            this.cache.invalidate(path);
+            Optional.ofNullable(path.getParent()).ifPresent(this.cache::invalidate);
+        }
+    }
+
+}
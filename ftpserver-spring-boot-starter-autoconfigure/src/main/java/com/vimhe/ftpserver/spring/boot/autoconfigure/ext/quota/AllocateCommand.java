@@ -0,0 +1,64 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.quota;
+
+import org.apache.ftpserver.command.AbstractCommand;
+import org.apache.ftpserver.ftplet.DefaultFtpReply;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.impl.FtpServerContext;
+
+import java.io.IOException;
+
+/**
+ * The ALLO command, "ALLO size [R record-size]", announcing the size of the next upload so {@link QuotaUploadCommand}
+ * can refuse it before any data is sent.
+ *
+ * @author Vimhe
+ */
+public class AllocateCommand extends AbstractCommand {
+
+    /**
+     * The announced size of the next upload, a {@link Long}.
+     */
+    public static final String ALLOCATION_ATTRIBUTE = AllocateCommand.class.getName() + ".allocation";
+
+    @Override
+    public void execute(final FtpIoSession session, final FtpServerContext context, final FtpRequest request)
+        throws IOException, FtpException {
+        session.resetState();
+        session.removeAttribute(ALLOCATION_ATTRIBUTE);
+
+        long size;
+        try {
+            size = request.hasArgument() ? Long.parseLong(request.getArgument().trim().split("\\s+")[0]) : -1;
+        } catch (NumberFormatException e) {
+            size = -1;
+        }
+        if (size < 0) {
+            session.write(new DefaultFtpReply(FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+                "Syntax error in parameters or arguments."));
+            return;
+        }
+
+        session.setAttribute(ALLOCATION_ATTRIBUTE, size);
+        session.write(new DefaultFtpReply(FtpReply.REPLY_200_COMMAND_OKAY, "Command ALLO okay."));
+    }
+
+}
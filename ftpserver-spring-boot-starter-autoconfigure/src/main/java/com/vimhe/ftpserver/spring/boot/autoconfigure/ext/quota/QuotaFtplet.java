@@ -0,0 +1,132 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.quota;
+
+import lombok.RequiredArgsConstructor;
+import org.apache.ftpserver.ftplet.*;
+import org.apache.ftpserver.impl.FtpIoSession;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Ftplet which keeps the {@link QuotaIndex} up to date on STOR, APPE, STOU, DELE and RNTO, the quota itself is
+ * enforced by {@link QuotaUploadCommand}. STOU only names its file in the data transfer reply, which
+ * {@link QuotaUploadCommand} hands over with {@link #uniqueFileStored(FtpIoSession, Path)}.
+ *
+ * @author Vimhe
+ */
+@RequiredArgsConstructor
+public class QuotaFtplet extends DefaultFtplet {
+
+    private static final Set<String> WRITE_COMMANDS = new HashSet<>(Arrays.asList(
+        "STOR", "APPE", "STOU", "DELE", "RNTO"));
+
+    private static final String TARGET_ATTRIBUTE = QuotaFtplet.class.getName() + ".target";
+
+    private static final String RENAME_FROM_ATTRIBUTE = QuotaFtplet.class.getName() + ".renameFrom";
+
+    private final QuotaIndex index;
+
+    @Override
+    public FtpletResult beforeCommand(final FtpSession session, final FtpRequest request)
+        throws FtpException, IOException {
+        String command = request.getCommand();
+        if (!WRITE_COMMANDS.contains(command) || session.getUser() == null) {
+            return FtpletResult.DEFAULT;
+        }
+
+        Path path = "STOU".equals(command) || !request.hasArgument()
+            ? null : QuotaUploadCommand.physicalPath(session.getFileSystemView().getFile(request.getArgument()));
+        if (!"RNTO".equals(command) && path != null) {
+            session.setAttribute(TARGET_ATTRIBUTE, new Target(path, this.index.footprint(path)));
+        } else if ("RNTO".equals(command) && path != null) {
+            // The rename source is reset by the time RNTO is done
+            Path from = QuotaUploadCommand.physicalPath(session.getRenameFrom());
+            if (from != null) {
+                session.setAttribute(RENAME_FROM_ATTRIBUTE, from);
+                session.setAttribute(TARGET_ATTRIBUTE, new Target(path, this.index.footprint(path)));
+            }
+        }
+        return FtpletResult.DEFAULT;
+    }
+
+    @Override
+    public FtpletResult afterCommand(final FtpSession session, final FtpRequest request, final FtpReply reply)
+        throws FtpException, IOException {
+        if ("RNTO".equals(request.getCommand())) {
+            Path from = (Path) session.getAttribute(RENAME_FROM_ATTRIBUTE);
+            Target target = (Target) session.getAttribute(TARGET_ATTRIBUTE);
+            session.removeAttribute(RENAME_FROM_ATTRIBUTE);
+            session.removeAttribute(TARGET_ATTRIBUTE);
+            if (from != null && target != null && reply.isPositive()) {
+                this.index.move(from, target.path, () -> this.index.footprint(target.path), target.before);
+            }
+            return FtpletResult.DEFAULT;
+        }
+
+        this.targetChanged(session);
+        return FtpletResult.DEFAULT;
+    }
+
+    @Override
+    public FtpletResult onDisconnect(final FtpSession session) throws FtpException, IOException {
+        // afterCommand is skipped when the command failed with an exception, the file may be written partly
+        if (!(session.getAttribute(RENAME_FROM_ATTRIBUTE) instanceof Path)) {
+            this.targetChanged(session);
+        }
+        return FtpletResult.DEFAULT;
+    }
+
+    /**
+     * Set the file written by STOU as the target of the command, it did not exist before.
+     */
+    static void uniqueFileStored(final FtpIoSession session, final Path path) {
+        session.setAttribute(TARGET_ATTRIBUTE, new Target(path, QuotaIndex.Footprint.NONE));
+    }
+
+    /**
+     * Account the difference between the target before and after the command.
+     */
+    private void targetChanged(final FtpSession session) {
+        Target target = (Target) session.getAttribute(TARGET_ATTRIBUTE);
+        if (target == null) {
+            return;
+        }
+        session.removeAttribute(TARGET_ATTRIBUTE);
+
+        QuotaIndex.Footprint after = this.index.footprint(target.path);
+        this.index.update(target.path, after.getBytes() - target.before.getBytes(),
+            after.getFiles() - target.before.getFiles());
+    }
+
+    /**
+     * A file changed by a command and its footprint before.
+     */
+    @RequiredArgsConstructor
+    private static final class Target {
+
+        private final Path path;
+
+        private final QuotaIndex.Footprint before;
+
+    }
+
+}
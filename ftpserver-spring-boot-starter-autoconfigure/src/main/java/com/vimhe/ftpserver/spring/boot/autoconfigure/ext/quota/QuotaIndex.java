@@ -0,0 +1,384 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.quota;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.java.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
+/**
+ * Storage used below home directories, the bytes and the number of regular files, kept in memory. The homes of the
+ * users with a quota are scanned once at startup by a fork/join pool, a task per directory, homes seen later on first
+ * use. The server's own writes update the usage incrementally, and a periodic reconciliation scans the homes again
+ * and corrects the drift of writes which bypassed the server or were not accounted for, like failed transfers.
+ * <p>
+ * Symbolic links are not followed. A file below several tracked homes, nested or shared by users, counts for each.
+ *
+ * @author Vimhe
+ */
+@Log
+public class QuotaIndex implements Closeable {
+
+    private final ConcurrentMap<Path, Usage> usages = new ConcurrentHashMap<>(16);
+
+    private final ForkJoinPool scanPool;
+
+    /**
+     * Runs the reconciliation, null if disabled.
+     */
+    private final ScheduledExecutorService reconciler;
+
+    private final LongAdder reconciliationCount = new LongAdder();
+
+    private final LongAdder correctedBytes = new LongAdder();
+
+    private final LongAdder rejectedCount = new LongAdder();
+
+    /**
+     * @param parallelism        the number of threads scanning directories
+     * @param reconcileInterval  the delay between two reconciliations, null or zero for none
+     */
+    public QuotaIndex(final int parallelism, final Duration reconcileInterval) {
+        this.scanPool = new ForkJoinPool(Math.max(parallelism, 1), pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("ftp-quota-scanner-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+
+        if (reconcileInterval == null || reconcileInterval.isZero() || reconcileInterval.isNegative()) {
+            this.reconciler = null;
+            return;
+        }
+        this.reconciler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ftp-quota-reconciler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = reconcileInterval.toMillis();
+        this.reconciler.scheduleWithFixedDelay(this::reconcileQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Scan the given homes in a single fork/join pass and track them.
+     */
+    public void seed(final Collection<Path> homes) {
+        List<Path> untracked = new ArrayList<>(homes.size());
+        homes.stream().map(QuotaIndex::normalize).distinct().filter(home -> !this.usages.containsKey(home))
+            .forEach(untracked::add);
+
+        long start = System.nanoTime();
+        this.scanAll(untracked, (home, footprint) -> this.usages.putIfAbsent(home, new Usage(footprint)));
+        log.info("Quota usage of " + untracked.size() + " home directories scanned in "
+            + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+    }
+
+    /**
+     * The usage of a home directory, scanned first unless already tracked.
+     */
+    public Usage usage(final Path home) {
+        Path key = normalize(home);
+        Usage usage = this.usages.get(key);
+        if (usage != null) {
+            return usage;
+        }
+        // Not scanned under a lock, the rare concurrent first use scans twice and keeps the first result
+        Usage scanned = new Usage(this.scan(key));
+        usage = this.usages.putIfAbsent(key, scanned);
+        return usage == null ? scanned : usage;
+    }
+
+    /**
+     * Account a change of the file or directory at the path to every tracked home containing it.
+     */
+    public void update(final Path path, final long bytes, final long files) {
+        if (bytes == 0 && files == 0) {
+            return;
+        }
+        Path key = normalize(path);
+        this.usages.forEach((home, usage) -> {
+            if (key.startsWith(home)) {
+                usage.add(bytes, files);
+            }
+        });
+    }
+
+    /**
+     * Account a rename, the moved footprint is only computed if the rename crosses the boundary of a tracked home.
+     *
+     * @param from     the former path
+     * @param to       the new path
+     * @param moved    the footprint now at the new path
+     * @param replaced the footprint the rename replaced at the new path
+     */
+    public void move(final Path from, final Path to, final Supplier<Footprint> moved, final Footprint replaced) {
+        Path source = normalize(from);
+        Path target = normalize(to);
+        Footprint footprint = null;
+        for (Map.Entry<Path, Usage> entry : this.usages.entrySet()) {
+            boolean containsSource = source.startsWith(entry.getKey());
+            boolean containsTarget = target.startsWith(entry.getKey());
+            if (containsSource == containsTarget) {
+                entry.getValue().add(containsTarget ? -replaced.getBytes() : 0,
+                    containsTarget ? -replaced.getFiles() : 0);
+                continue;
+            }
+            footprint = footprint == null ? moved.get() : footprint;
+            long sign = containsTarget ? 1 : -1;
+            entry.getValue().add(sign * footprint.getBytes() - (containsTarget ? replaced.getBytes() : 0),
+                sign * footprint.getFiles() - (containsTarget ? replaced.getFiles() : 0));
+        }
+    }
+
+    /**
+     * The footprint of a regular file, or of everything below a directory.
+     */
+    public Footprint footprint(final Path path) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class,
+                LinkOption.NOFOLLOW_LINKS);
+            if (attributes.isRegularFile()) {
+                return new Footprint(attributes.size(), 1);
+            }
+            return attributes.isDirectory() ? this.scan(path) : Footprint.NONE;
+        } catch (IOException e) {
+            return Footprint.NONE;
+        }
+    }
+
+    /**
+     * Scan every tracked home again and swap in its usage. The changes accounted while the scan of a home runs are
+     * taken as seen by the scan, a change it missed is corrected by the next reconciliation.
+     */
+    public void reconcile() {
+        this.scanAll(new ArrayList<>(this.usages.keySet()), (home, scanned) -> {
+            if (!Files.isDirectory(home, LinkOption.NOFOLLOW_LINKS)) {
+                this.usages.remove(home);
+                return;
+            }
+            Optional.ofNullable(this.usages.get(home))
+                .ifPresent(usage -> this.correctedBytes.add(Math.abs(usage.reconcile(scanned))));
+        });
+        this.reconciliationCount.increment();
+    }
+
+    private void reconcileQuietly() {
+        try {
+            this.reconcile();
+        } catch (RuntimeException e) {
+            log.log(Level.WARNING, "Quota reconciliation failed", e);
+        }
+    }
+
+    /**
+     * Count an upload refused because of the quota.
+     */
+    void rejected() {
+        this.rejectedCount.increment();
+    }
+
+    private Footprint scan(final Path directory) {
+        return this.scanPool.invoke(new DirectoryScan(directory));
+    }
+
+    /**
+     * Scan the homes in parallel, each result is handed over as soon as the scan of its home is done.
+     */
+    private void scanAll(final List<Path> homes, final BiConsumer<Path, Footprint> scanned) {
+        this.scanPool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                List<RecursiveAction> scans = new ArrayList<>(homes.size());
+                homes.forEach(home -> scans.add(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        scanned.accept(home, new DirectoryScan(home).compute());
+                    }
+                }));
+                invokeAll(scans);
+            }
+        });
+    }
+
+    private static Path normalize(final Path path) {
+        return path.toAbsolutePath().normalize();
+    }
+
+    /**
+     * The number of tracked home directories.
+     */
+    public int getHomeCount() {
+        return this.usages.size();
+    }
+
+    public long getReconciliationCount() {
+        return this.reconciliationCount.sum();
+    }
+
+    /**
+     * The bytes reconciliation corrected the usage by, in either direction.
+     */
+    public long getCorrectedBytes() {
+        return this.correctedBytes.sum();
+    }
+
+    public long getRejectedCount() {
+        return this.rejectedCount.sum();
+    }
+
+    @Override
+    public void close() {
+        if (this.reconciler != null) {
+            this.reconciler.shutdownNow();
+        }
+        this.scanPool.shutdownNow();
+    }
+
+    /**
+     * Bytes and regular files.
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static final class Footprint {
+
+        public static final Footprint NONE = new Footprint(0, 0);
+
+        private final long bytes;
+
+        private final long files;
+
+    }
+
+    /**
+     * Current usage of a home directory, the usage found by the last scan plus the changes accounted since.
+     */
+    public static final class Usage {
+
+        /**
+         * Found by the last scan, less the changes accounted until the scan ended.
+         */
+        private final AtomicLong scannedBytes;
+
+        private final AtomicLong scannedFiles;
+
+        /**
+         * Accounted since the home is tracked.
+         */
+        private final AtomicLong changedBytes = new AtomicLong();
+
+        private final AtomicLong changedFiles = new AtomicLong();
+
+        Usage(final Footprint footprint) {
+            this.scannedBytes = new AtomicLong(footprint.getBytes());
+            this.scannedFiles = new AtomicLong(footprint.getFiles());
+        }
+
+        void add(final long bytes, final long files) {
+            this.changedBytes.addAndGet(bytes);
+            this.changedFiles.addAndGet(files);
+        }
+
+        /**
+         * Swap in the result of a scan. The changes accounted so far are subtracted from it, those accounted while
+         * the scan ran are in it already.
+         *
+         * @return the bytes the usage was corrected by
+         */
+        long reconcile(final Footprint scanned) {
+            long bytes = scanned.getBytes() - this.changedBytes.get();
+            this.scannedFiles.set(scanned.getFiles() - this.changedFiles.get());
+            return bytes - this.scannedBytes.getAndSet(bytes);
+        }
+
+        public long getBytes() {
+            return this.scannedBytes.get() + this.changedBytes.get();
+        }
+
+        public long getFiles() {
+            return this.scannedFiles.get() + this.changedFiles.get();
+        }
+
+    }
+
+    /**
+     * Sums up a directory, forking a task per subdirectory.
+     */
+    private static final class DirectoryScan extends RecursiveTask<Footprint> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient Path directory;
+
+        DirectoryScan(final Path directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        protected Footprint compute() {
+            List<DirectoryScan> subdirectories = new ArrayList<>();
+            long bytes = 0;
+            long files = 0;
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(this.directory)) {
+                for (Path entry : entries) {
+                    BasicFileAttributes attributes;
+                    try {
+                        attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException e) {
+                        // Deleted meanwhile
+                        continue;
+                    }
+                    if (attributes.isDirectory()) {
+                        DirectoryScan scan = new DirectoryScan(entry);
+                        scan.fork();
+                        subdirectories.add(scan);
+                    } else if (attributes.isRegularFile()) {
+                        bytes += attributes.size();
+                        files++;
+                    }
+                }
+            } catch (IOException | DirectoryIteratorException e) {
+                log.log(Level.FINE, "Quota scan skipped " + this.directory, e);
+            }
+
+            for (DirectoryScan scan : subdirectories) {
+                Footprint footprint = scan.join();
+                bytes += footprint.getBytes();
+                files += footprint.getFiles();
+            }
+            return new Footprint(bytes, files);
+        }
+
+    }
+
+}
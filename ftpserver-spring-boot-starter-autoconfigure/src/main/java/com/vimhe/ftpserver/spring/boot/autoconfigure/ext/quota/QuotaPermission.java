@@ -0,0 +1,53 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.quota;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.apache.ftpserver.ftplet.AuthorizationRequest;
+import org.apache.ftpserver.ftplet.Authority;
+
+/**
+ * Storage quota of a user, the bytes and regular files below the home directory, 0 meaning unlimited.
+ *
+ * @author Vimhe
+ */
+@Getter
+@RequiredArgsConstructor
+public class QuotaPermission implements Authority {
+
+    private final long maxBytes;
+
+    private final long maxFiles;
+
+    @Override
+    public boolean canAuthorize(final AuthorizationRequest request) {
+        return request instanceof QuotaRequest;
+    }
+
+    @Override
+    public AuthorizationRequest authorize(final AuthorizationRequest request) {
+        if (request instanceof QuotaRequest) {
+            QuotaRequest quotaRequest = (QuotaRequest) request;
+            quotaRequest.setMaxBytes(this.maxBytes);
+            quotaRequest.setMaxFiles(this.maxFiles);
+            return request;
+        }
+        return null;
+    }
+
+}
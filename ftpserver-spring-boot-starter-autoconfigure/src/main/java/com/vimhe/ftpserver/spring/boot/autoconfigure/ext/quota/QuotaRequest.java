@@ -0,0 +1,40 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.quota;
+
+import lombok.Data;
+import org.apache.ftpserver.ftplet.AuthorizationRequest;
+
+/**
+ * Request for the storage quota of a user, 0 meaning unlimited.
+ *
+ * @author Vimhe
+ */
+@Data
+public class QuotaRequest implements AuthorizationRequest {
+
+    /**
+     * Limit of the bytes stored in the home directory.
+     */
+    private long maxBytes;
+
+    /**
+     * Limit of the files stored in the home directory.
+     */
+    private long maxFiles;
+
+}
@@ -0,0 +1,393 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.quota;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.java.Log;
+import org.apache.ftpserver.DataConnectionException;
+import org.apache.ftpserver.FtpServerConfigurationException;
+import org.apache.ftpserver.command.Command;
+import org.apache.ftpserver.filesystem.nativefs.impl.NativeFtpFile;
+import org.apache.ftpserver.ftplet.*;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.impl.FtpServerContext;
+import org.apache.ftpserver.impl.ServerDataConnectionFactory;
+import org.apache.mina.core.future.WriteFuture;
+import org.apache.mina.core.session.DummySession;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Level;
+
+/**
+ * Decorates STOR, APPE and STOU to enforce the quota of the user. An upload is refused with a 552 reply before the
+ * data connection is opened once the quota is used up, or when the size announced with {@link AllocateCommand ALLO}
+ * does not fit. An accepted upload may write what is left of the quota only: beyond, it is aborted with a 552 reply
+ * and the partial file is deleted, or truncated back to its size before an APPE or a resumed STOR.
+ * <p>
+ * Concurrent uploads of a user are each given what is left when they start. Uploads of users with a byte quota are
+ * copied through a stream, never written to the file channel directly.
+ * <p>
+ * FtpServer has no extension point for the data connection of a command: a budgeted upload swaps the factory kept
+ * under the session attribute read by {@link FtpIoSession#getDataConnection()}, and the decorated command is given a
+ * subclass of {@link FtpIoSession} to see its replies. Both are internals of FtpServer 1.1, checked when the command
+ * is created so that another version fails the startup rather than uploads going beyond the quota.
+ *
+ * @author Vimhe
+ */
+@Log
+public class QuotaUploadCommand implements Command {
+
+    /**
+     * Session attribute under which {@link FtpIoSession#getDataConnection()} keeps the data connection factory.
+     */
+    private static final String DATA_CONNECTION_ATTRIBUTE = "org.apache.ftpserver.data-connection";
+
+    private static final String EXCEEDED_MESSAGE = "Requested file action aborted, storage quota exceeded.";
+
+    private final Command command;
+
+    private final QuotaIndex index;
+
+    /**
+     * @throws FtpServerConfigurationException if the data connection factory of a session can not be swapped
+     */
+    public QuotaUploadCommand(final Command command, final QuotaIndex index) {
+        checkDataConnectionSwap();
+        this.command = command;
+        this.index = index;
+    }
+
+    /**
+     * Check that a factory set under {@link #DATA_CONNECTION_ATTRIBUTE} is the data connection of the session, and
+     * of a {@link ReplyingSession} over it.
+     */
+    static void checkDataConnectionSwap() {
+        FtpIoSession session = new FtpIoSession(new DummySession(), null);
+        ServerDataConnectionFactory factory = new BudgetedDataConnectionFactory(null, 0);
+        session.setAttribute(DATA_CONNECTION_ATTRIBUTE, factory);
+        boolean swapped;
+        try {
+            swapped = session.getDataConnection() == factory
+                && new ReplyingSession(session, null, null).getDataConnection() == factory;
+        } catch (RuntimeException e) {
+            // Without the attribute, a factory for the dummy session is created, which has no socket address
+            swapped = false;
+        }
+        if (!swapped) {
+            throw new FtpServerConfigurationException("The quota of uploads is not supported by this FtpServer "
+                + "version, its data connection is not kept under " + DATA_CONNECTION_ATTRIBUTE);
+        }
+    }
+
+    @Override
+    public void execute(final FtpIoSession session, final FtpServerContext context, final FtpRequest request)
+        throws IOException, FtpException {
+        Long allocation = (Long) session.getAttribute(AllocateCommand.ALLOCATION_ATTRIBUTE);
+        session.removeAttribute(AllocateCommand.ALLOCATION_ATTRIBUTE);
+
+        User user = session.getUser();
+        QuotaRequest quota = user == null ? null : (QuotaRequest) user.authorize(new QuotaRequest());
+        if (quota == null || (quota.getMaxBytes() <= 0 && quota.getMaxFiles() <= 0)) {
+            this.execute(session, context, request, null);
+            return;
+        }
+
+        String name = request.getCommand();
+        Path path = "STOU".equals(name) || !request.hasArgument()
+            ? null : physicalPath(session.getFileSystemView().getFile(request.getArgument()));
+        QuotaIndex.Footprint before = path == null ? QuotaIndex.Footprint.NONE : this.index.footprint(path);
+        // STOR replaces the file from the offset of REST on, APPE keeps all of it
+        long kept = "STOR".equals(name) ? Math.min(session.getFileOffset(), before.getBytes()) : before.getBytes();
+
+        QuotaIndex.Usage usage = this.index.usage(Paths.get(user.getHomeDirectory()));
+        long usedBytes = usage.getBytes() - (before.getBytes() - kept);
+        long files = before.getFiles() == 0 ? 1 : 0;
+        // Without an announced size, there must be room for one byte
+        boolean bytesExceeded = quota.getMaxBytes() > 0
+            && usedBytes + (allocation == null ? 1 : allocation) > quota.getMaxBytes();
+        boolean filesExceeded = quota.getMaxFiles() > 0 && usage.getFiles() + files > quota.getMaxFiles();
+        if (bytesExceeded || filesExceeded) {
+            this.index.rejected();
+            session.resetState();
+            session.write(new DefaultFtpReply(FtpReply.REPLY_552_REQUESTED_FILE_ACTION_ABORTED_EXCEEDED_STORAGE,
+                EXCEEDED_MESSAGE));
+            session.getDataConnection().closeDataConnection();
+            return;
+        }
+        if (quota.getMaxBytes() <= 0) {
+            this.execute(session, context, request, null);
+            return;
+        }
+
+        ServerDataConnectionFactory connectionFactory = session.getDataConnection();
+        BudgetedDataConnectionFactory budgeted =
+            new BudgetedDataConnectionFactory(connectionFactory, quota.getMaxBytes() - usedBytes);
+        session.setAttribute(DATA_CONNECTION_ATTRIBUTE, budgeted);
+        Path written;
+        try {
+            written = this.execute(session, context, request, budgeted);
+        } finally {
+            if (session.getAttribute(DATA_CONNECTION_ATTRIBUTE) == budgeted) {
+                session.setAttribute(DATA_CONNECTION_ATTRIBUTE, connectionFactory);
+            }
+        }
+
+        if (budgeted.exceeded) {
+            this.index.rejected();
+            written = path == null ? written : path;
+            if (written != null) {
+                discard(written, kept);
+            }
+        }
+    }
+
+    /**
+     * Execute the decorated command, through a {@link ReplyingSession} when the upload is budgeted or its file is
+     * only named in the data transfer reply. The file of STOU is handed to the {@link QuotaFtplet}.
+     *
+     * @param budgeted the data connection factory of a budgeted upload, null if not budgeted
+     * @return the file of the last data transfer reply, null if none or not seen
+     */
+    private Path execute(final FtpIoSession session, final FtpServerContext context, final FtpRequest request,
+                         final BudgetedDataConnectionFactory budgeted) throws IOException, FtpException {
+        boolean unique = "STOU".equals(request.getCommand());
+        if (budgeted == null && !unique) {
+            this.command.execute(session, context, request);
+            return null;
+        }
+
+        ReplyingSession replyingSession = new ReplyingSession(session, context, budgeted);
+        Path written = null;
+        try {
+            this.command.execute(replyingSession, context, request);
+        } finally {
+            written = physicalPath(replyingSession.file);
+            if (unique && written != null) {
+                QuotaFtplet.uniqueFileStored(session, written);
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Delete the partial file of an aborted upload, or truncate it back to the bytes it kept.
+     */
+    private static void discard(final Path path, final long kept) {
+        try {
+            if (kept == 0) {
+                Files.deleteIfExists(path);
+                return;
+            }
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(kept);
+            }
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Partial upload beyond the quota not discarded: " + path, e);
+        }
+    }
+
+    static Path physicalPath(final FtpFile file) {
+        if (!(file instanceof NativeFtpFile)) {
+            return null;
+        }
+        return ((NativeFtpFile) file).getPhysicalFile().toPath().toAbsolutePath().normalize();
+    }
+
+    /**
+     * The session given to the decorated command, replacing the error reply of an upload aborted by the quota.
+     * Everything else is passed to the session of the connection, including the replies, so the last reply seen by
+     * the ftplets is the one sent.
+     */
+    private static final class ReplyingSession extends FtpIoSession {
+
+        private final BudgetedDataConnectionFactory budgeted;
+
+        /**
+         * The file of the last data transfer reply, STOU only names it there.
+         */
+        private FtpFile file;
+
+        /**
+         * @param budgeted the data connection factory of a budgeted upload, null if not budgeted
+         */
+        private ReplyingSession(
+            final FtpIoSession session,
+            final FtpServerContext context,
+            final BudgetedDataConnectionFactory budgeted) {
+            super(session, context);
+            this.budgeted = budgeted;
+        }
+
+        @Override
+        public WriteFuture write(final Object message) {
+            if (message instanceof DataTransferFtpReply) {
+                this.file = ((DataTransferFtpReply) message).getFile();
+            }
+            if (this.budgeted != null && this.budgeted.exceeded
+                && message instanceof FtpReply && !((FtpReply) message).isPositive()) {
+                return super.write(new DefaultFtpReply(
+                    FtpReply.REPLY_552_REQUESTED_FILE_ACTION_ABORTED_EXCEEDED_STORAGE, EXCEEDED_MESSAGE));
+            }
+            return super.write(message);
+        }
+
+    }
+
+    /**
+     * Data connection factory whose uploads may write a limited number of bytes.
+     */
+    @RequiredArgsConstructor
+    private static final class BudgetedDataConnectionFactory implements ServerDataConnectionFactory {
+
+        private final ServerDataConnectionFactory factory;
+
+        private final long budget;
+
+        private volatile boolean exceeded;
+
+        @Override
+        public DataConnection openConnection() throws Exception {
+            DataConnection connection = this.factory.openConnection();
+            return new DataConnection() {
+                @Override
+                public long transferFromClient(final FtpSession session, final OutputStream out) throws IOException {
+                    return connection.transferFromClient(session, new BudgetedOutputStream(out));
+                }
+
+                @Override
+                public long transferToClient(final FtpSession session, final InputStream in) throws IOException {
+                    return connection.transferToClient(session, in);
+                }
+
+                @Override
+                public void transferToClient(final FtpSession session, final String str) throws IOException {
+                    connection.transferToClient(session, str);
+                }
+            };
+        }
+
+        @Override
+        public void initActiveDataConnection(final InetSocketAddress address) {
+            this.factory.initActiveDataConnection(address);
+        }
+
+        @Override
+        public InetSocketAddress initPassiveDataConnection() throws DataConnectionException {
+            return this.factory.initPassiveDataConnection();
+        }
+
+        @Override
+        public void setSecure(final boolean secure) {
+            this.factory.setSecure(secure);
+        }
+
+        @Override
+        public void setServerControlAddress(final InetAddress serverControlAddress) {
+            this.factory.setServerControlAddress(serverControlAddress);
+        }
+
+        @Override
+        public void setZipMode(final boolean zip) {
+            this.factory.setZipMode(zip);
+        }
+
+        @Override
+        public boolean isTimeout(final long currentTime) {
+            return this.factory.isTimeout(currentTime);
+        }
+
+        @Override
+        public void dispose() {
+            this.factory.dispose();
+        }
+
+        @Override
+        public boolean isSecure() {
+            return this.factory.isSecure();
+        }
+
+        @Override
+        public boolean isZipMode() {
+            return this.factory.isZipMode();
+        }
+
+        @Override
+        public InetAddress getInetAddress() {
+            return this.factory.getInetAddress();
+        }
+
+        @Override
+        public int getPort() {
+            return this.factory.getPort();
+        }
+
+        @Override
+        public void closeDataConnection() {
+            this.factory.closeDataConnection();
+        }
+
+        /**
+         * Fails the write which would exceed the budget, nothing of that write reaches the file.
+         */
+        private final class BudgetedOutputStream extends FilterOutputStream {
+
+            private long written;
+
+            private BudgetedOutputStream(final OutputStream out) {
+                super(out);
+            }
+
+            @Override
+            public void write(final int b) throws IOException {
+                this.reserve(1);
+                this.out.write(b);
+            }
+
+            @Override
+            public void write(final byte[] b, final int off, final int len) throws IOException {
+                this.reserve(len);
+                this.out.write(b, off, len);
+            }
+
+            private void reserve(final int length) throws IOException {
+                if (this.written + length > BudgetedDataConnectionFactory.this.budget) {
+                    BudgetedDataConnectionFactory.this.exceeded = true;
+                    throw new IOException("Storage quota exceeded");
+                }
+                this.written += length;
+            }
+
+            @Override
+            public void close() {
+                // The decorated command closes the file stream itself
+            }
+
+        }
+
+    }
+
+}
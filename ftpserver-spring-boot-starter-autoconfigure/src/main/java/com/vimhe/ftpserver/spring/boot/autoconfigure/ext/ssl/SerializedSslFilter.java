@@ -0,0 +1,255 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.ssl;
+
+import org.apache.mina.core.filterchain.IoFilter;
+import org.apache.mina.core.session.AttributeKey;
+import org.apache.mina.core.session.IdleStatus;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.core.write.WriteRequest;
+import org.apache.mina.filter.ssl.SslFilter;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * {@link SslFilter} which lets only one thread at a time through the filter per session, and records the duration of
+ * the handshake of the control connection.
+ * <p>
+ * The SslHandler of MINA 2.0.16 forwards the queued events only if it gets its lock at once, relying on the holder to
+ * forward them. The holder can however have given up forwarding, but not the lock yet, when a command thread queues a
+ * reply while the I/O processor is decrypting a message of the same session. The reply then stays queued until the
+ * client sends something, while the client waits for the reply, and the session hangs. Under concurrent FTPS load
+ * this happens to most sessions within seconds, typically to the reply announcing a data transfer.
+ * <p>
+ * The decrypted messages are forwarded after the lock is released, in their order: the filters downstream can block,
+ * e.g. the executor of the commands with a full queue, until a command thread has written its reply through this
+ * filter.
+ *
+ * @author Vimhe
+ */
+public class SerializedSslFilter extends SslFilter {
+
+    private static final AttributeKey STATE = new AttributeKey(SerializedSslFilter.class, "state");
+
+    private final TlsHandshakeStatistics statistics;
+
+    /**
+     * @param statistics receives the handshakes, may be null
+     */
+    public SerializedSslFilter(final SSLContext sslContext, final TlsHandshakeStatistics statistics) {
+        super(sslContext);
+        this.statistics = statistics;
+    }
+
+    @Override
+    public void messageReceived(final NextFilter nextFilter, final IoSession session, final Object message)
+        throws SSLException {
+        State state = getState(session);
+        state.lock.lock();
+        try {
+            if (!state.started) {
+                state.started = true;
+                state.startMillis = System.currentTimeMillis();
+                state.startNanos = System.nanoTime();
+            }
+
+            super.messageReceived(new DeferringNextFilter(nextFilter, state.received), session, message);
+
+            if (!state.recorded && this.statistics != null) {
+                SSLSession sslSession = this.getSslSession(session);
+                if (sslSession != null) {
+                    state.recorded = true;
+                    this.statistics.record(TlsHandshakeStatistics.Channel.CONTROL, sslSession, state.startMillis,
+                        System.nanoTime() - state.startNanos);
+                }
+            }
+        } finally {
+            state.lock.unlock();
+        }
+        forwardReceived(session, state);
+    }
+
+    /**
+     * Forward the events deferred by {@link DeferringNextFilter}, one thread at a time so they stay in order. A thread
+     * finding another one forwarding leaves its events to it.
+     */
+    private static void forwardReceived(final IoSession session, final State state) {
+        while (!state.received.isEmpty() && state.forwarding.compareAndSet(false, true)) {
+            try {
+                Deferred event;
+                while ((event = state.received.poll()) != null) {
+                    event.forward(session);
+                }
+            } finally {
+                state.forwarding.set(false);
+            }
+        }
+    }
+
+    @Override
+    public void filterWrite(final NextFilter nextFilter, final IoSession session, final WriteRequest writeRequest)
+        throws SSLException {
+        State state = getState(session);
+        state.lock.lock();
+        try {
+            super.filterWrite(nextFilter, session, writeRequest);
+        } finally {
+            state.lock.unlock();
+        }
+        // The SslHandler flushes the events of all threads
+        forwardReceived(session, state);
+    }
+
+    @Override
+    public void filterClose(final NextFilter nextFilter, final IoSession session) throws SSLException {
+        State state = getState(session);
+        state.lock.lock();
+        try {
+            super.filterClose(nextFilter, session);
+        } finally {
+            state.lock.unlock();
+        }
+        // The SslHandler flushes the events of all threads
+        forwardReceived(session, state);
+    }
+
+    @Override
+    public void sessionClosed(final NextFilter nextFilter, final IoSession session) throws SSLException {
+        State state = getState(session);
+        // The messages go upstream before the session is closed there
+        forwardReceived(session, state);
+        state.lock.lock();
+        try {
+            super.sessionClosed(nextFilter, session);
+        } finally {
+            state.lock.unlock();
+        }
+    }
+
+    private static State getState(final IoSession session) {
+        State state = (State) session.getAttribute(STATE);
+        if (state == null) {
+            state = new State();
+            State previous = (State) session.setAttributeIfAbsent(STATE, state);
+            if (previous != null) {
+                state = previous;
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Guarded by its lock, except the lock itself and the deferred events.
+     */
+    private static class State {
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private final Queue<Deferred> received = new ConcurrentLinkedQueue<>();
+
+        private final AtomicBoolean forwarding = new AtomicBoolean();
+
+        private boolean started;
+
+        private boolean recorded;
+
+        private long startMillis;
+
+        private long startNanos;
+
+    }
+
+    @FunctionalInterface
+    private interface Deferred {
+
+        void forward(IoSession session);
+
+    }
+
+    /**
+     * Queues the events going upstream which the filters there may block on, the others are passed on at once.
+     */
+    private static class DeferringNextFilter implements IoFilter.NextFilter {
+
+        private final IoFilter.NextFilter nextFilter;
+
+        private final Queue<Deferred> received;
+
+        private DeferringNextFilter(final IoFilter.NextFilter nextFilter, final Queue<Deferred> received) {
+            this.nextFilter = nextFilter;
+            this.received = received;
+        }
+
+        @Override
+        public void messageReceived(final IoSession session, final Object message) {
+            this.received.offer(target -> this.nextFilter.messageReceived(target, message));
+        }
+
+        @Override
+        public void exceptionCaught(final IoSession session, final Throwable cause) {
+            this.received.offer(target -> this.nextFilter.exceptionCaught(target, cause));
+        }
+
+        @Override
+        public void sessionCreated(final IoSession session) {
+            this.nextFilter.sessionCreated(session);
+        }
+
+        @Override
+        public void sessionOpened(final IoSession session) {
+            this.nextFilter.sessionOpened(session);
+        }
+
+        @Override
+        public void sessionClosed(final IoSession session) {
+            this.nextFilter.sessionClosed(session);
+        }
+
+        @Override
+        public void sessionIdle(final IoSession session, final IdleStatus status) {
+            this.nextFilter.sessionIdle(session, status);
+        }
+
+        @Override
+        public void inputClosed(final IoSession session) {
+            this.nextFilter.inputClosed(session);
+        }
+
+        @Override
+        public void messageSent(final IoSession session, final WriteRequest writeRequest) {
+            this.nextFilter.messageSent(session, writeRequest);
+        }
+
+        @Override
+        public void filterWrite(final IoSession session, final WriteRequest writeRequest) {
+            this.nextFilter.filterWrite(session, writeRequest);
+        }
+
+        @Override
+        public void filterClose(final IoSession session) {
+            this.nextFilter.filterClose(session);
+        }
+
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.ssl;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.java.Log;
+import org.apache.ftpserver.command.AbstractCommand;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.impl.FtpServerContext;
+import org.apache.ftpserver.impl.LocalizedFtpReply;
+import org.apache.ftpserver.ssl.ClientAuth;
+import org.apache.ftpserver.ssl.SslConfiguration;
+import org.apache.mina.filter.ssl.SslFilter;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Level;
+
+/**
+ * Same command as {@link org.apache.ftpserver.command.impl.AUTH}, securing the control connection with a
+ * {@link SerializedSslFilter} instead of a plain {@link SslFilter}.
+ *
+ * @author Vimhe
+ */
+@Log
+@RequiredArgsConstructor
+public class TlsAuthCommand extends AbstractCommand {
+
+    private static final String SSL_SESSION_FILTER_NAME = "sslSessionFilter";
+
+    private static final List<String> VALID_AUTH_TYPES = Arrays.asList("SSL", "TLS", "TLS-C", "TLS-P");
+
+    private final TlsHandshakeStatistics statistics;
+
+    @Override
+    public void execute(final FtpIoSession session, final FtpServerContext context, final FtpRequest request)
+        throws IOException, FtpException {
+        session.resetState();
+
+        if (!request.hasArgument()) {
+            session.write(LocalizedFtpReply.translate(session, request, context, 501, "AUTH", null));
+            return;
+        }
+        if (session.getListener().getSslConfiguration() == null) {
+            session.write(LocalizedFtpReply.translate(session, request, context, 431, "AUTH", null));
+            return;
+        }
+        if (session.getFilterChain().contains(SslFilter.class)) {
+            session.write(LocalizedFtpReply.translate(session, request, context, 534, "AUTH", null));
+            return;
+        }
+
+        String authType = request.getArgument().toUpperCase(Locale.ENGLISH);
+        if (!VALID_AUTH_TYPES.contains(authType)) {
+            session.write(LocalizedFtpReply.translate(session, request, context, 502, "AUTH", null));
+            return;
+        }
+        if ("TLS-C".equals(authType)) {
+            authType = "TLS";
+        } else if ("TLS-P".equals(authType)) {
+            authType = "SSL";
+        }
+
+        try {
+            this.secureSession(session, authType);
+            session.write(LocalizedFtpReply.translate(session, request, context, 234, "AUTH." + authType, null));
+        } catch (FtpException e) {
+            throw e;
+        } catch (Exception e) {
+            log.log(Level.WARNING, "AUTH.execute()", e);
+            throw new FtpException("AUTH.execute()", e);
+        }
+    }
+
+    private void secureSession(final FtpIoSession session, final String type) throws Exception {
+        SslConfiguration ssl = session.getListener().getSslConfiguration();
+        if (ssl == null) {
+            throw new FtpException("Socket factory SSL not configured");
+        }
+
+        // The reply to AUTH goes out in plain text, the filter is in place before the client can start the handshake
+        session.setAttribute(SslFilter.DISABLE_ENCRYPTION_ONCE);
+        SslFilter sslFilter = new SerializedSslFilter(ssl.getSSLContext(), this.statistics);
+        if (ssl.getClientAuth() == ClientAuth.NEED) {
+            sslFilter.setNeedClientAuth(true);
+        } else if (ssl.getClientAuth() == ClientAuth.WANT) {
+            sslFilter.setWantClientAuth(true);
+        }
+        if (ssl.getEnabledCipherSuites() != null) {
+            sslFilter.setEnabledCipherSuites(ssl.getEnabledCipherSuites());
+        }
+        session.getFilterChain().addFirst(SSL_SESSION_FILTER_NAME, sslFilter);
+
+        if ("SSL".equals(type)) {
+            session.getDataConnection().setSecure(true);
+        }
+    }
+
+}
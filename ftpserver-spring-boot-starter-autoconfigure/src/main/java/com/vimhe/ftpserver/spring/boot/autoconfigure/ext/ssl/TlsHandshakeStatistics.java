@@ -0,0 +1,135 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.ssl;
+
+import javax.net.ssl.SSLSession;
+import java.nio.ByteBuffer;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Number and duration of the TLS handshakes of the control and the data connections, and how many of them resumed a
+ * cached session instead of a full handshake.
+ *
+ * @author Vimhe
+ */
+public class TlsHandshakeStatistics {
+
+    /**
+     * The connection a handshake was made on.
+     */
+    public enum Channel {
+        CONTROL, DATA
+    }
+
+    /**
+     * The default size of the session cache of the JRE.
+     */
+    private static final int MAX_SESSION_IDS = 20480;
+
+    private final Map<Channel, Counters> counters = new EnumMap<>(Channel.class);
+
+    /**
+     * Ids of the sessions of the recorded handshakes, the least recently seen are forgotten first. Guarded by itself.
+     */
+    private final Map<ByteBuffer, Boolean> sessionIds = new LinkedHashMap<ByteBuffer, Boolean>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<ByteBuffer, Boolean> eldest) {
+            return this.size() > MAX_SESSION_IDS;
+        }
+
+    };
+
+    public TlsHandshakeStatistics() {
+        for (Channel channel : Channel.values()) {
+            this.counters.put(channel, new Counters());
+        }
+    }
+
+    /**
+     * Record a completed handshake. A handshake resumed a session if the session has the id of one recorded before,
+     * as with TLS 1.2, or was created before the handshake started: a TLS 1.3 session resumed from a ticket gets a
+     * new id, but keeps the creation time of the session the ticket was issued for.
+     *
+     * @param startMillis wall clock time the handshake started at
+     */
+    public void record(final Channel channel, final SSLSession sslSession, final long startMillis,
+                       final long durationNanos) {
+        Counters counters = this.counters.get(channel);
+        if (this.seen(sslSession) || sslSession.getCreationTime() < startMillis) {
+            counters.resumed.increment();
+        } else {
+            counters.full.increment();
+        }
+        counters.time.add(durationNanos);
+    }
+
+    /**
+     * Whether a handshake with the id of this session was recorded before, remembering the id for the next ones.
+     */
+    private boolean seen(final SSLSession sslSession) {
+        byte[] id = sslSession.getId();
+        if (id == null || id.length == 0) {
+            return false;
+        }
+        synchronized (this.sessionIds) {
+            return this.sessionIds.put(ByteBuffer.wrap(id), Boolean.TRUE) != null;
+        }
+    }
+
+    public long getFullCount(final Channel channel) {
+        return this.counters.get(channel).full.sum();
+    }
+
+    public long getResumedCount(final Channel channel) {
+        return this.counters.get(channel).resumed.sum();
+    }
+
+    public long getCount(final Channel channel) {
+        return this.getFullCount(channel) + this.getResumedCount(channel);
+    }
+
+    public double getTotalTime(final Channel channel, final TimeUnit unit) {
+        return this.counters.get(channel).time.sum() / (double) unit.toNanos(1);
+    }
+
+    /**
+     * Ratio of the handshakes which resumed a session, 0 if there was none.
+     */
+    public double getResumptionRatio(final Channel channel) {
+        long resumed = this.getResumedCount(channel);
+        long count = resumed + this.getFullCount(channel);
+        return count == 0 ? 0 : (double) resumed / count;
+    }
+
+    private static class Counters {
+
+        private final LongAdder full = new LongAdder();
+
+        private final LongAdder resumed = new LongAdder();
+
+        private final LongAdder time = new LongAdder();
+
+    }
+
+}
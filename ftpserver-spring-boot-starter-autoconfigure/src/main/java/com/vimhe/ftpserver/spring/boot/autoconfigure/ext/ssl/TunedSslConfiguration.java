@@ -0,0 +1,276 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.ssl;
+
+import org.apache.ftpserver.ssl.ClientAuth;
+import org.apache.ftpserver.ssl.SslConfiguration;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLContextSpi;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLServerSocketFactory;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.KeyManagementException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Decorates an {@link SslConfiguration} with the size and timeout of the session cache, and with cipher suites
+ * preferred by the server.
+ * <p>
+ * The control and the data connections share one {@link SSLContext}, and so its session cache: a client offering the
+ * session of the control connection on a data connection resumes it instead of a full handshake. The preferred cipher
+ * suites, those of them which are enabled, are moved to the front and the server picks the first one the client
+ * supports, rather than the first one the client lists.
+ *
+ * @author Vimhe
+ */
+public class TunedSslConfiguration implements SslConfiguration {
+
+    private final SslConfiguration delegate;
+
+    private final SSLContext sslContext;
+
+    private final String[] enabledCipherSuites;
+
+    /**
+     * @param preferredCipherSuites in order of preference, none to leave the order to the client
+     * @param sessionCacheSize      maximum number of cached sessions, null for the default of the JRE
+     * @param sessionTimeout        lifetime of cached sessions, null for the default of the JRE
+     */
+    public TunedSslConfiguration(final SslConfiguration delegate, final List<String> preferredCipherSuites,
+                                 final Integer sessionCacheSize, final Duration sessionTimeout)
+        throws GeneralSecurityException {
+        this.delegate = delegate;
+
+        SSLContext context = delegate.getSSLContext();
+        SSLSessionContext sessionContext = context.getServerSessionContext();
+        Optional.ofNullable(sessionCacheSize).ifPresent(sessionContext::setSessionCacheSize);
+        Optional.ofNullable(sessionTimeout).ifPresent(duration ->
+            sessionContext.setSessionTimeout((int) duration.getSeconds()));
+
+        if (preferredCipherSuites == null || preferredCipherSuites.isEmpty()) {
+            this.sslContext = context;
+            this.enabledCipherSuites = delegate.getEnabledCipherSuites();
+        } else {
+            this.sslContext = new SSLContext(new PreferringContextSpi(context, preferredCipherSuites),
+                context.getProvider(), context.getProtocol()) {
+            };
+            this.enabledCipherSuites = Optional.ofNullable(delegate.getEnabledCipherSuites())
+                .map(suites -> prefer(suites, preferredCipherSuites))
+                .orElse(null);
+        }
+    }
+
+    @Override
+    public SSLSocketFactory getSocketFactory() {
+        return this.sslContext.getSocketFactory();
+    }
+
+    @Override
+    public SSLContext getSSLContext() {
+        return this.sslContext;
+    }
+
+    /**
+     * The same context whatever the protocol, as {@link org.apache.ftpserver.ssl.impl.DefaultSslConfiguration}.
+     */
+    @Override
+    public SSLContext getSSLContext(final String protocol) {
+        return this.sslContext;
+    }
+
+    @Override
+    public String[] getEnabledCipherSuites() {
+        return this.enabledCipherSuites == null ? null : this.enabledCipherSuites.clone();
+    }
+
+    @Override
+    public ClientAuth getClientAuth() {
+        return this.delegate.getClientAuth();
+    }
+
+    /**
+     * The suites with the preferred ones, those of them which are among the suites, moved to the front.
+     */
+    static String[] prefer(final String[] suites, final List<String> preferred) {
+        List<String> available = Arrays.asList(suites);
+        List<String> ordered = new ArrayList<>(suites.length);
+        preferred.stream().filter(available::contains).distinct().forEach(ordered::add);
+        available.stream().filter(suite -> !ordered.contains(suite)).forEach(ordered::add);
+        return ordered.toArray(new String[0]);
+    }
+
+    /**
+     * Hands out the engines and sockets of the delegate with the preferred cipher suites first and the order of the
+     * server in effect, the sessions are those of the delegate.
+     */
+    private static class PreferringContextSpi extends SSLContextSpi {
+
+        private final SSLContext context;
+
+        private final List<String> preferred;
+
+        PreferringContextSpi(final SSLContext context, final List<String> preferred) {
+            this.context = context;
+            this.preferred = preferred;
+        }
+
+        @Override
+        protected void engineInit(final KeyManager[] keyManagers, final TrustManager[] trustManagers,
+                                  final SecureRandom random) throws KeyManagementException {
+            this.context.init(keyManagers, trustManagers, random);
+        }
+
+        @Override
+        protected SSLSocketFactory engineGetSocketFactory() {
+            return new PreferringSocketFactory(this.context.getSocketFactory(), this);
+        }
+
+        @Override
+        protected SSLServerSocketFactory engineGetServerSocketFactory() {
+            return this.context.getServerSocketFactory();
+        }
+
+        @Override
+        protected SSLEngine engineCreateSSLEngine() {
+            return this.configure(this.context.createSSLEngine());
+        }
+
+        @Override
+        protected SSLEngine engineCreateSSLEngine(final String host, final int port) {
+            return this.configure(this.context.createSSLEngine(host, port));
+        }
+
+        @Override
+        protected SSLSessionContext engineGetServerSessionContext() {
+            return this.context.getServerSessionContext();
+        }
+
+        @Override
+        protected SSLSessionContext engineGetClientSessionContext() {
+            return this.context.getClientSessionContext();
+        }
+
+        @Override
+        protected SSLParameters engineGetDefaultSSLParameters() {
+            return this.context.getDefaultSSLParameters();
+        }
+
+        @Override
+        protected SSLParameters engineGetSupportedSSLParameters() {
+            return this.context.getSupportedSSLParameters();
+        }
+
+        private SSLEngine configure(final SSLEngine engine) {
+            engine.setSSLParameters(this.prefer(engine.getSSLParameters()));
+            return engine;
+        }
+
+        private Socket configure(final Socket socket) {
+            if (socket instanceof SSLSocket) {
+                SSLSocket sslSocket = (SSLSocket) socket;
+                sslSocket.setSSLParameters(this.prefer(sslSocket.getSSLParameters()));
+            }
+            return socket;
+        }
+
+        private SSLParameters prefer(final SSLParameters parameters) {
+            parameters.setCipherSuites(TunedSslConfiguration.prefer(parameters.getCipherSuites(), this.preferred));
+            parameters.setUseCipherSuitesOrder(true);
+            return parameters;
+        }
+
+    }
+
+    private static class PreferringSocketFactory extends SSLSocketFactory {
+
+        private final SSLSocketFactory factory;
+
+        private final PreferringContextSpi spi;
+
+        PreferringSocketFactory(final SSLSocketFactory factory, final PreferringContextSpi spi) {
+            this.factory = factory;
+            this.spi = spi;
+        }
+
+        @Override
+        public String[] getDefaultCipherSuites() {
+            return this.factory.getDefaultCipherSuites();
+        }
+
+        @Override
+        public String[] getSupportedCipherSuites() {
+            return this.factory.getSupportedCipherSuites();
+        }
+
+        @Override
+        public Socket createSocket() throws IOException {
+            return this.spi.configure(this.factory.createSocket());
+        }
+
+        @Override
+        public Socket createSocket(final Socket socket, final String host, final int port, final boolean autoClose)
+            throws IOException {
+            return this.spi.configure(this.factory.createSocket(socket, host, port, autoClose));
+        }
+
+        @Override
+        public Socket createSocket(final Socket socket, final InputStream consumed, final boolean autoClose)
+            throws IOException {
+            return this.spi.configure(this.factory.createSocket(socket, consumed, autoClose));
+        }
+
+        @Override
+        public Socket createSocket(final String host, final int port) throws IOException {
+            return this.spi.configure(this.factory.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(final String host, final int port, final InetAddress localHost,
+                                   final int localPort) throws IOException {
+            return this.spi.configure(this.factory.createSocket(host, port, localHost, localPort));
+        }
+
+        @Override
+        public Socket createSocket(final InetAddress host, final int port) throws IOException {
+            return this.spi.configure(this.factory.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(final InetAddress address, final int port, final InetAddress localAddress,
+                                   final int localPort) throws IOException {
+            return this.spi.configure(this.factory.createSocket(address, port, localAddress, localPort));
+        }
+
+    }
+
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.transfer;
+
+import org.apache.ftpserver.ftplet.DefaultFtplet;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.ftplet.FtpSession;
+import org.apache.ftpserver.ftplet.FtpletResult;
+
+import java.io.IOException;
+
+/**
+ * Ftplet which keeps the file name of a running RETR in the session, so {@link TransferCompression} can send known
+ * compressed formats uncompressed in MODE Z.
+ *
+ * @author Vimhe
+ */
+public class CompressionFtplet extends DefaultFtplet {
+
+    /**
+     * Session attribute under which the file name of a running RETR is kept.
+     */
+    public static final String FILE_ATTRIBUTE = CompressionFtplet.class.getName() + ".file";
+
+    @Override
+    public FtpletResult beforeCommand(final FtpSession session, final FtpRequest request)
+        throws FtpException, IOException {
+        if ("RETR".equals(request.getCommand())) {
+            session.setAttribute(FILE_ATTRIBUTE, request.getArgument());
+        }
+        return FtpletResult.DEFAULT;
+    }
+
+    @Override
+    public FtpletResult afterCommand(final FtpSession session, final FtpRequest request, final FtpReply reply)
+        throws FtpException, IOException {
+        if ("RETR".equals(request.getCommand())) {
+            session.removeAttribute(FILE_ATTRIBUTE);
+        }
+        return FtpletResult.DEFAULT;
+    }
+
+}
@@ -0,0 +1,417 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.transfer;
+
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.VirtualThreads;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.bandwidth.BandwidthShaper;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.filesystem.FileChannelInputStream;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.filesystem.FileChannelOutputStream;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.filesystem.WriteBehindOutputStream;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.filesystem.MappedFileInputStream;
+import lombok.extern.java.Log;
+import org.apache.ftpserver.ftplet.DataConnection;
+import org.apache.ftpserver.ftplet.DataType;
+import org.apache.ftpserver.ftplet.FtpSession;
+import org.apache.ftpserver.impl.DefaultFtpSession;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.impl.ServerDataConnectionFactory;
+
+import javax.net.ssl.SSLSocket;
+import java.io.*;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Level;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Data connection which, for binary transfers of files opened through a {@link FileChannel} over a plain socket,
+ * sends with {@link FileChannel#transferTo} (or straight from the mapping of a {@link MappedFileInputStream}) and
+ * receives through a pooled direct buffer, so the file content is never copied into the heap. Everything else (TLS, ASCII type, MODE Z, other file systems) is copied through large pooled
+ * buffers, with the same semantics as {@link org.apache.ftpserver.impl.IODataConnection}. MODE Z streams come from
+ * the {@link TransferCompression} if one is given.
+ *
+ * @author Vimhe
+ */
+@Log
+public class NioDataConnection implements DataConnection {
+
+    private static final byte[] EOL = System.getProperty("line.separator").getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Upper bound of a single zero-copy call, so that statistics, rate limits and idle checks stay up to date.
+     */
+    private static final long MAX_CHUNK = 8 * 1024 * 1024;
+
+    private final Socket socket;
+
+    private final FtpIoSession session;
+
+    private final ServerDataConnectionFactory factory;
+
+    private final BufferPool directBuffers;
+
+    private final BufferPool heapBuffers;
+
+    private final BandwidthShaper shaper;
+
+    private final TransferCompression compression;
+
+    public NioDataConnection(final Socket socket, final FtpIoSession session, final ServerDataConnectionFactory factory,
+                             final BufferPool directBuffers, final BufferPool heapBuffers,
+                             final BandwidthShaper shaper, final TransferCompression compression) {
+        this.socket = socket;
+        this.session = session;
+        this.factory = factory;
+        this.directBuffers = directBuffers;
+        this.heapBuffers = heapBuffers;
+        this.shaper = shaper;
+        this.compression = compression;
+    }
+
+    @Override
+    public long transferFromClient(final FtpSession session, final OutputStream out) throws IOException {
+        BandwidthShaper.Throttle throttle = this.shaper.open(this.session, false);
+        // The nio file system's stream is written to rather than its channel, it digests what is written
+        WritableByteChannel file = out instanceof FileChannelOutputStream ? (FileChannelOutputStream) out
+            : fileChannel(out);
+
+        try {
+            if (file != null && this.isDirect(session)) {
+                return this.receive(session, this.socket.getChannel(), file, out instanceof WriteBehindOutputStream,
+                    throttle);
+            }
+
+            try (InputStream in = this.getDataInputStream()) {
+                return this.copy(session, false, in, out, throttle);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.log(Level.WARNING, "Exception during data transfer, closing data connection socket", e);
+            this.factory.closeDataConnection();
+            throw e;
+        }
+    }
+
+    @Override
+    public long transferToClient(final FtpSession session, final InputStream in) throws IOException {
+        BandwidthShaper.Throttle throttle = this.shaper.open(this.session, true);
+        FileChannel file = fileChannel(in);
+
+        try {
+            if (in instanceof MappedFileInputStream && this.isDirect(session)) {
+                return this.send(session, (MappedFileInputStream) in, this.socket.getChannel(), throttle);
+            }
+            if (file != null && this.isDirect(session)) {
+                return this.send(session, file, this.socket.getChannel(), throttle);
+            }
+
+            try (OutputStream out = this.getDataOutputStream()) {
+                return this.copy(session, true, in, out, throttle);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.log(Level.WARNING, "Exception during data transfer, closing data connection socket", e);
+            this.factory.closeDataConnection();
+            throw e;
+        }
+    }
+
+    @Override
+    public void transferToClient(final FtpSession session, final String str) throws IOException {
+        this.transferToClient(session, str.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Send already encoded text, e.g. a cached directory listing, with a single write.
+     */
+    public void transferToClient(final FtpSession session, final byte[] bytes) throws IOException {
+        try (OutputStream out = this.getDataOutputStream()) {
+            out.write(bytes);
+            out.flush();
+        }
+        this.increaseWrittenDataBytes(session, bytes.length);
+    }
+
+    /**
+     * Send the file from its current position to its end.
+     */
+    private long send(final FtpSession session, final FileChannel file, final SocketChannel channel,
+                      final BandwidthShaper.Throttle throttle) throws IOException {
+        long position = file.position();
+        long end = file.size();
+        long chunk = throttle.chunkSize(MAX_CHUNK);
+        long transferred = 0;
+
+        channel.configureBlocking(false);
+        try (Selector selector = Selector.open()) {
+            channel.register(selector, SelectionKey.OP_WRITE);
+            while (position < end) {
+                long count = file.transferTo(position, Math.min(chunk, end - position), channel);
+                if (count == 0) {
+                    this.await(selector);
+                    continue;
+                }
+
+                position += count;
+                transferred += count;
+                this.increaseWrittenDataBytes(session, (int) count);
+                this.notifyObserver();
+                throttle.acquire(count);
+            }
+        } finally {
+            file.position(position);
+            channel.close();
+        }
+        return transferred;
+    }
+
+    /**
+     * Send a mapped file from its current position to its end.
+     */
+    private long send(final FtpSession session, final MappedFileInputStream in, final SocketChannel channel,
+                      final BandwidthShaper.Throttle throttle) throws IOException {
+        int chunk = (int) throttle.chunkSize(MAX_CHUNK);
+        long transferred = 0;
+
+        channel.configureBlocking(false);
+        try (Selector selector = Selector.open()) {
+            channel.register(selector, SelectionKey.OP_WRITE);
+            for (ByteBuffer buffer = in.remaining(); buffer.hasRemaining(); buffer = in.remaining()) {
+                int end = buffer.limit();
+                while (buffer.hasRemaining()) {
+                    buffer.limit(Math.min(end, buffer.position() + chunk));
+                    int count = channel.write(buffer);
+                    buffer.limit(end);
+                    if (count == 0) {
+                        this.await(selector);
+                        continue;
+                    }
+
+                    in.skip(count);
+                    transferred += count;
+                    this.increaseWrittenDataBytes(session, count);
+                    this.notifyObserver();
+                    throttle.acquire(count);
+                }
+            }
+        } catch (InternalError e) {
+            // Reading a mapping whose file was truncated meanwhile
+            throw new IOException("File changed during transfer", e);
+        } finally {
+            channel.close();
+        }
+        return transferred;
+    }
+
+    /**
+     * Receive until the client closes the data connection.
+     *
+     * @param fullWrites whether only full buffers are written, rather than whatever arrived before waiting for more
+     */
+    private long receive(final FtpSession session, final SocketChannel channel, final WritableByteChannel file,
+                         final boolean fullWrites, final BandwidthShaper.Throttle throttle) throws IOException {
+        long transferred = 0;
+        ByteBuffer buffer = this.directBuffers.acquire();
+        int chunk = (int) throttle.chunkSize(buffer.capacity());
+
+        channel.configureBlocking(false);
+        try (Selector selector = Selector.open()) {
+            channel.register(selector, SelectionKey.OP_READ);
+            while (true) {
+                buffer.limit(Math.min(buffer.capacity(), buffer.position() + chunk));
+                int count = channel.read(buffer);
+                if (count < 0) {
+                    break;
+                }
+                if (count == 0) {
+                    if (buffer.position() > 0 && !fullWrites) {
+                        // Nothing more for now, write what arrived before waiting
+                        drain(buffer, file);
+                    }
+                    this.await(selector);
+                    continue;
+                }
+
+                transferred += count;
+                this.increaseReadDataBytes(session, count);
+                this.notifyObserver();
+                if (!buffer.hasRemaining()) {
+                    drain(buffer, file);
+                }
+                throttle.acquire(count);
+            }
+            drain(buffer, file);
+        } finally {
+            this.directBuffers.release(buffer);
+            channel.close();
+        }
+        return transferred;
+    }
+
+    private static void drain(final ByteBuffer buffer, final WritableByteChannel file) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            file.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void await(final Selector selector) throws IOException {
+        if (selector.select(this.socket.getSoTimeout()) == 0) {
+            throw new SocketTimeoutException("Data connection timed out");
+        }
+        selector.selectedKeys().clear();
+    }
+
+    /**
+     * Copy through a pooled buffer, converting line endings for ASCII transfers like
+     * {@link org.apache.ftpserver.impl.IODataConnection} does.
+     */
+    private long copy(final FtpSession session, final boolean isWrite, final InputStream in, final OutputStream out,
+                      final BandwidthShaper.Throttle throttle) throws IOException {
+        boolean isAscii = session.getDataType() == DataType.ASCII;
+        long transferred = 0;
+        byte lastByte = 0;
+
+        ByteBuffer buffer = this.heapBuffers.acquire();
+        byte[] bytes = buffer.array();
+        int chunk = (int) throttle.chunkSize(bytes.length);
+        // Line ending conversion writes single bytes, which must not hit the socket one by one
+        OutputStream target = isAscii ? new BufferedOutputStream(out, bytes.length) : out;
+        try {
+            while (true) {
+                int count = in.read(bytes, 0, chunk);
+                if (count < 0) {
+                    break;
+                }
+
+                if (isWrite) {
+                    this.increaseWrittenDataBytes(session, count);
+                } else {
+                    this.increaseReadDataBytes(session, count);
+                }
+
+                if (isAscii) {
+                    for (int i = 0; i < count; ++i) {
+                        byte b = bytes[i];
+                        if (isWrite) {
+                            if (b == '\n' && lastByte != '\r') {
+                                target.write('\r');
+                            }
+                            target.write(b);
+                        } else if (b == '\n') {
+                            // Clients may send bare new lines, which are kept
+                            if (lastByte != '\r') {
+                                target.write(EOL);
+                            }
+                        } else if (b == '\r') {
+                            target.write(EOL);
+                        } else {
+                            target.write(b);
+                        }
+                        lastByte = b;
+                    }
+                } else {
+                    target.write(bytes, 0, count);
+                }
+
+                transferred += count;
+                this.notifyObserver();
+                throttle.acquire(count);
+            }
+        } finally {
+            target.flush();
+            this.heapBuffers.release(buffer);
+        }
+        return transferred;
+    }
+
+    /**
+     * Whether to transfer straight between the file and the socket channel. Not on virtual threads, which are parked
+     * by the blocking socket streams but would occupy a carrier thread while waiting on a selector.
+     */
+    private boolean isDirect(final FtpSession session) {
+        return this.socket != null
+            && !VirtualThreads.isVirtual(Thread.currentThread())
+            && this.socket.getChannel() != null
+            && !(this.socket instanceof SSLSocket)
+            && !this.factory.isZipMode()
+            && session.getDataType() == DataType.BINARY;
+    }
+
+    private static FileChannel fileChannel(final Object stream) {
+        if (stream instanceof FileChannelInputStream) {
+            return ((FileChannelInputStream) stream).getChannel();
+        }
+        if (stream instanceof FileChannelOutputStream) {
+            return ((FileChannelOutputStream) stream).getChannel();
+        }
+        if (stream instanceof FileInputStream) {
+            return ((FileInputStream) stream).getChannel();
+        }
+        if (stream instanceof FileOutputStream) {
+            return ((FileOutputStream) stream).getChannel();
+        }
+        return null;
+    }
+
+    private InputStream getDataInputStream() throws IOException {
+        if (this.socket == null) {
+            throw new IOException("Cannot open data connection.");
+        }
+        InputStream in = this.socket.getInputStream();
+        if (!this.factory.isZipMode()) {
+            return in;
+        }
+        return this.compression == null ? new InflaterInputStream(in) : this.compression.decompress(in);
+    }
+
+    private OutputStream getDataOutputStream() throws IOException {
+        if (this.socket == null) {
+            throw new IOException("Cannot open data connection.");
+        }
+        OutputStream out = this.socket.getOutputStream();
+        if (!this.factory.isZipMode()) {
+            return out;
+        }
+        return this.compression == null ? new DeflaterOutputStream(out)
+            : this.compression.compress(out, (String) this.session.getAttribute(CompressionFtplet.FILE_ATTRIBUTE));
+    }
+
+    private void increaseWrittenDataBytes(final FtpSession session, final int count) {
+        if (session instanceof DefaultFtpSession) {
+            ((DefaultFtpSession) session).increaseWrittenDataBytes(count);
+        }
+    }
+
+    private void increaseReadDataBytes(final FtpSession session, final int count) {
+        if (session instanceof DefaultFtpSession) {
+            ((DefaultFtpSession) session).increaseReadDataBytes(count);
+        }
+    }
+
+    protected void notifyObserver() {
+        this.session.updateLastAccessTime();
+    }
+
+}
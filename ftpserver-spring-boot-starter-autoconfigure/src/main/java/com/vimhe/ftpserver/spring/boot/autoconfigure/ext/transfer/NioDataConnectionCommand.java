@@ -0,0 +1,83 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.transfer;
+
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.bandwidth.BandwidthShaper;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.ssl.TlsHandshakeStatistics;
+import lombok.RequiredArgsConstructor;
+import org.apache.ftpserver.command.Command;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.impl.FtpServerContext;
+import org.apache.ftpserver.impl.ServerDataConnectionFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+/**
+ * Decorates the commands setting up a data connection (PORT, EPRT, PASV, EPSV) so that the session uses a
+ * {@link NioDataConnectionFactory} instead of the default one.
+ *
+ * @author Vimhe
+ */
+@RequiredArgsConstructor
+public class NioDataConnectionCommand implements Command {
+
+    /**
+     * Session attribute under which {@link FtpIoSession#getDataConnection()} keeps the data connection factory.
+     */
+    private static final String DATA_CONNECTION_ATTRIBUTE = "org.apache.ftpserver.data-connection";
+
+    private final Command command;
+
+    private final BufferPool directBuffers;
+
+    private final BufferPool heapBuffers;
+
+    private final BandwidthShaper shaper;
+
+    private final TlsHandshakeStatistics handshakeStatistics;
+
+    private final TransferCompression compression;
+
+    @Override
+    public void execute(final FtpIoSession session, final FtpServerContext context, final FtpRequest request)
+        throws IOException, FtpException {
+        Object current = session.getAttribute(DATA_CONNECTION_ATTRIBUTE);
+        if (!(current instanceof NioDataConnectionFactory)) {
+            NioDataConnectionFactory factory = new NioDataConnectionFactory(
+                session, this.directBuffers, this.heapBuffers, this.shaper);
+            factory.setServerControlAddress(((InetSocketAddress) session.getLocalAddress()).getAddress());
+            factory.setHandshakeStatistics(this.handshakeStatistics);
+            factory.setCompression(this.compression);
+
+            // PROT or MODE may have created the default factory already
+            if (current instanceof ServerDataConnectionFactory) {
+                ServerDataConnectionFactory previous = (ServerDataConnectionFactory) current;
+                factory.setSecure(previous.isSecure());
+                factory.setZipMode(previous.isZipMode());
+                previous.closeDataConnection();
+            }
+
+            session.setAttribute(DATA_CONNECTION_ATTRIBUTE, factory);
+        }
+
+        this.command.execute(session, context, request);
+    }
+
+}
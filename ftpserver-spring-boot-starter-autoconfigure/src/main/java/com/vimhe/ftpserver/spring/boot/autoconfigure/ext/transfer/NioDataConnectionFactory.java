@@ -0,0 +1,394 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.transfer;
+
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.bandwidth.BandwidthShaper;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.ssl.TlsHandshakeStatistics;
+import lombok.extern.java.Log;
+import org.apache.ftpserver.DataConnectionConfiguration;
+import org.apache.ftpserver.DataConnectionException;
+import org.apache.ftpserver.ftplet.DataConnection;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.impl.ServerDataConnectionFactory;
+import org.apache.ftpserver.ssl.ClientAuth;
+import org.apache.ftpserver.ssl.SslConfiguration;
+
+import javax.net.ssl.SSLSocket;
+import java.io.IOException;
+import java.net.BindException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+
+/**
+ * Data connection factory with the semantics of {@link org.apache.ftpserver.impl.IODataConnectionFactory}, whose
+ * sockets are backed by {@link SocketChannel}s so that {@link NioDataConnection} can transfer files without copying
+ * them through the heap.
+ * <p>
+ * The state is guarded by a lock rather than the monitor, a virtual thread waiting for the client to connect would
+ * otherwise pin its carrier thread.
+ *
+ * @author Vimhe
+ */
+@Log
+public class NioDataConnectionFactory implements ServerDataConnectionFactory {
+
+    private static final int BIND_ATTEMPTS = 4;
+
+    private final FtpIoSession session;
+
+    private final BufferPool directBuffers;
+
+    private final BufferPool heapBuffers;
+
+    private final BandwidthShaper shaper;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private Socket dataSocket;
+
+    private ServerSocketChannel serverChannel;
+
+    private InetAddress address;
+
+    private int port;
+
+    private long requestTime;
+
+    private boolean passive;
+
+    private boolean secure;
+
+    private boolean zipMode;
+
+    private InetAddress serverControlAddress;
+
+    private TlsHandshakeStatistics handshakeStatistics;
+
+    private TransferCompression compression;
+
+    public NioDataConnectionFactory(final FtpIoSession session, final BufferPool directBuffers,
+                                    final BufferPool heapBuffers, final BandwidthShaper shaper) {
+        this.session = session;
+        this.directBuffers = directBuffers;
+        this.heapBuffers = heapBuffers;
+        this.shaper = shaper;
+        this.secure = session.getListener() != null
+            && session.getListener().getDataConnectionConfiguration().isImplicitSsl();
+    }
+
+    @Override
+    public void closeDataConnection() {
+        this.lock.lock();
+        try {
+            Optional.ofNullable(this.dataSocket).ifPresent(socket -> {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    log.log(Level.WARNING, "Failed to close data connection", e);
+                }
+            });
+            this.dataSocket = null;
+
+            Optional.ofNullable(this.serverChannel).ifPresent(channel -> {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    log.log(Level.WARNING, "Failed to close passive data connection", e);
+                }
+                Optional.ofNullable(this.session.getListener())
+                    .map(listener -> listener.getDataConnectionConfiguration())
+                    .ifPresent(configuration -> configuration.releasePassivePort(this.port));
+            });
+            this.serverChannel = null;
+
+            this.requestTime = 0;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public void initActiveDataConnection(final InetSocketAddress address) {
+        this.lock.lock();
+        try {
+            this.closeDataConnection();
+
+            this.passive = false;
+            this.address = address.getAddress();
+            this.port = address.getPort();
+            this.requestTime = System.currentTimeMillis();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public InetSocketAddress initPassiveDataConnection() throws DataConnectionException {
+        this.lock.lock();
+        try {
+            this.closeDataConnection();
+
+            DataConnectionConfiguration configuration = this.session.getListener().getDataConnectionConfiguration();
+            int passivePort = configuration.requestPassivePort();
+            if (passivePort == -1) {
+                throw new DataConnectionException("Cannot find an available passive port.");
+            }
+
+            try {
+                String passiveAddress = configuration.getPassiveAddress();
+                this.address = passiveAddress == null ? this.serverControlAddress : resolveAddress(passiveAddress);
+
+                if (this.secure && this.getSslConfiguration() == null) {
+                    throw new DataConnectionException("Data connection SSL required but not configured.");
+                }
+
+                this.port = passivePort;
+                this.serverChannel = this.bindPassivePort(configuration);
+                this.port = this.serverChannel.socket().getLocalPort();
+                this.serverChannel.socket().setSoTimeout(configuration.getIdleTime() * 1000);
+
+                this.passive = true;
+                this.requestTime = System.currentTimeMillis();
+                return new InetSocketAddress(this.address, this.port);
+            } catch (DataConnectionException e) {
+                configuration.releasePassivePort(passivePort);
+                throw e;
+            } catch (Exception e) {
+                if (this.serverChannel == null) {
+                    configuration.releasePassivePort(this.port);
+                }
+                this.closeDataConnection();
+                throw new DataConnectionException("Failed to initate passive data connection: " + e.getMessage(), e);
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Bind the reserved port, or the next ones while it is taken by another process, up to {@link #BIND_ATTEMPTS}
+     * ports. The port which failed is released, it goes last in the pool.
+     */
+    private ServerSocketChannel bindPassivePort(final DataConnectionConfiguration configuration) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            ServerSocketChannel channel = ServerSocketChannel.open();
+            try {
+                channel.bind(new InetSocketAddress(this.address, this.port), 0);
+                return channel;
+            } catch (BindException e) {
+                channel.close();
+                if (this.port == 0 || attempt == BIND_ATTEMPTS) {
+                    throw e;
+                }
+
+                int nextPort = configuration.requestPassivePort();
+                if (nextPort == -1) {
+                    throw e;
+                }
+                configuration.releasePassivePort(this.port);
+                log.fine("Passive port " + this.port + " in use, trying " + nextPort);
+                this.port = nextPort;
+            }
+        }
+    }
+
+    @Override
+    public InetAddress getInetAddress() {
+        return this.address;
+    }
+
+    @Override
+    public int getPort() {
+        return this.port;
+    }
+
+    @Override
+    public DataConnection openConnection() throws Exception {
+        return new NioDataConnection(
+            this.createDataSocket(), this.session, this, this.directBuffers, this.heapBuffers, this.shaper,
+            this.compression);
+    }
+
+    private Socket createDataSocket() throws Exception {
+        this.lock.lock();
+        try {
+            this.dataSocket = null;
+            DataConnectionConfiguration configuration = this.session.getListener().getDataConnectionConfiguration();
+
+            try {
+                Socket socket;
+                if (this.passive) {
+                    // The socket adaptor honours the accept timeout, and its sockets keep their channel
+                    socket = this.serverChannel.socket().accept();
+
+                    if (configuration.isPassiveIpCheck()) {
+                        InetAddress expected = ((InetSocketAddress) this.session.getRemoteAddress()).getAddress();
+                        if (!expected.equals(socket.getInetAddress())) {
+                            log.warning("Passive IP Check failed. Closing data connection from "
+                                + socket.getInetAddress() + " as it does not match the expected address " + expected);
+                            socket.close();
+                            this.closeDataConnection();
+                            return null;
+                        }
+                    }
+                } else {
+                    InetAddress localAddress = Optional
+                        .ofNullable(resolveAddress(configuration.getActiveLocalAddress()))
+                        .orElseGet(() -> ((InetSocketAddress) this.session.getLocalAddress()).getAddress());
+
+                    SocketChannel channel = SocketChannel.open();
+                    socket = channel.socket();
+                    socket.setReuseAddress(true);
+                    socket.bind(new InetSocketAddress(localAddress, configuration.getActiveLocalPort()));
+                    socket.connect(new InetSocketAddress(this.address, this.port));
+                }
+                socket.setSoTimeout(configuration.getIdleTime() * 1000);
+
+                if (this.secure) {
+                    socket = this.secureSocket(socket);
+                }
+                this.dataSocket = socket;
+            } catch (Exception e) {
+                this.closeDataConnection();
+                log.log(Level.WARNING, "Failed to open data connection", e);
+                throw e;
+            }
+
+            return this.dataSocket;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Layer TLS over a plain data socket, the data is then copied through buffers instead of transferred directly.
+     */
+    private Socket secureSocket(final Socket socket) throws Exception {
+        SslConfiguration sslConfiguration = this.getSslConfiguration();
+        if (sslConfiguration == null) {
+            socket.close();
+            throw new FtpException("Data connection SSL not configured");
+        }
+
+        // The handshake is written in several small records, each of which would otherwise wait for the delayed
+        // acknowledgement of the previous one
+        socket.setTcpNoDelay(true);
+        SSLSocket sslSocket = (SSLSocket) sslConfiguration.getSocketFactory()
+            .createSocket(socket, socket.getInetAddress().getHostAddress(), socket.getPort(), true);
+        sslSocket.setUseClientMode(false);
+        if (this.passive) {
+            if (sslConfiguration.getClientAuth() == ClientAuth.NEED) {
+                sslSocket.setNeedClientAuth(true);
+            } else if (sslConfiguration.getClientAuth() == ClientAuth.WANT) {
+                sslSocket.setWantClientAuth(true);
+            }
+        }
+        Optional.ofNullable(sslConfiguration.getEnabledCipherSuites()).ifPresent(sslSocket::setEnabledCipherSuites);
+        sslSocket.setSoTimeout(socket.getSoTimeout());
+        long startMillis = System.currentTimeMillis();
+        long start = System.nanoTime();
+        sslSocket.startHandshake();
+        Optional.ofNullable(this.handshakeStatistics).ifPresent(statistics -> statistics.record(
+            TlsHandshakeStatistics.Channel.DATA, sslSocket.getSession(), startMillis, System.nanoTime() - start));
+        return sslSocket;
+    }
+
+    private SslConfiguration getSslConfiguration() {
+        DataConnectionConfiguration configuration = this.session.getListener().getDataConnectionConfiguration();
+        return Optional.ofNullable(configuration.getSslConfiguration())
+            .orElseGet(() -> this.session.getListener().getSslConfiguration());
+    }
+
+    private static InetAddress resolveAddress(final String host) throws DataConnectionException {
+        if (host == null) {
+            return null;
+        }
+        try {
+            return InetAddress.getByName(host);
+        } catch (UnknownHostException e) {
+            throw new DataConnectionException("Failed to resolve address", e);
+        }
+    }
+
+    @Override
+    public boolean isSecure() {
+        return this.secure;
+    }
+
+    @Override
+    public void setSecure(final boolean secure) {
+        this.secure = secure;
+    }
+
+    @Override
+    public boolean isZipMode() {
+        return this.zipMode;
+    }
+
+    @Override
+    public void setZipMode(final boolean zipMode) {
+        this.zipMode = zipMode;
+    }
+
+    @Override
+    public boolean isTimeout(final long currentTime) {
+        this.lock.lock();
+        try {
+            if (this.requestTime == 0 || this.dataSocket != null) {
+                return false;
+            }
+
+            int maxIdleTime = this.session.getListener().getDataConnectionConfiguration().getIdleTime() * 1000;
+            return maxIdleTime != 0 && currentTime - this.requestTime >= maxIdleTime;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public void dispose() {
+        this.closeDataConnection();
+    }
+
+    @Override
+    public void setServerControlAddress(final InetAddress serverControlAddress) {
+        this.serverControlAddress = serverControlAddress;
+    }
+
+    /**
+     * Receives the TLS handshakes of the data connections, none are recorded if null.
+     */
+    public void setHandshakeStatistics(final TlsHandshakeStatistics handshakeStatistics) {
+        this.handshakeStatistics = handshakeStatistics;
+    }
+
+    /**
+     * Provides the MODE Z streams, the default ones are used if null.
+     */
+    public void setCompression(final TransferCompression compression) {
+        this.compression = compression;
+    }
+
+}
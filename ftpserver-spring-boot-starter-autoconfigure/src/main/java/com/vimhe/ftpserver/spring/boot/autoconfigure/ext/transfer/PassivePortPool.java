@@ -0,0 +1,271 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.transfer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.BitSet;
+import java.util.Queue;
+import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Passive ports without a lock, replacing {@link org.apache.ftpserver.impl.PassivePorts} and its monitor.
+ * <p>
+ * The configured ranges are parsed into a bitset over the span from the lowest to the highest port, a second bitset
+ * of the same size marks the reserved ports and is updated by compare-and-set, so a port released twice, or never
+ * reserved, is ignored. The free ports are spread over stripes, each one a lock-free queue: a reservation polls a
+ * stripe picked at random and takes from the others when it is empty, a released port goes back to the tail of its
+ * stripe. The port handed out is so the one released the longest ago, whose connections had the most time to leave
+ * TIME_WAIT.
+ * <p>
+ * Like {@link org.apache.ftpserver.impl.PassivePorts}, a port is probed by binding it before it is handed out, unless
+ * disabled: a port taken by another process goes back to the tail of its stripe and the next one is tried, as the
+ * default data connections bind the port once only. A reservation fails at once when all the ports are reserved or
+ * taken, and is counted, see {@link #getExhaustedCount()}.
+ *
+ * @author Vimhe
+ */
+public class PassivePortPool {
+
+    private static final int MAX_PORT = 65535;
+
+    private final String ports;
+
+    private final boolean anyAvailable;
+
+    private final int base;
+
+    private final BitSet members;
+
+    private final AtomicLongArray reserved;
+
+    private final int capacity;
+
+    private final boolean checkIfBound;
+
+    private final Queue<Integer>[] stripes;
+
+    private final LongAdder exhausted = new LongAdder();
+
+    /**
+     * @param ports   comma separated ports and ranges, as {@link org.apache.ftpserver.impl.PassivePorts}: "2300",
+     *                "2300-2399", "2300-" up to 65535, "-2399" from 1. Port 0 stands for any available port, the only
+     *                one when the ports are null or blank, otherwise the one handed out once the others are reserved.
+     * @param stripes      number of queues the free ports are spread over, at most one per port
+     * @param checkIfBound whether to probe the ports by binding them before they are handed out
+     * @throws IllegalArgumentException if a port is invalid
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public PassivePortPool(final String ports, final int stripes, final boolean checkIfBound) {
+        this.checkIfBound = checkIfBound;
+        this.ports = ports == null || ports.trim().isEmpty() ? "0" : ports.trim();
+
+        BitSet parsed = parse(this.ports);
+        this.anyAvailable = parsed.get(0);
+        parsed.clear(0);
+
+        this.base = Math.max(parsed.nextSetBit(0), 0);
+        this.members = parsed.get(this.base, Math.max(parsed.length(), this.base));
+        this.reserved = new AtomicLongArray((this.members.length() + 63) >>> 6);
+        this.capacity = this.members.cardinality();
+
+        this.stripes = new Queue[Math.max(Math.min(stripes, this.capacity), 1)];
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = new ConcurrentLinkedQueue<>();
+        }
+        for (int index = this.members.nextSetBit(0); index >= 0; index = this.members.nextSetBit(index + 1)) {
+            this.stripes[index % this.stripes.length].offer(this.base + index);
+        }
+    }
+
+    private static BitSet parse(final String ports) {
+        BitSet parsed = new BitSet();
+        StringTokenizer tokenizer = new StringTokenizer(ports, ",;");
+        while (tokenizer.hasMoreTokens()) {
+            String token = tokenizer.nextToken().trim();
+            if (token.isEmpty()) {
+                continue;
+            }
+
+            int separator = token.indexOf('-');
+            if (separator < 0) {
+                parsed.set(verify(token));
+            } else {
+                String from = token.substring(0, separator).trim();
+                String to = token.substring(separator + 1).trim();
+                int first = from.isEmpty() ? 1 : verify(from);
+                int last = to.isEmpty() ? MAX_PORT : verify(to);
+                if (first > last) {
+                    throw new IllegalArgumentException("Invalid passive port range: " + token);
+                }
+                parsed.set(first, last + 1);
+            }
+        }
+        return parsed;
+    }
+
+    private static int verify(final String token) {
+        int port;
+        try {
+            port = Integer.parseInt(token);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid passive port: " + token, e);
+        }
+        if (port < 0 || port > MAX_PORT) {
+            throw new IllegalArgumentException("Invalid passive port: " + token);
+        }
+        return port;
+    }
+
+    /**
+     * Reserve a port, the one released the longest ago which is not taken by another process.
+     *
+     * @return the port, 0 for any available port, -1 if all the ports are reserved or taken
+     */
+    public int reserve() {
+        // Every port is probed once at most, a taken one goes last
+        for (int attempt = 0; attempt < this.capacity; attempt++) {
+            int port = this.poll();
+            if (port < 0) {
+                break;
+            }
+            if (!this.checkIfBound || isUnbound(port)) {
+                return port;
+            }
+            this.release(port);
+        }
+
+        if (this.anyAvailable) {
+            return 0;
+        }
+        this.exhausted.increment();
+        return -1;
+    }
+
+    private int poll() {
+        int count = this.stripes.length;
+        int start = count == 1 ? 0 : ThreadLocalRandom.current().nextInt(count);
+        for (int i = 0; i < count; i++) {
+            Integer port = this.stripes[(start + i) % count].poll();
+            if (port != null) {
+                this.mark(port - this.base);
+                return port;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Whether the port can be bound, on all addresses as {@link org.apache.ftpserver.impl.PassivePorts} checks it.
+     */
+    private static boolean isUnbound(final int port) {
+        try (ServerSocket socket = new ServerSocket()) {
+            socket.setReuseAddress(true);
+            socket.bind(new InetSocketAddress(port));
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Release a reserved port. A port outside the pool, which the system picked for port 0, or a port which is not
+     * reserved is ignored.
+     */
+    public void release(final int port) {
+        int index = port - this.base;
+        if (port <= 0 || index < 0 || !this.members.get(index)) {
+            return;
+        }
+
+        if (this.unmark(index)) {
+            this.stripes[index % this.stripes.length].offer(port);
+        }
+    }
+
+    private void mark(final int index) {
+        int word = index >>> 6;
+        long bit = 1L << index;
+        long current;
+        do {
+            current = this.reserved.get(word);
+        } while (!this.reserved.compareAndSet(word, current, current | bit));
+    }
+
+    private boolean unmark(final int index) {
+        int word = index >>> 6;
+        long bit = 1L << index;
+        long current;
+        do {
+            current = this.reserved.get(word);
+            if ((current & bit) == 0) {
+                return false;
+            }
+        } while (!this.reserved.compareAndSet(word, current, current & ~bit));
+        return true;
+    }
+
+    /**
+     * The ports as configured, "0" for any available port.
+     */
+    public String getPorts() {
+        return this.ports;
+    }
+
+    /**
+     * Number of ports in the pool, 0 if any available port is handed out.
+     */
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Number of ports currently reserved.
+     */
+    public int getReservedCount() {
+        int count = 0;
+        for (int i = 0; i < this.reserved.length(); i++) {
+            count += Long.bitCount(this.reserved.get(i));
+        }
+        return count;
+    }
+
+    /**
+     * Number of ports currently free.
+     */
+    public int getAvailableCount() {
+        return this.capacity - this.getReservedCount();
+    }
+
+    /**
+     * Number of reservations which failed so far because all the ports were reserved.
+     */
+    public long getExhaustedCount() {
+        return this.exhausted.sum();
+    }
+
+    @Override
+    public String toString() {
+        return this.ports;
+    }
+
+}
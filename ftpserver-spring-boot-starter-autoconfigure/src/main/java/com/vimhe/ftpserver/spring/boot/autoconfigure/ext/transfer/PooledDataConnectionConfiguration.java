@@ -0,0 +1,109 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.transfer;
+
+import org.apache.ftpserver.DataConnectionConfiguration;
+import org.apache.ftpserver.ssl.SslConfiguration;
+
+/**
+ * Decorates a {@link DataConnectionConfiguration} with a {@link PassivePortPool}, the passive ports are reserved and
+ * released without holding the monitor of {@link org.apache.ftpserver.impl.DefaultDataConnectionConfiguration}.
+ *
+ * @author Vimhe
+ */
+public class PooledDataConnectionConfiguration implements DataConnectionConfiguration {
+
+    private final DataConnectionConfiguration delegate;
+
+    private final PassivePortPool portPool;
+
+    public PooledDataConnectionConfiguration(final DataConnectionConfiguration delegate,
+                                             final PassivePortPool portPool) {
+        this.delegate = delegate;
+        this.portPool = portPool;
+    }
+
+    public PassivePortPool getPortPool() {
+        return this.portPool;
+    }
+
+    @Override
+    public int getIdleTime() {
+        return this.delegate.getIdleTime();
+    }
+
+    @Override
+    public boolean isActiveEnabled() {
+        return this.delegate.isActiveEnabled();
+    }
+
+    @Override
+    public boolean isActiveIpCheck() {
+        return this.delegate.isActiveIpCheck();
+    }
+
+    @Override
+    public String getActiveLocalAddress() {
+        return this.delegate.getActiveLocalAddress();
+    }
+
+    @Override
+    public int getActiveLocalPort() {
+        return this.delegate.getActiveLocalPort();
+    }
+
+    @Override
+    public String getPassiveAddress() {
+        return this.delegate.getPassiveAddress();
+    }
+
+    @Override
+    public String getPassiveExernalAddress() {
+        return this.delegate.getPassiveExernalAddress();
+    }
+
+    @Override
+    public String getPassivePorts() {
+        return this.portPool.getPorts();
+    }
+
+    @Override
+    public boolean isPassiveIpCheck() {
+        return this.delegate.isPassiveIpCheck();
+    }
+
+    @Override
+    public int requestPassivePort() {
+        return this.portPool.reserve();
+    }
+
+    @Override
+    public void releasePassivePort(final int port) {
+        this.portPool.release(port);
+    }
+
+    @Override
+    public SslConfiguration getSslConfiguration() {
+        return this.delegate.getSslConfiguration();
+    }
+
+    @Override
+    public boolean isImplicitSsl() {
+        return this.delegate.isImplicitSsl();
+    }
+
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.transfer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * MODE Z streams of the {@link NioDataConnection}s, with bounded pools of {@link Deflater}s and {@link Inflater}s, so
+ * their native state is allocated once instead of per transfer, and with large buffers, so the compressed data does
+ * not reach the socket in small writes.
+ * <p>
+ * Content which does not compress, a known compressed format by the file name (see {@link CompressionFtplet}) or a
+ * first buffer whose byte entropy is close to random data, is sent in stored deflate blocks, which a MODE Z client
+ * reads like any other but which cost no compression time.
+ *
+ * @author Vimhe
+ */
+public class TransferCompression {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Bytes of the first write of a download the entropy is computed of.
+     */
+    private static final int SAMPLE_SIZE = 64 * 1024;
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final int level;
+
+    /**
+     * Lower case file extensions without the dot.
+     */
+    private final Set<String> bypassExtensions;
+
+    /**
+     * Bits per byte, zero if the entropy is not checked.
+     */
+    private final double entropyThreshold;
+
+    private final BlockingQueue<Deflater> deflaters;
+
+    private final BlockingQueue<Inflater> inflaters;
+
+    private final LongAdder compressedCount = new LongAdder();
+
+    private final LongAdder bypassedCount = new LongAdder();
+
+    private final LongAdder decompressedCount = new LongAdder();
+
+    private final LongAdder deflatedBytes = new LongAdder();
+
+    private final LongAdder deflatedCompressedBytes = new LongAdder();
+
+    private final LongAdder inflatedBytes = new LongAdder();
+
+    private final LongAdder inflatedCompressedBytes = new LongAdder();
+
+    private final LongAdder deflateNanos = new LongAdder();
+
+    private final LongAdder inflateNanos = new LongAdder();
+
+    /**
+     * @param level            the deflate level, 1 (fastest) to 9 (smallest)
+     * @param bypassExtensions extensions of files which are sent uncompressed
+     * @param entropyThreshold bits per byte above which a download is sent uncompressed, zero to not check
+     * @param maximumPooled    the number of deflaters and of inflaters kept
+     */
+    public TransferCompression(final int level, final Collection<String> bypassExtensions,
+                               final double entropyThreshold, final int maximumPooled) {
+        if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Compression level must be between 1 and 9: " + level);
+        }
+        this.level = level;
+        this.bypassExtensions = bypassExtensions.stream()
+            .map(extension -> extension.replaceFirst("^\\.", "").toLowerCase(Locale.ENGLISH))
+            .collect(Collectors.toSet());
+        this.entropyThreshold = entropyThreshold;
+        this.deflaters = new ArrayBlockingQueue<>(Math.max(1, maximumPooled));
+        this.inflaters = new ArrayBlockingQueue<>(Math.max(1, maximumPooled));
+    }
+
+    /**
+     * A stream compressing to the given one, which returns its deflater to the pool once closed.
+     *
+     * @param fileName the name of the file sent, null if unknown
+     */
+    public OutputStream compress(final OutputStream out, final String fileName) {
+        Deflater deflater = this.deflaters.poll();
+        if (deflater == null) {
+            deflater = new Deflater(this.level);
+        }
+        return new CompressingOutputStream(out, deflater, fileName);
+    }
+
+    /**
+     * A stream decompressing from the given one, which returns its inflater to the pool once closed.
+     */
+    public InputStream decompress(final InputStream in) {
+        Inflater inflater = this.inflaters.poll();
+        if (inflater == null) {
+            inflater = new Inflater();
+        }
+        return new DecompressingInputStream(in, inflater);
+    }
+
+    /**
+     * Whether a download is worth compressing, by its file name and a sample of its first bytes.
+     */
+    boolean isCompressible(final String fileName, final byte[] sample, final int offset, final int length) {
+        if (fileName != null) {
+            int dot = fileName.lastIndexOf('.');
+            if (dot >= 0 && dot > fileName.lastIndexOf('/')
+                && this.bypassExtensions.contains(fileName.substring(dot + 1).toLowerCase(Locale.ENGLISH))) {
+                return false;
+            }
+        }
+        return this.entropyThreshold <= 0
+            || entropy(sample, offset, Math.min(length, SAMPLE_SIZE)) < this.entropyThreshold;
+    }
+
+    /**
+     * Shannon entropy of the bytes in bits per byte, 8 for random data.
+     */
+    static double entropy(final byte[] bytes, final int offset, final int length) {
+        if (length == 0) {
+            return 0;
+        }
+        int[] counts = new int[256];
+        for (int i = offset; i < offset + length; ++i) {
+            ++counts[bytes[i] & 0xff];
+        }
+        double entropy = 0;
+        for (int count : counts) {
+            if (count > 0) {
+                double p = (double) count / length;
+                entropy -= p * Math.log(p);
+            }
+        }
+        return entropy / Math.log(2);
+    }
+
+    /**
+     * CPU time of the current thread in nanoseconds, negative if not supported, e.g. for virtual threads.
+     */
+    private static long cpuTime() {
+        return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : -1;
+    }
+
+    public long getCompressedCount() {
+        return this.compressedCount.sum();
+    }
+
+    /**
+     * Downloads sent in stored blocks because their content does not compress.
+     */
+    public long getBypassedCount() {
+        return this.bypassedCount.sum();
+    }
+
+    public long getDecompressedCount() {
+        return this.decompressedCount.sum();
+    }
+
+    /**
+     * Uncompressed bytes of the downloads.
+     */
+    public long getDeflatedBytes() {
+        return this.deflatedBytes.sum();
+    }
+
+    /**
+     * Compressed bytes of the downloads, as sent.
+     */
+    public long getDeflatedCompressedBytes() {
+        return this.deflatedCompressedBytes.sum();
+    }
+
+    /**
+     * Uncompressed bytes of the uploads.
+     */
+    public long getInflatedBytes() {
+        return this.inflatedBytes.sum();
+    }
+
+    /**
+     * Compressed bytes of the uploads, as received.
+     */
+    public long getInflatedCompressedBytes() {
+        return this.inflatedCompressedBytes.sum();
+    }
+
+    /**
+     * CPU time spent compressing, in nanoseconds.
+     */
+    public long getDeflateNanos() {
+        return this.deflateNanos.sum();
+    }
+
+    /**
+     * CPU time spent decompressing, including reading the socket, in nanoseconds.
+     */
+    public long getInflateNanos() {
+        return this.inflateNanos.sum();
+    }
+
+    private final class CompressingOutputStream extends DeflaterOutputStream {
+        private final String fileName;
+        private boolean sampled;
+        private boolean closed;
+
+        private CompressingOutputStream(final OutputStream out, final Deflater deflater, final String fileName) {
+            super(out, deflater, BUFFER_SIZE);
+            this.fileName = fileName;
+        }
+
+        @Override
+        public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+            if (!this.sampled && length > 0) {
+                this.sampled = true;
+                if (!TransferCompression.this.isCompressible(this.fileName, bytes, offset, length)) {
+                    // Takes effect with the first deflate, before any output
+                    this.def.setLevel(Deflater.NO_COMPRESSION);
+                    TransferCompression.this.bypassedCount.increment();
+                } else {
+                    TransferCompression.this.compressedCount.increment();
+                }
+            }
+            super.write(bytes, offset, length);
+        }
+
+        @Override
+        protected void deflate() throws IOException {
+            long start = cpuTime();
+            super.deflate();
+            long end = start < 0 ? -1 : cpuTime();
+            if (end >= 0) {
+                TransferCompression.this.deflateNanos.add(end - start);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            try {
+                super.close();
+            } finally {
+                TransferCompression.this.deflatedBytes.add(this.def.getBytesRead());
+                TransferCompression.this.deflatedCompressedBytes.add(this.def.getBytesWritten());
+                this.def.reset();
+                this.def.setLevel(TransferCompression.this.level);
+                if (!TransferCompression.this.deflaters.offer(this.def)) {
+                    this.def.end();
+                }
+            }
+        }
+    }
+
+    private final class DecompressingInputStream extends InflaterInputStream {
+        private boolean closed;
+
+        private DecompressingInputStream(final InputStream in, final Inflater inflater) {
+            super(in, inflater, BUFFER_SIZE);
+            TransferCompression.this.decompressedCount.increment();
+        }
+
+        @Override
+        public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+            long start = cpuTime();
+            int count = super.read(bytes, offset, length);
+            long end = start < 0 ? -1 : cpuTime();
+            if (end >= 0) {
+                TransferCompression.this.inflateNanos.add(end - start);
+            }
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            try {
+                super.close();
+            } finally {
+                TransferCompression.this.inflatedBytes.add(this.inf.getBytesWritten());
+                TransferCompression.this.inflatedCompressedBytes.add(this.inf.getBytesRead());
+                this.inf.reset();
+                if (!TransferCompression.this.inflaters.offer(this.inf)) {
+                    this.inf.end();
+                }
+            }
+        }
+    }
+
+}
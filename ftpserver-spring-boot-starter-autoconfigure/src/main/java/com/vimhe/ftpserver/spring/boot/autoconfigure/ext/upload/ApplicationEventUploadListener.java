@@ -0,0 +1,41 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.upload;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.util.List;
+
+/**
+ * Publishes the completed uploads as {@link UploadCompletedEvent}s to the application context, one by one, so
+ * {@link org.springframework.context.event.EventListener}s receive them on the threads of the
+ * {@link UploadEventPipeline}.
+ *
+ * @author Vimhe
+ */
+@RequiredArgsConstructor
+public class ApplicationEventUploadListener implements UploadListener {
+
+    private final ApplicationEventPublisher publisher;
+
+    @Override
+    public void onUploads(final List<UploadCompletedEvent> uploads) {
+        uploads.forEach(this.publisher::publishEvent);
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.upload;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+import java.nio.file.Path;
+
+/**
+ * Published once a file was uploaded completely with STOR, STOU or APPE, after the client got the reply. Delivered
+ * by the {@link UploadEventPipeline} on its own threads, never on the thread of the session.
+ *
+ * @author Vimhe
+ */
+@Getter
+public class UploadCompletedEvent extends ApplicationEvent {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The upload command, STOR, STOU or APPE.
+     */
+    private final String command;
+
+    private final String userName;
+
+    /**
+     * The address of the client, null if unknown.
+     */
+    private final String clientAddress;
+
+    /**
+     * The absolute path of the file as seen by the user.
+     */
+    private final String fileName;
+
+    /**
+     * The file on the disk, null if the file system is not a native one.
+     */
+    private final transient Path physicalPath;
+
+    /**
+     * The bytes received, for APPE the bytes appended.
+     */
+    private final long bytesTransferred;
+
+    public UploadCompletedEvent(final Object source, final String command, final String userName,
+                                final String clientAddress, final String fileName, final Path physicalPath,
+                                final long bytesTransferred) {
+        super(source);
+        this.command = command;
+        this.userName = userName;
+        this.clientAddress = clientAddress;
+        this.fileName = fileName;
+        this.physicalPath = physicalPath;
+        this.bytesTransferred = bytesTransferred;
+    }
+
+    @Override
+    public String toString() {
+        return "UploadCompletedEvent[" + this.command + " " + this.fileName + " by " + this.userName + ", "
+            + this.bytesTransferred + " bytes]";
+    }
+
+}
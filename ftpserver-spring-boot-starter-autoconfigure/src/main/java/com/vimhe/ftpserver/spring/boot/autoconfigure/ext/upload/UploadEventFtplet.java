@@ -0,0 +1,63 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.upload;
+
+import lombok.RequiredArgsConstructor;
+import org.apache.ftpserver.filesystem.nativefs.impl.NativeFtpFile;
+import org.apache.ftpserver.ftplet.*;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+
+/**
+ * Ftplet which submits every completed upload to the {@link UploadEventPipeline}. It acts where
+ * {@link #onUploadEnd(FtpSession, FtpRequest)} would, once the reply was sent, but only for transfers which
+ * succeeded, and only queues the event.
+ *
+ * @author Vimhe
+ */
+@RequiredArgsConstructor
+public class UploadEventFtplet extends DefaultFtplet {
+
+    private final UploadEventPipeline pipeline;
+
+    @Override
+    public FtpletResult afterCommand(final FtpSession session, final FtpRequest request, final FtpReply reply)
+        throws FtpException, IOException {
+        String command = request.getCommand();
+        if (!("STOR".equals(command) || "STOU".equals(command) || "APPE".equals(command))
+            || !(reply instanceof DataTransferFtpReply) || !reply.isPositive()) {
+            return FtpletResult.DEFAULT;
+        }
+
+        DataTransferFtpReply transferReply = (DataTransferFtpReply) reply;
+        FtpFile file = transferReply.getFile();
+        if (file == null) {
+            return FtpletResult.DEFAULT;
+        }
+        Path physicalPath = file instanceof NativeFtpFile
+            ? ((NativeFtpFile) file).getPhysicalFile().toPath().toAbsolutePath().normalize() : null;
+        InetSocketAddress clientAddress = session.getClientAddress();
+
+        this.pipeline.submit(new UploadCompletedEvent(this.pipeline, command, session.getUser().getName(),
+            clientAddress == null ? null : clientAddress.getAddress().getHostAddress(), file.getAbsolutePath(),
+            physicalPath, transferReply.getBytesTransferred()));
+        return FtpletResult.DEFAULT;
+    }
+
+}
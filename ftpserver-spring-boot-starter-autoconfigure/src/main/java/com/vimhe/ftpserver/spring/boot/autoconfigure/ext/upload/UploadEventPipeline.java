@@ -0,0 +1,289 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.upload;
+
+import lombok.extern.java.Log;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+
+/**
+ * Delivers completed uploads to the {@link UploadListener}s away from the sessions. A session only offers the event
+ * to a bounded queue, waiting at most the offer timeout for room before the event is dropped, so slow listeners
+ * hold back uploads for a bounded time and never the reply of the upload itself.
+ * <p>
+ * A batcher thread collects the queued events into batches, closed once they reach the batch size or the first
+ * event waited for the batch delay, and hands each batch to the listeners on a pool of listener threads. The
+ * listeners of a batch are called one after the other, in their order, like the stages of a pipeline, and a listener
+ * which fails stops the batch. At most parallelism batches are processed at once; beyond that the batcher waits, and
+ * the queue fills up.
+ *
+ * @author Vimhe
+ */
+@Log
+public class UploadEventPipeline implements Closeable {
+
+    private final Map<String, UploadListener> listeners;
+
+    private final Map<String, ListenerStatistics> statistics;
+
+    private final BlockingQueue<UploadCompletedEvent> queue;
+
+    private final long offerTimeoutNanos;
+
+    private final int batchSize;
+
+    private final long batchDelayNanos;
+
+    /**
+     * Permits for the batches being processed, taken by the batcher and released by the listener threads.
+     */
+    private final Semaphore inFlight;
+
+    private final ExecutorService listenerPool;
+
+    private final Thread batcher;
+
+    private final LongAdder submittedCount = new LongAdder();
+
+    private final LongAdder droppedCount = new LongAdder();
+
+    private volatile boolean closed;
+
+    /**
+     * @param listeners     the listeners by name, called in this order for each batch
+     * @param queueCapacity the number of events waiting for the batcher
+     * @param offerTimeout  how long a session waits for room in the full queue before the event is dropped
+     * @param batchSize     the maximum number of events of a batch
+     * @param batchDelay    how long the first event of a batch waits for more events
+     * @param parallelism   the number of batches processed at once
+     */
+    public UploadEventPipeline(final Map<String, UploadListener> listeners, final int queueCapacity,
+                               final Duration offerTimeout, final int batchSize, final Duration batchDelay,
+                               final int parallelism) {
+        this.listeners = Collections.unmodifiableMap(new LinkedHashMap<>(listeners));
+        Map<String, ListenerStatistics> listenerStatistics = new LinkedHashMap<>(listeners.size());
+        listeners.keySet().forEach(name -> listenerStatistics.put(name, new ListenerStatistics()));
+        this.statistics = Collections.unmodifiableMap(listenerStatistics);
+
+        this.queue = new ArrayBlockingQueue<>(Math.max(queueCapacity, 1));
+        this.offerTimeoutNanos = Math.max(offerTimeout.toNanos(), 0);
+        this.batchSize = Math.max(batchSize, 1);
+        this.batchDelayNanos = Math.max(batchDelay.toNanos(), 0);
+        this.inFlight = new Semaphore(Math.max(parallelism, 1));
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.listenerPool = Executors.newFixedThreadPool(Math.max(parallelism, 1), runnable -> {
+            Thread thread = new Thread(runnable, "ftp-upload-listener-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.batcher = new Thread(this::batchLoop, "ftp-upload-batcher");
+        this.batcher.setDaemon(true);
+        this.batcher.start();
+    }
+
+    /**
+     * Queue an event, waiting at most the offer timeout for room.
+     *
+     * @return false if the event was dropped
+     */
+    public boolean submit(final UploadCompletedEvent event) {
+        boolean queued = false;
+        if (!this.closed) {
+            try {
+                queued = this.queue.offer(event, this.offerTimeoutNanos, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (queued) {
+            this.submittedCount.increment();
+        } else {
+            this.droppedCount.increment();
+            log.fine(() -> "Upload event dropped, the listeners are behind: " + event);
+        }
+        return queued;
+    }
+
+    private void batchLoop() {
+        List<UploadCompletedEvent> batch = new ArrayList<>(this.batchSize);
+        try {
+            while (!this.closed || !this.queue.isEmpty()) {
+                UploadCompletedEvent first = this.queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                long deadline = System.nanoTime() + this.batchDelayNanos;
+                while (batch.size() < this.batchSize) {
+                    // Take what is there without waiting, then wait for the rest until the deadline
+                    if (this.queue.drainTo(batch, this.batchSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    UploadCompletedEvent next = remaining > 0 && !this.closed
+                        ? this.queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                this.dispatch(Collections.unmodifiableList(batch));
+                batch = new ArrayList<>(this.batchSize);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void dispatch(final List<UploadCompletedEvent> batch) throws InterruptedException {
+        this.inFlight.acquire();
+        try {
+            this.listenerPool.execute(() -> {
+                try {
+                    for (Map.Entry<String, UploadListener> listener : this.listeners.entrySet()) {
+                        if (!this.deliver(listener.getKey(), listener.getValue(), batch)) {
+                            break;
+                        }
+                    }
+                } finally {
+                    this.inFlight.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            this.inFlight.release();
+            this.droppedCount.add(batch.size());
+        }
+    }
+
+    /**
+     * @return false if the listener failed
+     */
+    private boolean deliver(final String name, final UploadListener listener,
+                            final List<UploadCompletedEvent> batch) {
+        ListenerStatistics listenerStatistics = this.statistics.get(name);
+        long start = System.nanoTime();
+        try {
+            listener.onUploads(batch);
+            listenerStatistics.processedCount.add(batch.size());
+            return true;
+        } catch (Exception e) {
+            listenerStatistics.failedCount.add(batch.size());
+            log.log(Level.WARNING, "Upload listener " + name + " failed on a batch of " + batch.size() + " uploads",
+                e);
+            return false;
+        } finally {
+            listenerStatistics.batchCount.increment();
+            listenerStatistics.totalNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * The statistics of each listener, by name.
+     */
+    public Map<String, ListenerStatistics> getListenerStatistics() {
+        return this.statistics;
+    }
+
+    public long getSubmittedCount() {
+        return this.submittedCount.sum();
+    }
+
+    /**
+     * Events dropped because the queue stayed full for the offer timeout, or the pipeline was closed.
+     */
+    public long getDroppedCount() {
+        return this.droppedCount.sum();
+    }
+
+    /**
+     * Events waiting for the batcher.
+     */
+    public int getQueuedCount() {
+        return this.queue.size();
+    }
+
+    /**
+     * Stop taking events, and deliver the queued ones before the listener threads stop, waiting at most 10 seconds.
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        try {
+            this.batcher.join(TimeUnit.SECONDS.toMillis(10));
+            this.listenerPool.shutdown();
+            if (!this.listenerPool.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warning("Upload listeners still running, not waiting for them");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.batcher.interrupt();
+        this.listenerPool.shutdownNow();
+    }
+
+    /**
+     * Statistics of a listener.
+     */
+    public static final class ListenerStatistics {
+
+        private final LongAdder batchCount = new LongAdder();
+
+        private final LongAdder processedCount = new LongAdder();
+
+        private final LongAdder failedCount = new LongAdder();
+
+        private final LongAdder totalNanos = new LongAdder();
+
+        public long getBatchCount() {
+            return this.batchCount.sum();
+        }
+
+        /**
+         * Uploads of the batches the listener processed without failure.
+         */
+        public long getProcessedCount() {
+            return this.processedCount.sum();
+        }
+
+        /**
+         * Uploads of the batches the listener failed on.
+         */
+        public long getFailedCount() {
+            return this.failedCount.sum();
+        }
+
+        /**
+         * Time spent in the listener, in nanoseconds.
+         */
+        public long getTotalNanos() {
+            return this.totalNanos.sum();
+        }
+
+    }
+
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.upload;
+
+import java.util.List;
+
+/**
+ * Processes completed uploads in batches. Every bean of this type is called by the {@link UploadEventPipeline}, on
+ * its threads, possibly with several batches at once. The listeners of a batch are called one after the other in
+ * their {@link org.springframework.core.annotation.Order order}; a failure is logged and counted, and the batch is
+ * neither passed on to the following listeners nor retried.
+ *
+ * @author Vimhe
+ */
+@FunctionalInterface
+public interface UploadListener {
+
+    /**
+     * @param uploads the uploads completed since the previous batch, in the order they completed
+     */
+    void onUploads(List<UploadCompletedEvent> uploads) throws Exception;
+
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.metrics;
+
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.audit.AuditLog;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Binds the {@link AuditLog} to Micrometer.
+ *
+ * @author Vimhe
+ */
+@RequiredArgsConstructor
+public class AuditLogMetrics implements MeterBinder {
+
+    private final AuditLog auditLog;
+
+    @Override
+    public void bindTo(final MeterRegistry registry) {
+        FunctionCounter.builder("ftpserver.audit.records", this.auditLog, AuditLog::getWrittenCount)
+            .tag("result", "written")
+            .description("Audit records written to the log file")
+            .register(registry);
+        FunctionCounter.builder("ftpserver.audit.records", this.auditLog, AuditLog::getDroppedCount)
+            .tag("result", "dropped")
+            .description("Audit records lost because the buffer was full or the log file could not be written")
+            .register(registry);
+        Gauge.builder("ftpserver.audit.pending", this.auditLog, AuditLog::getPendingCount)
+            .description("Audit records in the buffer, waiting to be written")
+            .register(registry);
+    }
+
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.metrics;
+
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.checksum.ChecksumIndex;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Binds the {@link ChecksumIndex} to Micrometer.
+ *
+ * @author Vimhe
+ */
+@RequiredArgsConstructor
+public class ChecksumIndexMetrics implements MeterBinder {
+
+    private final ChecksumIndex checksumIndex;
+
+    @Override
+    public void bindTo(final MeterRegistry registry) {
+        FunctionCounter.builder("ftpserver.checksum.requests", this.checksumIndex, ChecksumIndex::getHitCount)
+            .tag("result", "hit")
+            .description("Checksum requests answered from the index")
+            .register(registry);
+        FunctionCounter.builder("ftpserver.checksum.requests", this.checksumIndex, ChecksumIndex::getComputedCount)
+            .tag("result", "computed")
+            .description("Checksum requests which read the file")
+            .register(registry);
+        FunctionCounter.builder("ftpserver.checksum.requests", this.checksumIndex, ChecksumIndex::getRejectedCount)
+            .tag("result", "rejected")
+            .description("Checksum requests rejected because the hasher was busy")
+            .register(registry);
+        FunctionCounter.builder("ftpserver.checksum.uploads", this.checksumIndex, ChecksumIndex::getUploadCount)
+            .description("Uploads digested while they were written")
+            .register(registry);
+        Gauge.builder("ftpserver.checksum.index.entries", this.checksumIndex, ChecksumIndex::getEntryCount)
+            .description("Files with digests in the index")
+            .register(registry);
+    }
+
+}
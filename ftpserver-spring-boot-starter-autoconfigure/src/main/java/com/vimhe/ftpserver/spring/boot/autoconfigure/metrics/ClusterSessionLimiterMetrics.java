@@ -0,0 +1,55 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.metrics;
+
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.cluster.ClusterSessionLimiter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Binds the {@link ClusterSessionLimiter} to Micrometer.
+ *
+ * @author Vimhe
+ */
+@RequiredArgsConstructor
+public class ClusterSessionLimiterMetrics implements MeterBinder {
+
+    private final ClusterSessionLimiter limiter;
+
+    @Override
+    public void bindTo(final MeterRegistry registry) {
+        FunctionCounter.builder("ftpserver.cluster.slots", this.limiter, ClusterSessionLimiter::getLocalCount)
+            .tag("result", "local")
+            .description("Login slots taken from those the server reserved before")
+            .register(registry);
+        FunctionCounter.builder("ftpserver.cluster.slots", this.limiter, ClusterSessionLimiter::getReservedCount)
+            .tag("result", "reserved")
+            .description("Login slots taken after reserving from the counter store")
+            .register(registry);
+        FunctionCounter.builder("ftpserver.cluster.slots", this.limiter, ClusterSessionLimiter::getRejectedCount)
+            .tag("result", "rejected")
+            .description("Login slots refused because the cluster limit was reached")
+            .register(registry);
+        FunctionCounter.builder("ftpserver.cluster.store.failures", this.limiter,
+            ClusterSessionLimiter::getFailedCount)
+            .description("Calls to the counter store which failed")
+            .register(registry);
+    }
+
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.metrics;
+
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.listing.DirectoryListingCache;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Binds the statistics of the {@link DirectoryListingCache} to Micrometer.
+ *
+ * @author Vimhe
+ */
+@RequiredArgsConstructor
+public class DirectoryListingCacheMetrics implements MeterBinder {
+
+    private final DirectoryListingCache cache;
+
+    @Override
+    public void bindTo(final MeterRegistry registry) {
+        FunctionCounter.builder("ftpserver.listing.cache.requests", this.cache, DirectoryListingCache::getHitCount)
+            .tag("result", "hit")
+            .description("Directory listings served from the cache")
+            .register(registry);
+        FunctionCounter.builder("ftpserver.listing.cache.requests", this.cache, DirectoryListingCache::getMissCount)
+            .tag("result", "miss")
+            .description("Directory listings which had to be rendered")
+            .register(registry);
+        FunctionCounter.builder("ftpserver.listing.cache.invalidations", this.cache,
+            DirectoryListingCache::getInvalidationCount)
+            .description("Cached directories invalidated because they changed")
+            .register(registry);
+        Gauge.builder("ftpserver.listing.cache.hit.ratio", this.cache, DirectoryListingCache::getHitRatio)
+            .description("Ratio of directory listings served from the cache")
+            .register(registry);
+        Gauge.builder("ftpserver.listing.cache.resident", this.cache, DirectoryListingCache::getTotalSize)
+            .baseUnit("bytes")
+            .description("Bytes of all cached listings")
+            .register(registry);
+        Gauge.builder("ftpserver.listing.cache.size", this.cache, DirectoryListingCache::size)
+            .description("Number of cached listings")
+            .register(registry);
+    }
+
+}
@@ -0,0 +1,409 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.metrics;
+
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.ipfilter.CidrIpFilter;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.transfer.PassivePortPool;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.transfer.PooledDataConnectionConfiguration;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.ftpserver.DataConnectionConfiguration;
+import org.apache.ftpserver.ftplet.*;
+import org.apache.ftpserver.impl.FtpServerContext;
+import org.apache.ftpserver.ipfilter.SessionFilter;
+import org.apache.ftpserver.listener.Listener;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Ftplet recording the FtpServer activity to Micrometer:
+ * <ul>
+ * <li>{@code ftpserver.commands}, latency histogram of every command, tagged with the command</li>
+ * <li>{@code ftpserver.transfer.bytes} and {@code ftpserver.transfer.throughput}, bytes and bytes per second of the
+ * completed transfers, tagged with the direction and the user</li>
+ * <li>{@code ftpserver.sessions}, connected and authenticated sessions of every listener</li>
+ * <li>{@code ftpserver.auth.failures} and {@code ftpserver.connections.rejected}, failed logins, and connections
+ * rejected by the login limits or the ip filter, tagged with the reason and the listener</li>
+ * </ul>
+ * The meters are registered up front, the meters of a user on its first login, so recording a command does not
+ * allocate: the state of a session is kept in one object attached to the session when it connects.
+ *
+ * @author Vimhe
+ */
+public class FtpServerMetricsFtplet extends DefaultFtplet implements MeterBinder {
+
+    /**
+     * Commands of the FtpServer, any other command is tagged {@link #OTHER_COMMAND}.
+     */
+    private static final String[] COMMANDS = {
+        "ABOR", "ACCT", "APPE", "AUTH", "CDUP", "CRC", "CWD", "DELE", "EPRT", "EPSV", "FEAT", "HASH", "HELP", "LANG",
+        "LIST", "MD5", "MDTM", "MFMT", "MKD", "MLSD", "MLST", "MMD5", "MODE", "NLST", "NOOP", "OPTS", "PASS", "PASV",
+        "PBSZ", "PORT", "PROT", "PWD", "QUIT", "REIN", "REST", "RETR", "RMD", "RNFR", "RNTO", "SHA1", "SHA256",
+        "SHA512", "SITE", "SIZE", "STAT", "STOR", "STOU", "STRU", "SYST", "TYPE", "USER", "XCUP", "XCWD", "XMKD",
+        "XPWD", "XRMD"
+    };
+
+    private static final String OTHER_COMMAND = "OTHER";
+
+    private static final String SESSION_ATTRIBUTE = FtpServerMetricsFtplet.class.getName() + ".session";
+
+    /**
+     * Listener tag of the sessions whose listener is not known.
+     */
+    private static final String UNKNOWN_LISTENER = "unknown";
+
+    private final ConcurrentMap<String, UserMeters> userMeters = new ConcurrentHashMap<>(16);
+
+    private final Function<String, UserMeters> userMetersFactory = this::createUserMeters;
+
+    private volatile MeterRegistry registry;
+
+    private volatile Map<String, Timer> commandTimers;
+
+    private volatile Counter authFailures;
+
+    private volatile Counter loginLimitRejections;
+
+    private volatile ListenerMeters[] listeners;
+
+    private boolean listenersBound;
+
+    @Override
+    public void bindTo(final MeterRegistry registry) {
+        Map<String, Timer> timers = new HashMap<>(COMMANDS.length * 2);
+        for (String command : COMMANDS) {
+            timers.put(command, this.createCommandTimer(registry, command));
+        }
+        timers.put(OTHER_COMMAND, this.createCommandTimer(registry, OTHER_COMMAND));
+
+        this.registry = registry;
+        this.userMeters.clear();
+        this.authFailures = Counter.builder("ftpserver.auth.failures")
+            .description("Logins rejected because of wrong credentials")
+            .register(registry);
+        this.loginLimitRejections = createLoginLimitRejections(registry, UNKNOWN_LISTENER);
+        // Published last, recording starts once the timers are there
+        this.commandTimers = timers;
+        this.bindListeners();
+    }
+
+    /**
+     * Same tag keys as the ip filter rejections, registries like Prometheus require them for all meters of a name.
+     */
+    private static Counter createLoginLimitRejections(final MeterRegistry registry, final String listener) {
+        return Counter.builder("ftpserver.connections.rejected")
+            .tag("reason", "login-limit")
+            .tag("listener", listener)
+            .description("Connections rejected by the login limits or the ip filter")
+            .register(registry);
+    }
+
+    private Timer createCommandTimer(final MeterRegistry registry, final String command) {
+        return Timer.builder("ftpserver.commands")
+            .tag("command", command)
+            .description("Latency of the FTP commands, including their data transfer")
+            .publishPercentileHistogram()
+            .register(registry);
+    }
+
+    @Override
+    public void init(final FtpletContext ftpletContext) throws FtpException {
+        if (!(ftpletContext instanceof FtpServerContext)) {
+            return;
+        }
+
+        Map<String, Listener> contextListeners = ((FtpServerContext) ftpletContext).getListeners();
+        ListenerMeters[] meters = new ListenerMeters[contextListeners.size()];
+        int index = 0;
+        for (Map.Entry<String, Listener> entry : contextListeners.entrySet()) {
+            meters[index++] = new ListenerMeters(entry.getKey(), entry.getValue());
+        }
+        this.listeners = meters;
+        this.bindListeners();
+    }
+
+    /**
+     * Register the listener gauges once both the registry and the listeners are known, whichever comes first.
+     */
+    private synchronized void bindListeners() {
+        MeterRegistry currentRegistry = this.registry;
+        ListenerMeters[] currentListeners = this.listeners;
+        if (currentRegistry == null || currentListeners == null || this.listenersBound) {
+            return;
+        }
+
+        this.listenersBound = true;
+        for (ListenerMeters meters : currentListeners) {
+            Gauge.builder("ftpserver.sessions", meters.connected, AtomicInteger::get)
+                .tag("listener", meters.name)
+                .tag("state", "connected")
+                .description("Open control connections")
+                .register(currentRegistry);
+            Gauge.builder("ftpserver.sessions", meters.authenticated, AtomicInteger::get)
+                .tag("listener", meters.name)
+                .tag("state", "authenticated")
+                .description("Open control connections with a logged in user")
+                .register(currentRegistry);
+            meters.loginLimitRejections = createLoginLimitRejections(currentRegistry, meters.name);
+
+            SessionFilter filter = meters.listener.getSessionFilter();
+            if (filter instanceof CidrIpFilter) {
+                FunctionCounter.builder("ftpserver.connections.rejected", (CidrIpFilter) filter,
+                    CidrIpFilter::getRejectedCount)
+                    .tag("reason", "ip-filter")
+                    .tag("listener", meters.name)
+                    .description("Connections rejected by the login limits or the ip filter")
+                    .register(currentRegistry);
+            }
+
+            DataConnectionConfiguration dataConnection = meters.listener.getDataConnectionConfiguration();
+            if (dataConnection instanceof PooledDataConnectionConfiguration) {
+                this.bindPassivePorts(currentRegistry, meters.name,
+                    ((PooledDataConnectionConfiguration) dataConnection).getPortPool());
+            }
+        }
+    }
+
+    private void bindPassivePorts(final MeterRegistry currentRegistry, final String listener,
+                                  final PassivePortPool portPool) {
+        if (portPool.getCapacity() == 0) {
+            return;
+        }
+
+        Gauge.builder("ftpserver.passive.ports", portPool, PassivePortPool::getReservedCount)
+            .tag("listener", listener)
+            .tag("state", "reserved")
+            .description("Passive ports reserved by a data connection")
+            .register(currentRegistry);
+        Gauge.builder("ftpserver.passive.ports", portPool, PassivePortPool::getAvailableCount)
+            .tag("listener", listener)
+            .tag("state", "available")
+            .description("Passive ports free to be reserved")
+            .register(currentRegistry);
+        FunctionCounter.builder("ftpserver.passive.ports.exhausted", portPool, PassivePortPool::getExhaustedCount)
+            .tag("listener", listener)
+            .description("PASV commands which failed because all the passive ports were reserved")
+            .register(currentRegistry);
+    }
+
+    private UserMeters createUserMeters(final String user) {
+        return new UserMeters(this.registry, user);
+    }
+
+    @Override
+    public FtpletResult onConnect(final FtpSession session) throws FtpException, IOException {
+        ListenerMeters listener = this.findListener(session.getServerAddress());
+        if (listener != null) {
+            listener.connected.incrementAndGet();
+        }
+        session.setAttribute(SESSION_ATTRIBUTE, new SessionMeters(listener));
+        return FtpletResult.DEFAULT;
+    }
+
+    private ListenerMeters findListener(final InetSocketAddress serverAddress) {
+        ListenerMeters[] currentListeners = this.listeners;
+        if (currentListeners == null || serverAddress == null) {
+            return null;
+        }
+
+        for (ListenerMeters meters : currentListeners) {
+            if (meters.listener.getPort() == serverAddress.getPort()) {
+                return meters;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public FtpletResult beforeCommand(final FtpSession session, final FtpRequest request)
+        throws FtpException, IOException {
+        Object meters = session.getAttribute(SESSION_ATTRIBUTE);
+        if (meters instanceof SessionMeters) {
+            ((SessionMeters) meters).commandStart = System.nanoTime();
+        }
+        return FtpletResult.DEFAULT;
+    }
+
+    @Override
+    public FtpletResult afterCommand(final FtpSession session, final FtpRequest request, final FtpReply reply)
+        throws FtpException, IOException {
+        Object attribute = session.getAttribute(SESSION_ATTRIBUTE);
+        Map<String, Timer> timers = this.commandTimers;
+        if (!(attribute instanceof SessionMeters) || timers == null) {
+            return FtpletResult.DEFAULT;
+        }
+
+        SessionMeters meters = (SessionMeters) attribute;
+        long duration = System.nanoTime() - meters.commandStart;
+        String command = request.getCommand();
+        Timer timer = timers.get(command);
+        (timer == null ? timers.get(OTHER_COMMAND) : timer).record(duration, TimeUnit.NANOSECONDS);
+
+        int code = reply == null ? 0 : reply.getCode();
+        switch (command) {
+            case "USER":
+            case "PASS":
+                this.loggedIn(session, meters, code);
+                break;
+            case "RETR":
+                this.transferred(meters, reply, duration, false);
+                break;
+            case "STOR":
+            case "STOU":
+            case "APPE":
+                this.transferred(meters, reply, duration, true);
+                break;
+            case "REIN":
+                this.loggedOut(meters);
+                break;
+            default:
+                break;
+        }
+        return FtpletResult.DEFAULT;
+    }
+
+    private void loggedIn(final FtpSession session, final SessionMeters meters, final int code) {
+        if (code == FtpReply.REPLY_230_USER_LOGGED_IN && session.getUser() != null && meters.user == null) {
+            String name = session.getUser().getName();
+            UserMeters user = this.userMeters.get(name);
+            meters.user = user == null ? this.userMeters.computeIfAbsent(name, this.userMetersFactory) : user;
+            if (meters.listener != null) {
+                meters.listener.authenticated.incrementAndGet();
+            }
+        } else if (code == FtpReply.REPLY_530_NOT_LOGGED_IN) {
+            this.authFailures.increment();
+        } else if (code == FtpReply.REPLY_421_SERVICE_NOT_AVAILABLE_CLOSING_CONTROL_CONNECTION) {
+            Counter rejections = meters.listener == null ? null : meters.listener.loginLimitRejections;
+            (rejections == null ? this.loginLimitRejections : rejections).increment();
+        }
+    }
+
+    private void loggedOut(final SessionMeters meters) {
+        if (meters.user != null) {
+            meters.user = null;
+            if (meters.listener != null) {
+                meters.listener.authenticated.decrementAndGet();
+            }
+        }
+    }
+
+    private void transferred(final SessionMeters meters, final FtpReply reply, final long duration,
+                             final boolean upload) {
+        if (meters.user == null || !(reply instanceof DataTransferFtpReply) || reply.getCode() >= 300) {
+            return;
+        }
+
+        long bytes = ((DataTransferFtpReply) reply).getBytesTransferred();
+        if (upload) {
+            meters.user.uploadBytes.increment(bytes);
+        } else {
+            meters.user.downloadBytes.increment(bytes);
+        }
+        if (duration > 0) {
+            (upload ? meters.user.uploadThroughput : meters.user.downloadThroughput)
+                .record(bytes * 1e9 / duration);
+        }
+    }
+
+    @Override
+    public FtpletResult onDisconnect(final FtpSession session) throws FtpException, IOException {
+        Object attribute = session.getAttribute(SESSION_ATTRIBUTE);
+        if (attribute instanceof SessionMeters) {
+            SessionMeters meters = (SessionMeters) attribute;
+            session.removeAttribute(SESSION_ATTRIBUTE);
+            this.loggedOut(meters);
+            if (meters.listener != null) {
+                meters.listener.connected.decrementAndGet();
+            }
+        }
+        return FtpletResult.DEFAULT;
+    }
+
+    private static final class ListenerMeters {
+        private final String name;
+        private final Listener listener;
+        private final AtomicInteger connected = new AtomicInteger();
+        private final AtomicInteger authenticated = new AtomicInteger();
+        private volatile Counter loginLimitRejections;
+
+        private ListenerMeters(final String name, final Listener listener) {
+            this.name = name;
+            this.listener = listener;
+        }
+    }
+
+    private static final class UserMeters {
+        private final Counter downloadBytes;
+        private final Counter uploadBytes;
+        private final DistributionSummary downloadThroughput;
+        private final DistributionSummary uploadThroughput;
+
+        private UserMeters(final MeterRegistry registry, final String user) {
+            this.downloadBytes = bytes(registry, user, "download");
+            this.uploadBytes = bytes(registry, user, "upload");
+            this.downloadThroughput = throughput(registry, user, "download");
+            this.uploadThroughput = throughput(registry, user, "upload");
+        }
+
+        private static Counter bytes(final MeterRegistry registry, final String user, final String direction) {
+            return Counter.builder("ftpserver.transfer.bytes")
+                .baseUnit("bytes")
+                .tag("user", user)
+                .tag("direction", direction)
+                .description("Bytes of the completed file transfers")
+                .register(registry);
+        }
+
+        private static DistributionSummary throughput(final MeterRegistry registry, final String user,
+                                                      final String direction) {
+            return DistributionSummary.builder("ftpserver.transfer.throughput")
+                .baseUnit("bytes")
+                .tag("user", user)
+                .tag("direction", direction)
+                .description("Bytes per second of the completed file transfers")
+                .register(registry);
+        }
+    }
+
+    /**
+     * State of one session, commands of a session are executed one after the other.
+     */
+    private static final class SessionMeters {
+        private final ListenerMeters listener;
+        private long commandStart;
+        private UserMeters user;
+
+        private SessionMeters(final ListenerMeters listener) {
+            this.listener = listener;
+        }
+    }
+
+}
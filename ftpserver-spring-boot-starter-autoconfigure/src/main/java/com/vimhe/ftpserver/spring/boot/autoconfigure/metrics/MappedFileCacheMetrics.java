@@ -0,0 +1,62 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.metrics;
+
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.filesystem.MappedFileCache;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Binds the statistics of the {@link MappedFileCache} to Micrometer.
+ *
+ * @author Vimhe
+ */
+@RequiredArgsConstructor
+public class MappedFileCacheMetrics implements MeterBinder {
+
+    private final MappedFileCache cache;
+
+    @Override
+    public void bindTo(final MeterRegistry registry) {
+        FunctionCounter.builder("ftpserver.read.cache.requests", this.cache, MappedFileCache::getHitCount)
+            .tag("result", "hit")
+            .description("Downloads served from an existing mapping")
+            .register(registry);
+        FunctionCounter.builder("ftpserver.read.cache.requests", this.cache, MappedFileCache::getMissCount)
+            .tag("result", "miss")
+            .description("Downloads which had to map the file")
+            .register(registry);
+        Gauge.builder("ftpserver.read.cache.hit.ratio", this.cache, MappedFileCache::getHitRatio)
+            .description("Ratio of downloads served from an existing mapping")
+            .register(registry);
+        Gauge.builder("ftpserver.read.cache.cached", this.cache, MappedFileCache::getCachedSize)
+            .baseUnit("bytes")
+            .description("Bytes of the cached files")
+            .register(registry);
+        Gauge.builder("ftpserver.read.cache.resident", this.cache, MappedFileCache::getResidentSize)
+            .baseUnit("bytes")
+            .description("Bytes currently mapped, including evicted files still being downloaded")
+            .register(registry);
+        Gauge.builder("ftpserver.read.cache.size", this.cache, MappedFileCache::size)
+            .description("Number of cached files")
+            .register(registry);
+    }
+
+}
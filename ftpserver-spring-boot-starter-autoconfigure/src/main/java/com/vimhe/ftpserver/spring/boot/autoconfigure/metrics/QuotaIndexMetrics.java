@@ -0,0 +1,54 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.metrics;
+
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.quota.QuotaIndex;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Binds the {@link QuotaIndex} to Micrometer.
+ *
+ * @author Vimhe
+ */
+@RequiredArgsConstructor
+public class QuotaIndexMetrics implements MeterBinder {
+
+    private final QuotaIndex quotaIndex;
+
+    @Override
+    public void bindTo(final MeterRegistry registry) {
+        FunctionCounter.builder("ftpserver.quota.rejected", this.quotaIndex, QuotaIndex::getRejectedCount)
+            .description("Uploads refused because of the quota")
+            .register(registry);
+        FunctionCounter.builder("ftpserver.quota.reconciliations", this.quotaIndex,
+            QuotaIndex::getReconciliationCount)
+            .description("Scans correcting the usage of the home directories")
+            .register(registry);
+        FunctionCounter.builder("ftpserver.quota.corrected", this.quotaIndex, QuotaIndex::getCorrectedBytes)
+            .baseUnit("bytes")
+            .description("Usage corrected by reconciliation, in either direction")
+            .register(registry);
+        Gauge.builder("ftpserver.quota.homes", this.quotaIndex, QuotaIndex::getHomeCount)
+            .description("Home directories whose usage is tracked")
+            .register(registry);
+    }
+
+}
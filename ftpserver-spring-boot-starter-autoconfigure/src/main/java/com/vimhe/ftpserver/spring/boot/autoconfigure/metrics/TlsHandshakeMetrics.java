@@ -0,0 +1,66 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.metrics;
+
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.ssl.TlsHandshakeStatistics;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.RequiredArgsConstructor;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Binds the {@link TlsHandshakeStatistics} to Micrometer, tagged by the connection the handshakes were made on.
+ *
+ * @author Vimhe
+ */
+@RequiredArgsConstructor
+public class TlsHandshakeMetrics implements MeterBinder {
+
+    private final TlsHandshakeStatistics statistics;
+
+    @Override
+    public void bindTo(final MeterRegistry registry) {
+        for (TlsHandshakeStatistics.Channel channel : TlsHandshakeStatistics.Channel.values()) {
+            String connection = channel.name().toLowerCase(Locale.ENGLISH);
+            FunctionCounter.builder("ftpserver.tls.handshakes", this.statistics, s -> s.getFullCount(channel))
+                .tag("connection", connection)
+                .tag("result", "full")
+                .description("TLS handshakes which negotiated a new session")
+                .register(registry);
+            FunctionCounter.builder("ftpserver.tls.handshakes", this.statistics, s -> s.getResumedCount(channel))
+                .tag("connection", connection)
+                .tag("result", "resumed")
+                .description("TLS handshakes which resumed a cached session")
+                .register(registry);
+            Gauge.builder("ftpserver.tls.resumption.ratio", this.statistics, s -> s.getResumptionRatio(channel))
+                .tag("connection", connection)
+                .description("Ratio of the TLS handshakes which resumed a cached session")
+                .register(registry);
+            FunctionTimer.builder("ftpserver.tls.handshake", this.statistics, s -> s.getCount(channel),
+                s -> s.getTotalTime(channel, TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS)
+                .tag("connection", connection)
+                .description("Time from the first handshake message of the client to the completed handshake")
+                .register(registry);
+        }
+    }
+
+}
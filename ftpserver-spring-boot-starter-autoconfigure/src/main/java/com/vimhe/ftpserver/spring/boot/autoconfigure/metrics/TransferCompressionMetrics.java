@@ -0,0 +1,102 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.metrics;
+
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.transfer.TransferCompression;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.RequiredArgsConstructor;
+
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * Binds the MODE Z {@link TransferCompression} to Micrometer, downloads are compressed and uploads decompressed.
+ *
+ * @author Vimhe
+ */
+@RequiredArgsConstructor
+public class TransferCompressionMetrics implements MeterBinder {
+
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final TransferCompression compression;
+
+    @Override
+    public void bindTo(final MeterRegistry registry) {
+        this.transfers(registry, "download", "compressed", TransferCompression::getCompressedCount);
+        this.transfers(registry, "download", "bypassed", TransferCompression::getBypassedCount);
+        this.transfers(registry, "upload", "decompressed", TransferCompression::getDecompressedCount);
+
+        this.bytes(registry, "download", "uncompressed", TransferCompression::getDeflatedBytes);
+        this.bytes(registry, "download", "compressed", TransferCompression::getDeflatedCompressedBytes);
+        this.bytes(registry, "upload", "uncompressed", TransferCompression::getInflatedBytes);
+        this.bytes(registry, "upload", "compressed", TransferCompression::getInflatedCompressedBytes);
+
+        this.ratio(registry, "download", compression -> ratio(compression.getDeflatedBytes(),
+            compression.getDeflatedCompressedBytes()));
+        this.ratio(registry, "upload", compression -> ratio(compression.getInflatedBytes(),
+            compression.getInflatedCompressedBytes()));
+
+        FunctionCounter.builder("ftpserver.compression.cpu", this.compression,
+            compression -> compression.getDeflateNanos() / NANOS_PER_SECOND)
+            .tag("direction", "download")
+            .baseUnit("seconds")
+            .description("CPU time spent compressing")
+            .register(registry);
+        FunctionCounter.builder("ftpserver.compression.cpu", this.compression,
+            compression -> compression.getInflateNanos() / NANOS_PER_SECOND)
+            .tag("direction", "upload")
+            .baseUnit("seconds")
+            .description("CPU time spent decompressing")
+            .register(registry);
+    }
+
+    private void transfers(final MeterRegistry registry, final String direction, final String result,
+                           final ToLongFunction<TransferCompression> count) {
+        FunctionCounter.builder("ftpserver.compression.transfers", this.compression, count::applyAsLong)
+            .tag("direction", direction)
+            .tag("result", result)
+            .description("MODE Z transfers, bypassed ones are sent in stored blocks")
+            .register(registry);
+    }
+
+    private void bytes(final MeterRegistry registry, final String direction, final String form,
+                       final ToLongFunction<TransferCompression> count) {
+        FunctionCounter.builder("ftpserver.compression.bytes", this.compression, count::applyAsLong)
+            .tag("direction", direction)
+            .tag("form", form)
+            .baseUnit("bytes")
+            .description("Bytes of MODE Z transfers before and after compression")
+            .register(registry);
+    }
+
+    private void ratio(final MeterRegistry registry, final String direction,
+                       final ToDoubleFunction<TransferCompression> ratio) {
+        Gauge.builder("ftpserver.compression.ratio", this.compression, ratio)
+            .tag("direction", direction)
+            .description("Uncompressed by compressed bytes of all MODE Z transfers")
+            .register(registry);
+    }
+
+    private static double ratio(final long uncompressed, final long compressed) {
+        return compressed == 0 ? Double.NaN : (double) uncompressed / compressed;
+    }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.metrics;
+
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.upload.UploadEventPipeline;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.RequiredArgsConstructor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Binds the {@link UploadEventPipeline} to Micrometer, with the meters of each listener tagged by its bean name.
+ *
+ * @author Vimhe
+ */
+@RequiredArgsConstructor
+public class UploadEventPipelineMetrics implements MeterBinder {
+
+    private final UploadEventPipeline pipeline;
+
+    @Override
+    public void bindTo(final MeterRegistry registry) {
+        FunctionCounter.builder("ftpserver.upload.events", this.pipeline, UploadEventPipeline::getSubmittedCount)
+            .tag("result", "submitted")
+            .description("Upload events queued for the listeners")
+            .register(registry);
+        FunctionCounter.builder("ftpserver.upload.events", this.pipeline, UploadEventPipeline::getDroppedCount)
+            .tag("result", "dropped")
+            .description("Upload events dropped because the listeners were behind")
+            .register(registry);
+        Gauge.builder("ftpserver.upload.events.queued", this.pipeline, UploadEventPipeline::getQueuedCount)
+            .description("Upload events waiting for the batcher")
+            .register(registry);
+
+        this.pipeline.getListenerStatistics().forEach((name, statistics) -> {
+            FunctionTimer.builder("ftpserver.upload.listener", statistics,
+                UploadEventPipeline.ListenerStatistics::getBatchCount,
+                UploadEventPipeline.ListenerStatistics::getTotalNanos, TimeUnit.NANOSECONDS)
+                .tag("listener", name)
+                .description("Batches of uploads processed by the listener")
+                .register(registry);
+            FunctionCounter.builder("ftpserver.upload.listener.uploads", statistics,
+                UploadEventPipeline.ListenerStatistics::getProcessedCount)
+                .tag("listener", name)
+                .tag("result", "processed")
+                .description("Uploads processed by the listener")
+                .register(registry);
+            FunctionCounter.builder("ftpserver.upload.listener.uploads", statistics,
+                UploadEventPipeline.ListenerStatistics::getFailedCount)
+                .tag("listener", name)
+                .tag("result", "failed")
+                .description("Uploads of batches the listener failed on")
+                .register(registry);
+        });
+    }
+
+}
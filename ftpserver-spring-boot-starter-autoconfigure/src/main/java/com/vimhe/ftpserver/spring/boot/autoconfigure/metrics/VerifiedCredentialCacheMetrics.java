@@ -0,0 +1,66 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.metrics;
+
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.FtpUserManager;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.VerifiedCredentialCache;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.RequiredArgsConstructor;
+import org.apache.ftpserver.ftplet.UserManager;
+
+import java.util.Optional;
+
+/**
+ * Binds the {@link VerifiedCredentialCache} of the {@link FtpUserManager} to Micrometer, nothing is bound when the
+ * user manager has no cache.
+ *
+ * @author Vimhe
+ */
+@RequiredArgsConstructor
+public class VerifiedCredentialCacheMetrics implements MeterBinder {
+
+    private final UserManager userManager;
+
+    @Override
+    public void bindTo(final MeterRegistry registry) {
+        Optional.of(this.userManager)
+            .filter(FtpUserManager.class::isInstance)
+            .flatMap(userManager -> ((FtpUserManager) userManager).getCredentialCache())
+            .ifPresent(cache -> this.bindTo(registry, cache));
+    }
+
+    private void bindTo(final MeterRegistry registry, final VerifiedCredentialCache cache) {
+        FunctionCounter.builder("ftpserver.credential.cache.requests", cache, VerifiedCredentialCache::getHitCount)
+            .tag("result", "hit")
+            .description("Logins verified from the cache")
+            .register(registry);
+        FunctionCounter.builder("ftpserver.credential.cache.requests", cache, VerifiedCredentialCache::getMissCount)
+            .tag("result", "miss")
+            .description("Logins which had to hash the password")
+            .register(registry);
+        Gauge.builder("ftpserver.credential.cache.hit.ratio", cache, VerifiedCredentialCache::getHitRate)
+            .description("Ratio of logins verified from the cache")
+            .register(registry);
+        Gauge.builder("ftpserver.credential.cache.size", cache, VerifiedCredentialCache::size)
+            .description("Number of cached verifications")
+            .register(registry);
+    }
+
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.metrics;
+
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.filesystem.WriteBehind;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Binds the group commit of the {@link WriteBehind} uploads to Micrometer.
+ *
+ * @author Vimhe
+ */
+@RequiredArgsConstructor
+public class WriteBehindMetrics implements MeterBinder {
+
+    private final WriteBehind writeBehind;
+
+    @Override
+    public void bindTo(final MeterRegistry registry) {
+        FunctionCounter.builder("ftpserver.write.behind.commits", this.writeBehind, WriteBehind::getCommitCount)
+            .description("New uploaded files whose directory entry was committed")
+            .register(registry);
+        FunctionCounter.builder("ftpserver.write.behind.directory.syncs", this.writeBehind,
+            WriteBehind::getDirectorySyncCount)
+            .description("Directory forces, each one committing a group of new files")
+            .register(registry);
+    }
+
+}
@@ -16,33 +16,294 @@
 
 package com.vimhe.ftpserver.spring.boot.autoconfigure.support;
 
+import com.vimhe.ftpserver.spring.boot.autoconfigure.FtpServerConfigurationProperties;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.DrainFtplet;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.java.Log;
 import org.apache.ftpserver.FtpServer;
+import org.apache.ftpserver.impl.DefaultFtpServer;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.impl.FtpServerContext;
+import org.apache.ftpserver.listener.Listener;
+import org.apache.mina.core.service.IoAcceptor;
 import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.stream.Collectors;
+
 /**
  * FtpServer InitializationBean.
+ * <p>
+ * By default the server is started synchronously while this bean is initialized. With
+ * {@code ftpserver.server.async-start=true} it is started in the last {@link SmartLifecycle} phase instead, on
+ * background threads binding all listeners in parallel; readiness and failure are published as
+ * {@link FtpServerStartedEvent} and {@link FtpServerStartupFailedEvent}, and a failure does not stop the application.
+ * <p>
+ * With {@code ftpserver.server.drain-timeout} set, the shutdown first lets the running transfers finish, see
+ * {@link DrainFtplet}.
  *
  * @author Vimhe
  */
+@Log
 @RequiredArgsConstructor
 @Component
-public class FtpServerInitializationBean implements InitializingBean, DisposableBean {
+public class FtpServerInitializationBean implements InitializingBean, DisposableBean, SmartLifecycle {
 
     private final FtpServer ftpServer;
 
+    private final FtpServerConfigurationProperties configurationProperties;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final ObjectProvider<DrainFtplet> drainFtplet;
+
+    /**
+     * Whether this bean started the server, {@link DefaultFtpServer#isStopped()} does not know about listeners started
+     * in parallel.
+     */
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    /**
+     * Duration of a synchronous start, until it is announced.
+     */
+    private Duration syncStartupTime;
+
     @Override
     public void destroy() {
-        if (!ftpServer.isStopped()) {
-            ftpServer.stop();
-        }
+        this.stopServer();
     }
 
     @Override
     public void afterPropertiesSet() throws Exception {
+        if (this.isAsyncStart()) {
+            return;
+        }
+
+        long begin = System.nanoTime();
         ftpServer.start();
+        this.running.set(true);
+        this.syncStartupTime = Duration.ofNanos(System.nanoTime() - begin);
+    }
+
+    /**
+     * Announce a synchronous start, application listeners are not registered yet while this bean is initialized.
+     */
+    @EventListener(ContextRefreshedEvent.class)
+    public void onContextRefreshed() {
+        Duration startupTime = this.syncStartupTime;
+        this.syncStartupTime = null;
+        if (startupTime != null && this.running.get()) {
+            this.eventPublisher.publishEvent(new FtpServerStartedEvent(this.ftpServer, new LinkedHashMap<>(0), startupTime));
+        }
+    }
+
+    @Override
+    public void start() {
+        if (!this.isAsyncStart() || this.running.get()) {
+            return;
+        }
+
+        if (!(this.ftpServer instanceof DefaultFtpServer)) {
+            CompletableFuture.runAsync(() -> {
+                long begin = System.nanoTime();
+                try {
+                    this.ftpServer.start();
+                    this.running.set(true);
+                    this.eventPublisher.publishEvent(new FtpServerStartedEvent(
+                        this.ftpServer, new LinkedHashMap<>(0), Duration.ofNanos(System.nanoTime() - begin)));
+                } catch (Exception e) {
+                    this.startFailed(null, e);
+                }
+            });
+            return;
+        }
+
+        this.startListeners(((DefaultFtpServer) this.ftpServer).getServerContext());
+    }
+
+    /**
+     * Bind every listener on its own thread, then initialize the ftplets, which is what {@link DefaultFtpServer#start()}
+     * does one listener after the other.
+     */
+    private void startListeners(final FtpServerContext context) {
+        final long begin = System.nanoTime();
+        final Map<String, Listener> listeners = context.getListeners();
+        final Map<String, Duration> startupTimes = new LinkedHashMap<>(listeners.size());
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, listeners.size()), new ThreadFactory());
+
+        Map<String, CompletableFuture<Void>> futures = new LinkedHashMap<>(listeners.size());
+        listeners.forEach((name, listener) -> futures.put(name, CompletableFuture.runAsync(() -> {
+            long listenerBegin = System.nanoTime();
+            try {
+                listener.start(context);
+            } catch (RuntimeException e) {
+                throw new ListenerStartupException(name, e);
+            }
+
+            Duration startupTime = Duration.ofNanos(System.nanoTime() - listenerBegin);
+            synchronized (startupTimes) {
+                startupTimes.put(name, startupTime);
+            }
+            log.info("Ftp listener " + name + " started on port " + listener.getPort() + " in "
+                + startupTime.toMillis() + " ms");
+        }, executor)));
+
+        CompletableFuture<?>[] bound = futures.values().toArray(new CompletableFuture<?>[0]);
+        CompletableFuture.allOf(bound).whenComplete((result, throwable) -> {
+            executor.shutdown();
+
+            if (throwable == null) {
+                try {
+                    context.getFtpletContainer().init(context);
+                    this.running.set(true);
+                    Duration startupTime = Duration.ofNanos(System.nanoTime() - begin);
+                    log.info("Ftp server started in " + startupTime.toMillis() + " ms");
+                    this.eventPublisher.publishEvent(new FtpServerStartedEvent(this.ftpServer, startupTimes, startupTime));
+                    return;
+                } catch (Exception e) {
+                    throwable = e;
+                }
+            }
+
+            // Same as a failed synchronous start: nothing stays bound
+            listeners.values().stream().filter(listener -> !listener.isStopped()).forEach(Listener::stop);
+            Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+            if (cause instanceof ListenerStartupException) {
+                this.startFailed(((ListenerStartupException) cause).listenerName, cause.getCause());
+            } else {
+                this.startFailed(null, cause);
+            }
+        });
+    }
+
+    private void startFailed(final String listenerName, final Throwable throwable) {
+        log.log(Level.SEVERE, "Ftp server failed to start" + (listenerName == null ? "" : ", listener " + listenerName),
+            throwable);
+        this.eventPublisher.publishEvent(new FtpServerStartupFailedEvent(this.ftpServer, listenerName, throwable));
+    }
+
+    private void stopServer() {
+        if (this.running.compareAndSet(true, false) || !ftpServer.isStopped()) {
+            this.drain();
+            ftpServer.stop();
+        }
+    }
+
+    /**
+     * Stop accepting connections and transfers, then wait until the running transfers are done or the drain timeout
+     * passed. Whatever is left is closed by {@link FtpServer#stop()}.
+     */
+    private void drain() {
+        Duration timeout = this.configurationProperties.getServer().getDrainTimeout();
+        DrainFtplet ftplet = this.drainFtplet.getIfAvailable();
+        if (timeout == null || timeout.isZero() || timeout.isNegative() || ftplet == null
+            || !(this.ftpServer instanceof DefaultFtpServer)) {
+            return;
+        }
+
+        List<Listener> listeners = ((DefaultFtpServer) this.ftpServer).getServerContext().getListeners().values()
+            .stream().filter(listener -> !listener.isStopped()).collect(Collectors.toList());
+        ftplet.drain();
+        listeners.forEach(this::stopAccepting);
+
+        log.info("Ftp server draining, waiting up to " + timeout.toMillis() + " ms for "
+            + ftplet.getActiveTransfers() + " running transfers");
+        long deadline = System.nanoTime() + timeout.toNanos();
+        try {
+            while (ftplet.getActiveTransfers() > 0 && System.nanoTime() - deadline < 0) {
+                TimeUnit.MILLISECONDS.sleep(100);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        int sessions = listeners.stream().mapToInt(listener -> listener.getActiveSessions().size()).sum();
+        int transfers = ftplet.getActiveTransfers();
+        if (transfers > 0) {
+            log.warning("Ftp server drain timed out, closing " + sessions + " sessions with " + transfers
+                + " running transfers");
+        } else {
+            log.info("Ftp server drained, closing " + sessions + " idle sessions");
+        }
+    }
+
+    private void stopAccepting(final Listener listener) {
+        // Listener#suspend() also closes the open sessions, so unbind the acceptor of the sessions instead
+        IoAcceptor acceptor = listener.getActiveSessions().stream()
+            .map(FtpIoSession::getService)
+            .filter(IoAcceptor.class::isInstance)
+            .map(IoAcceptor.class::cast)
+            .findFirst()
+            .orElse(null);
+
+        if (acceptor == null) {
+            listener.suspend();
+        } else {
+            acceptor.setCloseOnDeactivation(false);
+            acceptor.unbind();
+        }
+    }
+
+    @Override
+    public void stop() {
+        this.stopServer();
+    }
+
+    /**
+     * Whether the server is running, also when its listeners were started in parallel, which
+     * {@link FtpServer#isStopped()} does not tell.
+     */
+    @Override
+    public boolean isRunning() {
+        return this.running.get();
+    }
+
+    @Override
+    public int getPhase() {
+        // Start after everything else, stop before everything else
+        return Integer.MAX_VALUE;
+    }
+
+    private boolean isAsyncStart() {
+        return Boolean.TRUE.equals(this.configurationProperties.getServer().getAsyncStart());
+    }
+
+    private static final class ListenerStartupException extends RuntimeException {
+        private final String listenerName;
+
+        private ListenerStartupException(final String listenerName, final Throwable cause) {
+            super("Ftp listener " + listenerName + " failed to start", cause);
+            this.listenerName = listenerName;
+        }
+    }
+
+    private static final class ThreadFactory implements java.util.concurrent.ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            Thread thread = new Thread(runnable, "ftp-server-startup-" + this.count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
     }
 
 }
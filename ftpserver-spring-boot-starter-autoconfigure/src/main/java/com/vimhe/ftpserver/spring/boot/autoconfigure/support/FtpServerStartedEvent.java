@@ -0,0 +1,58 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.support;
+
+import lombok.Getter;
+import org.apache.ftpserver.FtpServer;
+import org.springframework.context.ApplicationEvent;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Published once the FtpServer accepts connections on all of its listeners.
+ *
+ * @author Vimhe
+ */
+@Getter
+public class FtpServerStartedEvent extends ApplicationEvent {
+
+    /**
+     * Time spent starting each listener, by listener name. Empty if the listeners were not started one by one.
+     */
+    private final Map<String, Duration> listenerStartupTimes;
+
+    /**
+     * Time from the start request until the server was ready.
+     */
+    private final Duration startupTime;
+
+    public FtpServerStartedEvent(
+        final FtpServer source,
+        final Map<String, Duration> listenerStartupTimes,
+        final Duration startupTime) {
+        super(source);
+        this.listenerStartupTimes = Collections.unmodifiableMap(listenerStartupTimes);
+        this.startupTime = startupTime;
+    }
+
+    public FtpServer getFtpServer() {
+        return (FtpServer) this.getSource();
+    }
+
+}
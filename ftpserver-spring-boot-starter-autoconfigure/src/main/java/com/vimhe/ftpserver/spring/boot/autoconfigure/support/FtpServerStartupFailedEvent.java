@@ -0,0 +1,48 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.support;
+
+import lombok.Getter;
+import org.apache.ftpserver.FtpServer;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published when an asynchronous start of the FtpServer failed, the application itself keeps running.
+ *
+ * @author Vimhe
+ */
+@Getter
+public class FtpServerStartupFailedEvent extends ApplicationEvent {
+
+    /**
+     * Name of the listener which failed to start, null if the failure was not listener specific.
+     */
+    private final String listenerName;
+
+    private final Throwable exception;
+
+    public FtpServerStartupFailedEvent(final FtpServer source, final String listenerName, final Throwable exception) {
+        super(source);
+        this.listenerName = listenerName;
+        this.exception = exception;
+    }
+
+    public FtpServer getFtpServer() {
+        return (FtpServer) this.getSource();
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure;
+
+import com.vimhe.ftpserver.spring.boot.autoconfigure.actuate.FtpServerEndpoint;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.SessionActivityFtplet;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.support.FtpServerInitializationBean;
+import org.apache.ftpserver.FtpServer;
+import org.junit.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The {@link FtpServerEndpoint} follows the endpoint enablement of Spring Boot Actuator.
+ *
+ * @author Vimhe
+ */
+public class FtpServerEndpointConfigurationTest {
+
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+        .withConfiguration(AutoConfigurations.of(FtpServerAutoConfiguration.class));
+
+    @Test
+    public void registersEnabledEndpoint() {
+        this.contextRunner.run(context -> {
+            assertThat(context).hasSingleBean(FtpServerEndpoint.class);
+            assertThat(context).hasSingleBean(SessionActivityFtplet.class);
+        });
+    }
+
+    @Test
+    public void registersNothingForDisabledEndpoint() {
+        this.contextRunner
+            .withPropertyValues("management.endpoint.ftpserver.enabled=false")
+            .run(context -> {
+                assertThat(context).doesNotHaveBean(FtpServerEndpoint.class);
+                assertThat(context).doesNotHaveBean(SessionActivityFtplet.class);
+            });
+    }
+
+    @Test
+    public void registersNothingWhenEndpointsAreDisabledByDefault() {
+        this.contextRunner
+            .withPropertyValues("management.endpoints.enabled-by-default=false")
+            .run(context -> assertThat(context).doesNotHaveBean(FtpServerEndpoint.class));
+    }
+
+    @Test
+    public void reportsServerStartedAsynchronouslyAsRunning() {
+        this.contextRunner
+            .withUserConfiguration(FtpServerInitializationBean.class)
+            .withPropertyValues("ftpserver.server.async-start=true", "ftpserver.server.listener.default.port=0")
+            .run(context -> {
+                FtpServerEndpoint endpoint = context.getBean(FtpServerEndpoint.class);
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+                while (!endpoint.server().isRunning() && System.nanoTime() - deadline < 0) {
+                    TimeUnit.MILLISECONDS.sleep(10);
+                }
+
+                assertThat(endpoint.server().isRunning()).isTrue();
+                // The listeners are started without FtpServer#start()
+                assertThat(context.getBean(FtpServer.class).isStopped()).isTrue();
+            });
+    }
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure;
+
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.filesystem.WriteBehind;
+import org.apache.ftpserver.FtpServerConfigurationException;
+import org.junit.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The features of the file system are configured for the file system type which provides them.
+ *
+ * @author Vimhe
+ */
+public class FtpServerFileSystemConfigurationTest {
+
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+        .withConfiguration(AutoConfigurations.of(FtpServerAutoConfiguration.class))
+        .withPropertyValues("ftpserver.file-system.write-behind.enabled=true");
+
+    @Test
+    public void registersWriteBehindForNioFileSystem() {
+        this.contextRunner
+            .withPropertyValues("ftpserver.file-system.type=nio")
+            .run(context -> assertThat(context).hasSingleBean(WriteBehind.class));
+    }
+
+    @Test
+    public void failsWriteBehindForNativeFileSystem() {
+        this.contextRunner
+            .withPropertyValues("ftpserver.file-system.type=native")
+            .run(context -> assertThat(context).getFailure()
+                .hasRootCauseInstanceOf(FtpServerConfigurationException.class)
+                .hasStackTraceContaining("Write-behind needs the NIO file system type"));
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.boot.actuate.autoconfigure.metrics.CompositeMeterRegistryAutoConfiguration;
+import org.springframework.boot.actuate.autoconfigure.metrics.MetricsAutoConfiguration;
+import org.springframework.boot.actuate.autoconfigure.metrics.export.simple.SimpleMetricsExportAutoConfiguration;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+import java.io.File;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The meters of every enabled feature are bound to the {@link MeterRegistry}.
+ *
+ * @author Vimhe
+ */
+public class FtpServerMetricsConfigurationTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+        .withConfiguration(AutoConfigurations.of(MetricsAutoConfiguration.class,
+            CompositeMeterRegistryAutoConfiguration.class, SimpleMetricsExportAutoConfiguration.class,
+            FtpServerAutoConfiguration.class));
+
+    @Test
+    public void bindsMetersOfEnabledFeatures() throws Exception {
+        File folder = this.temporaryFolder.newFolder();
+        this.contextRunner
+            .withPropertyValues(
+                "ftpserver.user.alice.user-password=secret",
+                "ftpserver.user.alice.home-directory=" + folder.getAbsolutePath(),
+                "ftpserver.user.alice.quota-bytes=1MB",
+                "ftpserver.server.compression.enabled=true",
+                "ftpserver.server.cluster-limits.enabled=true",
+                "ftpserver.file-system.type=nio",
+                "ftpserver.file-system.read-cache.enabled=true",
+                "ftpserver.file-system.listing-cache.enabled=true",
+                "ftpserver.file-system.write-behind.enabled=true",
+                "ftpserver.file-system.checksum.enabled=true",
+                "ftpserver.file-system.checksum.index-file=" + new File(folder, "checksum.index").getAbsolutePath(),
+                "ftpserver.file-system.quota.enabled=true",
+                "ftpserver.audit.enabled=true",
+                "ftpserver.audit.file=" + new File(folder, "xferlog").getAbsolutePath(),
+                "ftpserver.upload-events.enabled=true")
+            .run(context -> {
+                MeterRegistry registry = context.getBean(MeterRegistry.class);
+                assertThat(registry.find("ftpserver.commands").meters()).isNotEmpty();
+                assertThat(registry.find("ftpserver.tls.handshakes").meters()).isNotEmpty();
+                assertThat(registry.find("ftpserver.credential.cache.hit.ratio").gauge()).isNotNull();
+                assertThat(registry.find("ftpserver.compression.cpu").meters()).isNotEmpty();
+                assertThat(registry.find("ftpserver.cluster.slots").meters()).isNotEmpty();
+                assertThat(registry.find("ftpserver.read.cache.requests").meters()).isNotEmpty();
+                assertThat(registry.find("ftpserver.listing.cache.requests").meters()).isNotEmpty();
+                assertThat(registry.find("ftpserver.write.behind.commits").meters()).isNotEmpty();
+                assertThat(registry.find("ftpserver.checksum.requests").meters()).isNotEmpty();
+                assertThat(registry.find("ftpserver.quota.homes").gauge()).isNotNull();
+                assertThat(registry.find("ftpserver.audit.records").meters()).isNotEmpty();
+                assertThat(registry.find("ftpserver.upload.events").meters()).isNotEmpty();
+            });
+    }
+
+    @Test
+    public void bindsNoMetersOfDisabledFeatures() {
+        this.contextRunner
+            .withPropertyValues("ftpserver.user-manager.credential-cache.enabled=false")
+            .run(context -> {
+                MeterRegistry registry = context.getBean(MeterRegistry.class);
+                assertThat(registry.find("ftpserver.commands").meters()).isNotEmpty();
+                assertThat(registry.find("ftpserver.credential.cache.hit.ratio").gauge()).isNull();
+                assertThat(registry.find("ftpserver.quota.homes").gauge()).isNull();
+                assertThat(registry.find("ftpserver.audit.records").meters()).isEmpty();
+                assertThat(registry.find("ftpserver.upload.events").meters()).isEmpty();
+            });
+    }
+
+}
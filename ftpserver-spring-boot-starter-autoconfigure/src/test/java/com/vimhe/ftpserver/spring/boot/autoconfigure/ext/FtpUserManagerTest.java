@@ -0,0 +1,98 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext;
+
+import com.vimhe.ftpserver.spring.boot.autoconfigure.FtpServerConfigurationProperties;
+import org.apache.ftpserver.FtpServerConfigurationException;
+import org.apache.ftpserver.ftplet.AuthenticationFailedException;
+import org.apache.ftpserver.usermanager.UsernamePasswordAuthentication;
+import org.apache.ftpserver.usermanager.impl.BaseUser;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests of {@link FtpUserManager}.
+ *
+ * @author Vimhe
+ */
+public class FtpUserManagerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void comparesPasswordWithUnknownPrefixAsClearText() throws Exception {
+        FtpUserManager userManager = new FtpUserManager(users("alice", "{secret}password"));
+
+        assertThat(userManager.authenticate(new UsernamePasswordAuthentication("alice", "{secret}password"))
+            .getName()).isEqualTo("alice");
+        assertThatThrownBy(() -> userManager.authenticate(new UsernamePasswordAuthentication("alice", "password")))
+            .isInstanceOf(AuthenticationFailedException.class);
+    }
+
+    @Test
+    public void deleteInvalidatesTheCredentialsWhateverTheCase() throws Exception {
+        FtpServerConfigurationProperties.UserManager properties = new FtpServerConfigurationProperties.UserManager();
+        properties.setCaseInsensitive(true);
+        properties.setStoreFile(new File(this.folder.getRoot(), "users.properties"));
+        properties.setWatchStoreFile(false);
+        try (FtpUserManager userManager = new FtpUserManager(Collections.emptyMap(), properties)) {
+            BaseUser user = new BaseUser();
+            user.setName("Alice");
+            user.setPassword("password");
+            user.setHomeDirectory(this.folder.getRoot().getAbsolutePath());
+            userManager.save(user);
+
+            userManager.authenticate(new UsernamePasswordAuthentication("alice", "password"));
+            VerifiedCredentialCache cache = userManager.getCredentialCache().orElseThrow(IllegalStateException::new);
+            assertThat(cache.size()).isEqualTo(1);
+
+            userManager.delete("ALICE");
+
+            assertThat(cache.size()).isZero();
+            assertThat(userManager.doesExist("alice")).isFalse();
+        }
+    }
+
+    @Test
+    public void rejectsStoredUsersDifferingOnlyInCase() {
+        FtpServerConfigurationProperties.UserManager properties = new FtpServerConfigurationProperties.UserManager();
+        properties.setCaseInsensitive(true);
+        FtpUserManager userManager = new FtpUserManager(Collections.emptyMap(), properties);
+        Map<String, FtpServerConfigurationProperties.User> users = new LinkedHashMap<>(users("bob", "first"));
+        users.putAll(users("Bob", "second"));
+
+        assertThatThrownBy(() -> userManager.reload(users)).isInstanceOf(FtpServerConfigurationException.class);
+        assertThat(userManager.doesExist("bob")).isFalse();
+    }
+
+    private static Map<String, FtpServerConfigurationProperties.User> users(final String name, final String password) {
+        FtpServerConfigurationProperties.User user = new FtpServerConfigurationProperties.User();
+        user.setUserPassword(password);
+        return Collections.singletonMap(name, user);
+    }
+
+}
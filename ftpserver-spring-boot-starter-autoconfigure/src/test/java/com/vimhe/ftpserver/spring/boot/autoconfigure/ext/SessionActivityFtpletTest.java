@@ -0,0 +1,48 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext;
+
+import org.apache.ftpserver.impl.DefaultFtpSession;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.mina.core.session.DummySession;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests of {@link SessionActivityFtplet}.
+ *
+ * @author Vimhe
+ */
+public class SessionActivityFtpletTest {
+
+    @Test
+    public void readingTheRateKeepsItsWindow() throws Exception {
+        DummySession ioSession = new DummySession();
+        new SessionActivityFtplet().onConnect(new DefaultFtpSession(new FtpIoSession(ioSession, null)));
+        SessionActivityFtplet.SessionActivity activity = SessionActivityFtplet.getActivity(ioSession);
+        long now = System.currentTimeMillis() + 1000;
+
+        activity.sample(4000, now);
+        assertThat(activity.getRate()).isGreaterThan(0D);
+        activity.sample(6000, now + 1000);
+
+        assertThat(activity.getRate()).isEqualTo(2000D);
+        assertThat(activity.getRate()).isEqualTo(2000D);
+    }
+
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.audit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests of {@link AuditLog}.
+ *
+ * @author Vimhe
+ */
+public class AuditLogTest {
+
+    private static final Duration COMMIT_INTERVAL = Duration.ofMillis(10);
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void writesRecordsInOrderAcrossTheBuffer() throws IOException {
+        Path file = this.temporaryFolder.getRoot().toPath().resolve("xferlog");
+        AuditLog auditLog = this.auditLog(file, AuditLog.OverflowPolicy.BLOCK, 1);
+
+        for (int i = 0; i < 10; i++) {
+            AuditRecord record = auditLog.claim();
+            record.file = "/file " + i;
+            record.user = "alice";
+            record.direction = AuditRecord.INCOMING;
+            record.bytes = i;
+            record.binary = true;
+            record.complete = true;
+            auditLog.publish(record);
+        }
+        auditLog.close();
+
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertThat(lines).hasSize(10);
+        for (int i = 0; i < 10; i++) {
+            String[] fields = lines.get(i).split(" +");
+            assertThat(fields.length).isEqualTo(18);
+            assertThat(fields[7]).isEqualTo(String.valueOf(i));
+            assertThat(fields[8]).isEqualTo("/file_" + i);
+            assertThat(fields[13]).isEqualTo("alice");
+        }
+        assertThat(auditLog.getWrittenCount()).isEqualTo(10L);
+        assertThat(auditLog.getDroppedCount()).isZero();
+    }
+
+    @Test
+    public void writesLoginsToTheirOwnFile() throws IOException {
+        Path file = this.temporaryFolder.getRoot().toPath().resolve("xferlog");
+        Path loginFile = this.temporaryFolder.getRoot().toPath().resolve("loginlog");
+        AuditLog auditLog = new AuditLog(file, loginFile, 4, AuditLog.OverflowPolicy.BLOCK, 1, COMMIT_INTERVAL,
+            1024 * 1024, 1);
+        assertThat(auditLog.isRecordingLogins()).isTrue();
+
+        AuditRecord login = auditLog.claim();
+        login.user = "alice";
+        login.remoteHost = "192.0.2.1";
+        login.direction = AuditRecord.LOGIN;
+        login.complete = false;
+        auditLog.publish(login);
+        AuditRecord transfer = auditLog.claim();
+        transfer.user = "alice";
+        transfer.file = "/file";
+        transfer.direction = AuditRecord.OUTGOING;
+        transfer.complete = true;
+        auditLog.publish(transfer);
+        auditLog.close();
+
+        List<String> transfers = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertThat(transfers).hasSize(1);
+        assertThat(transfers.get(0).split(" +")[11]).isEqualTo("o");
+        List<String> logins = Files.readAllLines(loginFile, StandardCharsets.UTF_8);
+        assertThat(logins).hasSize(1);
+        assertThat(logins.get(0)).endsWith(" 192.0.2.1 alice r ftp failure");
+        assertThat(auditLog.getWrittenCount()).isEqualTo(2L);
+    }
+
+    @Test
+    public void dropDropsRecordsWhileTheBufferIsFull() throws IOException {
+        AuditLog auditLog = this.auditLog(this.temporaryFolder.getRoot().toPath().resolve("xferlog"),
+            AuditLog.OverflowPolicy.DROP, 1);
+        // The writer cannot take records past one not published yet
+        AuditRecord first = auditLog.claim();
+        AuditRecord second = auditLog.claim();
+
+        assertThat(auditLog.claim()).isNull();
+        assertThat(auditLog.claim()).isNull();
+
+        auditLog.publish(first);
+        auditLog.publish(second);
+        auditLog.close();
+        assertThat(auditLog.getWrittenCount()).isEqualTo(2L);
+        assertThat(auditLog.getDroppedCount()).isEqualTo(2L);
+    }
+
+    @Test
+    public void blockWaitsForRoomInTheBuffer() throws Exception {
+        AuditLog auditLog = this.auditLog(this.temporaryFolder.getRoot().toPath().resolve("xferlog"),
+            AuditLog.OverflowPolicy.BLOCK, 1);
+        AuditRecord first = auditLog.claim();
+        AuditRecord second = auditLog.claim();
+
+        CompletableFuture<AuditRecord> third = CompletableFuture.supplyAsync(auditLog::claim);
+        Thread.sleep(100);
+        assertThat(third.isDone()).isFalse();
+
+        auditLog.publish(first);
+        AuditRecord record = third.get(5, TimeUnit.SECONDS);
+        assertThat(record).isNotNull();
+
+        auditLog.publish(second);
+        auditLog.publish(record);
+        auditLog.close();
+        assertThat(auditLog.getWrittenCount()).isEqualTo(3L);
+        assertThat(auditLog.getDroppedCount()).isZero();
+    }
+
+    @Test
+    public void sampleWaitsForOneOfEverySampleRateRecords() throws Exception {
+        AuditLog auditLog = this.auditLog(this.temporaryFolder.getRoot().toPath().resolve("xferlog"),
+            AuditLog.OverflowPolicy.SAMPLE, 3);
+        AuditRecord first = auditLog.claim();
+        AuditRecord second = auditLog.claim();
+
+        assertThat(auditLog.claim()).isNull();
+        assertThat(auditLog.claim()).isNull();
+        CompletableFuture<AuditRecord> sampled = CompletableFuture.supplyAsync(auditLog::claim);
+        Thread.sleep(100);
+        assertThat(sampled.isDone()).isFalse();
+
+        auditLog.publish(first);
+        AuditRecord record = sampled.get(5, TimeUnit.SECONDS);
+        assertThat(record).isNotNull();
+
+        auditLog.publish(second);
+        auditLog.publish(record);
+        auditLog.close();
+        assertThat(auditLog.getWrittenCount()).isEqualTo(3L);
+        assertThat(auditLog.getDroppedCount()).isEqualTo(2L);
+    }
+
+    @Test
+    public void dropsRecordsOfferedAfterClose() throws IOException {
+        AuditLog auditLog = this.auditLog(this.temporaryFolder.getRoot().toPath().resolve("xferlog"),
+            AuditLog.OverflowPolicy.BLOCK, 1);
+        auditLog.close();
+
+        assertThat(auditLog.claim()).isNull();
+        assertThat(auditLog.getPendingCount()).isZero();
+        assertThat(auditLog.getDroppedCount()).isEqualTo(1L);
+    }
+
+    @Test
+    public void recordsNoLoginsWithoutTheirFile() throws IOException {
+        AuditLog auditLog = this.auditLog(this.temporaryFolder.getRoot().toPath().resolve("xferlog"),
+            AuditLog.OverflowPolicy.BLOCK, 1);
+        auditLog.close();
+
+        assertThat(auditLog.isRecordingLogins()).isFalse();
+    }
+
+    private AuditLog auditLog(final Path file, final AuditLog.OverflowPolicy overflowPolicy, final int sampleRate)
+        throws IOException {
+        return new AuditLog(file, null, 2, overflowPolicy, sampleRate, COMMIT_INTERVAL, 1024 * 1024, 1);
+    }
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.bandwidth;
+
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.usermanager.impl.BaseUser;
+import org.apache.mina.core.session.DummySession;
+import org.junit.Test;
+
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests of {@link BandwidthShaper}.
+ *
+ * @author Vimhe
+ */
+public class BandwidthShaperTest {
+
+    private static final Duration BURST = Duration.ofMillis(100);
+
+    @Test
+    public void unlimitedUserPassesThrough() {
+        BandwidthShaper shaper = new BandwidthShaper(0, 0, BURST);
+
+        BandwidthShaper.Throttle throttle = shaper.open(session(user("alice", 0)), true);
+
+        assertThat(shaper.isShaping()).isFalse();
+        assertThat(throttle.isLimited()).isFalse();
+        assertThat(throttle.chunkSize(1 << 20)).isEqualTo(1L << 20);
+    }
+
+    @Test
+    public void userWithTotalRateIsShaped() {
+        BandwidthShaper shaper = new BandwidthShaper(0, 0, BURST);
+
+        BandwidthShaper.Throttle throttle = shaper.open(session(user("alice", 1 << 20)), true);
+
+        assertThat(throttle.isLimited()).isTrue();
+        assertThat(throttle.chunkSize(1 << 20)).isEqualTo((1L << 20) / 20);
+        assertThat(shaper.open(session(user("alice", 1 << 20)), false).isLimited()).isFalse();
+    }
+
+    @Test
+    public void liftedLimitOfAUserIsFollowed() throws InterruptedIOException {
+        BandwidthShaper shaper = new BandwidthShaper(0, 0, BURST);
+        BandwidthShaper.Throttle running = shaper.open(session(user("alice", 1 << 20)), true);
+
+        BandwidthShaper.Throttle next = shaper.open(session(user("alice", 0)), true);
+
+        assertThat(next.isLimited()).isFalse();
+        // A gigabyte at the former rate would hold back for minutes
+        long start = System.nanoTime();
+        running.acquire(1L << 30);
+        assertThat(System.nanoTime() - start).isLessThan(TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    public void serverRateShapesUnlimitedUsers() {
+        BandwidthShaper shaper = new BandwidthShaper(1 << 20, 0, BURST);
+
+        assertThat(shaper.isShaping()).isTrue();
+        assertThat(shaper.open(session(user("alice", 0)), true).isLimited()).isTrue();
+        assertThat(shaper.open(session(user("alice", 0)), false).isLimited()).isFalse();
+    }
+
+    private static BaseUser user(final String name, final long totalDownloadRate) {
+        BaseUser user = new BaseUser();
+        user.setName(name);
+        user.setAuthorities(Collections.singletonList(new BandwidthPermission(0, 0, totalDownloadRate, 0)));
+        return user;
+    }
+
+    private static FtpIoSession session(final BaseUser user) {
+        FtpIoSession session = new FtpIoSession(new DummySession(), null);
+        session.setUser(user);
+        return session;
+    }
+
+}
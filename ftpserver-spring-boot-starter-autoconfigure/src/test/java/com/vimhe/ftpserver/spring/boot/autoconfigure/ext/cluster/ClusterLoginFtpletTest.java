@@ -0,0 +1,128 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.cluster;
+
+import org.apache.ftpserver.ftplet.Authority;
+import org.apache.ftpserver.ftplet.FtpSession;
+import org.apache.ftpserver.ftplet.FtpletContext;
+import org.apache.ftpserver.ftplet.FtpletResult;
+import org.apache.ftpserver.ftplet.UserManager;
+import org.apache.ftpserver.impl.DefaultFtpRequest;
+import org.apache.ftpserver.impl.DefaultFtpSession;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.usermanager.PropertiesUserManagerFactory;
+import org.apache.ftpserver.usermanager.impl.BaseUser;
+import org.apache.ftpserver.usermanager.impl.ConcurrentLoginPermission;
+import org.apache.mina.core.session.DummySession;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests of {@link ClusterLoginFtplet}.
+ *
+ * @author Vimhe
+ */
+public class ClusterLoginFtpletTest {
+
+    private ClusterSessionLimiter limiter;
+
+    private ClusterLoginFtplet ftplet;
+
+    private UserManager userManager;
+
+    @Before
+    public void setUp() throws Exception {
+        this.limiter = new ClusterSessionLimiter("node", new InMemorySessionCounterStore(), Duration.ofMinutes(1), 1);
+        this.ftplet = new ClusterLoginFtplet(this.limiter, 0, 0);
+        this.userManager = new PropertiesUserManagerFactory().createUserManager();
+        this.userManager.save(user("alice"));
+        this.userManager.save(user("bob"));
+        this.ftplet.init((FtpletContext) Proxy.newProxyInstance(FtpletContext.class.getClassLoader(),
+            new Class<?>[]{FtpletContext.class}, (proxy, method, args) -> this.userManager));
+    }
+
+    @After
+    public void tearDown() {
+        this.limiter.close();
+    }
+
+    @Test
+    public void failedLoginGivesBackTheSlots() throws Exception {
+        FtpIoSession session = new FtpIoSession(new DummySession(), null);
+
+        this.pass(session, "alice");
+        this.ftplet.afterCommand(new DefaultFtpSession(session), new DefaultFtpRequest("PASS wrong"), null);
+
+        assertThat(this.limiter.tryAcquire("user:alice", 1)).isTrue();
+    }
+
+    @Test
+    public void reinitializedSessionLogsInWithTheSlotsOfTheNewUser() throws Exception {
+        FtpIoSession session = new FtpIoSession(new DummySession(), null);
+        assertThat(this.login(session, "alice")).isEqualTo(FtpletResult.DEFAULT);
+
+        session.setUser(null);
+        this.ftplet.afterCommand(new DefaultFtpSession(session), new DefaultFtpRequest("REIN"), null);
+        assertThat(this.login(session, "bob")).isEqualTo(FtpletResult.DEFAULT);
+
+        assertThat(this.login(new FtpIoSession(new DummySession(), null), "alice")).isEqualTo(FtpletResult.DEFAULT);
+        assertThat(this.login(new FtpIoSession(new DummySession(), null), "bob"))
+            .isEqualTo(FtpletResult.DISCONNECT);
+    }
+
+    @Test
+    public void staleSlotsAreGivenBackOnTheNextLogin() throws Exception {
+        FtpIoSession session = new FtpIoSession(new DummySession(), null);
+        assertThat(this.login(session, "alice")).isEqualTo(FtpletResult.DEFAULT);
+
+        // Logged out without the REIN reaching afterCommand
+        session.setUser(null);
+        assertThat(this.login(session, "bob")).isEqualTo(FtpletResult.DEFAULT);
+
+        assertThat(this.limiter.tryAcquire("user:alice", 1)).isTrue();
+    }
+
+    private FtpletResult login(final FtpIoSession session, final String name) throws Exception {
+        FtpletResult result = this.pass(session, name);
+        if (result == FtpletResult.DEFAULT) {
+            session.setUser(this.userManager.getUserByName(name));
+        }
+        return result;
+    }
+
+    private FtpletResult pass(final FtpIoSession session, final String name) throws Exception {
+        session.setUserArgument(name);
+        FtpSession ftpSession = new DefaultFtpSession(session);
+        return this.ftplet.beforeCommand(ftpSession, new DefaultFtpRequest("PASS secret"));
+    }
+
+    private static BaseUser user(final String name) {
+        BaseUser user = new BaseUser();
+        user.setName(name);
+        user.setPassword("secret");
+        user.setAuthorities(Collections.<Authority>singletonList(new ConcurrentLoginPermission(1, 1)));
+        return user;
+    }
+
+}
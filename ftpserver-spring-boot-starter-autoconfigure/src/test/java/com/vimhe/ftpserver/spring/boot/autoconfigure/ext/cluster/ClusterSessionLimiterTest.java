@@ -0,0 +1,155 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.cluster;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests of {@link ClusterSessionLimiter}.
+ *
+ * @author Vimhe
+ */
+public class ClusterSessionLimiterTest {
+
+    private static final Duration LEASE = Duration.ofMinutes(1);
+
+    private InMemorySessionCounterStore store;
+
+    private ClusterSessionLimiter first;
+
+    private ClusterSessionLimiter second;
+
+    @Before
+    public void setUp() {
+        this.store = new InMemorySessionCounterStore();
+        this.first = new ClusterSessionLimiter("first", this.store, LEASE, 5);
+        this.second = new ClusterSessionLimiter("second", this.store, LEASE, 5);
+    }
+
+    @After
+    public void tearDown() {
+        this.first.close();
+        this.second.close();
+    }
+
+    @Test
+    public void limitHoldsAcrossTheNodes() {
+        assertThat(this.first.tryAcquire("alice", 3)).isTrue();
+        assertThat(this.first.tryAcquire("alice", 3)).isTrue();
+        assertThat(this.second.tryAcquire("alice", 3)).isTrue();
+
+        assertThat(this.second.tryAcquire("alice", 3)).isFalse();
+        assertThat(this.first.tryAcquire("alice", 3)).isFalse();
+        assertThat(this.second.getRejectedCount()).isEqualTo(1L);
+    }
+
+    @Test
+    public void releasedSlotIsTakenAgainLocally() {
+        assertThat(this.first.tryAcquire("alice", 1)).isTrue();
+        this.first.release("alice");
+
+        assertThat(this.first.tryAcquire("alice", 1)).isTrue();
+        assertThat(this.first.getLocalCount()).isEqualTo(1L);
+        assertThat(this.second.tryAcquire("alice", 1)).isFalse();
+    }
+
+    @Test
+    public void releaseGivesBackTheSlotsBeyondOneBatch() {
+        for (int i = 0; i < 20; i++) {
+            assertThat(this.first.tryAcquire("alice", 100)).isTrue();
+        }
+        assertThat(this.store.getReserved("alice")).isEqualTo(20L);
+
+        for (int i = 0; i < 20; i++) {
+            this.first.release("alice");
+        }
+
+        assertThat(this.store.getReserved("alice")).isEqualTo(5L);
+    }
+
+    @Test
+    public void renewGivesBackTheSlotsOfIdleCounters() throws IOException {
+        this.first.tryAcquire("alice", 100);
+        this.first.release("alice");
+
+        this.first.renew();
+        assertThat(this.store.getReserved("alice")).isEqualTo(5L);
+
+        this.first.renew();
+        assertThat(this.store.getReserved("alice")).isEqualTo(0L);
+        assertThat(this.second.tryAcquire("alice", 1)).isTrue();
+    }
+
+    @Test
+    public void slotsOfANodeWhichDiedLapse() throws IOException, InterruptedException {
+        this.store.reserve("alice", "dead", 2, 2, Duration.ofMillis(50));
+        assertThat(this.first.tryAcquire("alice", 2)).isFalse();
+        Thread.sleep(100);
+
+        assertThat(this.first.tryAcquire("alice", 2)).isTrue();
+    }
+
+    @Test
+    public void failingStoreAllowsAcquisitions() {
+        ClusterSessionLimiter limiter = new ClusterSessionLimiter("failing", new FailingStore(), LEASE, 5);
+        try {
+            assertThat(limiter.tryAcquire("alice", 1)).isTrue();
+            assertThat(limiter.tryAcquire("alice", 1)).isTrue();
+            assertThat(limiter.getFailedCount()).isEqualTo(2L);
+        } finally {
+            limiter.close();
+        }
+    }
+
+    @Test
+    public void closeGivesBackEverySlot() {
+        this.first.tryAcquire("alice", 100);
+        this.first.tryAcquire("bob", 100);
+
+        this.first.close();
+
+        assertThat(this.store.getReserved("alice")).isEqualTo(0L);
+        assertThat(this.store.getReserved("bob")).isEqualTo(0L);
+    }
+
+    private static final class FailingStore implements SessionCounterStore {
+
+        @Override
+        public long reserve(final String counter, final String node, final long count, final long limit,
+                            final Duration lease) throws IOException {
+            throw new IOException("Unavailable");
+        }
+
+        @Override
+        public void release(final String counter, final String node, final long count) throws IOException {
+            throw new IOException("Unavailable");
+        }
+
+        @Override
+        public void renew(final String node, final Duration lease) throws IOException {
+            throw new IOException("Unavailable");
+        }
+
+    }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.cluster;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests of {@link FileSessionCounterStore}.
+ *
+ * @author Vimhe
+ */
+public class FileSessionCounterStoreTest {
+
+    private static final Duration LEASE = Duration.ofMinutes(1);
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path file;
+
+    private FileSessionCounterStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        this.file = this.temporaryFolder.getRoot().toPath().resolve("counters/sessions");
+        this.store = new FileSessionCounterStore(this.file);
+    }
+
+    @Test
+    public void reserveGrantsUpToTheLimitOfAllNodes() throws IOException {
+        assertThat(this.store.reserve("alice", "a", 3, 5, LEASE)).isEqualTo(3L);
+        assertThat(this.store.reserve("alice", "b", 3, 5, LEASE)).isEqualTo(2L);
+        assertThat(this.store.reserve("alice", "b", 1, 5, LEASE)).isEqualTo(0L);
+        assertThat(this.store.reserve("bob", "b", 1, 5, LEASE)).isEqualTo(1L);
+    }
+
+    @Test
+    public void releaseFreesTheSlotsForOtherNodes() throws IOException {
+        this.store.reserve("alice", "a", 5, 5, LEASE);
+
+        this.store.release("alice", "a", 2);
+
+        assertThat(this.store.reserve("alice", "b", 5, 5, LEASE)).isEqualTo(2L);
+    }
+
+    @Test
+    public void reservationsAreSharedThroughTheFile() throws IOException {
+        FileSessionCounterStore other = new FileSessionCounterStore(this.file);
+
+        this.store.reserve("alice", "a", 4, 5, LEASE);
+
+        assertThat(other.reserve("alice", "b", 4, 5, LEASE)).isEqualTo(1L);
+    }
+
+    @Test
+    public void expiredReservationsLapse() throws IOException, InterruptedException {
+        this.store.reserve("alice", "dead", 5, 5, Duration.ofMillis(50));
+        this.store.reserve("alice", "alive", 0, 5, LEASE);
+        Thread.sleep(100);
+
+        assertThat(this.store.reserve("alice", "alive", 5, 5, LEASE)).isEqualTo(5L);
+    }
+
+    @Test
+    public void renewKeepsTheReservationsOfTheNode() throws IOException, InterruptedException {
+        this.store.reserve("alice", "a", 5, 5, Duration.ofMillis(200));
+        Thread.sleep(100);
+        this.store.renew("a", LEASE);
+        Thread.sleep(150);
+
+        assertThat(this.store.reserve("alice", "b", 5, 5, LEASE)).isEqualTo(0L);
+    }
+
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.filesystem;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests of {@link MappedFileCache}.
+ *
+ * @author Vimhe
+ */
+public class MappedFileCacheTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void repeatedDownloadsShareTheMapping() throws IOException {
+        MappedFileCache cache = new MappedFileCache(1000, 10);
+        Path file = this.write("a", 100);
+
+        try (MappedFileCache.Lease first = cache.acquire(file);
+             MappedFileCache.Lease second = cache.acquire(file)) {
+            assertThat(first.getSize()).isEqualTo(100L);
+            assertThat(second.slice(99).get()).isEqualTo((byte) 99);
+        }
+
+        assertThat(cache.getMissCount()).isEqualTo(1L);
+        assertThat(cache.getHitCount()).isEqualTo(1L);
+        assertThat(cache.getResidentSize()).isEqualTo(100L);
+    }
+
+    @Test
+    public void filesOutsideTheSizeBoundsAreNotCached() throws IOException {
+        MappedFileCache cache = new MappedFileCache(1000, 10);
+
+        assertThat(cache.acquire(this.write("small", 9))).isNull();
+        assertThat(cache.acquire(this.write("large", 1001))).isNull();
+        assertThat(cache.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void changedFileIsMappedAgain() throws IOException {
+        MappedFileCache cache = new MappedFileCache(1000, 10);
+        Path file = this.write("a", 100);
+        cache.acquire(file).close();
+
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() - 10000));
+        cache.acquire(file).close();
+
+        assertThat(cache.getMissCount()).isEqualTo(2L);
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.getResidentSize()).isEqualTo(100L);
+    }
+
+    @Test
+    public void evictedFileStaysMappedUntilItsLeaseIsReleased() throws IOException {
+        MappedFileCache cache = new MappedFileCache(150, 10);
+        MappedFileCache.Lease lease = cache.acquire(this.write("a", 100));
+
+        cache.acquire(this.write("b", 100)).close();
+
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.getCachedSize()).isEqualTo(100L);
+        assertThat(cache.getResidentSize()).isEqualTo(200L);
+        assertThat(lease.slice(0).get()).isEqualTo((byte) 0);
+
+        lease.close();
+        assertThat(cache.getResidentSize()).isEqualTo(100L);
+        cache.invalidateAll();
+        assertThat(cache.getResidentSize()).isEqualTo(0L);
+    }
+
+    @Test
+    public void evictedLeasedFileDoesNotCountTowardsTheMaximumSize() throws IOException {
+        MappedFileCache cache = new MappedFileCache(250, 10);
+        Path file = this.write("a", 100);
+        MappedFileCache.Lease lease = cache.acquire(file);
+        cache.invalidate(file);
+
+        cache.acquire(this.write("b", 100)).close();
+        cache.acquire(this.write("c", 100)).close();
+
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.getCachedSize()).isEqualTo(200L);
+        assertThat(cache.getResidentSize()).isEqualTo(300L);
+        lease.close();
+        assertThat(cache.getResidentSize()).isEqualTo(200L);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void releasedLeaseIsNotRead() throws IOException {
+        MappedFileCache cache = new MappedFileCache(1000, 10);
+        MappedFileCache.Lease lease = cache.acquire(this.write("a", 100));
+        cache.invalidateAll();
+        lease.close();
+
+        lease.slice(0);
+    }
+
+    @Test
+    public void concurrentMissesPublishOneMapping() throws Exception {
+        MappedFileCache cache = new MappedFileCache(1000, 10);
+        Path file = this.write("a", 100);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<MappedFileCache.Lease>> acquisitions = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                acquisitions.add(() -> cache.acquire(file));
+            }
+            for (Future<MappedFileCache.Lease> lease : executor.invokeAll(acquisitions)) {
+                assertThat(lease.get().slice(42).get()).isEqualTo((byte) 42);
+                lease.get().close();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.getResidentSize()).isEqualTo(100L);
+    }
+
+    private Path write(final String name, final int size) throws IOException {
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; i++) {
+            content[i] = (byte) i;
+        }
+        return Files.write(this.temporaryFolder.getRoot().toPath().resolve(name), content);
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.filesystem;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests of {@link MappedFileInputStream}.
+ *
+ * @author Vimhe
+ */
+public class MappedFileInputStreamTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final MappedFileCache cache = new MappedFileCache(1 << 20, 1);
+
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        byte[] content = new byte[1000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        this.file = Files.write(this.temporaryFolder.getRoot().toPath().resolve("a"), content);
+    }
+
+    @Test
+    public void readsFromThePosition() throws IOException {
+        try (MappedFileInputStream in = new MappedFileInputStream(this.cache.acquire(this.file), 900)) {
+            byte[] bytes = new byte[200];
+
+            assertThat(in.read(bytes, 0, 200)).isEqualTo(100);
+            assertThat(bytes[0]).isEqualTo((byte) 900);
+            assertThat(in.read(bytes, 0, 200)).isEqualTo(-1);
+        }
+    }
+
+    @Test
+    public void remainingContentIsMapped() throws IOException {
+        try (MappedFileInputStream in = new MappedFileInputStream(this.cache.acquire(this.file), 10)) {
+            assertThat(in.remaining().remaining()).isEqualTo(990);
+
+            in.skip(980);
+            assertThat(in.remaining().get()).isEqualTo((byte) 990);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedFileFailsTheRead() throws IOException {
+        try (MappedFileInputStream in = new MappedFileInputStream(this.cache.acquire(this.file), 0)) {
+            try (FileChannel channel = FileChannel.open(this.file, StandardOpenOption.WRITE)) {
+                channel.truncate(0);
+            }
+
+            in.read(new byte[100], 0, 100);
+        }
+    }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.filesystem;
+
+import org.apache.ftpserver.usermanager.impl.BaseUser;
+import org.apache.ftpserver.usermanager.impl.WritePermission;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests of {@link NioFtpFile}.
+ *
+ * @author Vimhe
+ */
+public class NioFtpFileTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void restartPastTheEndExtendsTheFileWithZeros() throws IOException {
+        Path path = Files.write(this.temporaryFolder.getRoot().toPath().resolve("a"), new byte[]{1, 2, 3});
+
+        newFile(path).createOutputStream(10).close();
+
+        assertThat(Files.readAllBytes(path)).containsExactly(1, 2, 3, 0, 0, 0, 0, 0, 0, 0);
+    }
+
+    @Test
+    public void restartWithinTheFileTruncatesIt() throws IOException {
+        Path path = Files.write(this.temporaryFolder.getRoot().toPath().resolve("a"), new byte[]{1, 2, 3});
+
+        try (OutputStream out = newFile(path).createOutputStream(1)) {
+            out.write(9);
+        }
+
+        assertThat(Files.readAllBytes(path)).containsExactly(1, 9);
+    }
+
+    private static NioFtpFile newFile(final Path path) {
+        BaseUser user = new BaseUser();
+        user.setAuthorities(Collections.singletonList(new WritePermission()));
+        return new NioFtpFile("/" + path.getFileName(), path.toFile(), user, null, null, null);
+    }
+
+}
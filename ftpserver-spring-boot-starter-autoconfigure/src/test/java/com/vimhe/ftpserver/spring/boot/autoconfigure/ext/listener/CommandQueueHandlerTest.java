@@ -0,0 +1,79 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.listener;
+
+import org.apache.mina.core.session.DummySession;
+import org.apache.mina.core.session.IoEvent;
+import org.apache.mina.core.session.IoEventType;
+import org.apache.mina.core.session.IoSession;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests of {@link CommandQueueHandler}.
+ *
+ * @author Vimhe
+ */
+public class CommandQueueHandlerTest {
+
+    @Test
+    public void blockSuspendsTheSessionsOverCapacityUntilThereIsRoom() {
+        CommandQueueHandler handler = new CommandQueueHandler(1, CommandQueueHandler.RejectionPolicy.BLOCK);
+        IoSession first = new DummySession();
+        IoSession second = new DummySession();
+
+        IoEvent queued = offer(handler, first);
+        IoEvent overflowing = offer(handler, second);
+
+        assertThat(handler.size()).isEqualTo(2);
+        assertThat(first.isReadSuspended()).isFalse();
+        assertThat(second.isReadSuspended()).isTrue();
+
+        handler.polled(null, queued);
+
+        assertThat(second.isReadSuspended()).isFalse();
+        handler.polled(null, overflowing);
+        assertThat(handler.size()).isZero();
+    }
+
+    @Test
+    public void abortClosesTheSessionsOverCapacity() {
+        CommandQueueHandler handler = new CommandQueueHandler(1, CommandQueueHandler.RejectionPolicy.ABORT);
+        IoSession first = new DummySession();
+        IoSession second = new DummySession();
+
+        offer(handler, first);
+
+        assertThat(handler.accept(null, event(second))).isFalse();
+        assertThat(handler.getRejectedCount()).isEqualTo(1);
+        assertThat(second.isClosing()).isTrue();
+        assertThat(first.isClosing()).isFalse();
+    }
+
+    private static IoEvent offer(final CommandQueueHandler handler, final IoSession session) {
+        IoEvent event = event(session);
+        assertThat(handler.accept(null, event)).isTrue();
+        handler.offered(null, event);
+        return event;
+    }
+
+    private static IoEvent event(final IoSession session) {
+        return new IoEvent(IoEventType.MESSAGE_RECEIVED, session, "NOOP\r\n");
+    }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.quota;
+
+import org.apache.ftpserver.ftplet.DefaultFtpReply;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.impl.DefaultFtpRequest;
+import org.apache.ftpserver.impl.DefaultFtpSession;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.mina.core.session.DummySession;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests of {@link QuotaFtplet}.
+ *
+ * @author Vimhe
+ */
+public class QuotaFtpletTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private QuotaIndex index;
+
+    private QuotaFtplet ftplet;
+
+    private Path alice;
+
+    private FtpIoSession session;
+
+    @Before
+    public void setUp() throws IOException {
+        this.index = new QuotaIndex(1, null);
+        this.ftplet = new QuotaFtplet(this.index);
+        this.alice = this.temporaryFolder.newFolder("alice").toPath();
+        Files.write(this.alice.resolve("a"), new byte[100]);
+        this.index.seed(Collections.singleton(this.alice));
+        this.session = new FtpIoSession(new DummySession(), null);
+    }
+
+    @After
+    public void tearDown() {
+        this.index.close();
+    }
+
+    @Test
+    public void uniqueFileIsAccountedAfterTheCommand() throws Exception {
+        Path stored = this.store("a.1", 40);
+
+        QuotaFtplet.uniqueFileStored(this.session, stored);
+        this.ftplet.afterCommand(new DefaultFtpSession(this.session), new DefaultFtpRequest("STOU"),
+            new DefaultFtpReply(FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "Transfer complete."));
+
+        assertThat(this.index.usage(this.alice).getBytes()).isEqualTo(140L);
+        assertThat(this.index.usage(this.alice).getFiles()).isEqualTo(2L);
+    }
+
+    @Test
+    public void uniqueFileIsAccountedOnDisconnect() throws Exception {
+        Path stored = this.store("a.1", 40);
+
+        QuotaFtplet.uniqueFileStored(this.session, stored);
+        this.ftplet.onDisconnect(new DefaultFtpSession(this.session));
+
+        assertThat(this.index.usage(this.alice).getBytes()).isEqualTo(140L);
+        assertThat(this.index.usage(this.alice).getFiles()).isEqualTo(2L);
+    }
+
+    @Test
+    public void repeatedUniqueFilesAreEachAccounted() throws Exception {
+        for (int i = 1; i <= 3; i++) {
+            QuotaFtplet.uniqueFileStored(this.session, this.store("a." + i, 10));
+            this.ftplet.afterCommand(new DefaultFtpSession(this.session), new DefaultFtpRequest("STOU"),
+                new DefaultFtpReply(FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "Transfer complete."));
+        }
+
+        assertThat(this.index.usage(this.alice).getBytes()).isEqualTo(130L);
+        assertThat(this.index.usage(this.alice).getFiles()).isEqualTo(4L);
+    }
+
+    private Path store(final String name, final int size) throws IOException {
+        return Files.write(this.alice.resolve(name), new byte[size]).toAbsolutePath().normalize();
+    }
+
+}
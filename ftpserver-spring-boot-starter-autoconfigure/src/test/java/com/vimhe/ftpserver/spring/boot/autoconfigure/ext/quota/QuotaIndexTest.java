@@ -0,0 +1,155 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.quota;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests of {@link QuotaIndex}.
+ *
+ * @author Vimhe
+ */
+public class QuotaIndexTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private QuotaIndex index;
+
+    private Path alice;
+
+    private Path bob;
+
+    @Before
+    public void setUp() throws IOException {
+        this.index = new QuotaIndex(2, null);
+        this.alice = this.temporaryFolder.newFolder("alice").toPath();
+        this.bob = this.temporaryFolder.newFolder("bob").toPath();
+        write(this.alice.resolve("a"), 100);
+        write(this.alice.resolve("sub/b"), 20);
+        write(this.alice.resolve("sub/deeper/c"), 3);
+        write(this.bob.resolve("d"), 1000);
+    }
+
+    @After
+    public void tearDown() {
+        this.index.close();
+    }
+
+    @Test
+    public void seedScansTheHomes() {
+        this.index.seed(Arrays.asList(this.alice, this.bob));
+
+        assertThat(this.index.getHomeCount()).isEqualTo(2);
+        assertThat(this.index.usage(this.alice).getBytes()).isEqualTo(123L);
+        assertThat(this.index.usage(this.alice).getFiles()).isEqualTo(3L);
+        assertThat(this.index.usage(this.bob).getBytes()).isEqualTo(1000L);
+    }
+
+    @Test
+    public void updateAccountsToTheContainingHomesOnly() {
+        this.index.seed(Arrays.asList(this.alice, this.bob));
+
+        this.index.update(this.alice.resolve("sub/e"), 50, 1);
+
+        assertThat(this.index.usage(this.alice).getBytes()).isEqualTo(173L);
+        assertThat(this.index.usage(this.alice).getFiles()).isEqualTo(4L);
+        assertThat(this.index.usage(this.bob).getBytes()).isEqualTo(1000L);
+    }
+
+    @Test
+    public void moveAcrossHomesMovesTheFootprint() throws IOException {
+        this.index.seed(Arrays.asList(this.alice, this.bob));
+        Files.move(this.alice.resolve("a"), this.bob.resolve("a"));
+
+        this.index.move(this.alice.resolve("a"), this.bob.resolve("a"),
+            () -> this.index.footprint(this.bob.resolve("a")), QuotaIndex.Footprint.NONE);
+
+        assertThat(this.index.usage(this.alice).getBytes()).isEqualTo(23L);
+        assertThat(this.index.usage(this.bob).getBytes()).isEqualTo(1100L);
+        assertThat(this.index.usage(this.bob).getFiles()).isEqualTo(2L);
+    }
+
+    @Test
+    public void reconcileCorrectsWritesBypassingTheServer() throws IOException {
+        this.index.seed(Arrays.asList(this.alice, this.bob));
+        write(this.alice.resolve("outside"), 77);
+        Files.delete(this.bob.resolve("d"));
+
+        this.index.reconcile();
+
+        assertThat(this.index.usage(this.alice).getBytes()).isEqualTo(200L);
+        assertThat(this.index.usage(this.alice).getFiles()).isEqualTo(4L);
+        assertThat(this.index.usage(this.bob).getBytes()).isEqualTo(0L);
+        assertThat(this.index.getReconciliationCount()).isEqualTo(1L);
+        assertThat(this.index.getCorrectedBytes()).isEqualTo(1077L);
+    }
+
+    @Test
+    public void reconcileKeepsTheChangesAccountedAfterTheScan() throws IOException {
+        this.index.seed(Arrays.asList(this.alice, this.bob));
+        this.index.reconcile();
+
+        write(this.alice.resolve("later"), 10);
+        this.index.update(this.alice.resolve("later"), 10, 1);
+
+        assertThat(this.index.usage(this.alice).getBytes()).isEqualTo(133L);
+        assertThat(this.index.usage(this.alice).getFiles()).isEqualTo(4L);
+    }
+
+    @Test
+    public void changeAccountedDuringTheScanIsNotCountedTwice() {
+        QuotaIndex.Usage usage = new QuotaIndex.Usage(new QuotaIndex.Footprint(100, 1));
+
+        // Written and accounted while the scan runs, the scan has seen it
+        usage.add(50, 1);
+        long corrected = usage.reconcile(new QuotaIndex.Footprint(150, 2));
+        usage.add(10, 1);
+
+        assertThat(corrected).isEqualTo(0L);
+        assertThat(usage.getBytes()).isEqualTo(160L);
+        assertThat(usage.getFiles()).isEqualTo(3L);
+    }
+
+    @Test
+    public void reconcileForgetsRemovedHomes() throws IOException {
+        this.index.seed(Arrays.asList(this.alice, this.bob));
+        Files.delete(this.bob.resolve("d"));
+        Files.delete(this.bob);
+
+        this.index.reconcile();
+
+        assertThat(this.index.getHomeCount()).isEqualTo(1);
+    }
+
+    private static void write(final Path file, final int size) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, new byte[size]);
+    }
+
+}
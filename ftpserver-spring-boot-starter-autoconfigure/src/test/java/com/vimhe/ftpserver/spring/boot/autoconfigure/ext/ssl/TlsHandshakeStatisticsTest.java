@@ -0,0 +1,86 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.ssl;
+
+import org.junit.Test;
+
+import javax.net.ssl.SSLSession;
+import java.lang.reflect.Proxy;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests of {@link TlsHandshakeStatistics}.
+ *
+ * @author Vimhe
+ */
+public class TlsHandshakeStatisticsTest {
+
+    private static final long NOW = 1_000_000L;
+
+    private final TlsHandshakeStatistics statistics = new TlsHandshakeStatistics();
+
+    @Test
+    public void countsSessionCreatedByTheHandshakeAsFull() {
+        this.statistics.record(TlsHandshakeStatistics.Channel.CONTROL, session(1, NOW), NOW, 10);
+
+        assertThat(this.statistics.getFullCount(TlsHandshakeStatistics.Channel.CONTROL)).isEqualTo(1);
+        assertThat(this.statistics.getResumedCount(TlsHandshakeStatistics.Channel.CONTROL)).isZero();
+    }
+
+    @Test
+    public void countsSessionResumedWithinTheSameMillisecond() {
+        this.statistics.record(TlsHandshakeStatistics.Channel.CONTROL, session(1, NOW), NOW, 10);
+        this.statistics.record(TlsHandshakeStatistics.Channel.DATA, session(1, NOW), NOW, 10);
+
+        assertThat(this.statistics.getFullCount(TlsHandshakeStatistics.Channel.CONTROL)).isEqualTo(1);
+        assertThat(this.statistics.getResumedCount(TlsHandshakeStatistics.Channel.DATA)).isEqualTo(1);
+        assertThat(this.statistics.getFullCount(TlsHandshakeStatistics.Channel.DATA)).isZero();
+    }
+
+    @Test
+    public void countsTicketWithNewIdAsResumed() {
+        this.statistics.record(TlsHandshakeStatistics.Channel.CONTROL, session(1, NOW), NOW, 10);
+        this.statistics.record(TlsHandshakeStatistics.Channel.DATA, session(2, NOW), NOW + 5, 10);
+
+        assertThat(this.statistics.getResumedCount(TlsHandshakeStatistics.Channel.DATA)).isEqualTo(1);
+    }
+
+    @Test
+    public void countsDistinctSessionsOfTheSameMillisecondAsFull() {
+        this.statistics.record(TlsHandshakeStatistics.Channel.DATA, session(1, NOW), NOW, 10);
+        this.statistics.record(TlsHandshakeStatistics.Channel.DATA, session(2, NOW), NOW, 10);
+
+        assertThat(this.statistics.getFullCount(TlsHandshakeStatistics.Channel.DATA)).isEqualTo(2);
+        assertThat(this.statistics.getResumptionRatio(TlsHandshakeStatistics.Channel.DATA)).isZero();
+    }
+
+    private static SSLSession session(final int id, final long creationTime) {
+        return (SSLSession) Proxy.newProxyInstance(SSLSession.class.getClassLoader(), new Class<?>[]{SSLSession.class},
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getId":
+                        return new byte[]{(byte) id};
+                    case "getCreationTime":
+                        return creationTime;
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            });
+    }
+
+}
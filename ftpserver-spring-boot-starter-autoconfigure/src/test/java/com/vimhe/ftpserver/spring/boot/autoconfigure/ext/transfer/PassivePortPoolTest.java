@@ -0,0 +1,129 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.vimhe.ftpserver.spring.boot.autoconfigure.ext.transfer;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests of {@link PassivePortPool}.
+ *
+ * @author Vimhe
+ */
+public class PassivePortPoolTest {
+
+    @Test
+    public void parsesPortsAndRanges() {
+        PassivePortPool pool = new PassivePortPool("2300, 2310-2314;2320", 4, false);
+
+        assertThat(pool.getCapacity()).isEqualTo(7);
+        assertThat(pool.getAvailableCount()).isEqualTo(7);
+    }
+
+    @Test
+    public void reservesEveryPortOnceUntilExhausted() {
+        PassivePortPool pool = new PassivePortPool("2300-2309", 3, false);
+
+        Set<Integer> reserved = new HashSet<>();
+        for (int i = 0; i < 10; i++) {
+            int port = pool.reserve();
+            assertThat(port).isBetween(2300, 2309);
+            reserved.add(port);
+        }
+
+        assertThat(reserved).hasSize(10);
+        assertThat(pool.getReservedCount()).isEqualTo(10);
+        assertThat(pool.reserve()).isEqualTo(-1);
+        assertThat(pool.getExhaustedCount()).isEqualTo(1L);
+    }
+
+    @Test
+    public void releasedPortIsReservedAgain() {
+        PassivePortPool pool = new PassivePortPool("2300", 1, false);
+
+        int port = pool.reserve();
+        pool.release(port);
+
+        assertThat(pool.getAvailableCount()).isEqualTo(1);
+        assertThat(pool.reserve()).isEqualTo(port);
+    }
+
+    @Test
+    public void releasedPortGoesLast() {
+        PassivePortPool pool = new PassivePortPool("2300-2302", 1, false);
+
+        int first = pool.reserve();
+        pool.release(first);
+
+        assertThat(pool.reserve()).isNotEqualTo(first);
+        assertThat(pool.reserve()).isNotEqualTo(first);
+        assertThat(pool.reserve()).isEqualTo(first);
+    }
+
+    @Test
+    public void portReleasedTwiceOrNeverReservedIsIgnored() {
+        PassivePortPool pool = new PassivePortPool("2300-2301", 1, false);
+
+        int port = pool.reserve();
+        pool.release(port);
+        pool.release(port);
+        pool.release(2301);
+        pool.release(4000);
+
+        assertThat(pool.getAvailableCount()).isEqualTo(2);
+        assertThat(pool.reserve()).isNotEqualTo(pool.reserve());
+        assertThat(pool.reserve()).isEqualTo(-1);
+    }
+
+    @Test
+    public void anyAvailablePortOnceTheOthersAreReserved() {
+        PassivePortPool pool = new PassivePortPool("2300, 0", 1, false);
+
+        assertThat(pool.reserve()).isEqualTo(2300);
+        assertThat(pool.reserve()).isEqualTo(0);
+        assertThat(pool.getExhaustedCount()).isEqualTo(0L);
+        assertThat(new PassivePortPool(null, 1, false).reserve()).isEqualTo(0);
+    }
+
+    @Test
+    public void portTakenByAnotherProcessIsSkipped() throws IOException {
+        int free;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            free = socket.getLocalPort();
+        }
+        try (ServerSocket taken = new ServerSocket()) {
+            taken.bind(new InetSocketAddress(0));
+            PassivePortPool pool = new PassivePortPool(taken.getLocalPort() + "," + free, 1, true);
+
+            assertThat(pool.reserve()).isEqualTo(free);
+            assertThat(pool.getReservedCount()).isEqualTo(1);
+            assertThat(pool.reserve()).isEqualTo(-1);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidPorts() {
+        new PassivePortPool("2300-70000", 1, false);
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.autoconfigure.metrics;
+
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.ipfilter.CidrIpFilter;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.apache.ftpserver.DataConnectionConfigurationFactory;
+import org.apache.ftpserver.FtpServerFactory;
+import org.apache.ftpserver.ftplet.DefaultFtpReply;
+import org.apache.ftpserver.ftplet.FtpSession;
+import org.apache.ftpserver.impl.DefaultFtpRequest;
+import org.apache.ftpserver.impl.DefaultFtpServer;
+import org.apache.ftpserver.impl.DefaultFtpSession;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.ipfilter.IpFilterType;
+import org.apache.ftpserver.listener.ListenerFactory;
+import org.apache.mina.core.session.DummySession;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests of {@link FtpServerMetricsFtplet}.
+ *
+ * @author Vimhe
+ */
+public class FtpServerMetricsFtpletTest {
+
+    private static final int PORT = 2121;
+
+    @Test
+    public void bindsToPrometheus() throws Exception {
+        PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        FtpServerMetricsFtplet ftplet = new FtpServerMetricsFtplet();
+        ftplet.bindTo(registry);
+        ftplet.init(this.createServer().getServerContext());
+
+        FtpSession session = this.connect(ftplet);
+        ftplet.afterCommand(session, new DefaultFtpRequest("PASS secret"),
+            new DefaultFtpReply(421, "Maximum login limit has been reached."));
+
+        assertThat(registry.find("ftpserver.connections.rejected").tag("reason", "login-limit")
+            .tag("listener", "default").counter().count()).isEqualTo(1.0);
+        assertThat(registry.find("ftpserver.connections.rejected").tag("reason", "ip-filter")
+            .tag("listener", "default").functionCounter()).isNotNull();
+        assertThat(registry.scrape()).contains("ftpserver_connections_rejected_total");
+    }
+
+    private DefaultFtpServer createServer() {
+        ListenerFactory listenerFactory = new ListenerFactory();
+        listenerFactory.setPort(PORT);
+        listenerFactory.setSessionFilter(new CidrIpFilter(IpFilterType.DENY, Collections.singleton("10.0.0.0/8")));
+        listenerFactory.setDataConnectionConfiguration(
+            new DataConnectionConfigurationFactory().createDataConnectionConfiguration());
+        FtpServerFactory serverFactory = new FtpServerFactory();
+        serverFactory.addListener("default", listenerFactory.createListener());
+        return (DefaultFtpServer) serverFactory.createServer();
+    }
+
+    private FtpSession connect(final FtpServerMetricsFtplet ftplet) throws Exception {
+        DummySession ioSession = new DummySession();
+        ioSession.setLocalAddress(new InetSocketAddress(PORT));
+        FtpSession session = new DefaultFtpSession(new FtpIoSession(ioSession, null));
+        ftplet.onConnect(session);
+        return session;
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.benchmarks;
+
+import com.vimhe.ftpserver.spring.boot.autoconfigure.FtpServerConfigurationProperties;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.DelegatingPasswordEncryptor;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.FtpUserManager;
+import org.apache.ftpserver.ftplet.AuthenticationFailedException;
+import org.apache.ftpserver.ftplet.User;
+import org.apache.ftpserver.usermanager.UsernamePasswordAuthentication;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link FtpUserManager#authenticate} with a growing number of configured users. The logins rotate over a working set
+ * of up to 100 users spread over all of them, like clients coming back, whose hashed passwords are then answered by
+ * the credential cache.
+ *
+ * @author Vimhe
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class AuthenticateBenchmark {
+
+    private static final int WORKING_SET = 100;
+
+    private static final String PASSWORD = "benchmark";
+
+    @Param({"10", "1000", "100000"})
+    private int userCount;
+
+    @Param({DelegatingPasswordEncryptor.NOOP, DelegatingPasswordEncryptor.PBKDF2})
+    private String passwordEncoding;
+
+    private FtpUserManager userManager;
+
+    private UsernamePasswordAuthentication[] authentications;
+
+    private int next;
+
+    @Setup
+    public void setUp() throws AuthenticationFailedException {
+        // Hashing 100000 passwords would take minutes, the users share one hash
+        String password = new DelegatingPasswordEncryptor(this.passwordEncoding).encrypt(PASSWORD);
+        File home = new File(System.getProperty("java.io.tmpdir"));
+
+        Map<String, FtpServerConfigurationProperties.User> users = new HashMap<>(this.userCount * 2);
+        for (int i = 0; i < this.userCount; i++) {
+            FtpServerConfigurationProperties.User user = new FtpServerConfigurationProperties.User();
+            user.setUserPassword(password);
+            user.setHomeDirectory(home);
+            users.put(username(i), user);
+        }
+
+        FtpServerConfigurationProperties.UserManager properties = new FtpServerConfigurationProperties.UserManager();
+        properties.setPasswordEncoding(this.passwordEncoding);
+        this.userManager = new FtpUserManager(users, properties);
+
+        int workingSet = Math.min(WORKING_SET, this.userCount);
+        this.authentications = new UsernamePasswordAuthentication[workingSet];
+        for (int i = 0; i < workingSet; i++) {
+            this.authentications[i] = new UsernamePasswordAuthentication(
+                username(i * (this.userCount / workingSet)), PASSWORD);
+        }
+
+        // A miss costs a full hash, far longer than the warmup could cover for the whole working set
+        for (UsernamePasswordAuthentication authentication : this.authentications) {
+            this.userManager.authenticate(authentication);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.userManager.close();
+    }
+
+    @Benchmark
+    public User authenticate() throws AuthenticationFailedException {
+        UsernamePasswordAuthentication authentication = this.authentications[this.next];
+        this.next = (this.next + 1) % this.authentications.length;
+        return this.userManager.authenticate(authentication);
+    }
+
+    private static String username(final int index) {
+        return "user" + index;
+    }
+
+}
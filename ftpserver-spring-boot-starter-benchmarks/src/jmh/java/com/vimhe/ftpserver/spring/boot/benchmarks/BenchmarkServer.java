@@ -0,0 +1,145 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.benchmarks;
+
+import com.vimhe.ftpserver.spring.boot.autoconfigure.EnableFtpServer;
+import org.apache.ftpserver.FtpServer;
+import org.apache.ftpserver.impl.DefaultFtpServer;
+import org.springframework.boot.Banner;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Ftp server started by the starter in an application context of its own, with one user whose home directory is a
+ * temporary directory deleted on close.
+ *
+ * @author Vimhe
+ */
+public final class BenchmarkServer implements Closeable {
+
+    public static final String LISTENER = "benchmark";
+
+    public static final String USERNAME = "benchmark";
+
+    public static final String PASSWORD = "benchmark";
+
+    private final ConfigurableApplicationContext context;
+
+    private final Path home;
+
+    private BenchmarkServer(final ConfigurableApplicationContext context, final Path home) {
+        this.context = context;
+        this.home = home;
+    }
+
+    /**
+     * Start a server listening on an ephemeral port.
+     *
+     * @param properties further ftpserver properties, overriding the defaults of the benchmarks
+     */
+    public static BenchmarkServer start(final Map<String, Object> properties) throws IOException {
+        Path home = Files.createTempDirectory("ftpserver-benchmark");
+
+        Map<String, Object> defaults = new HashMap<>(properties.size() + 16);
+        defaults.put("logging.level.root", "WARN");
+        defaults.put("ftpserver.server.anon-enabled", false);
+        defaults.put("ftpserver.server.listener." + LISTENER + ".port", 0);
+        defaults.put("ftpserver.server.listener." + LISTENER + ".local-address", "127.0.0.1");
+        // Without it the 226 reply waits for the delayed acknowledgement of the 150 reply, about 40ms on loopback
+        defaults.put("ftpserver.server.listener." + LISTENER + ".socket.tcp-no-delay", true);
+        defaults.put("ftpserver.user." + USERNAME + ".user-password", PASSWORD);
+        defaults.put("ftpserver.user." + USERNAME + ".home-directory", home.toString());
+        defaults.put("ftpserver.user." + USERNAME + ".write-permission", true);
+        // Rates default to 1MB/s, which would be measured instead of the server
+        defaults.put("ftpserver.user." + USERNAME + ".upload-rate", 0);
+        defaults.put("ftpserver.user." + USERNAME + ".download-rate", 0);
+        defaults.putAll(properties);
+
+        try {
+            return new BenchmarkServer(run(defaults, event -> { }), home);
+        } catch (RuntimeException e) {
+            FileSystemUtils.deleteRecursively(home);
+            throw e;
+        }
+    }
+
+    /**
+     * Start an application context with exactly these properties, e.g. to measure the startup itself.
+     *
+     * @param listener receives the events of the application, including those published while it starts
+     */
+    public static ConfigurableApplicationContext run(final Map<String, Object> properties,
+                                                     final ApplicationListener<ApplicationEvent> listener) {
+        return new SpringApplicationBuilder(Application.class)
+            .web(WebApplicationType.NONE)
+            .bannerMode(Banner.Mode.OFF)
+            .logStartupInfo(false)
+            .properties(Collections.unmodifiableMap(properties))
+            .listeners(listener)
+            .run();
+    }
+
+    public int getPort() {
+        FtpServer server = this.context.getBean(FtpServer.class);
+        return ((DefaultFtpServer) server).getServerContext().getListener(LISTENER).getPort();
+    }
+
+    public <T> T getBean(final Class<T> type) {
+        return this.context.getBean(type);
+    }
+
+    public Path getHome() {
+        return this.home;
+    }
+
+    /**
+     * The directory STOR may write to, write permission is granted on the absolute path of the home directory.
+     */
+    public String getWritableDirectory() throws IOException {
+        Files.createDirectories(this.home.resolve(this.home.toString().substring(1)));
+        return this.home.toString().replace(File.separatorChar, '/');
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            this.context.close();
+        } finally {
+            FileSystemUtils.deleteRecursively(this.home);
+        }
+    }
+
+    @SpringBootConfiguration
+    @EnableFtpServer
+    static class Application {
+    }
+
+}
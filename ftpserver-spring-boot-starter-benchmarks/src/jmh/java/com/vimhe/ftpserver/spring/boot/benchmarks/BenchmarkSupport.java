@@ -0,0 +1,147 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.benchmarks;
+
+import org.apache.commons.net.ftp.FTP;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPReply;
+import org.apache.commons.net.ftp.FTPSClient;
+import org.apache.commons.net.util.TrustManagerUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Helpers shared by the benchmarks: clients logged in over loopback, and a self-signed keystore for TLS.
+ *
+ * @author Vimhe
+ */
+public final class BenchmarkSupport {
+
+    public static final String KEYSTORE_PASSWORD = "benchmark";
+
+    /**
+     * Copy buffer of the client, so large transfers are not measured through the 1KB default.
+     */
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private static final int CONTROL_TIMEOUT = 10000;
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * A client logged in to the server, in passive binary mode, with explicit TLS on the control and data connections
+     * if asked for.
+     */
+    public static FTPClient connect(final BenchmarkServer server, final boolean tls) throws IOException {
+        return connect(server, tls, false);
+    }
+
+    /**
+     * A client logged in to the server, in passive binary mode, with explicit TLS on the control and data connections
+     * if asked for.
+     *
+     * @param resume whether the data connections offer the TLS session of the control connection, see
+     *               {@link ResumingFtpsClient}
+     */
+    public static FTPClient connect(final BenchmarkServer server, final boolean tls, final boolean resume)
+        throws IOException {
+        FTPClient client;
+        if (tls) {
+            FTPSClient ftpsClient = new ResumingFtpsClient(resume);
+            ftpsClient.setTrustManager(TrustManagerUtils.getAcceptAllTrustManager());
+            client = ftpsClient;
+        } else {
+            client = new FTPClient();
+        }
+
+        client.setDefaultTimeout(CONTROL_TIMEOUT);
+        client.connect("127.0.0.1", server.getPort());
+        client.setTcpNoDelay(true);
+        try {
+            if (!FTPReply.isPositiveCompletion(client.getReplyCode())
+                || !client.login(BenchmarkServer.USERNAME, BenchmarkServer.PASSWORD)) {
+                throw new IOException("Login failed: " + client.getReplyString());
+            }
+            if (tls) {
+                ((FTPSClient) client).execPBSZ(0);
+                ((FTPSClient) client).execPROT("P");
+            }
+        } catch (IOException e) {
+            client.disconnect();
+            throw e;
+        }
+
+        client.enterLocalPassiveMode();
+        client.setFileType(FTP.BINARY_FILE_TYPE);
+        client.setBufferSize(BUFFER_SIZE);
+        return client;
+    }
+
+    public static void disconnect(final FTPClient client) throws IOException {
+        if (client != null && client.isConnected()) {
+            try {
+                client.logout();
+            } finally {
+                client.disconnect();
+            }
+        }
+    }
+
+    /**
+     * The properties enabling explicit TLS on the listener of the benchmark server with this keystore, secured by the
+     * serialized filter so the handshakes are recorded.
+     */
+    public static Map<String, Object> sslProperties(final Path keystore) {
+        String ssl = "ftpserver.server.listener." + BenchmarkServer.LISTENER + ".ssl.keystore.";
+        Map<String, Object> properties = new HashMap<>(8);
+        properties.put(ssl + "file", keystore.toString());
+        properties.put(ssl + "password", KEYSTORE_PASSWORD);
+        properties.put(ssl + "key-password", KEYSTORE_PASSWORD);
+        properties.put("ftpserver.server.serialized-tls", true);
+        return properties;
+    }
+
+    /**
+     * Create a JKS keystore with a self-signed RSA key through the keytool of the running JVM.
+     */
+    public static Path createKeystore() throws IOException, InterruptedException {
+        Path directory = Files.createTempDirectory("ftpserver-benchmark-keystore");
+        Path keystore = directory.resolve("keystore.jks");
+        String keytool = System.getProperty("java.home") + File.separator + "bin" + File.separator + "keytool";
+
+        Process process = new ProcessBuilder(Arrays.asList(keytool, "-genkeypair", "-alias", "ftpserver",
+            "-keyalg", "RSA", "-keysize", "2048", "-validity", "365", "-dname", "CN=localhost",
+            "-storetype", "JKS", "-keystore", keystore.toString(),
+            "-storepass", KEYSTORE_PASSWORD, "-keypass", KEYSTORE_PASSWORD))
+            .redirectErrorStream(true)
+            .start();
+        if (process.waitFor() != 0) {
+            throw new IOException("keytool failed with exit code " + process.exitValue());
+        }
+        keystore.toFile().deleteOnExit();
+        directory.toFile().deleteOnExit();
+        return keystore;
+    }
+
+}
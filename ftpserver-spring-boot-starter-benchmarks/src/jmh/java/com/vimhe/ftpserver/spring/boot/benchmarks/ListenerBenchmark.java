@@ -0,0 +1,231 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.benchmarks;
+
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.listener.CommandQueueHandler;
+import org.apache.commons.net.ftp.FTPClient;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sweep of the knobs of a listener under many concurrent clients over loopback: the accept backlog, the socket buffers
+ * of the control connections, the number of I/O processors and the bound and rejection policy of the queue of its
+ * command executor. The executor has fewer threads than there are clients, so the queue fills up as the small uploads
+ * block in file I/O.
+ * <p>
+ * One operation of connect is a whole session, from the connection to QUIT, one operation of store is an upload of a
+ * small file on an open session. Operations refused by the ABORT policy count in the score too, and apart as rejected,
+ * the sessions it closed are opened again. Single knobs are swept with the JMH parameters, e.g.
+ * {@code -p ioProcessors=1,2,4,8 -p queuePolicy=BLOCK}.
+ *
+ * @author Vimhe
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Threads(64)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+public class ListenerBenchmark {
+
+    private static final String LISTENER = "ftpserver.server.listener." + BenchmarkServer.LISTENER + ".";
+
+    /**
+     * Threads of the command executor, fewer than the clients.
+     */
+    private static final int EXECUTOR_THREADS = 16;
+
+    /**
+     * Commands waiting for the executor with a bounded queue, fewer than the clients waiting.
+     */
+    private static final int QUEUE_CAPACITY = 32;
+
+    private static final int FILE_SIZE = 4096;
+
+    /**
+     * Connections refused by the ABORT policy before a client gives up, waiting one millisecond longer each time.
+     */
+    private static final int MAX_ATTEMPTS = 100;
+
+    @Param({"50", "1024"})
+    private int backlog;
+
+    @Param({"512B", "64KB"})
+    private String bufferSize;
+
+    @Param({"1", "8"})
+    private int ioProcessors;
+
+    /**
+     * UNBOUNDED for an executor queue without bound, or the rejection policy of a bounded one.
+     */
+    @Param({"UNBOUNDED", "BLOCK", "ABORT"})
+    private String queuePolicy;
+
+    private BenchmarkServer server;
+
+    private String uploadDirectory;
+
+    private byte[] content;
+
+    private final AtomicInteger clients = new AtomicInteger();
+
+    @Setup
+    public void setUp() throws IOException {
+        Map<String, Object> properties = new HashMap<>(16);
+        // Every session closed by the ABORT policy is logged otherwise
+        properties.put("logging.level." + CommandQueueHandler.class.getName(), "ERROR");
+        // Logins and the shared pool never limit the clients, the executor of the listener does
+        properties.put("ftpserver.server.max-logins", 1024);
+        properties.put("ftpserver.server.max-threads", 1024);
+        properties.put(LISTENER + "socket.backlog", this.backlog);
+        properties.put(LISTENER + "socket.receive-buffer-size", this.bufferSize);
+        properties.put(LISTENER + "socket.send-buffer-size", this.bufferSize);
+        properties.put(LISTENER + "io-processors", this.ioProcessors);
+        properties.put(LISTENER + "command-executor.threads", EXECUTOR_THREADS);
+        if (!"UNBOUNDED".equals(this.queuePolicy)) {
+            properties.put(LISTENER + "command-executor.queue-capacity", QUEUE_CAPACITY);
+            properties.put(LISTENER + "command-executor.rejection-policy", this.queuePolicy);
+        }
+        this.server = BenchmarkServer.start(properties);
+        this.uploadDirectory = this.server.getWritableDirectory();
+
+        this.content = new byte[FILE_SIZE];
+        ThreadLocalRandom.current().nextBytes(this.content);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        this.server.close();
+    }
+
+    @Benchmark
+    public void connect(final Client client) {
+        try {
+            BenchmarkSupport.disconnect(BenchmarkSupport.connect(this.server, false));
+        } catch (IOException e) {
+            client.rejected++;
+        }
+    }
+
+    @Benchmark
+    public void store(final Client client) throws IOException {
+        try (OutputStream out = client.ftpClient.storeFileStream(client.path)) {
+            if (out == null) {
+                client.reject();
+                return;
+            }
+            out.write(this.content);
+        } catch (IOException e) {
+            client.reject();
+            return;
+        }
+        try {
+            if (!client.ftpClient.completePendingCommand()) {
+                client.reject();
+            }
+        } catch (IOException e) {
+            client.reject();
+        }
+    }
+
+    /**
+     * The session of a client thread, and the number of its commands rejected.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Client {
+
+        public long rejected;
+
+        private ListenerBenchmark benchmark;
+
+        private FTPClient ftpClient;
+
+        private String path;
+
+        @Setup
+        public void setUp(final ListenerBenchmark benchmark) throws IOException {
+            this.benchmark = benchmark;
+            this.path = benchmark.uploadDirectory + "/client-" + benchmark.clients.incrementAndGet() + ".bin";
+            this.open();
+        }
+
+        /**
+         * Without QUIT, the server may be stopped already.
+         */
+        @TearDown
+        public void tearDown() throws IOException {
+            this.ftpClient.disconnect();
+        }
+
+        /**
+         * Count a command which failed, opening the session again if the server closed it.
+         */
+        private void reject() throws IOException {
+            this.rejected++;
+            boolean open;
+            try {
+                open = this.ftpClient.isConnected() && this.ftpClient.sendNoOp();
+            } catch (IOException e) {
+                open = false;
+            }
+            if (!open) {
+                this.ftpClient.disconnect();
+                this.open();
+            }
+        }
+
+        private void open() throws IOException {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    this.ftpClient = BenchmarkSupport.connect(this.benchmark.server, false);
+                    return;
+                } catch (IOException e) {
+                    if (attempt == MAX_ATTEMPTS) {
+                        throw e;
+                    }
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(attempt));
+                }
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.benchmarks;
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPFile;
+import org.apache.commons.net.ftp.FTPListParseEngine;
+import org.apache.commons.net.ftp.FTPReply;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LIST, MLSD and NLST of a large directory over loopback, with and without the listing cache. The client only splits
+ * the LIST output into lines, MLSD entries are parsed since commons-net offers no raw MLSD.
+ *
+ * @author Vimhe
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ListingBenchmark {
+
+    private static final String DIRECTORY = "tree";
+
+    /**
+     * One entry out of this many is a directory.
+     */
+    private static final int DIRECTORY_RATIO = 10;
+
+    @Param({"1000", "10000"})
+    private int entries;
+
+    @Param({"false", "true"})
+    private boolean listingCache;
+
+    private BenchmarkServer server;
+
+    private FTPClient client;
+
+    @Setup
+    public void setUp() throws IOException {
+        Map<String, Object> properties = new HashMap<>(2);
+        properties.put("ftpserver.file-system.listing-cache.enabled", this.listingCache);
+        this.server = BenchmarkServer.start(properties);
+
+        Path directory = Files.createDirectory(this.server.getHome().resolve(DIRECTORY));
+        for (int i = 0; i < this.entries; i++) {
+            if (i % DIRECTORY_RATIO == 0) {
+                Files.createDirectory(directory.resolve("directory-" + i));
+            } else {
+                Files.write(directory.resolve("file-" + i + ".dat"), new byte[i % 4096]);
+            }
+        }
+
+        this.client = BenchmarkSupport.connect(this.server, false);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try {
+            BenchmarkSupport.disconnect(this.client);
+        } finally {
+            this.server.close();
+        }
+    }
+
+    @Benchmark
+    public FTPListParseEngine list() throws IOException {
+        return this.checkReply(this.client.initiateListParsing(DIRECTORY));
+    }
+
+    @Benchmark
+    public FTPFile[] mlsd() throws IOException {
+        FTPFile[] files = this.client.mlistDir(DIRECTORY);
+        if (files.length != this.entries) {
+            throw new IOException("MLSD failed: " + this.client.getReplyString());
+        }
+        return files;
+    }
+
+    @Benchmark
+    public String[] nlst() throws IOException {
+        String[] names = this.client.listNames(DIRECTORY);
+        if (names == null || names.length != this.entries) {
+            throw new IOException("NLST failed: " + this.client.getReplyString());
+        }
+        return names;
+    }
+
+    private FTPListParseEngine checkReply(final FTPListParseEngine engine) throws IOException {
+        if (!FTPReply.isPositiveCompletion(this.client.getReplyCode())) {
+            throw new IOException("Listing failed: " + this.client.getReplyString());
+        }
+        return engine;
+    }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.benchmarks;
+
+import org.apache.commons.net.ftp.FTPSClient;
+
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.Socket;
+import java.util.Locale;
+
+/**
+ * Explicit TLS client which offers the session of its control connection on its data connections, as FileZilla and
+ * lftp do, so that the server can resume it instead of running a full handshake for every transfer.
+ * <p>
+ * The JDK offers a session only to the host and port it was established with, and every data connection has a port of
+ * its own, so the session is put into the session cache of the client for the port of the data connection. This relies
+ * on the internals of the JDK, on Java 9 and newer it needs {@code --add-opens java.base/sun.security.ssl=ALL-UNNAMED}
+ * and {@code --add-opens java.base/sun.security.util=ALL-UNNAMED}, without them the data connections run full
+ * handshakes. A TLS 1.3 ticket is accepted only once, and the client takes the ticket of a data connection only if it
+ * reads from it, so with TLS 1.3 mostly the first transfer is resumed, with TLS 1.2 all are.
+ *
+ * @author Vimhe
+ */
+final class ResumingFtpsClient extends FTPSClient {
+
+    private final boolean resume;
+
+    /**
+     * @param resume whether to offer the session of the control connection, otherwise only the socket options of the
+     *               data connections differ from {@link FTPSClient}
+     */
+    ResumingFtpsClient(final boolean resume) {
+        super("TLS", false);
+        this.resume = resume;
+    }
+
+    @Override
+    protected void _prepareDataSocket_(final Socket socket) throws IOException {
+        // The handshake is written in several small records, each of which would otherwise wait for the delayed
+        // acknowledgement of the previous one
+        socket.setTcpNoDelay(true);
+        if (this.resume && this._socket_ instanceof SSLSocket) {
+            SSLSession session = ((SSLSocket) this._socket_).getSession();
+            if (session.isValid()) {
+                cache(session, key(this.getRemoteAddress().getHostAddress(), this.getRemotePort()),
+                    key(socket.getInetAddress().getHostAddress(), socket.getPort()));
+            }
+        }
+    }
+
+    private static void cache(final SSLSession session, final String from, final String to) {
+        try {
+            SSLSessionContext context = session.getSessionContext();
+            Field field = context.getClass().getDeclaredField("sessionHostPortCache");
+            field.setAccessible(true);
+            Object cache = field.get(context);
+            Method get = cache.getClass().getDeclaredMethod("get", Object.class);
+            get.setAccessible(true);
+            Method put = cache.getClass().getDeclaredMethod("put", Object.class, Object.class);
+            put.setAccessible(true);
+
+            // With TLS 1.3 the session to resume is the one of the ticket the server sent after the handshake, which
+            // the server accepts only once
+            Object cached = get.invoke(cache, from);
+            put.invoke(cache, to, cached != null ? cached : session);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Not the session cache of this JDK, or not opened to the benchmarks, the data connection then runs a full
+            // handshake
+        }
+    }
+
+    private static String key(final String host, final int port) {
+        return (host + ":" + port).toLowerCase(Locale.ENGLISH);
+    }
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.benchmarks;
+
+import com.vimhe.ftpserver.spring.boot.autoconfigure.support.FtpServerStartedEvent;
+import com.vimhe.ftpserver.spring.boot.autoconfigure.support.FtpServerStartupFailedEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Time from creating the application context until the ftp server accepts connections on all its listeners, for a
+ * growing number of listeners, started synchronously or in parallel with {@code ftpserver.server.async-start}.
+ *
+ * @author Vimhe
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+public class StartupBenchmark {
+
+    @Param({"1", "16", "64"})
+    private int listeners;
+
+    @Param({"false", "true"})
+    private boolean asyncStart;
+
+    private Map<String, Object> properties;
+
+    private ConfigurableApplicationContext context;
+
+    @Setup
+    public void setUp() {
+        this.properties = new HashMap<>(this.listeners + 4);
+        this.properties.put("logging.level.root", "WARN");
+        this.properties.put("ftpserver.server.async-start", this.asyncStart);
+        for (int i = 0; i < this.listeners; i++) {
+            this.properties.put("ftpserver.server.listener.listener" + i + ".port", 0);
+            this.properties.put("ftpserver.server.listener.listener" + i + ".local-address", "127.0.0.1");
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() {
+        if (this.context != null) {
+            this.context.close();
+            this.context = null;
+        }
+    }
+
+    @Benchmark
+    public ConfigurableApplicationContext start() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicReference<ApplicationEvent> result = new AtomicReference<>();
+        this.context = BenchmarkServer.run(this.properties, event -> {
+            if (event instanceof FtpServerStartedEvent || event instanceof FtpServerStartupFailedEvent) {
+                result.set(event);
+                started.countDown();
+            }
+        });
+
+        if (!started.await(1, TimeUnit.MINUTES) || !(result.get() instanceof FtpServerStartedEvent)) {
+            throw new IllegalStateException("Ftp server did not start: " + result.get());
+        }
+        return this.context;
+    }
+
+}
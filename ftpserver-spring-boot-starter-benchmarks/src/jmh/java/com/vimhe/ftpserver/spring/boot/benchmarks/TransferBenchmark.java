@@ -0,0 +1,148 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.benchmarks;
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RETR and STOR of a small and a large file over loopback, in plain text and with explicit TLS on the control and
+ * data connections, with the native and the nio file system. One operation is one whole transfer on an open session,
+ * the throughput in bytes follows from the size parameter.
+ *
+ * @author Vimhe
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+public class TransferBenchmark {
+
+    private static final String DOWNLOAD = "download.bin";
+
+    private static final String UPLOAD = "upload.bin";
+
+    @Param({"4KB", "32MB"})
+    private String size;
+
+    @Param({"false", "true"})
+    private boolean tls;
+
+    @Param({"NATIVE", "NIO"})
+    private String fileSystem;
+
+    private BenchmarkServer server;
+
+    private Path keystore;
+
+    private FTPClient client;
+
+    private String uploadPath;
+
+    private byte[] content;
+
+    private byte[] buffer;
+
+    @Setup
+    public void setUp() throws IOException, InterruptedException {
+        Map<String, Object> properties = new HashMap<>(8);
+        properties.put("ftpserver.file-system.type", this.fileSystem);
+        if (this.tls) {
+            this.keystore = BenchmarkSupport.createKeystore();
+            properties.putAll(BenchmarkSupport.sslProperties(this.keystore));
+        }
+        this.server = BenchmarkServer.start(properties);
+
+        this.content = new byte[(int) DataSize.parse(this.size).toBytes()];
+        ThreadLocalRandom.current().nextBytes(this.content);
+        Files.write(this.server.getHome().resolve(DOWNLOAD), this.content);
+        this.uploadPath = this.server.getWritableDirectory() + "/" + UPLOAD;
+        this.buffer = new byte[256 * 1024];
+
+        this.client = BenchmarkSupport.connect(this.server, this.tls);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try {
+            BenchmarkSupport.disconnect(this.client);
+        } finally {
+            this.server.close();
+            if (this.keystore != null) {
+                Files.deleteIfExists(this.keystore);
+            }
+        }
+    }
+
+    @Benchmark
+    public long retrieve() throws IOException {
+        long transferred = 0;
+        try (InputStream in = this.client.retrieveFileStream(DOWNLOAD)) {
+            if (in == null) {
+                throw new IOException("RETR failed: " + this.client.getReplyString());
+            }
+            for (int count = in.read(this.buffer); count >= 0; count = in.read(this.buffer)) {
+                transferred += count;
+            }
+        }
+        this.completeTransfer(transferred);
+        return transferred;
+    }
+
+    @Benchmark
+    public long store() throws IOException {
+        try (OutputStream out = this.client.storeFileStream(this.uploadPath)) {
+            if (out == null) {
+                throw new IOException("STOR failed: " + this.client.getReplyString());
+            }
+            out.write(this.content);
+        }
+        this.completeTransfer(this.content.length);
+        return this.content.length;
+    }
+
+    private void completeTransfer(final long transferred) throws IOException {
+        if (!this.client.completePendingCommand() || transferred != this.content.length) {
+            throw new IOException("Transfer failed after " + transferred + " bytes: " + this.client.getReplyString());
+        }
+    }
+
+}
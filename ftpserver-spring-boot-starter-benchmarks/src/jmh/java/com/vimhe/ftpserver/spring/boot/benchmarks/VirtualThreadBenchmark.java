@@ -0,0 +1,156 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.benchmarks;
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Many open sessions over loopback, all of them downloading a file in turn, with the commands and transfers on the
+ * thread pool sized by ftpserver.server.max-threads, left at its default, and on virtual threads. One operation is a
+ * round in which every session downloads the file once, a fixed number of them at the same time.
+ * <p>
+ * Virtual threads require a Java 21 runtime, older ones keep the thread pool. Each session takes two file descriptors
+ * in this JVM, the data connections more: raise the limit, e.g. {@code ulimit -n 65536}, for 10000 sessions.
+ *
+ * @author Vimhe
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class VirtualThreadBenchmark {
+
+    private static final String DOWNLOAD = "download.bin";
+
+    private static final int FILE_SIZE = 64 * 1024;
+
+    /**
+     * Client threads, and so the transfers running at the same time.
+     */
+    private static final int CLIENT_THREADS = 256;
+
+    @Param({"1000", "10000"})
+    private int sessions;
+
+    @Param({"false", "true"})
+    private boolean virtualThreads;
+
+    private BenchmarkServer server;
+
+    private ExecutorService executor;
+
+    private List<FTPClient> clients;
+
+    @Setup
+    public void setUp() throws IOException, InterruptedException, ExecutionException {
+        Map<String, Object> properties = new HashMap<>(8);
+        properties.put("ftpserver.server.virtual-threads", this.virtualThreads);
+        properties.put("ftpserver.server.max-logins", this.sessions);
+        properties.put("ftpserver.server.listener." + BenchmarkServer.LISTENER + ".socket.backlog", CLIENT_THREADS);
+        this.server = BenchmarkServer.start(properties);
+
+        byte[] content = new byte[FILE_SIZE];
+        ThreadLocalRandom.current().nextBytes(content);
+        Files.write(this.server.getHome().resolve(DOWNLOAD), content);
+
+        this.executor = Executors.newFixedThreadPool(CLIENT_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "benchmark-client");
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<Callable<FTPClient>> logins = new ArrayList<>(this.sessions);
+        for (int i = 0; i < this.sessions; i++) {
+            logins.add(() -> BenchmarkSupport.connect(this.server, false));
+        }
+        this.clients = new ArrayList<>(this.sessions);
+        for (Future<FTPClient> login : this.executor.invokeAll(logins)) {
+            this.clients.add(login.get());
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try {
+            for (FTPClient client : this.clients) {
+                client.disconnect();
+            }
+            this.executor.shutdownNow();
+        } finally {
+            this.server.close();
+        }
+    }
+
+    @Benchmark
+    public long round() throws InterruptedException, ExecutionException {
+        List<Callable<Long>> downloads = new ArrayList<>(this.clients.size());
+        for (FTPClient client : this.clients) {
+            downloads.add(() -> download(client));
+        }
+        long transferred = 0;
+        for (Future<Long> download : this.executor.invokeAll(downloads)) {
+            transferred += download.get();
+        }
+        return transferred;
+    }
+
+    private static long download(final FTPClient client) throws IOException {
+        byte[] buffer = new byte[FILE_SIZE];
+        long transferred = 0;
+        try (InputStream in = client.retrieveFileStream(DOWNLOAD)) {
+            if (in == null) {
+                throw new IOException("RETR failed: " + client.getReplyString());
+            }
+            for (int count = in.read(buffer); count >= 0; count = in.read(buffer)) {
+                transferred += count;
+            }
+        }
+        if (!client.completePendingCommand() || transferred != FILE_SIZE) {
+            throw new IOException("Transfer failed after " + transferred + " bytes: " + client.getReplyString());
+        }
+        return transferred;
+    }
+
+}
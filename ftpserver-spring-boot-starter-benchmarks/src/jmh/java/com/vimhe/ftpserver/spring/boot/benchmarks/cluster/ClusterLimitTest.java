@@ -0,0 +1,165 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.benchmarks.cluster;
+
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.cluster.ClusterSessionLimiter;
+import com.vimhe.ftpserver.spring.boot.benchmarks.BenchmarkServer;
+import com.vimhe.ftpserver.spring.boot.benchmarks.BenchmarkSupport;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPConnectionClosedException;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stand-in for a cluster of servers within one JVM: several servers sharing a session counter store file, each a node
+ * of its own, with the benchmark user limited to a number of concurrent logins. Clients log in round robin across the
+ * nodes, and the test checks that the cluster admits exactly the limit, that the slots are reusable on any node once
+ * the sessions are closed, and how many logins needed a call to the store. Exits with status 1 if a check fails.
+ * <p>
+ * Options are given as {@code --name=value}:
+ * <ul>
+ * <li>{@code nodes} servers in the cluster, default 6</li>
+ * <li>{@code max-logins} concurrent logins of the benchmark user in the cluster, default 4</li>
+ * <li>{@code clients} logins attempted at once, default 24</li>
+ * <li>{@code lease} lease of the reserved slots, default 3s</li>
+ * <li>{@code ftpserver.*} any property of the servers, e.g. {@code --ftpserver.server.cluster-limits.batch-size=1}</li>
+ * </ul>
+ *
+ * @author Vimhe
+ */
+public final class ClusterLimitTest {
+
+    private static final String SERVER_PROPERTIES = "ftpserver.";
+
+    private ClusterLimitTest() {
+    }
+
+    public static void main(final String[] args) throws IOException, InterruptedException {
+        SimpleCommandLinePropertySource options = new SimpleCommandLinePropertySource(args);
+        int nodes = Integer.parseInt(option(options, "nodes", "6"));
+        int maxLogins = Integer.parseInt(option(options, "max-logins", "4"));
+        int clients = Integer.parseInt(option(options, "clients", "24"));
+        Duration lease = DurationStyle.detectAndParse(option(options, "lease", "3s"));
+
+        Path storeDirectory = Files.createTempDirectory("ftpserver-cluster");
+        List<BenchmarkServer> servers = new ArrayList<>(nodes);
+        boolean passed;
+        try {
+            for (int node = 0; node < nodes; node++) {
+                Map<String, Object> properties = new HashMap<>(16);
+                properties.put("ftpserver.server.cluster-limits.enabled", true);
+                properties.put("ftpserver.server.cluster-limits.store-file", storeDirectory.resolve("sessions"));
+                properties.put("ftpserver.server.cluster-limits.node-id", "node-" + node);
+                properties.put("ftpserver.server.cluster-limits.lease", lease);
+                properties.put("ftpserver.user." + BenchmarkServer.USERNAME + ".max-login-number", maxLogins);
+                properties.put("ftpserver.user." + BenchmarkServer.USERNAME + ".max-login-per-ip", 0);
+                for (String name : options.getPropertyNames()) {
+                    if (name.startsWith(SERVER_PROPERTIES)) {
+                        properties.put(name, options.getProperty(name));
+                    }
+                }
+                servers.add(BenchmarkServer.start(properties));
+            }
+
+            // All at once, spread over the nodes: each node alone would admit the limit
+            List<FTPClient> sessions = loginRoundRobin(servers, clients);
+            int admitted = sessions.size();
+            System.out.printf("%d of %d logins admitted by %d nodes, limit %d%n", admitted, clients, nodes, maxLogins);
+            passed = check(admitted == Math.min(clients, maxLogins), "the cluster admitted " + admitted);
+
+            // Closed sessions leave their slots reserved on their nodes until idle for a renewal, then any node may
+            // take them
+            for (FTPClient session : sessions) {
+                BenchmarkSupport.disconnect(session);
+            }
+            Thread.sleep(lease.toMillis());
+            List<FTPClient> again = loginRoundRobin(servers.subList(nodes - 1, nodes), clients);
+            System.out.printf("%d logins admitted by the last node once the others were idle%n", again.size());
+            passed &= check(again.size() == Math.min(clients, maxLogins), "the last node admitted " + again.size());
+            for (FTPClient session : again) {
+                BenchmarkSupport.disconnect(session);
+            }
+
+            long local = 0;
+            long reserved = 0;
+            long rejected = 0;
+            long failed = 0;
+            for (BenchmarkServer server : servers) {
+                ClusterSessionLimiter limiter = server.getBean(ClusterSessionLimiter.class);
+                local += limiter.getLocalCount();
+                reserved += limiter.getReservedCount();
+                rejected += limiter.getRejectedCount();
+                failed += limiter.getFailedCount();
+            }
+            System.out.printf("slots: %d local, %d reserved from the store, %d rejected, %d store failures%n", local,
+                reserved, rejected, failed);
+            passed &= check(failed == 0, failed + " store failures");
+        } finally {
+            for (BenchmarkServer server : servers) {
+                server.close();
+            }
+            FileSystemUtils.deleteRecursively(storeDirectory);
+        }
+        System.exit(passed ? 0 : 1);
+    }
+
+    /**
+     * Log in the clients one after the other, on the servers in turn, keeping the admitted sessions open.
+     */
+    private static List<FTPClient> loginRoundRobin(final List<BenchmarkServer> servers, final int clients)
+        throws IOException {
+        List<FTPClient> sessions = new ArrayList<>(clients);
+        for (int i = 0; i < clients; i++) {
+            FTPClient client = new FTPClient();
+            client.connect("127.0.0.1", servers.get(i % servers.size()).getPort());
+            try {
+                if (client.login(BenchmarkServer.USERNAME, BenchmarkServer.PASSWORD)) {
+                    sessions.add(client);
+                    continue;
+                }
+            } catch (FTPConnectionClosedException e) {
+                // Refused with 421, as expected beyond the limit
+            }
+            client.disconnect();
+        }
+        return sessions;
+    }
+
+    private static boolean check(final boolean condition, final String message) {
+        if (!condition) {
+            System.out.println("Check failed: " + message);
+        }
+        return condition;
+    }
+
+    private static String option(final SimpleCommandLinePropertySource options, final String name,
+                                 final String defaultValue) {
+        String value = options.getProperty(name);
+        return value != null ? value : defaultValue;
+    }
+
+}
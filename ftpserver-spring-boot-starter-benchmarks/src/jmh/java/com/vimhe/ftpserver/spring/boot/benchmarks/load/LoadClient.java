@@ -0,0 +1,178 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.benchmarks.load;
+
+import com.vimhe.ftpserver.spring.boot.benchmarks.BenchmarkServer;
+import com.vimhe.ftpserver.spring.boot.benchmarks.BenchmarkSupport;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One client of the load test, running its workload on one session until the deadline. A failed command counts as an
+ * error and the client logs in again, as real clients would.
+ *
+ * @author Vimhe
+ */
+public final class LoadClient implements Runnable {
+
+    /**
+     * Pause after a failed login, so a refusing server is not hammered by the whole swarm.
+     */
+    private static final long RECONNECT_DELAY_MILLIS = 100;
+
+    private final Workload workload;
+
+    private final BenchmarkServer server;
+
+    private final boolean tls;
+
+    private final boolean resume;
+
+    private final String path;
+
+    private final byte[] content;
+
+    private final long pollIntervalMillis;
+
+    private final long measureFrom;
+
+    private final long deadline;
+
+    private final LoadStatistics statistics = new LoadStatistics();
+
+    private final byte[] buffer = new byte[256 * 1024];
+
+    /**
+     * @param resume      whether the data connections offer the TLS session of the control connection
+     * @param path        the file to upload or download, or the directory to list
+     * @param content     the content to upload, or the expected content length of downloads in its length
+     * @param measureFrom {@link System#nanoTime()} from which the commands are recorded, before that is warmup
+     * @param deadline    {@link System#nanoTime()} after which no command is started
+     */
+    public LoadClient(final Workload workload, final BenchmarkServer server, final boolean tls, final boolean resume,
+                      final String path, final byte[] content, final long pollIntervalMillis, final long measureFrom,
+                      final long deadline) {
+        this.workload = workload;
+        this.server = server;
+        this.tls = tls;
+        this.resume = resume;
+        this.path = path;
+        this.content = content;
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.measureFrom = measureFrom;
+        this.deadline = deadline;
+    }
+
+    public Workload getWorkload() {
+        return this.workload;
+    }
+
+    public LoadStatistics getStatistics() {
+        return this.statistics;
+    }
+
+    @Override
+    public void run() {
+        FTPClient client = null;
+        try {
+            while (System.nanoTime() < this.deadline && !Thread.currentThread().isInterrupted()) {
+                long start = System.nanoTime();
+                try {
+                    if (client == null) {
+                        client = BenchmarkSupport.connect(this.server, this.tls, this.resume);
+                        continue;
+                    }
+                    long transferred = this.execute(client);
+                    if (start >= this.measureFrom) {
+                        this.statistics.record(System.nanoTime() - start, transferred);
+                    }
+                } catch (IOException e) {
+                    // Failures count during the warmup too, a stalled command may well have started there
+                    this.statistics.error();
+                    boolean connected = client != null;
+                    client = disconnect(client);
+                    if (!connected) {
+                        TimeUnit.MILLISECONDS.sleep(RECONNECT_DELAY_MILLIS);
+                    }
+                    continue;
+                }
+
+                if (this.workload == Workload.LIST && this.pollIntervalMillis > 0) {
+                    TimeUnit.MILLISECONDS.sleep(this.pollIntervalMillis);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            disconnect(client);
+        }
+    }
+
+    private long execute(final FTPClient client) throws IOException {
+        switch (this.workload) {
+            case UPLOAD:
+                try (OutputStream out = client.storeFileStream(this.path)) {
+                    if (out == null) {
+                        throw new IOException("STOR failed: " + client.getReplyString());
+                    }
+                    out.write(this.content);
+                }
+                return this.complete(client, this.content.length);
+            case DOWNLOAD:
+                long transferred = 0;
+                try (InputStream in = client.retrieveFileStream(this.path)) {
+                    if (in == null) {
+                        throw new IOException("RETR failed: " + client.getReplyString());
+                    }
+                    for (int count = in.read(this.buffer); count >= 0; count = in.read(this.buffer)) {
+                        transferred += count;
+                    }
+                }
+                return this.complete(client, transferred);
+            case LIST:
+                FTPFile[] files = client.listFiles(this.path);
+                if (files.length == 0) {
+                    throw new IOException("LIST failed: " + client.getReplyString());
+                }
+                return 0;
+            default:
+                throw new IllegalStateException("Unknown workload: " + this.workload);
+        }
+    }
+
+    private long complete(final FTPClient client, final long transferred) throws IOException {
+        if (!client.completePendingCommand() || transferred != this.content.length) {
+            throw new IOException("Transfer failed after " + transferred + " bytes: " + client.getReplyString());
+        }
+        return transferred;
+    }
+
+    private static FTPClient disconnect(final FTPClient client) {
+        try {
+            BenchmarkSupport.disconnect(client);
+        } catch (IOException e) {
+            // Gone already
+        }
+        return null;
+    }
+
+}
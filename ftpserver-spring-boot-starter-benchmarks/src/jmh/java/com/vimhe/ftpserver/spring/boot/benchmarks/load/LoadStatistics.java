@@ -0,0 +1,92 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.benchmarks.load;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latencies, bytes and errors of one workload. Every client records into one of its own, they are merged once the
+ * clients are done, so recording takes no lock.
+ *
+ * @author Vimhe
+ */
+public final class LoadStatistics {
+
+    private long[] latencies = new long[1024];
+
+    private int count;
+
+    private long bytes;
+
+    private long errors;
+
+    /**
+     * Record one command, from sending it to its final reply.
+     */
+    public void record(final long latencyNanos, final long transferred) {
+        if (this.count == this.latencies.length) {
+            this.latencies = Arrays.copyOf(this.latencies, this.count * 2);
+        }
+        this.latencies[this.count++] = latencyNanos;
+        this.bytes += transferred;
+    }
+
+    public void error() {
+        this.errors++;
+    }
+
+    public static LoadStatistics merge(final Collection<LoadStatistics> statistics) {
+        LoadStatistics merged = new LoadStatistics();
+        merged.latencies = new long[Math.max(1, statistics.stream().mapToInt(s -> s.count).sum())];
+        for (LoadStatistics s : statistics) {
+            System.arraycopy(s.latencies, 0, merged.latencies, merged.count, s.count);
+            merged.count += s.count;
+            merged.bytes += s.bytes;
+            merged.errors += s.errors;
+        }
+        Arrays.sort(merged.latencies, 0, merged.count);
+        return merged;
+    }
+
+    public long getCount() {
+        return this.count;
+    }
+
+    public long getBytes() {
+        return this.bytes;
+    }
+
+    public long getErrors() {
+        return this.errors;
+    }
+
+    /**
+     * The latency below which this share of the commands completed, only valid on merged statistics.
+     *
+     * @param percentile between 0 and 100
+     */
+    public double getLatencyMillis(final double percentile) {
+        if (this.count == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100 * this.count) - 1;
+        return this.latencies[Math.max(0, Math.min(index, this.count - 1))] / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.benchmarks.load;
+
+import com.vimhe.ftpserver.spring.boot.autoconfigure.ext.ssl.TlsHandshakeStatistics;
+import com.vimhe.ftpserver.spring.boot.benchmarks.BenchmarkServer;
+import com.vimhe.ftpserver.spring.boot.benchmarks.BenchmarkSupport;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Load test of the auto-configured server over loopback: a swarm of clients uploading small files, downloading large
+ * files and polling a directory with LIST, all at the same time. Reports the latency percentiles of every workload,
+ * the transfers and bytes per second, and exits with status 1 if a budget is exceeded or a workload completes no
+ * command at all, so CI can gate on it.
+ * <p>
+ * Options are given as {@code --name=value}:
+ * <ul>
+ * <li>{@code duration} measured time, default 30s, after {@code warmup}, default 5s</li>
+ * <li>{@code uploaders}, {@code upload-size} clients storing small files, default 32 of 16KB</li>
+ * <li>{@code downloaders}, {@code download-size} clients retrieving large files, default 2 of 64MB</li>
+ * <li>{@code pollers}, {@code poll-entries}, {@code poll-interval} clients listing a directory, default 16 listing
+ * 1000 entries without pause</li>
+ * <li>{@code tls} explicit TLS on the control and data connections, default false, with {@code tls-resumption} the
+ * data connections offering the TLS session of the control connection, default true, and {@code tls-client-protocols}
+ * the protocols of the clients, e.g. TLSv1.2, default those of the JDK</li>
+ * <li>{@code max-p99} budget for the 99th percentile latency of the uploads and listings, e.g. 200ms</li>
+ * <li>{@code min-transfers-per-second}, {@code min-bytes-per-second} budgets for the uploads and downloads together,
+ * the latter as a data size, e.g. 100MB</li>
+ * <li>{@code max-errors} budget for failed commands, the warmup included, default 0</li>
+ * <li>{@code ftpserver.*} any property of the server, e.g. {@code --ftpserver.server.virtual-threads=true}</li>
+ * </ul>
+ *
+ * @author Vimhe
+ */
+public final class LoadTest {
+
+    private static final String SERVER_PROPERTIES = "ftpserver.";
+
+    private LoadTest() {
+    }
+
+    public static void main(final String[] args) throws IOException, InterruptedException {
+        SimpleCommandLinePropertySource options = new SimpleCommandLinePropertySource(args);
+        Duration warmup = DurationStyle.detectAndParse(option(options, "warmup", "5s"));
+        Duration duration = DurationStyle.detectAndParse(option(options, "duration", "30s"));
+        boolean tls = Boolean.parseBoolean(option(options, "tls", "false"));
+        boolean resume = Boolean.parseBoolean(option(options, "tls-resumption", "true"));
+        Optional.ofNullable(options.getProperty("tls-client-protocols")).ifPresent(protocols ->
+            System.setProperty("jdk.tls.client.protocols", protocols));
+        Map<Workload, Integer> clients = new EnumMap<>(Workload.class);
+        clients.put(Workload.UPLOAD, Integer.parseInt(option(options, "uploaders", "32")));
+        clients.put(Workload.DOWNLOAD, Integer.parseInt(option(options, "downloaders", "2")));
+        clients.put(Workload.LIST, Integer.parseInt(option(options, "pollers", "16")));
+        int total = clients.values().stream().mapToInt(Integer::intValue).sum();
+
+        Map<String, Object> properties = new HashMap<>(16);
+        // Every client gets a thread of its own, the large downloads would otherwise hold up the rest
+        properties.put("ftpserver.server.max-threads", total);
+        properties.put("ftpserver.server.max-logins", total);
+        Path keystore = null;
+        if (tls) {
+            keystore = BenchmarkSupport.createKeystore();
+            properties.putAll(BenchmarkSupport.sslProperties(keystore));
+        }
+        for (String name : options.getPropertyNames()) {
+            if (name.startsWith(SERVER_PROPERTIES)) {
+                properties.put(name, options.getProperty(name));
+            }
+        }
+
+        Map<Workload, LoadStatistics> statistics;
+        TlsHandshakeStatistics handshakes;
+        try (BenchmarkServer server = BenchmarkServer.start(properties)) {
+            handshakes = tls ? server.getBean(TlsHandshakeStatistics.class) : null;
+            byte[] upload = new byte[(int) DataSize.parse(option(options, "upload-size", "16KB")).toBytes()];
+            ThreadLocalRandom.current().nextBytes(upload);
+            byte[] download = new byte[(int) DataSize.parse(option(options, "download-size", "64MB")).toBytes()];
+            ThreadLocalRandom.current().nextBytes(download);
+            try (OutputStream out = Files.newOutputStream(server.getHome().resolve("download.bin"))) {
+                out.write(download);
+            }
+            Path poll = Files.createDirectory(server.getHome().resolve("poll"));
+            for (int i = Integer.parseInt(option(options, "poll-entries", "1000")); i > 0; i--) {
+                Files.createFile(poll.resolve("entry-" + i));
+            }
+            long pollInterval = DurationStyle.detectAndParse(option(options, "poll-interval", "0ms")).toMillis();
+
+            long measureFrom = System.nanoTime() + warmup.toNanos();
+            long deadline = measureFrom + duration.toNanos();
+            List<LoadClient> swarm = new ArrayList<>(total);
+            for (int i = 0; i < clients.get(Workload.UPLOAD); i++) {
+                String path = server.getWritableDirectory() + "/upload-" + i + ".bin";
+                swarm.add(new LoadClient(Workload.UPLOAD, server, tls, resume, path, upload, 0, measureFrom, deadline));
+            }
+            for (int i = 0; i < clients.get(Workload.DOWNLOAD); i++) {
+                swarm.add(new LoadClient(Workload.DOWNLOAD, server, tls, resume, "download.bin", download, 0,
+                    measureFrom, deadline));
+            }
+            for (int i = 0; i < clients.get(Workload.LIST); i++) {
+                swarm.add(new LoadClient(Workload.LIST, server, tls, resume, "poll", upload, pollInterval,
+                    measureFrom, deadline));
+            }
+
+            ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, total));
+            swarm.forEach(executor::execute);
+            executor.shutdown();
+            if (!executor.awaitTermination(deadline - System.nanoTime() + TimeUnit.MINUTES.toNanos(5),
+                TimeUnit.NANOSECONDS)) {
+                executor.shutdownNow();
+                throw new IllegalStateException("The clients did not finish within 5 minutes after the deadline");
+            }
+
+            statistics = swarm.stream().collect(Collectors.groupingBy(LoadClient::getWorkload,
+                () -> new EnumMap<>(Workload.class),
+                Collectors.collectingAndThen(Collectors.mapping(LoadClient::getStatistics, Collectors.toList()),
+                    LoadStatistics::merge)));
+        } finally {
+            if (keystore != null) {
+                Files.deleteIfExists(keystore);
+            }
+        }
+
+        Optional.ofNullable(handshakes).ifPresent(LoadTest::report);
+        System.exit(report(options, clients, statistics, duration) ? 0 : 1);
+    }
+
+    private static void report(final TlsHandshakeStatistics handshakes) {
+        for (TlsHandshakeStatistics.Channel channel : TlsHandshakeStatistics.Channel.values()) {
+            long count = handshakes.getCount(channel);
+            System.out.printf("TLS %-7s %d handshakes, %.0f%% resumed, mean %.2f ms%n", channel, count,
+                handshakes.getResumptionRatio(channel) * 100,
+                count > 0 ? handshakes.getTotalTime(channel, TimeUnit.MILLISECONDS) / count : 0);
+        }
+    }
+
+    /**
+     * Print the results and check them against the budgets.
+     *
+     * @return true if all budgets are met
+     */
+    private static boolean report(final SimpleCommandLinePropertySource options, final Map<Workload, Integer> clients,
+                                  final Map<Workload, LoadStatistics> statistics, final Duration duration) {
+        double seconds = duration.toNanos() / (double) TimeUnit.SECONDS.toNanos(1);
+        System.out.printf("%-10s %10s %10s %12s %10s %10s %10s %8s%n",
+            "workload", "commands", "per sec", "MB/s", "p50 ms", "p99 ms", "max ms", "errors");
+        long transfers = 0;
+        long bytes = 0;
+        long errors = 0;
+        double p99 = 0;
+        for (Map.Entry<Workload, LoadStatistics> entry : statistics.entrySet()) {
+            LoadStatistics s = entry.getValue();
+            System.out.printf("%-10s %10d %10.1f %12.2f %10.2f %10.2f %10.2f %8d%n", entry.getKey(), s.getCount(),
+                s.getCount() / seconds, s.getBytes() / seconds / DataSize.ofMegabytes(1).toBytes(),
+                s.getLatencyMillis(50), s.getLatencyMillis(99), s.getLatencyMillis(100), s.getErrors());
+            if (entry.getKey() != Workload.LIST) {
+                transfers += s.getCount();
+                bytes += s.getBytes();
+            }
+            // A large download takes as long as its size demands, it has no latency budget
+            if (entry.getKey() != Workload.DOWNLOAD) {
+                p99 = Math.max(p99, s.getLatencyMillis(99));
+            }
+            errors += s.getErrors();
+        }
+        System.out.printf("transfers/s %.1f, bytes/s %.0f%n", transfers / seconds, bytes / seconds);
+
+        boolean met = true;
+        for (Map.Entry<Workload, LoadStatistics> entry : statistics.entrySet()) {
+            if (clients.get(entry.getKey()) > 0 && entry.getValue().getCount() == 0) {
+                met = budgetExceeded("no " + entry.getKey() + " command completed");
+            }
+        }
+        String maxP99 = options.getProperty("max-p99");
+        if (maxP99 != null && p99 > DurationStyle.detectAndParse(maxP99).toMillis()) {
+            met = budgetExceeded("p99 latency " + p99 + "ms above " + maxP99);
+        }
+        String minTransfers = options.getProperty("min-transfers-per-second");
+        if (minTransfers != null && transfers / seconds < Double.parseDouble(minTransfers)) {
+            met = budgetExceeded("transfers/s " + transfers / seconds + " below " + minTransfers);
+        }
+        String minBytes = options.getProperty("min-bytes-per-second");
+        if (minBytes != null && bytes / seconds < DataSize.parse(minBytes).toBytes()) {
+            met = budgetExceeded("bytes/s " + bytes / seconds + " below " + minBytes);
+        }
+        long maxErrors = Long.parseLong(option(options, "max-errors", "0"));
+        if (errors > maxErrors) {
+            met = budgetExceeded(errors + " failed commands, more than " + maxErrors);
+        }
+        return met;
+    }
+
+    private static boolean budgetExceeded(final String message) {
+        System.out.println("Budget exceeded: " + message);
+        return false;
+    }
+
+    private static String option(final SimpleCommandLinePropertySource options, final String name,
+                                 final String defaultValue) {
+        String value = options.getProperty(name);
+        return value != null ? value : defaultValue;
+    }
+
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2019 Vimhe
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.vimhe.ftpserver.spring.boot.benchmarks.load;
+
+/**
+ * What a client of the load test does over and over on its session.
+ *
+ * @author Vimhe
+ */
+public enum Workload {
+
+    /**
+     * STOR of a small file.
+     */
+    UPLOAD,
+
+    /**
+     * RETR of a large file.
+     */
+    DOWNLOAD,
+
+    /**
+     * LIST of a directory, as clients polling for new files do.
+     */
+    LIST
+
+}